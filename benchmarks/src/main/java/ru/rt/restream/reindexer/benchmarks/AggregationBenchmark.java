@@ -0,0 +1,95 @@
+/*
+ * Copyright 2020 Restream
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.rt.restream.reindexer.benchmarks;
+
+import com.google.gson.Gson;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.rt.restream.reindexer.AggregationResult;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the decoding of a large facet aggregation result: the reflective Gson mapping, which the connector used
+ * before, against {@link AggregationResult#fromJson(byte[])} with the facets decoded into a list or streamed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AggregationBenchmark {
+
+    @Param({"100", "10000"})
+    private int facetCount;
+
+    private final Gson gson = new Gson();
+
+    private byte[] json;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        StringBuilder builder = new StringBuilder("{\"value\":0,\"type\":\"facet\",\"fields\":[\"name\",\"price\"],"
+                + "\"facets\":[");
+        for (int i = 0; i < facetCount; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append("{\"values\":[\"Name").append(i).append("\",\"").append(i % 1000).append("\"],\"count\":")
+                    .append(i % 97 + 1).append('}');
+        }
+        json = builder.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public long gson() {
+        AggregationResult result = gson.fromJson(new String(json, StandardCharsets.UTF_8), AggregationResult.class);
+        long sum = 0;
+        for (AggregationResult.Facet facet : result.getFacets()) {
+            sum += facet.getCount();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long decodeList() {
+        long sum = 0;
+        for (AggregationResult.Facet facet : AggregationResult.fromJson(json).getFacets()) {
+            sum += facet.getCount();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long decodeStream() {
+        long[] sum = new long[1];
+        AggregationResult.fromJson(json).forEachFacet(facet -> sum[0] += facet.getCount());
+        return sum[0];
+    }
+
+}
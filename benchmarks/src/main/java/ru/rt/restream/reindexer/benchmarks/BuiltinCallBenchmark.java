@@ -0,0 +1,115 @@
+/*
+ * Copyright 2020 Restream
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.rt.restream.reindexer.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import ru.rt.restream.reindexer.Namespace;
+import ru.rt.restream.reindexer.NamespaceOptions;
+import ru.rt.restream.reindexer.Reindexer;
+import ru.rt.restream.reindexer.ReindexerConfiguration;
+import ru.rt.restream.reindexer.ResultIterator;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static ru.rt.restream.reindexer.Query.Condition.EQ;
+
+/**
+ * Measures the per-call overhead of the builtin binding: a single item upsert ({@code Builtin.modifyItem}) and
+ * small queries ({@code Builtin.selectQuery}) against an embedded in-memory namespace.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BuiltinCallBenchmark {
+
+    @Param("10000")
+    private int itemCount;
+
+    private Path dbPath;
+
+    private Reindexer db;
+
+    private Namespace<Item> namespace;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dbPath = Files.createTempDirectory("rx-benchmark-");
+        db = ReindexerConfiguration.builder()
+                .url("builtin://" + dbPath.toAbsolutePath())
+                .requestTimeout(Duration.ofSeconds(30L))
+                .getReindexer();
+        namespace = db.openNamespace("items", NamespaceOptions.defaultOptions().setEnableStorage(false), Item.class);
+        for (int i = 0; i < itemCount; i++) {
+            namespace.upsert(new Item(i, "name" + i));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        db.close();
+        try (Stream<Path> paths = Files.walk(dbPath)) {
+            paths.sorted(Comparator.reverseOrder())
+                    .forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public void modifyItem() {
+        int id = ThreadLocalRandom.current().nextInt(itemCount);
+        namespace.upsert(new Item(id, "name" + id));
+    }
+
+    @Benchmark
+    public Item selectQueryById() {
+        int id = ThreadLocalRandom.current().nextInt(itemCount);
+        return namespace.query()
+                .where("id", EQ, id)
+                .getOne();
+    }
+
+    @Benchmark
+    public void selectQueryLimit(Blackhole blackhole) {
+        try (ResultIterator<Item> iterator = namespace.query().limit(10).execute()) {
+            while (iterator.hasNext()) {
+                blackhole.consume(iterator.next());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2020 Restream
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.rt.restream.reindexer.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.rt.restream.reindexer.binding.cproto.BufferPool;
+import ru.rt.restream.reindexer.binding.cproto.ByteBuffer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the primitives of {@link ByteBuffer}, which every request and response goes through: variable length
+ * integers and strings, written into a fresh buffer or a pooled one, and read back.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ByteBufferBenchmark {
+
+    @Param({"16", "256"})
+    private int valueCount;
+
+    private final BufferPool pool = new BufferPool(BufferPool.DEFAULT_MAX_BUFFERS_PER_CLASS);
+
+    private byte[] encoded;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        encoded = write(new ByteBuffer()).bytes();
+    }
+
+    @Benchmark
+    public byte[] writeNewBuffer() {
+        return write(new ByteBuffer()).bytes();
+    }
+
+    @Benchmark
+    public byte[] writePooledBuffer() {
+        ByteBuffer buffer = pool.acquire(encoded.length);
+        try {
+            return write(buffer).bytes();
+        } finally {
+            pool.release(buffer);
+        }
+    }
+
+    @Benchmark
+    public long read() {
+        ByteBuffer buffer = new ByteBuffer(encoded).rewind();
+        long sum = 0;
+        for (int i = 0; i < valueCount; i++) {
+            sum += buffer.getVarUInt();
+            sum += buffer.getVarInt();
+            sum += buffer.getVString().length();
+        }
+        return sum;
+    }
+
+    private ByteBuffer write(ByteBuffer buffer) {
+        for (int i = 0; i < valueCount; i++) {
+            buffer.putVarUInt32(i * 1000L)
+                    .putVarInt64(-i)
+                    .putVString("value");
+        }
+        return buffer;
+    }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2020 Restream
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.rt.restream.reindexer.benchmarks;
+
+import ru.rt.restream.reindexer.binding.Consts;
+import ru.rt.restream.reindexer.binding.cproto.ByteBuffer;
+import ru.rt.restream.reindexer.binding.cproto.cjson.CJsonItemWriter;
+import ru.rt.restream.reindexer.binding.cproto.cjson.CjsonItemSerializer;
+import ru.rt.restream.reindexer.binding.cproto.cjson.CtagMatcher;
+import ru.rt.restream.reindexer.binding.cproto.cjson.PayloadType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Builds raw query results in the format, which the server returns for a CJSON select with payload types,
+ * see {@link ru.rt.restream.reindexer.binding.QueryResultReader}.
+ */
+public final class CannedResults {
+
+    private CannedResults() {
+        // utils
+    }
+
+    /**
+     * Builds a raw query result of the given number of {@link Item}s.
+     *
+     * @param namespaceName the namespace name of the payload type
+     * @param count         the number of items
+     * @return the raw query result
+     */
+    public static byte[] selectResult(String namespaceName, int count) {
+        PayloadType payloadType = payloadType(namespaceName);
+        CjsonItemSerializer<Item> serializer = new CjsonItemSerializer<>(payloadType);
+        List<byte[]> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            items.add(serializer.serialize(new Item(i, "name" + i)));
+        }
+
+        ByteBuffer result = new ByteBuffer()
+                .putVarUInt32(Consts.RESULTS_C_JSON | Consts.RESULTS_WITH_PAYLOAD_TYPES)
+                .putVarUInt32(count) // total count
+                .putVarUInt32(count) // query count
+                .putVarUInt32(count)
+                .putVarUInt32(1L) // payload types count
+                .putVarUInt32(payloadType.getNamespaceId())
+                .putVString(payloadType.getNamespaceName())
+                .putVarUInt32(payloadType.getStateToken())
+                .putVarUInt32(payloadType.getVersion())
+                .putVarUInt32(payloadType.getTags().size());
+        for (String tag : payloadType.getTags()) {
+            result.putVString(tag);
+        }
+        result.putVarUInt32(payloadType.getPStringHdrOffset())
+                .putVarUInt32(0L) // payload fields count
+                .putVarUInt32(Consts.QUERY_RESULT_END);
+        for (byte[] item : items) {
+            result.putUInt32(item.length)
+                    .writeBytes(item);
+        }
+        return result.bytes();
+    }
+
+    /**
+     * Creates a payload type of {@link Item}s with all the item tags and no payload fields, so that an item, which
+     * is encoded with it, doesn't carry new tags, as the items of a server result.
+     *
+     * @param namespaceName the namespace name
+     * @return the {@link PayloadType} to use
+     */
+    public static PayloadType payloadType(String namespaceName) {
+        CtagMatcher ctagMatcher = new CtagMatcher();
+        new CJsonItemWriter<Item>(ctagMatcher).writeItem(new ByteBuffer(), new Item(0, "name"));
+        return new PayloadType(0L, namespaceName, 1L, 1, 0L, ctagMatcher.getTags(), Collections.emptyList());
+    }
+
+}
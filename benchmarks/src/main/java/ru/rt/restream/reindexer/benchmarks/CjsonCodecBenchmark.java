@@ -0,0 +1,95 @@
+/*
+ * Copyright 2020 Restream
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.rt.restream.reindexer.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.rt.restream.reindexer.binding.cproto.ByteBuffer;
+import ru.rt.restream.reindexer.binding.cproto.cjson.CJsonItemWriter;
+import ru.rt.restream.reindexer.binding.cproto.cjson.CjsonElement;
+import ru.rt.restream.reindexer.binding.cproto.cjson.CjsonItemReader;
+import ru.rt.restream.reindexer.binding.cproto.cjson.CjsonItemSerializer;
+import ru.rt.restream.reindexer.binding.cproto.cjson.CtagMatcher;
+import ru.rt.restream.reindexer.binding.cproto.cjson.PayloadType;
+import ru.rt.restream.reindexer.binding.cproto.cjson.encdec.CjsonDecoder;
+import ru.rt.restream.reindexer.binding.cproto.cjson.encdec.CjsonEncoder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the CJSON codec of items: the bean to CJSON path ({@link CjsonItemSerializer}, {@link CJsonItemWriter}),
+ * the CJSON to bean path ({@link CjsonItemReader}) and the element level {@link CjsonEncoder} and
+ * {@link CjsonDecoder} underneath them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CjsonCodecBenchmark {
+
+    private final Item item = new Item(42, "name42");
+
+    private PayloadType payloadType;
+
+    private byte[] encoded;
+
+    private CjsonElement element;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        payloadType = CannedResults.payloadType("items");
+        encoded = new CjsonItemSerializer<Item>(payloadType).serialize(item);
+        element = new CjsonDecoder(ctagMatcher(), new ByteBuffer(encoded).rewind()).decode();
+    }
+
+    private CtagMatcher ctagMatcher() {
+        CtagMatcher ctagMatcher = new CtagMatcher();
+        ctagMatcher.read(payloadType);
+        return ctagMatcher;
+    }
+
+    @Benchmark
+    public byte[] serializeItem() {
+        return new CjsonItemSerializer<Item>(payloadType).serialize(item);
+    }
+
+    @Benchmark
+    public Item readItem() {
+        return new CjsonItemReader<>(Item.class, ctagMatcher()).readItem(new ByteBuffer(encoded).rewind());
+    }
+
+    @Benchmark
+    public byte[] encodeElement() {
+        return new CjsonEncoder(ctagMatcher()).encode(element);
+    }
+
+    @Benchmark
+    public CjsonElement decodeElement() {
+        return new CjsonDecoder(ctagMatcher(), new ByteBuffer(encoded).rewind()).decode();
+    }
+
+}
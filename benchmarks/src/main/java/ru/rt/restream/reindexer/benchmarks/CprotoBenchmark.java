@@ -0,0 +1,131 @@
+/*
+ * Copyright 2020 Restream
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.rt.restream.reindexer.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import ru.rt.restream.reindexer.Namespace;
+import ru.rt.restream.reindexer.NamespaceOptions;
+import ru.rt.restream.reindexer.Reindexer;
+import ru.rt.restream.reindexer.ReindexerConfiguration;
+import ru.rt.restream.reindexer.ResultIterator;
+import ru.rt.restream.reindexer.binding.Binding;
+import ru.rt.restream.reindexer.testsupport.FakeCprotoServer;
+import ru.rt.restream.reindexer.testsupport.FakeCprotoServer.Response;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the upsert and select throughput of the cproto binding against a {@link FakeCprotoServer}, so the
+ * numbers are the client side cost only: encoding, framing, the connection pool and decoding. The server latency
+ * parameter shows how the transport hides (or doesn't) a slow server, and {@link #selectLatency} reports the
+ * latency percentiles.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class CprotoBenchmark {
+
+    @Param({"1", "100"})
+    private int resultSize;
+
+    @Param("100")
+    private int batchSize;
+
+    @Param({"0", "1000"})
+    private int serverLatencyMicros;
+
+    private FakeCprotoServer server;
+
+    private Reindexer db;
+
+    private Namespace<Item> namespace;
+
+    private List<Item> batch;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        byte[] selectResult = CannedResults.selectResult("items", resultSize);
+        server = new FakeCprotoServer()
+                .on(Binding.SELECT, request -> Response.ok(selectResult, -1))
+                .latency(Duration.ofNanos(TimeUnit.MICROSECONDS.toNanos(serverLatencyMicros)));
+        db = ReindexerConfiguration.builder()
+                .url(server.getUrl("benchmark"))
+                .connectionPoolSize(4)
+                .getReindexer();
+        namespace = db.openNamespace("items", NamespaceOptions.defaultOptions(), Item.class);
+        batch = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            batch.add(new Item(i, "name" + i));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        db.close();
+        server.close();
+    }
+
+    @Benchmark
+    public void upsert() {
+        int id = ThreadLocalRandom.current().nextInt(10000);
+        namespace.upsert(new Item(id, "name" + id));
+    }
+
+    @Benchmark
+    public void upsertAll() {
+        namespace.upsertAll(batch);
+    }
+
+    @Benchmark
+    public void select(Blackhole blackhole) {
+        try (ResultIterator<Item> iterator = namespace.query().limit(resultSize).execute()) {
+            while (iterator.hasNext()) {
+                blackhole.consume(iterator.next());
+            }
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void selectLatency(Blackhole blackhole) {
+        select(blackhole);
+    }
+
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2020 Restream
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.rt.restream.reindexer.benchmarks;
+
+import ru.rt.restream.reindexer.annotations.Reindex;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An item of the benchmark namespaces: a couple of indexed fields and a few non-indexed ones, so that the encoded
+ * item has strings, numbers and an array.
+ */
+public class Item {
+
+    @Reindex(name = "id", isPrimaryKey = true)
+    private Integer id;
+
+    @Reindex(name = "name")
+    private String name;
+
+    private Double price;
+
+    private Boolean active;
+
+    private List<String> tags;
+
+    public Item() {
+    }
+
+    public Item(Integer id, String name) {
+        this.id = id;
+        this.name = name;
+        this.price = id * 1.5D;
+        this.active = id % 2 == 0;
+        this.tags = Arrays.asList("tag" + id % 10, "tag" + id % 100);
+    }
+
+    public Integer getId() {
+        return id;
+    }
+
+    public void setId(Integer id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public Double getPrice() {
+        return price;
+    }
+
+    public void setPrice(Double price) {
+        this.price = price;
+    }
+
+    public Boolean getActive() {
+        return active;
+    }
+
+    public void setActive(Boolean active) {
+        this.active = active;
+    }
+
+    public List<String> getTags() {
+        return tags;
+    }
+
+    public void setTags(List<String> tags) {
+        this.tags = tags;
+    }
+
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2020 Restream
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.rt.restream.reindexer.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.rt.restream.reindexer.Namespace;
+import ru.rt.restream.reindexer.NamespaceOptions;
+import ru.rt.restream.reindexer.Query;
+import ru.rt.restream.reindexer.Reindexer;
+import ru.rt.restream.reindexer.ReindexerConfiguration;
+import ru.rt.restream.reindexer.binding.QueryResult;
+import ru.rt.restream.reindexer.binding.QueryResultReader;
+import ru.rt.restream.reindexer.testsupport.FakeCprotoServer;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static ru.rt.restream.reindexer.Query.Condition.EQ;
+import static ru.rt.restream.reindexer.Query.Condition.GT;
+import static ru.rt.restream.reindexer.Query.Condition.SET;
+
+/**
+ * Measures the query hot paths, which don't depend on the server: building (and so encoding) a {@link Query} and
+ * reading a raw query result by {@link QueryResultReader}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryBenchmark {
+
+    @Param({"1", "100"})
+    private int resultSize;
+
+    private FakeCprotoServer server;
+
+    private Reindexer db;
+
+    private Namespace<Item> namespace;
+
+    private byte[] selectResult;
+
+    private final QueryResultReader reader = new QueryResultReader();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        selectResult = CannedResults.selectResult("items", resultSize);
+        server = new FakeCprotoServer();
+        db = ReindexerConfiguration.builder()
+                .url(server.getUrl("benchmark"))
+                .getReindexer();
+        namespace = db.openNamespace("items", NamespaceOptions.defaultOptions(), Item.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        db.close();
+        server.close();
+    }
+
+    @Benchmark
+    public Query<Item> buildQuery() {
+        return namespace.query()
+                .where("id", SET, 1, 2, 3, 4, 5)
+                .where("name", EQ, "name1")
+                .where("price", GT, 10.5D)
+                .sort("name", true)
+                .offset(10)
+                .limit(20)
+                .reqTotal();
+    }
+
+    @Benchmark
+    public QueryResult readQueryResult() {
+        return reader.read(selectResult);
+    }
+
+}
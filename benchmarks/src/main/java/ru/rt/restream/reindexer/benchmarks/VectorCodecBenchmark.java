@@ -0,0 +1,147 @@
+/*
+ * Copyright 2020 Restream
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.rt.restream.reindexer.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.rt.restream.reindexer.vector.VectorCodec;
+import ru.rt.restream.reindexer.vector.VectorPrecision;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures encoding and decoding of a float vector by {@link VectorCodec} in every {@link VectorPrecision}.
+ *
+ * <p>The setup prints the size of an encoded vector, the bytes saved against 32-bit floats and the recall impact of
+ * the precision: the share of the exact 10 nearest neighbours by L2 distance, which are still found among the 10
+ * nearest ones, when the dataset vectors are rounded to the precision.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VectorCodecBenchmark {
+
+    private static final int DATASET_SIZE = 2000;
+
+    private static final int QUERY_COUNT = 50;
+
+    private static final int K = 10;
+
+    @Param({"FLOAT32", "FLOAT16", "INT8"})
+    private VectorPrecision precision;
+
+    @Param({"768"})
+    private int dimension;
+
+    private float[] vector;
+
+    private byte[] encoded;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        vector = randomVector(random);
+        encoded = VectorCodec.encode(vector, precision);
+
+        float[][] dataset = new float[DATASET_SIZE][];
+        float[][] quantized = new float[DATASET_SIZE][];
+        for (int i = 0; i < DATASET_SIZE; i++) {
+            dataset[i] = randomVector(random);
+            quantized[i] = VectorCodec.quantize(dataset[i], precision);
+        }
+        int found = 0;
+        for (int q = 0; q < QUERY_COUNT; q++) {
+            float[] query = randomVector(random);
+            int[] exact = nearest(dataset, query);
+            int[] approximate = nearest(quantized, query);
+            for (int id : approximate) {
+                for (int exactId : exact) {
+                    if (id == exactId) {
+                        found++;
+                        break;
+                    }
+                }
+            }
+        }
+        int size = VectorCodec.encodedSize(dimension, precision);
+        int float32Size = VectorCodec.encodedSize(dimension, VectorPrecision.FLOAT32);
+        System.out.printf("%n%s: %d bytes per vector, %.1f%% saved, recall@%d %.4f%n", precision, size,
+                100.0 * (float32Size - size) / float32Size, K, (double) found / (QUERY_COUNT * K));
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return VectorCodec.encode(vector, precision);
+    }
+
+    @Benchmark
+    public float[] decode() {
+        return VectorCodec.decode(encoded, precision);
+    }
+
+    @Benchmark
+    public float[] quantize() {
+        return VectorCodec.quantize(vector, precision);
+    }
+
+    private float[] randomVector(Random random) {
+        float[] result = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            result[i] = (float) random.nextGaussian();
+        }
+        return result;
+    }
+
+    private static int[] nearest(float[][] dataset, float[] query) {
+        int[] ids = new int[K];
+        float[] distances = new float[K];
+        Arrays.fill(distances, Float.MAX_VALUE);
+        for (int id = 0; id < dataset.length; id++) {
+            float distance = 0;
+            for (int i = 0; i < query.length; i++) {
+                float diff = dataset[id][i] - query[i];
+                distance += diff * diff;
+            }
+            int position = K;
+            while (position > 0 && distances[position - 1] > distance) {
+                position--;
+            }
+            if (position < K) {
+                System.arraycopy(distances, position, distances, position + 1, K - position - 1);
+                System.arraycopy(ids, position, ids, position + 1, K - position - 1);
+                distances[position] = distance;
+                ids[position] = id;
+            }
+        }
+        return ids;
+    }
+
+}
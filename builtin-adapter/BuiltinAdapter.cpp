@@ -19,6 +19,10 @@
 #include "core/cbinding/reindexer_ctypes.h"
 #include "server/cbinding/server_c.h"
 
+#include <cstdlib>
+#include <cstring>
+#include <vector>
+
 reindexer_string rx_string(JNIEnv *env, jstring jstr) {
     return {
             .p = (void *) env->GetStringUTFChars(jstr, nullptr),
@@ -26,11 +30,41 @@ reindexer_string rx_string(JNIEnv *env, jstring jstr) {
     };
 }
 
-reindexer_buffer rx_buffer(JNIEnv *env, jbyteArray bytes) {
+// Copies a Java array for a native call. Any call may run long, e.g. a query or a modification waiting for the
+// namespace lock. Unlike a pinned array, a copy does not hold the GC back until the call is completed, and other
+// threads, e.g. the one cancelling the call, are free to use JNI meanwhile.
+std::vector<uint8_t> rx_copy(JNIEnv *env, jbyteArray bytes) {
+    jsize len = env->GetArrayLength(bytes);
+    std::vector<uint8_t> copy(len);
+    env->GetByteArrayRegion(bytes, 0, len, reinterpret_cast<jbyte *>(copy.data()));
+    return copy;
+}
+
+reindexer_buffer rx_buffer(std::vector<uint8_t> &bytes) {
     return {
-            .data = reinterpret_cast<uint8_t *>(env->GetByteArrayElements(bytes, nullptr)),
-            .len = env->GetArrayLength(bytes)
+            .data = bytes.data(),
+            .len = static_cast<int32_t>(bytes.size())
+    };
+}
+
+// Converts payload type versions, passed as a Java long array, to the int32 array expected by the engine.
+std::vector<int32_t> rx_versions(JNIEnv *env, jlongArray versions) {
+    jsize count = env->GetArrayLength(versions);
+    std::vector<jlong> values(count);
+    env->GetLongArrayRegion(versions, 0, count, values.data());
+    return std::vector<int32_t>(values.begin(), values.end());
+}
+
+// Returns the next item of a batch packed by BuiltinAdapter.packItems: a uint32 little-endian length and the item bytes.
+reindexer_buffer rx_next_item(reindexer_buffer items, int32_t &offset) {
+    uint32_t len;
+    memcpy(&len, items.data + offset, sizeof(len));
+    reindexer_buffer item = {
+            .data = items.data + offset + sizeof(len),
+            .len = static_cast<int32_t>(len)
     };
+    offset += sizeof(len) + len;
+    return item;
 }
 
 reindexer_ctx_info rx_ctx(jlong ctxId, jlong timeout) {
@@ -40,51 +74,71 @@ reindexer_ctx_info rx_ctx(jlong ctxId, jlong timeout) {
     };
 }
 
-jobject jlong_object(JNIEnv *env, jlong jl) {
-    jclass jlClass = env->FindClass("java/lang/Long");
-    jmethodID valueOf = env->GetStaticMethodID(jlClass, "valueOf", "(J)Ljava/lang/Long;");
-    return env->CallStaticObjectMethod(jlClass, valueOf, jl);
+// JNI references resolved once in JNI_OnLoad, so that building a response needs no class or method lookups.
+static jclass responseClass = nullptr;
+static jmethodID responseConstructor = nullptr;
+static jobject okResponse = nullptr;
+
+JNIEXPORT jint JNICALL JNI_OnLoad(JavaVM *vm, void *) {
+    JNIEnv *env;
+    if (vm->GetEnv(reinterpret_cast<void **>(&env), JNI_VERSION_1_8) != JNI_OK) {
+        return JNI_ERR;
+    }
+    jclass rsClass = env->FindClass("ru/rt/restream/reindexer/ReindexerResponse");
+    if (rsClass == nullptr) {
+        return JNI_ERR;
+    }
+    responseClass = static_cast<jclass>(env->NewGlobalRef(rsClass));
+    env->DeleteLocalRef(rsClass);
+    responseConstructor = env->GetMethodID(responseClass, "<init>", "(ILjava/lang/String;JLjava/nio/ByteBuffer;)V");
+    jfieldID okField = env->GetStaticFieldID(responseClass, "OK", "Lru/rt/restream/reindexer/ReindexerResponse;");
+    if (responseConstructor == nullptr || okField == nullptr) {
+        return JNI_ERR;
+    }
+    jobject ok = env->GetStaticObjectField(responseClass, okField);
+    okResponse = env->NewGlobalRef(ok);
+    env->DeleteLocalRef(ok);
+    return JNI_VERSION_1_8;
+}
+
+JNIEXPORT void JNICALL JNI_OnUnload(JavaVM *vm, void *) {
+    JNIEnv *env;
+    if (vm->GetEnv(reinterpret_cast<void **>(&env), JNI_VERSION_1_8) != JNI_OK) {
+        return;
+    }
+    env->DeleteGlobalRef(okResponse);
+    env->DeleteGlobalRef(responseClass);
+}
+
+jobject j_res(JNIEnv *env, jint code, jstring errorMessage, jlong handle, jobject data) {
+    return env->NewObject(responseClass, responseConstructor, code, errorMessage, handle, data);
 }
 
 jobject j_res(JNIEnv *env, reindexer_error error) {
-    jclass rsClass = env->FindClass("ru/rt/restream/reindexer/ReindexerResponse");
-    jmethodID rsConstructor = env->GetMethodID(rsClass, "<init>", "(ILjava/lang/String;[Ljava/lang/Object;)V");
-    jobjectArray args = env->NewObjectArray(0, env->FindClass("java/lang/Object"), nullptr);
-    return env->NewObject(rsClass, rsConstructor, error.code, env->NewStringUTF(error.what), args);
+    if (error.code == 0) {
+        return env->NewLocalRef(okResponse);
+    }
+    jstring errorMessage = env->NewStringUTF(error.what);
+    free(const_cast<char *>(error.what));
+    return j_res(env, error.code, errorMessage, 0, nullptr);
 }
 
 jobject j_res(JNIEnv *env, reindexer_ret ret) {
-    jclass rsClass = env->FindClass("ru/rt/restream/reindexer/ReindexerResponse");
-    jmethodID rsConstructor = env->GetMethodID(rsClass, "<init>", "(ILjava/lang/String;[Ljava/lang/Object;)V");
-    jstring errorMessage = nullptr;
-    jobject resultsPtr = nullptr;
-    jbyteArray body = nullptr;
     if (ret.err_code != 0) {
-        errorMessage = env->NewStringUTF(reinterpret_cast<const char *>(ret.out.data));
-    } else {
-        body = env->NewByteArray(ret.out.len);
-        env->SetByteArrayRegion(body, 0, ret.out.len, reinterpret_cast<const jbyte *>(ret.out.data));
-        resultsPtr = jlong_object(env, ret.out.results_ptr);
+        jstring errorMessage = env->NewStringUTF(reinterpret_cast<const char *>(ret.out.data));
+        free(reinterpret_cast<void *>(ret.out.data));
+        return j_res(env, ret.err_code, errorMessage, 0, nullptr);
     }
-    jobjectArray args = env->NewObjectArray(2, env->FindClass("java/lang/Object"), nullptr);
-    env->SetObjectArrayElement(args, 0, resultsPtr);
-    env->SetObjectArrayElement(args, 1, body);
-    return env->NewObject(rsClass, rsConstructor, ret.err_code, errorMessage, args);
+    // The body is owned by the results and stays valid until they are freed with reindexer_free_buffer
+    jobject body = env->NewDirectByteBuffer(reinterpret_cast<void *>(ret.out.data), ret.out.len);
+    return j_res(env, ret.err_code, nullptr, static_cast<jlong>(ret.out.results_ptr), body);
 }
 
 jobject j_res(JNIEnv *env, reindexer_tx_ret ret) {
-    jclass rsClass = env->FindClass("ru/rt/restream/reindexer/ReindexerResponse");
-    jmethodID rsConstructor = env->GetMethodID(rsClass, "<init>", "(ILjava/lang/String;[Ljava/lang/Object;)V");
-    jstring errorMessage = nullptr;
-    jobject txId = nullptr;
     if (ret.err.code != 0) {
-        errorMessage = env->NewStringUTF(ret.err.what);
-    } else {
-        txId = jlong_object(env, ret.tx_id);
+        return j_res(env, ret.err);
     }
-    jobjectArray args = env->NewObjectArray(1, env->FindClass("java/lang/Object"), nullptr);
-    env->SetObjectArrayElement(args, 0, txId);
-    return env->NewObject(rsClass, rsConstructor, ret.err.code, errorMessage, args);
+    return j_res(env, ret.err.code, nullptr, static_cast<jlong>(ret.tx_id), nullptr);
 }
 
 JNIEXPORT jlong JNICALL Java_ru_rt_restream_reindexer_binding_builtin_BuiltinAdapter_init(JNIEnv *, jobject) {
@@ -194,12 +248,11 @@ JNIEXPORT jobject JNICALL Java_ru_rt_restream_reindexer_binding_builtin_BuiltinA
                                                                                                   jlong timeout,
                                                                                                   jbyteArray args,
                                                                                                   jbyteArray data) {
-    reindexer_buffer bufferArgs = rx_buffer(env, args);
-    reindexer_buffer bufferData = rx_buffer(env, data);
-    jobject res = j_res(env, reindexer_modify_item_packed(rx, bufferArgs, bufferData, rx_ctx(ctxId, timeout)));
-    env->ReleaseByteArrayElements(args, reinterpret_cast<jbyte *>(bufferArgs.data), 0);
-    env->ReleaseByteArrayElements(data, reinterpret_cast<jbyte *>(bufferData.data), 0);
-    return res;
+    std::vector<uint8_t> argsData = rx_copy(env, args);
+    std::vector<uint8_t> itemData = rx_copy(env, data);
+    reindexer_ret ret = reindexer_modify_item_packed(rx, rx_buffer(argsData), rx_buffer(itemData),
+                                                     rx_ctx(ctxId, timeout));
+    return j_res(env, ret);
 }
 
 JNIEXPORT jobject JNICALL Java_ru_rt_restream_reindexer_binding_builtin_BuiltinAdapter_modifyItemTx(JNIEnv *env,
@@ -208,12 +261,56 @@ JNIEXPORT jobject JNICALL Java_ru_rt_restream_reindexer_binding_builtin_BuiltinA
                                                                                                     jlong txId,
                                                                                                     jbyteArray args,
                                                                                                     jbyteArray data) {
-    reindexer_buffer bufferArgs = rx_buffer(env, args);
-    reindexer_buffer bufferData = rx_buffer(env, data);
-    jobject res = j_res(env, reindexer_modify_item_packed_tx(rx, txId, bufferArgs, bufferData));
-    env->ReleaseByteArrayElements(args, reinterpret_cast<jbyte *>(bufferArgs.data), 0);
-    env->ReleaseByteArrayElements(data, reinterpret_cast<jbyte *>(bufferData.data), 0);
-    return res;
+    std::vector<uint8_t> argsData = rx_copy(env, args);
+    std::vector<uint8_t> itemData = rx_copy(env, data);
+    reindexer_error error = reindexer_modify_item_packed_tx(rx, txId, rx_buffer(argsData), rx_buffer(itemData));
+    return j_res(env, error);
+}
+
+JNIEXPORT jobject JNICALL Java_ru_rt_restream_reindexer_binding_builtin_BuiltinAdapter_modifyItems(JNIEnv *env, jobject,
+                                                                                                   jlong rx, jlong ctxId,
+                                                                                                   jlong timeout,
+                                                                                                   jbyteArray args,
+                                                                                                   jbyteArray items,
+                                                                                                   jint count) {
+    // the batch is copied, since the engine is called once per item, and a pinned batch would hold the GC back
+    // for all the calls
+    std::vector<uint8_t> argsData = rx_copy(env, args);
+    std::vector<uint8_t> itemsData = rx_copy(env, items);
+    reindexer_buffer bufferItems = rx_buffer(itemsData);
+    reindexer_ret ret = {};
+    int32_t offset = 0;
+    for (jint i = 0; i < count; i++) {
+        ret = reindexer_modify_item_packed(rx, rx_buffer(argsData), rx_next_item(bufferItems, offset),
+                                           rx_ctx(ctxId, timeout));
+        if (ret.err_code != 0) {
+            break;
+        }
+        reindexer_free_buffer(ret.out);
+    }
+    if (ret.err_code != 0) {
+        return j_res(env, ret);
+    }
+    return env->NewLocalRef(okResponse);
+}
+
+JNIEXPORT jobject JNICALL Java_ru_rt_restream_reindexer_binding_builtin_BuiltinAdapter_modifyItemsTx(JNIEnv *env,
+                                                                                                     jobject,
+                                                                                                     jlong rx,
+                                                                                                     jlong txId,
+                                                                                                     jbyteArray args,
+                                                                                                     jbyteArray items,
+                                                                                                     jint count) {
+    // the batch is copied, see modifyItems
+    std::vector<uint8_t> argsData = rx_copy(env, args);
+    std::vector<uint8_t> itemsData = rx_copy(env, items);
+    reindexer_buffer bufferItems = rx_buffer(itemsData);
+    reindexer_error error = {};
+    int32_t offset = 0;
+    for (jint i = 0; i < count && error.code == 0; i++) {
+        error = reindexer_modify_item_packed_tx(rx, txId, rx_buffer(argsData), rx_next_item(bufferItems, offset));
+    }
+    return j_res(env, error);
 }
 
 JNIEXPORT jobject JNICALL Java_ru_rt_restream_reindexer_binding_builtin_BuiltinAdapter_beginTx(JNIEnv *env, jobject,
@@ -246,14 +343,16 @@ JNIEXPORT jobject JNICALL Java_ru_rt_restream_reindexer_binding_builtin_BuiltinA
                                                                                                    jbyteArray data,
                                                                                                    jlongArray versions,
                                                                                                    jboolean asJson) {
-    auto ptVersions = reinterpret_cast<int32_t *>(env->GetLongArrayElements(versions, nullptr));
-    int ptVersionsCount = env->GetArrayLength(versions);
-    reindexer_buffer bufferData = rx_buffer(env, data);
-    jobject res = j_res(env, reindexer_select_query(rx, bufferData, asJson, ptVersions, ptVersionsCount,
-                                                    rx_ctx(ctxId, timeout)));
-    env->ReleaseLongArrayElements(versions, reinterpret_cast<jlong *>(ptVersions), 0);
-    env->ReleaseByteArrayElements(data, reinterpret_cast<jbyte *>(bufferData.data), 0);
-    return res;
+    std::vector<int32_t> ptVersions = rx_versions(env, versions);
+    std::vector<uint8_t> queryData = rx_copy(env, data);
+    reindexer_ret ret = reindexer_select_query(rx, rx_buffer(queryData), asJson, ptVersions.data(),
+                                               static_cast<int>(ptVersions.size()), rx_ctx(ctxId, timeout));
+    return j_res(env, ret);
+}
+
+JNIEXPORT jobject JNICALL Java_ru_rt_restream_reindexer_binding_builtin_BuiltinAdapter_cancelContext(JNIEnv *env, jobject,
+                                                                                                     jlong ctxId) {
+    return j_res(env, reindexer_cancel_context(rx_ctx(ctxId, 0), cancel_expilicitly));
 }
 
 JNIEXPORT jobject JNICALL Java_ru_rt_restream_reindexer_binding_builtin_BuiltinAdapter_deleteQuery(JNIEnv *env, jobject,
@@ -261,10 +360,8 @@ JNIEXPORT jobject JNICALL Java_ru_rt_restream_reindexer_binding_builtin_BuiltinA
                                                                                                    jlong ctxId,
                                                                                                    jlong timeout,
                                                                                                    jbyteArray data) {
-    reindexer_buffer bufferData = rx_buffer(env, data);
-    jobject res = j_res(env, reindexer_delete_query(rx, bufferData, rx_ctx(ctxId, timeout)));
-    env->ReleaseByteArrayElements(data, reinterpret_cast<jbyte *>(bufferData.data), 0);
-    return res;
+    std::vector<uint8_t> queryData = rx_copy(env, data);
+    return j_res(env, reindexer_delete_query(rx, rx_buffer(queryData), rx_ctx(ctxId, timeout)));
 }
 
 JNIEXPORT jobject JNICALL Java_ru_rt_restream_reindexer_binding_builtin_BuiltinAdapter_deleteQueryTx(JNIEnv *env,
@@ -272,10 +369,9 @@ JNIEXPORT jobject JNICALL Java_ru_rt_restream_reindexer_binding_builtin_BuiltinA
                                                                                                      jlong rx,
                                                                                                      jlong txId,
                                                                                                      jbyteArray data) {
-    reindexer_buffer bufferData = rx_buffer(env, data);
-    jobject res = j_res(env, reindexer_delete_query_tx(rx, txId, bufferData));
-    env->ReleaseByteArrayElements(data, reinterpret_cast<jbyte *>(bufferData.data), 0);
-    return res;
+    std::vector<uint8_t> queryData = rx_copy(env, data);
+    reindexer_error ret = reindexer_delete_query_tx(rx, txId, rx_buffer(queryData));
+    return j_res(env, ret);
 }
 
 JNIEXPORT jobject JNICALL Java_ru_rt_restream_reindexer_binding_builtin_BuiltinAdapter_updateQuery(JNIEnv *env, jobject,
@@ -283,10 +379,8 @@ JNIEXPORT jobject JNICALL Java_ru_rt_restream_reindexer_binding_builtin_BuiltinA
                                                                                                    jlong ctxId,
                                                                                                    jlong timeout,
                                                                                                    jbyteArray data) {
-    reindexer_buffer bufferData = rx_buffer(env, data);
-    jobject res = j_res(env, reindexer_update_query(rx, bufferData, rx_ctx(ctxId, timeout)));
-    env->ReleaseByteArrayElements(data, reinterpret_cast<jbyte *>(bufferData.data), 0);
-    return res;
+    std::vector<uint8_t> queryData = rx_copy(env, data);
+    return j_res(env, reindexer_update_query(rx, rx_buffer(queryData), rx_ctx(ctxId, timeout)));
 }
 
 JNIEXPORT jobject JNICALL Java_ru_rt_restream_reindexer_binding_builtin_BuiltinAdapter_updateQueryTx(JNIEnv *env,
@@ -294,21 +388,24 @@ JNIEXPORT jobject JNICALL Java_ru_rt_restream_reindexer_binding_builtin_BuiltinA
                                                                                                      jlong rx,
                                                                                                      jlong txId,
                                                                                                      jbyteArray data) {
-    reindexer_buffer bufferData = rx_buffer(env, data);
-    jobject res = j_res(env, reindexer_update_query_tx(rx, txId, bufferData));
-    env->ReleaseByteArrayElements(data, reinterpret_cast<jbyte *>(bufferData.data), 0);
-    return res;
+    std::vector<uint8_t> queryData = rx_copy(env, data);
+    reindexer_error ret = reindexer_update_query_tx(rx, txId, rx_buffer(queryData));
+    return j_res(env, ret);
 }
 
-JNIEXPORT jbyteArray JNICALL Java_ru_rt_restream_reindexer_util_NativeUtils_getBytes(JNIEnv *env, jclass,
-                                                                                     jlong resultsPtr,
-                                                                                     jlong cPtr,
-                                                                                     jint nsId) {
+JNIEXPORT jobject JNICALL Java_ru_rt_restream_reindexer_util_NativeUtils_getCjson(JNIEnv *env, jclass,
+                                                                                  jlong resultsPtr,
+                                                                                  jlong cPtr,
+                                                                                  jint nsId) {
     reindexer_buffer buffer = reindexer_cptr2cjson(resultsPtr, cPtr, nsId);
-    jbyteArray result = env->NewByteArray(buffer.len);
-    env->SetByteArrayRegion(result, 0, buffer.len, reinterpret_cast<const jbyte *>(buffer.data));
-    reindexer_free_cjson(buffer);
-    return result;
+    return env->NewDirectByteBuffer(buffer.data, buffer.len);
+}
+
+JNIEXPORT void JNICALL Java_ru_rt_restream_reindexer_util_NativeUtils_freeCjson(JNIEnv *env, jclass, jobject cjson) {
+    reindexer_free_cjson({
+            .data = reinterpret_cast<uint8_t *>(env->GetDirectBufferAddress(cjson)),
+            .len = static_cast<int>(env->GetDirectBufferCapacity(cjson))
+    });
 }
 
 JNIEXPORT void JNICALL Java_ru_rt_restream_reindexer_util_NativeUtils_freeNativeBuffer(JNIEnv *, jclass,
@@ -397,10 +494,9 @@ JNIEXPORT jobject JNICALL Java_ru_rt_restream_reindexer_binding_builtin_BuiltinA
                                                                                                jboolean asJson,
                                                                                                jlongArray versions) {
     reindexer_string cQuery = rx_string(env, query);
-    auto ptVersions = reinterpret_cast<int32_t *>(env->GetLongArrayElements(versions, nullptr));
-    int ptVersionsCount = env->GetArrayLength(versions);
-    jobject res = j_res(env, reindexer_select(rx, cQuery, asJson, ptVersions, ptVersionsCount, rx_ctx(ctxId, timeout)));
+    std::vector<int32_t> ptVersions = rx_versions(env, versions);
+    jobject res = j_res(env, reindexer_select(rx, cQuery, asJson, ptVersions.data(),
+                                              static_cast<int>(ptVersions.size()), rx_ctx(ctxId, timeout)));
     env->ReleaseStringUTFChars(query, reinterpret_cast<const char *>(cQuery.p));
-    env->ReleaseLongArrayElements(versions, reinterpret_cast<jlong *>(ptVersions), 0);
     return res;
 }
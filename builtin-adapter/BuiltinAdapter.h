@@ -65,6 +65,18 @@ JNIEXPORT jobject JNICALL Java_ru_rt_restream_reindexer_binding_builtin_BuiltinA
                                                                                                     jbyteArray,
                                                                                                     jbyteArray);
 
+JNIEXPORT jobject JNICALL Java_ru_rt_restream_reindexer_binding_builtin_BuiltinAdapter_modifyItems(JNIEnv *, jobject,
+                                                                                                   jlong, jlong, jlong,
+                                                                                                   jbyteArray,
+                                                                                                   jbyteArray,
+                                                                                                   jint);
+
+JNIEXPORT jobject JNICALL Java_ru_rt_restream_reindexer_binding_builtin_BuiltinAdapter_modifyItemsTx(JNIEnv *, jobject,
+                                                                                                     jlong, jlong,
+                                                                                                     jbyteArray,
+                                                                                                     jbyteArray,
+                                                                                                     jint);
+
 JNIEXPORT jobject JNICALL Java_ru_rt_restream_reindexer_binding_builtin_BuiltinAdapter_beginTx(JNIEnv *, jobject,
                                                                                                jlong, jstring);
 
@@ -81,6 +93,9 @@ JNIEXPORT jobject JNICALL Java_ru_rt_restream_reindexer_binding_builtin_BuiltinA
                                                                                                    jlongArray,
                                                                                                    jboolean asJson);
 
+JNIEXPORT jobject JNICALL Java_ru_rt_restream_reindexer_binding_builtin_BuiltinAdapter_cancelContext(JNIEnv *, jobject,
+                                                                                                     jlong);
+
 JNIEXPORT jobject JNICALL Java_ru_rt_restream_reindexer_binding_builtin_BuiltinAdapter_deleteQuery(JNIEnv *, jobject,
                                                                                                    jlong, jlong, jlong,
                                                                                                    jbyteArray);
@@ -97,8 +112,9 @@ JNIEXPORT jobject JNICALL Java_ru_rt_restream_reindexer_binding_builtin_BuiltinA
                                                                                                      jlong, jlong,
                                                                                                      jbyteArray);
 
-JNIEXPORT jbyteArray JNICALL Java_ru_rt_restream_reindexer_util_NativeUtils_getBytes(JNIEnv *, jclass, jlong, jlong,
-                                                                                     jint);
+JNIEXPORT jobject JNICALL Java_ru_rt_restream_reindexer_util_NativeUtils_getCjson(JNIEnv *, jclass, jlong, jlong, jint);
+
+JNIEXPORT void JNICALL Java_ru_rt_restream_reindexer_util_NativeUtils_freeCjson(JNIEnv *, jclass, jobject);
 
 JNIEXPORT void JNICALL Java_ru_rt_restream_reindexer_util_NativeUtils_freeNativeBuffer(JNIEnv *, jclass, jlong);
 
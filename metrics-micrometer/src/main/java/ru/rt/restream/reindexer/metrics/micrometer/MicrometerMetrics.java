@@ -0,0 +1,273 @@
+/*
+ * Copyright 2020 Restream
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.rt.restream.reindexer.metrics.micrometer;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import ru.rt.restream.reindexer.binding.Binding;
+import ru.rt.restream.reindexer.metrics.CommandNames;
+import ru.rt.restream.reindexer.metrics.ReindexerMetrics;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.DoubleSupplier;
+
+/**
+ * A {@link ReindexerMetrics}, which records the client metrics to a Micrometer {@link MeterRegistry}.
+ * <p>
+ * The command latencies are recorded by the {@value #COMMANDS} timers, tagged by the command, the namespace and
+ * the outcome, with a percentile histogram, so the registry can report the tail latencies. The meters are resolved
+ * once per command, namespace and outcome, so the recording does not allocate.
+ * <p>
+ * A gauge is registered once per name and reports the sum of the values of all the live clients, which share
+ * this instance, a value is removed from the gauge when its client is closed.
+ */
+public class MicrometerMetrics implements ReindexerMetrics {
+
+    /**
+     * The command latency timer.
+     */
+    public static final String COMMANDS = "reindexer.client.commands";
+
+    /**
+     * The item decoding timer.
+     */
+    public static final String DECODE = "reindexer.client.decode";
+
+    /**
+     * The number of items, decoded by a query result iterator.
+     */
+    public static final String DECODED_ITEMS = "reindexer.client.decode.items";
+
+    /**
+     * The sent bytes counter.
+     */
+    public static final String BYTES_SENT = "reindexer.client.bytes.sent";
+
+    /**
+     * The received bytes counter.
+     */
+    public static final String BYTES_RECEIVED = "reindexer.client.bytes.received";
+
+    /**
+     * The counter of the requests, rejected by a full request queue.
+     */
+    public static final String QUEUE_FULL = "reindexer.client.requests.rejected";
+
+    /**
+     * The reconnect counter.
+     */
+    public static final String RECONNECTS = "reindexer.client.reconnects";
+
+    private static final String NO_NAMESPACE = "";
+
+    private final MeterRegistry registry;
+
+    private final Tags tags;
+
+    /**
+     * The command timers by the command, then by the namespace, as [succeeded, failed].
+     */
+    private final ConcurrentMap<String, Timer[]>[] commandTimers;
+
+    private final ConcurrentMap<String, Timer> decodeTimers = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, DistributionSummary> decodedItems = new ConcurrentHashMap<>();
+
+    private final Counter bytesSent;
+
+    private final Counter bytesReceived;
+
+    private final Counter queueFull;
+
+    private final Counter reconnects;
+
+    /**
+     * The values of the registered gauges by the gauge name.
+     */
+    private final ConcurrentMap<String, GaugeValues> gauges = new ConcurrentHashMap<>();
+
+    /**
+     * Creates an instance.
+     *
+     * @param registry the registry to record the metrics to
+     */
+    public MicrometerMetrics(MeterRegistry registry) {
+        this(registry, Collections.emptyList());
+    }
+
+    /**
+     * Creates an instance, which adds the tags to every meter, e.g. to tell apart several {@link
+     * ru.rt.restream.reindexer.Reindexer} instances.
+     *
+     * @param registry the registry to record the metrics to
+     * @param tags     the common tags
+     */
+    @SuppressWarnings("unchecked")
+    public MicrometerMetrics(MeterRegistry registry, Iterable<Tag> tags) {
+        this.registry = registry;
+        this.tags = Tags.of(tags);
+        commandTimers = new ConcurrentMap[Binding.CODE_MAX];
+        for (int i = 0; i < commandTimers.length; i++) {
+            commandTimers[i] = new ConcurrentHashMap<>();
+        }
+        bytesSent = Counter.builder(BYTES_SENT)
+                .baseUnit("bytes")
+                .tags(this.tags)
+                .register(registry);
+        bytesReceived = Counter.builder(BYTES_RECEIVED)
+                .baseUnit("bytes")
+                .tags(this.tags)
+                .register(registry);
+        queueFull = Counter.builder(QUEUE_FULL)
+                .tags(this.tags)
+                .register(registry);
+        reconnects = Counter.builder(RECONNECTS)
+                .tags(this.tags)
+                .register(registry);
+    }
+
+    @Override
+    public void recordCommand(int command, String namespace, long durationNanos, boolean failed) {
+        if (command < 0 || command >= commandTimers.length) {
+            return;
+        }
+        String namespaceKey = namespace != null ? namespace : NO_NAMESPACE;
+        Timer[] timers = commandTimers[command].get(namespaceKey);
+        if (timers == null) {
+            timers = commandTimers[command].computeIfAbsent(namespaceKey, k -> new Timer[]{
+                    commandTimer(command, k, "success"),
+                    commandTimer(command, k, "error")
+            });
+        }
+        timers[failed ? 1 : 0].record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private Timer commandTimer(int command, String namespace, String outcome) {
+        return Timer.builder(COMMANDS)
+                .tags(tags)
+                .tag("command", CommandNames.get(command))
+                .tag("namespace", namespace)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    @Override
+    public void recordBytesSent(int bytes) {
+        bytesSent.increment(bytes);
+    }
+
+    @Override
+    public void recordBytesReceived(int bytes) {
+        bytesReceived.increment(bytes);
+    }
+
+    @Override
+    public void recordQueueFull() {
+        queueFull.increment();
+    }
+
+    @Override
+    public void recordReconnect() {
+        reconnects.increment();
+    }
+
+    @Override
+    public void recordDecode(String namespace, int items, long durationNanos) {
+        Timer timer = decodeTimers.get(namespace);
+        if (timer == null) {
+            timer = decodeTimers.computeIfAbsent(namespace, k -> Timer.builder(DECODE)
+                    .tags(tags)
+                    .tag("namespace", k)
+                    .register(registry));
+        }
+        timer.record(durationNanos, TimeUnit.NANOSECONDS);
+        DistributionSummary summary = decodedItems.get(namespace);
+        if (summary == null) {
+            summary = decodedItems.computeIfAbsent(namespace, k -> DistributionSummary.builder(DECODED_ITEMS)
+                    .tags(tags)
+                    .tag("namespace", k)
+                    .register(registry));
+        }
+        summary.record(items);
+    }
+
+    @Override
+    public GaugeRegistration registerGauge(String name, DoubleSupplier value) {
+        GaugeValues values = gauges.computeIfAbsent(name, k -> {
+            GaugeValues newValues = new GaugeValues();
+            Gauge.builder(k, newValues, GaugeValues::sum)
+                    .tags(tags)
+                    .strongReference(true)
+                    .register(registry);
+            return newValues;
+        });
+        values.add(value);
+        AtomicBoolean closed = new AtomicBoolean();
+        return () -> {
+            if (closed.compareAndSet(false, true)) {
+                values.remove(value);
+            }
+        };
+    }
+
+    /**
+     * The live values of a gauge, the same value instance is counted once.
+     */
+    private static class GaugeValues {
+
+        /**
+         * The registration count by the value instance.
+         */
+        private final Map<DoubleSupplier, Integer> values = new IdentityHashMap<>();
+
+        private synchronized void add(DoubleSupplier value) {
+            values.merge(value, 1, Integer::sum);
+        }
+
+        private synchronized void remove(DoubleSupplier value) {
+            values.computeIfPresent(value, (k, count) -> count == 1 ? null : count - 1);
+        }
+
+        /**
+         * Sums the values outside the lock, since a value may take the lock of its client.
+         */
+        private double sum() {
+            DoubleSupplier[] snapshot;
+            synchronized (this) {
+                snapshot = values.keySet().toArray(new DoubleSupplier[0]);
+            }
+            double sum = 0.0D;
+            for (DoubleSupplier value : snapshot) {
+                sum += value.getAsDouble();
+            }
+            return sum;
+        }
+
+    }
+
+}
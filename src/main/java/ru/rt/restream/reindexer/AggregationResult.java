@@ -15,10 +15,18 @@
  */
 package ru.rt.restream.reindexer;
 
+import ru.rt.restream.reindexer.util.Utf8JsonReader;
+
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * Contains results of aggregations.
+ *
+ * <p>A result, read by {@link #fromJson(byte[])}, decodes its facets and distinct values only when they are requested,
+ * straight from the JSON of the server response. The facets can also be streamed by {@link #forEachFacet(Consumer)}
+ * without building the list of them.
  */
 public class AggregationResult {
 
@@ -28,9 +36,61 @@ public class AggregationResult {
 
     private double value;
 
-    private List<Facet> facets;
+    private volatile List<Facet> facets;
+
+    volatile List<String> distincts;
+
+    private volatile List<Object> distinctValues;
+
+    private byte[] json;
+
+    private int facetsPosition = -1;
 
-    List<String> distincts;
+    private int distinctsPosition = -1;
+
+    /**
+     * Reads an aggregation result from the JSON of the server response. The fields, the type and the value are read
+     * at once, the facets and the distinct values are decoded on the first request.
+     *
+     * @param json the UTF-8 encoded JSON of the aggregation result
+     * @return the aggregation result
+     * @throws IllegalStateException if the JSON is malformed
+     */
+    public static AggregationResult fromJson(byte[] json) {
+        AggregationResult result = new AggregationResult();
+        result.json = json;
+        Utf8JsonReader reader = new Utf8JsonReader(json);
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.nextNull()) {
+                continue;
+            }
+            switch (name) {
+                case "value":
+                    result.value = reader.nextDouble();
+                    break;
+                case "type":
+                    result.type = reader.nextString();
+                    break;
+                case "fields":
+                    result.fields = readStrings(reader);
+                    break;
+                case "facets":
+                    result.facetsPosition = reader.getPosition();
+                    reader.skipValue();
+                    break;
+                case "distincts":
+                    result.distinctsPosition = reader.getPosition();
+                    reader.skipValue();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return result;
+    }
 
     /**
      * Contains aggregation facet group.
@@ -39,6 +99,28 @@ public class AggregationResult {
         private List<String> values;
         private int count;
 
+        /**
+         * Get the facet value at the index as a long, for a facet of an integer field.
+         *
+         * @param index the index of the facet field
+         * @return the facet value
+         * @throws NumberFormatException if the value is not an integer
+         */
+        public long getLongValue(int index) {
+            return Long.parseLong(values.get(index));
+        }
+
+        /**
+         * Get the facet value at the index as a double, for a facet of a numeric field.
+         *
+         * @param index the index of the facet field
+         * @return the facet value
+         * @throws NumberFormatException if the value is not a number
+         */
+        public double getDoubleValue(int index) {
+            return Double.parseDouble(values.get(index));
+        }
+
         /**
          * Get the current facet values.
          *
@@ -136,7 +218,29 @@ public class AggregationResult {
      * @return the current facet aggregation result
      */
     public List<Facet> getFacets() {
-        return facets;
+        List<Facet> result = facets;
+        if (result == null && facetsPosition >= 0) {
+            List<Facet> decoded = new ArrayList<>();
+            readFacets(decoded::add);
+            result = decoded;
+            facets = result;
+        }
+        return result;
+    }
+
+    /**
+     * Passes the facets of the result to the consumer in their order. The facets, which are not decoded yet, are
+     * decoded one by one, so the list of them is not built.
+     *
+     * @param consumer the consumer of the facets
+     */
+    public void forEachFacet(Consumer<Facet> consumer) {
+        List<Facet> result = facets;
+        if (result != null) {
+            result.forEach(consumer);
+        } else if (facetsPosition >= 0) {
+            readFacets(consumer);
+        }
     }
 
     /**
@@ -146,6 +250,7 @@ public class AggregationResult {
      */
     public void setFacets(List<Facet> facets) {
         this.facets = facets;
+        this.facetsPosition = -1;
     }
 
     /**
@@ -154,7 +259,38 @@ public class AggregationResult {
      * @return the current distinct aggregation result values
      */
     public List<String> getDistincts() {
-        return distincts;
+        List<String> result = distincts;
+        if (result == null && distinctsPosition >= 0) {
+            result = readStrings(new Utf8JsonReader(json, distinctsPosition));
+            distincts = result;
+        }
+        return result;
+    }
+
+    /**
+     * Get distinct aggregation results with their JSON types: a {@link String}, a {@link Long} for an integer,
+     * a {@link Double} for another number, or a {@link Boolean}.
+     *
+     * @return the current distinct aggregation result values
+     */
+    public List<Object> getDistinctValues() {
+        List<Object> result = distinctValues;
+        if (result == null) {
+            if (distinctsPosition >= 0) {
+                Utf8JsonReader reader = new Utf8JsonReader(json, distinctsPosition);
+                List<Object> values = new ArrayList<>();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    values.add(reader.nextValue());
+                }
+                reader.endArray();
+                result = values;
+            } else if (distincts != null) {
+                result = new ArrayList<>(distincts);
+            }
+            distinctValues = result;
+        }
+        return result;
     }
 
     /**
@@ -164,5 +300,42 @@ public class AggregationResult {
      */
     public void setDistincts(List<String> distincts) {
         this.distincts = distincts;
+        this.distinctValues = null;
+        this.distinctsPosition = -1;
+    }
+
+    private void readFacets(Consumer<Facet> consumer) {
+        Utf8JsonReader reader = new Utf8JsonReader(json, facetsPosition);
+        reader.beginArray();
+        while (reader.hasNext()) {
+            Facet facet = new Facet();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if ("values".equals(name)) {
+                    facet.values = readStrings(reader);
+                } else if ("count".equals(name)) {
+                    facet.count = (int) reader.nextLong();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            consumer.accept(facet);
+        }
+        reader.endArray();
+    }
+
+    private static List<String> readStrings(Utf8JsonReader reader) {
+        if (reader.nextNull()) {
+            return null;
+        }
+        List<String> strings = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            strings.add(reader.nextString());
+        }
+        reader.endArray();
+        return strings;
     }
 }
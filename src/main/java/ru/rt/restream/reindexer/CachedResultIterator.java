@@ -0,0 +1,81 @@
+/*
+ * Copyright 2020 Restream
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.rt.restream.reindexer;
+
+import ru.rt.restream.reindexer.binding.Consts;
+
+import java.util.List;
+
+/**
+ * An iterator over a query result stored in the {@link QueryCache}.
+ */
+class CachedResultIterator<T> implements ResultIterator<T> {
+
+    private final QueryCache.Entry entry;
+
+    private int position;
+
+    private boolean closed;
+
+    CachedResultIterator(QueryCache.Entry entry) {
+        this.entry = entry;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return position < entry.items.size();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T next() {
+        if (closed) {
+            throw new IllegalStateException("Iterator is closed");
+        }
+
+        if (!hasNext()) {
+            throw new IllegalStateException("No data to read");
+        }
+
+        return (T) entry.items.get(position++);
+    }
+
+    @Override
+    public long getTotalCount() {
+        return entry.totalCount;
+    }
+
+    @Override
+    public long size() {
+        return entry.items.size();
+    }
+
+    @Override
+    public List<AggregationResult> aggResults() {
+        return entry.aggResults;
+    }
+
+    @Override
+    public float getCurrentRank() {
+        return position == 0 ? Consts.EMPTY_RANK : entry.ranks[position - 1];
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2020 Restream
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.rt.restream.reindexer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A token to cancel requests, which are in progress. A token can be shared between several requests and is cancelled
+ * only once.
+ * <pre>
+ * CancellationToken token = new CancellationToken();
+ * executor.submit(() -> namespace.query().cancellation(token).toList());
+ * ...
+ * token.cancel();
+ * </pre>
+ */
+public final class CancellationToken {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CancellationToken.class);
+
+    private final List<Runnable> listeners = new ArrayList<>();
+
+    private boolean cancelled;
+
+    /**
+     * Cancels the requests, that use the token. Has no effect if the token is already cancelled.
+     */
+    public void cancel() {
+        List<Runnable> cancelListeners;
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            cancelListeners = new ArrayList<>(listeners);
+            listeners.clear();
+        }
+        for (Runnable listener : cancelListeners) {
+            runListener(listener);
+        }
+    }
+
+    /**
+     * Returns true if the token is cancelled.
+     *
+     * @return true if the token is cancelled
+     */
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Registers an action to run on cancellation. If the token is already cancelled, the action runs immediately.
+     *
+     * @param listener the action to run
+     * @return the {@link Registration} to remove the action
+     */
+    public Registration register(Runnable listener) {
+        synchronized (this) {
+            if (!cancelled) {
+                listeners.add(listener);
+                return () -> unregister(listener);
+            }
+        }
+        runListener(listener);
+        return Registration.EMPTY;
+    }
+
+    private synchronized void unregister(Runnable listener) {
+        listeners.remove(listener);
+    }
+
+    private void runListener(Runnable listener) {
+        try {
+            listener.run();
+        } catch (RuntimeException e) {
+            LOGGER.warn("rx: cancellation listener error", e);
+        }
+    }
+
+    /**
+     * A registered cancellation action, which is removed on close.
+     */
+    @FunctionalInterface
+    public interface Registration extends AutoCloseable {
+
+        /**
+         * The registration, which has nothing to remove.
+         */
+        Registration EMPTY = () -> {
+        };
+
+        /**
+         * Removes the registered action.
+         */
+        @Override
+        void close();
+
+    }
+
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2020 Restream
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.rt.restream.reindexer;
+
+import ru.rt.restream.reindexer.util.Pair;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * A hybrid search, which combines a full-text query and a KNN query of the same namespace. The queries are executed
+ * concurrently, their results are merged by the primary key of the items, and ordered by a score, fused from the
+ * ranks of an item in both results. Created by {@link Query#hybrid(Query)}.
+ *
+ * <p>The score is the reciprocal rank fusion by default: the sum of {@code 1 / (k + position)} over the results,
+ * which contain the item, where the position starts from 1. It depends only on the order of the results, so the
+ * full-text ranks and the vector distances need not be comparable. A weighted score is the weighted sum of the ranks,
+ * normalized into [0, 1] within every result, the best rank to 1 and the worst one to 0.
+ */
+public class HybridQuery<T> {
+
+    /**
+     * The default {@code k} constant of the reciprocal rank fusion.
+     */
+    public static final int DEFAULT_RRF_K = 60;
+
+    private final Query<T> textQuery;
+
+    private final Query<T> vectorQuery;
+
+    private final Executor executor;
+
+    private final Function<? super T, Object> keyFunction;
+
+    private int rrfK = DEFAULT_RRF_K;
+
+    private boolean weighted;
+
+    private double textWeight;
+
+    private double vectorWeight;
+
+    private int limit = -1;
+
+    HybridQuery(Query<T> textQuery, Query<T> vectorQuery, Executor executor, Function<? super T, Object> keyFunction) {
+        this.textQuery = textQuery;
+        this.vectorQuery = vectorQuery;
+        this.executor = executor;
+        this.keyFunction = keyFunction;
+    }
+
+    /**
+     * Fuses the ranks by the reciprocal rank fusion, which is the default.
+     *
+     * @param k the constant added to the positions, the larger it is, the less the top positions dominate
+     * @return the {@link HybridQuery} for further customizations
+     * @throws IllegalArgumentException if k is negative
+     */
+    public HybridQuery<T> reciprocalRankFusion(int k) {
+        if (k < 0) {
+            throw new IllegalArgumentException("RRF k must not be negative: " + k);
+        }
+        this.rrfK = k;
+        this.weighted = false;
+        return this;
+    }
+
+    /**
+     * Fuses the ranks by a weighted sum of the ranks, normalized within every result.
+     *
+     * @param textWeight   the weight of the full-text rank
+     * @param vectorWeight the weight of the vector rank
+     * @return the {@link HybridQuery} for further customizations
+     * @throws IllegalArgumentException if a weight is negative
+     */
+    public HybridQuery<T> weighted(double textWeight, double vectorWeight) {
+        if (textWeight < 0 || vectorWeight < 0) {
+            throw new IllegalArgumentException(String.format("Weights must not be negative: %s, %s",
+                    textWeight, vectorWeight));
+        }
+        this.textWeight = textWeight;
+        this.vectorWeight = vectorWeight;
+        this.weighted = true;
+        return this;
+    }
+
+    /**
+     * Limits the merged result to the top items. The limits of the full-text and the KNN queries are set separately.
+     *
+     * @param limit the number of the top items to return
+     * @return the {@link HybridQuery} for further customizations
+     */
+    public HybridQuery<T> limit(int limit) {
+        this.limit = limit;
+        return this;
+    }
+
+    /**
+     * Will execute both queries, and return the top items and their fused scores, best first.
+     *
+     * @return the items and the fused scores
+     */
+    public Pair<List<T>, float[]> executeAllWithRank() {
+        CompletableFuture<Pair<List<T>, float[]>> vectorResult =
+                CompletableFuture.supplyAsync(vectorQuery::executeAllWithRank, executor);
+        Pair<List<T>, float[]> textResult = textQuery.executeAllWithRank();
+        return merge(textResult, ReindexerNamespace.join(vectorResult));
+    }
+
+    /**
+     * Will execute both queries, and return the top items, best first.
+     *
+     * @return list of items
+     */
+    public List<T> toList() {
+        return executeAllWithRank().getFirst();
+    }
+
+    /**
+     * Will execute both queries, and return the stream of the top items, best first.
+     *
+     * @return stream of items
+     */
+    public Stream<T> stream() {
+        return toList().stream();
+    }
+
+    Pair<List<T>, float[]> merge(Pair<List<T>, float[]> textResult, Pair<List<T>, float[]> vectorResult) {
+        Map<Object, Candidate<T>> candidates = new LinkedHashMap<>();
+        addScores(candidates, textResult, textWeight);
+        addScores(candidates, vectorResult, vectorWeight);
+
+        List<Candidate<T>> sorted = new ArrayList<>(candidates.values());
+        sorted.sort((c1, c2) -> Double.compare(c2.score, c1.score));
+        int count = limit < 0 ? sorted.size() : Math.min(limit, sorted.size());
+        List<T> items = new ArrayList<>(count);
+        float[] scores = new float[count];
+        for (int i = 0; i < count; i++) {
+            Candidate<T> candidate = sorted.get(i);
+            items.add(candidate.item);
+            scores[i] = (float) candidate.score;
+        }
+        return new Pair<>(items, scores);
+    }
+
+    private void addScores(Map<Object, Candidate<T>> candidates, Pair<List<T>, float[]> result, double weight) {
+        List<T> items = result.getFirst();
+        float[] ranks = result.getSecond();
+        for (int i = 0; i < items.size(); i++) {
+            T item = items.get(i);
+            double score = weighted ? weight * normalize(ranks, i) : 1.0 / (rrfK + i + 1);
+            candidates.computeIfAbsent(keyFunction.apply(item), k -> new Candidate<>(item)).score += score;
+        }
+    }
+
+    /**
+     * Normalizes a rank into [0, 1]. The results are ordered by rank, best first, which is the highest full-text
+     * rank, but the lowest distance for L2, so the first and the last ranks are the bounds in either case.
+     */
+    private static double normalize(float[] ranks, int position) {
+        float best = ranks[0];
+        float worst = ranks[ranks.length - 1];
+        if (best == worst) {
+            return 1.0;
+        }
+        return (ranks[position] - worst) / (double) (best - worst);
+    }
+
+    private static final class Candidate<T> {
+
+        private final T item;
+
+        private double score;
+
+        private Candidate(T item) {
+            this.item = item;
+        }
+    }
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2020 Restream
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.rt.restream.reindexer;
+
+import ru.rt.restream.reindexer.cache.CacheStats;
+import ru.rt.restream.reindexer.cache.LruCache;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A client-side cache of namespace items keyed by the primary key, used by {@link Namespace#getById(Object)} and
+ * {@link Namespace#getByIds(java.util.Collection)}.
+ *
+ * <p>Modifications of an item made through the owning {@link Reindexer} instance discard the cached item, so the
+ * next read loads it from the database, and update or delete queries discard the whole cache.
+ * Modifications made by other clients are not tracked, so the cache is meant for slowly changing data, optionally
+ * combined with an expiration period. Cached items are shared between callers and must not be modified.
+ *
+ * @param <T> the type of cached items
+ */
+public final class ItemCache<T> {
+
+    private final LruCache<Object, T> cache;
+
+    /**
+     * Incremented on every invalidation, so that items loaded concurrently with a modification are not cached.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Creates an instance.
+     *
+     * @param maxItems         the maximum number of cached items
+     * @param expireAfterWrite the time after which a cached item expires, null if items never expire
+     */
+    public ItemCache(int maxItems, Duration expireAfterWrite) {
+        cache = new LruCache<>(maxItems, expireAfterWrite);
+    }
+
+    /**
+     * Removes all cached items.
+     */
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    /**
+     * Returns a snapshot of the cache statistics.
+     *
+     * @return the cache statistics
+     */
+    public CacheStats getStats() {
+        return cache.getStats();
+    }
+
+    T get(Object key) {
+        return cache.get(key);
+    }
+
+    long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Caches the item loaded from the database, unless the cache was invalidated since the load started.
+     */
+    void putLoaded(Object key, T item, long generation) {
+        if (this.generation.get() == generation) {
+            cache.put(key, item);
+        }
+    }
+
+    void invalidate(Object key) {
+        generation.incrementAndGet();
+        cache.invalidate(key);
+    }
+
+}
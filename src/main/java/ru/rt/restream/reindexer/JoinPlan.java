@@ -0,0 +1,157 @@
+/*
+ * Copyright 2020 Restream
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.rt.restream.reindexer;
+
+import org.apache.commons.lang3.reflect.FieldUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.rt.restream.reindexer.annotations.Transient;
+import ru.rt.restream.reindexer.util.BeanPropertyUtils;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * Describes how joined items are assigned to the fields of a parent item.
+ *
+ * <p>The plan is compiled once per {@link Query} and item class: join fields are resolved to setters and every
+ * join query is mapped to a slot, so that join results of a row are collected into a list by slot instead of a map.
+ * Several join queries may share the same field and therefore the same slot.
+ */
+final class JoinPlan {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JoinPlan.class);
+
+    private final Class<?> itemClass;
+
+    /**
+     * Join query index to slot mapping.
+     */
+    private final int[] slots;
+
+    private final String[] fieldNames;
+
+    /**
+     * Slot field setters, null if the item class has no such field.
+     */
+    private final List<BiConsumer<Object, Object>> setters;
+
+    private final boolean[] listFields;
+
+    private JoinPlan(Class<?> itemClass, List<String> joinFields) {
+        this.itemClass = itemClass;
+        this.slots = new int[joinFields.size()];
+        List<String> distinctFields = new ArrayList<>();
+        for (int i = 0; i < joinFields.size(); i++) {
+            String joinField = joinFields.get(i);
+            int slot = distinctFields.indexOf(joinField);
+            if (slot < 0) {
+                slot = distinctFields.size();
+                distinctFields.add(joinField);
+            }
+            slots[i] = slot;
+        }
+        this.fieldNames = distinctFields.toArray(new String[0]);
+        this.setters = new ArrayList<>(fieldNames.length);
+        this.listFields = new boolean[fieldNames.length];
+        for (int slot = 0; slot < fieldNames.length; slot++) {
+            String fieldName = fieldNames[slot];
+            Field field = FieldUtils.getField(itemClass, fieldName, true);
+            if (field == null || !field.isAnnotationPresent(Transient.class)) {
+                String msg = String.format("Join results omitted: no transient field '%s' found", fieldName);
+                LOGGER.debug(msg);
+            }
+            setters.add(field != null ? BeanPropertyUtils.getSetter(itemClass, fieldName) : null);
+            if (field != null) {
+                listFields[slot] = field.getType() == List.class;
+            }
+        }
+    }
+
+    /**
+     * Compiles a plan for the join fields of a query.
+     *
+     * @param itemClass  the parent item class
+     * @param joinFields the parent item field name of each join query
+     * @return the compiled plan
+     */
+    static JoinPlan compile(Class<?> itemClass, List<String> joinFields) {
+        return new JoinPlan(itemClass, joinFields);
+    }
+
+    Class<?> getItemClass() {
+        return itemClass;
+    }
+
+    /**
+     * Returns the number of distinct join fields.
+     */
+    int getSlotCount() {
+        return fieldNames.length;
+    }
+
+    /**
+     * Returns the slot of the join query.
+     *
+     * @param joinIndex the join query index
+     * @return the slot, that holds results of the join query
+     */
+    int getSlot(int joinIndex) {
+        return slots[joinIndex];
+    }
+
+    /**
+     * Creates the empty join results of a row, a null element for every slot.
+     *
+     * @return the join results to collect the joined items into
+     */
+    List<List<Object>> newJoinResults() {
+        return new ArrayList<>(Collections.nCopies(fieldNames.length, null));
+    }
+
+    /**
+     * Assigns collected join results to the item fields and clears the slots for the next row.
+     *
+     * @param item        the parent item
+     * @param joinResults the joined items by slot, null if a slot has no join results for the row
+     */
+    void assign(Object item, List<List<Object>> joinResults) {
+        for (int slot = 0; slot < joinResults.size(); slot++) {
+            List<Object> subItems = joinResults.get(slot);
+            if (subItems == null) {
+                continue;
+            }
+            joinResults.set(slot, null);
+            BiConsumer<Object, Object> setter = setters.get(slot);
+            if (setter == null) {
+                continue;
+            }
+            if (listFields[slot]) {
+                setter.accept(item, subItems);
+            } else if (subItems.size() > 1) {
+                throw new RuntimeException("Multiple join result found: " + fieldNames[slot]);
+            } else if (subItems.size() == 0) {
+                setter.accept(item, null);
+            } else {
+                setter.accept(item, subItems.get(0));
+            }
+        }
+    }
+
+}
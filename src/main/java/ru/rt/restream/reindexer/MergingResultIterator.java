@@ -0,0 +1,336 @@
+/*
+ * Copyright 2020 Restream
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.rt.restream.reindexer;
+
+import ru.rt.restream.reindexer.binding.Consts;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * An iterator over the merged results of the same query, executed on several targets, see {@link MultiQuery}.
+ *
+ * <p>The items are merged by the comparator, if it is set, and the results of every target must be sorted in its
+ * order, otherwise the results are concatenated in the order of the targets. The aggregation results are merged on
+ * the first request.
+ */
+class MergingResultIterator<T> implements ResultIterator<T> {
+
+    private final List<ResultIterator<T>> results;
+
+    private final int offset;
+
+    private final int limit;
+
+    private final int facetLimit;
+
+    private final PriorityQueue<Head<T>> heads;
+
+    private int source;
+
+    private int returned;
+
+    private float currentRank = Consts.EMPTY_RANK;
+
+    private List<AggregationResult> aggResults;
+
+    private boolean closed;
+
+    /**
+     * Creates an iterator over the merged results.
+     *
+     * @param results    the results of every target, in the order of the targets
+     * @param comparator the order of the items in every result, or null to concatenate the results
+     * @param offset     the number of the merged items to skip
+     * @param limit      the maximum number of the merged items, or -1 for all the items
+     * @param facetLimit the maximum number of the merged facets, or -1 for all the facets
+     */
+    MergingResultIterator(List<ResultIterator<T>> results, Comparator<? super T> comparator, int offset, int limit,
+                          int facetLimit) {
+        this.results = results;
+        this.offset = offset;
+        this.limit = limit;
+        this.facetLimit = facetLimit;
+        if (comparator == null) {
+            heads = null;
+        } else {
+            Comparator<Head<T>> byItem = (h1, h2) -> comparator.compare(h1.item, h2.item);
+            // equal items keep the order of the targets
+            heads = new PriorityQueue<>(Math.max(1, results.size()), byItem.thenComparingInt(h -> h.source));
+            for (int i = 0; i < results.size(); i++) {
+                pull(i);
+            }
+        }
+        for (int i = 0; i < offset && hasMore(); i++) {
+            nextItem();
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        return (limit < 0 || returned < limit) && hasMore();
+    }
+
+    @Override
+    public T next() {
+        if (closed) {
+            throw new IllegalStateException("Iterator is closed");
+        }
+        if (!hasNext()) {
+            throw new IllegalStateException("No data to read");
+        }
+        returned++;
+        return nextItem();
+    }
+
+    /**
+     * Returns the sum of the total counts of the results.
+     */
+    @Override
+    public long getTotalCount() {
+        long totalCount = 0;
+        for (ResultIterator<T> result : results) {
+            totalCount += result.getTotalCount();
+        }
+        return totalCount;
+    }
+
+    /**
+     * Returns the sum of the sizes of the results, cut by the offset and the limit.
+     */
+    @Override
+    public long size() {
+        long size = 0;
+        for (ResultIterator<T> result : results) {
+            size += result.size();
+        }
+        size = Math.max(0, size - offset);
+        return limit < 0 ? size : Math.min(size, limit);
+    }
+
+    @Override
+    public List<AggregationResult> aggResults() {
+        if (aggResults == null) {
+            List<List<AggregationResult>> targetResults = new ArrayList<>(results.size());
+            long[] totalCounts = new long[results.size()];
+            for (int i = 0; i < results.size(); i++) {
+                targetResults.add(results.get(i).aggResults());
+                totalCounts[i] = results.get(i).getTotalCount();
+            }
+            aggResults = mergeAggResults(targetResults, totalCounts, facetLimit);
+        }
+        return aggResults;
+    }
+
+    @Override
+    public float getCurrentRank() {
+        return currentRank;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        RuntimeException exception = null;
+        for (ResultIterator<T> result : results) {
+            try {
+                result.close();
+            } catch (RuntimeException e) {
+                if (exception == null) {
+                    exception = e;
+                } else {
+                    exception.addSuppressed(e);
+                }
+            }
+        }
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    private boolean hasMore() {
+        if (heads != null) {
+            return !heads.isEmpty();
+        }
+        while (source < results.size() && !results.get(source).hasNext()) {
+            source++;
+        }
+        return source < results.size();
+    }
+
+    private T nextItem() {
+        if (heads == null) {
+            ResultIterator<T> result = results.get(source);
+            T item = result.next();
+            currentRank = result.getCurrentRank();
+            return item;
+        }
+        Head<T> head = heads.poll();
+        currentRank = head.rank;
+        pull(head.source);
+        return head.item;
+    }
+
+    private void pull(int source) {
+        ResultIterator<T> result = results.get(source);
+        if (result.hasNext()) {
+            T item = result.next();
+            heads.add(new Head<>(item, result.getCurrentRank(), source));
+        }
+    }
+
+    /**
+     * Merges the aggregation results of the targets. The sums are added, the minimums and the maximums are taken over
+     * the targets, which have matching items, and the averages are weighted by the total counts of the targets. The
+     * facets are merged by their values with the counts added, and the distinct values are united.
+     *
+     * @param targetResults the aggregation results of every target, in the order of the aggregations
+     * @param totalCounts   the total counts of the matching items of every target
+     * @param facetLimit    the maximum number of the merged facets, the ones with the largest counts, or -1 for all
+     *                      the facets in the order of their first appearance
+     * @return the merged aggregation results
+     * @throws IllegalStateException if the targets have different aggregations
+     */
+    static List<AggregationResult> mergeAggResults(List<List<AggregationResult>> targetResults, long[] totalCounts,
+                                                   int facetLimit) {
+        List<AggregationResult> merged = new ArrayList<>();
+        if (targetResults.isEmpty()) {
+            return merged;
+        }
+        int count = targetResults.get(0).size();
+        for (List<AggregationResult> results : targetResults) {
+            if (results.size() != count) {
+                throw new IllegalStateException(String.format("Targets have different aggregations: %d and %d",
+                        count, results.size()));
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            List<AggregationResult> results = new ArrayList<>(targetResults.size());
+            for (List<AggregationResult> target : targetResults) {
+                results.add(target.get(i));
+            }
+            merged.add(merge(results, totalCounts, facetLimit));
+        }
+        return merged;
+    }
+
+    private static AggregationResult merge(List<AggregationResult> results, long[] totalCounts, int facetLimit) {
+        AggregationResult first = results.get(0);
+        String type = first.getType();
+        for (AggregationResult result : results) {
+            if (!type.equals(result.getType())) {
+                throw new IllegalStateException(String.format("Targets have different aggregations: %s and %s",
+                        type, result.getType()));
+            }
+        }
+        AggregationResult merged = new AggregationResult();
+        merged.setType(type);
+        merged.setFields(first.getFields());
+        switch (type) {
+            case "sum":
+                double sum = 0;
+                for (AggregationResult result : results) {
+                    sum += result.getValue();
+                }
+                merged.setValue(sum);
+                break;
+            case "avg":
+                double weightedSum = 0;
+                long totalCount = 0;
+                for (int i = 0; i < results.size(); i++) {
+                    weightedSum += results.get(i).getValue() * totalCounts[i];
+                    totalCount += totalCounts[i];
+                }
+                merged.setValue(totalCount == 0 ? 0 : weightedSum / totalCount);
+                break;
+            case "min":
+            case "max":
+                boolean min = "min".equals(type);
+                Double value = null;
+                for (int i = 0; i < results.size(); i++) {
+                    if (totalCounts[i] == 0) {
+                        continue;
+                    }
+                    double targetValue = results.get(i).getValue();
+                    if (value == null || (min ? targetValue < value : targetValue > value)) {
+                        value = targetValue;
+                    }
+                }
+                merged.setValue(value == null ? first.getValue() : value);
+                break;
+            case "facet":
+                merged.setFacets(mergeFacets(results, facetLimit));
+                break;
+            case "distinct":
+                LinkedHashSet<String> distincts = new LinkedHashSet<>();
+                for (AggregationResult result : results) {
+                    if (result.getDistincts() != null) {
+                        distincts.addAll(result.getDistincts());
+                    }
+                }
+                merged.setDistincts(new ArrayList<>(distincts));
+                break;
+            default:
+                throw new IllegalStateException("Unsupported aggregation type: " + type);
+        }
+        return merged;
+    }
+
+    private static List<AggregationResult.Facet> mergeFacets(List<AggregationResult> results, int facetLimit) {
+        Map<List<String>, AggregationResult.Facet> facets = new LinkedHashMap<>();
+        for (AggregationResult result : results) {
+            result.forEachFacet(facet -> facets.merge(facet.getValues(), copy(facet), (f1, f2) -> {
+                f1.setCount(f1.getCount() + f2.getCount());
+                return f1;
+            }));
+        }
+        List<AggregationResult.Facet> merged = new ArrayList<>(facets.values());
+        if (facetLimit >= 0) {
+            merged.sort(Comparator.comparingInt(AggregationResult.Facet::getCount).reversed());
+            if (merged.size() > facetLimit) {
+                merged = new ArrayList<>(merged.subList(0, facetLimit));
+            }
+        }
+        return merged;
+    }
+
+    private static AggregationResult.Facet copy(AggregationResult.Facet facet) {
+        AggregationResult.Facet copy = new AggregationResult.Facet();
+        copy.setValues(facet.getValues());
+        copy.setCount(facet.getCount());
+        return copy;
+    }
+
+    private static final class Head<T> {
+
+        private final T item;
+
+        private final float rank;
+
+        private final int source;
+
+        private Head(T item, float rank, int source) {
+            this.item = item;
+            this.rank = rank;
+            this.source = source;
+        }
+    }
+
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2020 Restream
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.rt.restream.reindexer;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A query, which is executed on every target of a {@link MultiReindexer} concurrently, and whose results are merged
+ * into one. Created by {@link MultiReindexer#query(String, Class, UnaryOperator)}.
+ *
+ * <p>The query of every target is built by the same function, and is executed with {@link Query#reqTotal()}, since
+ * the averages are merged by the total counts. The items of the targets are concatenated in the order of the targets,
+ * or, if {@link #orderBy(Comparator)} is set, merged in the order of the comparator, which must be the order of the
+ * items in every target result, e.g. set by {@link Query#sort(String, boolean, Object...)}. The offset and the limit
+ * are applied to the merged items, the query of every target is limited to the offset plus the limit.
+ *
+ * <p>The aggregation results are merged, see {@link MergingResultIterator#mergeAggResults(List, long[], int)}. The
+ * facet limits and offsets of the target queries are applied on every target separately, so the top facets should be
+ * selected by {@link #facetLimit(int)} on the merged ones instead.
+ */
+public class MultiQuery<T> {
+
+    private final List<Reindexer> targets;
+
+    private final String namespaceName;
+
+    private final Class<T> itemClass;
+
+    private final UnaryOperator<Query<T>> queryBuilder;
+
+    private Comparator<? super T> comparator;
+
+    private int offset;
+
+    private int limit = -1;
+
+    private int facetLimit = -1;
+
+    MultiQuery(List<Reindexer> targets, String namespaceName, Class<T> itemClass,
+               UnaryOperator<Query<T>> queryBuilder) {
+        this.targets = targets;
+        this.namespaceName = namespaceName;
+        this.itemClass = itemClass;
+        this.queryBuilder = queryBuilder;
+    }
+
+    /**
+     * Merges the items of the targets in the order of the comparator. The items of every target must be sorted in
+     * the same order.
+     *
+     * @param comparator the order of the items
+     * @return the {@link MultiQuery} for further customizations
+     */
+    public MultiQuery<T> orderBy(Comparator<? super T> comparator) {
+        this.comparator = comparator;
+        return this;
+    }
+
+    /**
+     * Limits the number of the merged items.
+     *
+     * @param limit limit value
+     * @return the {@link MultiQuery} for further customizations
+     */
+    public MultiQuery<T> limit(int limit) {
+        this.limit = limit;
+        return this;
+    }
+
+    /**
+     * Skips the offset merged items before start.
+     *
+     * @param offset offset value
+     * @return the {@link MultiQuery} for further customizations
+     */
+    public MultiQuery<T> offset(int offset) {
+        this.offset = Math.max(0, offset);
+        return this;
+    }
+
+    /**
+     * Limits the merged facets to the ones with the largest counts, ordered by the count.
+     *
+     * @param facetLimit the number of the facets
+     * @return the {@link MultiQuery} for further customizations
+     */
+    public MultiQuery<T> facetLimit(int facetLimit) {
+        this.facetLimit = facetLimit;
+        return this;
+    }
+
+    /**
+     * Will execute the query on every target concurrently, and return an iterator over the merged results. The first
+     * pages of the results are fetched by the queries, the next ones are fetched, when the iterator reaches them.
+     *
+     * @return the iterator over the merged results
+     */
+    public ResultIterator<T> execute() {
+        List<CompletableFuture<ResultIterator<T>>> futures = new ArrayList<>(targets.size());
+        for (int i = 1; i < targets.size(); i++) {
+            Reindexer target = targets.get(i);
+            futures.add(CompletableFuture.supplyAsync(() -> executeOn(target), target.getQueryExecutor()));
+        }
+        List<ResultIterator<T>> results = new ArrayList<>(targets.size());
+        RuntimeException exception = null;
+        try {
+            results.add(executeOn(targets.get(0)));
+        } catch (RuntimeException e) {
+            exception = e;
+        }
+        for (CompletableFuture<ResultIterator<T>> future : futures) {
+            try {
+                results.add(ReindexerNamespace.join(future));
+            } catch (RuntimeException e) {
+                if (exception == null) {
+                    exception = e;
+                } else {
+                    exception.addSuppressed(e);
+                }
+            }
+        }
+        if (exception != null) {
+            for (ResultIterator<T> result : results) {
+                result.close();
+            }
+            throw exception;
+        }
+        return new MergingResultIterator<>(results, comparator, offset, limit, facetLimit);
+    }
+
+    /**
+     * Will execute the query on every target, and return the stream of the merged items.
+     * The returned stream must be closed using the {@link Stream#close()} method or
+     * by using a Java 7 try-with-resources block.
+     *
+     * @return stream of items
+     */
+    public Stream<T> stream() {
+        ResultIterator<T> iterator = execute();
+        Spliterator<T> spliterator = Spliterators.spliterator(iterator, iterator.size(), Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false).onClose(iterator::close);
+    }
+
+    /**
+     * Will execute the query on every target, and return list of the merged items.
+     *
+     * @return list of items
+     */
+    public List<T> toList() {
+        try (ResultIterator<T> iterator = execute()) {
+            List<T> result = new ArrayList<>();
+            while (iterator.hasNext()) {
+                result.add(iterator.next());
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Will execute the query on every target, and return the merged aggregation results.
+     *
+     * @return the merged aggregation results
+     */
+    public List<AggregationResult> aggregate() {
+        try (ResultIterator<T> iterator = execute()) {
+            return iterator.aggResults();
+        }
+    }
+
+    private ResultIterator<T> executeOn(Reindexer target) {
+        Query<T> query = queryBuilder.apply(target.query(namespaceName, itemClass)).reqTotal();
+        if (limit >= 0) {
+            query.limit(offset + limit);
+        }
+        return query.execute();
+    }
+
+}
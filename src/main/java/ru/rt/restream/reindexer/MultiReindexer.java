@@ -0,0 +1,68 @@
+/*
+ * Copyright 2020 Restream
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.rt.restream.reindexer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+/**
+ * Executes the same queries on several independent {@link Reindexer} instances, e.g. the shards of a database,
+ * partitioned by the client, and merges their results. The instances are not owned, and are not closed by it.
+ *
+ * <pre>{@code
+ * MultiReindexer shards = new MultiReindexer(Arrays.asList(shard1, shard2));
+ * List<Item> items = shards.query("items", Item.class, query -> query
+ *                 .where("price", Query.Condition.GT, 100)
+ *                 .sort("price", false))
+ *         .orderBy(Comparator.comparing(Item::getPrice))
+ *         .limit(10)
+ *         .toList();
+ * }</pre>
+ */
+public class MultiReindexer {
+
+    private final List<Reindexer> targets;
+
+    /**
+     * Creates an executor of the queries on the given instances.
+     *
+     * @param targets the instances to query
+     * @throws IllegalArgumentException if no instances are given
+     */
+    public MultiReindexer(List<Reindexer> targets) {
+        if (targets.isEmpty()) {
+            throw new IllegalArgumentException("At least one Reindexer instance is required");
+        }
+        this.targets = new ArrayList<>(targets);
+    }
+
+    /**
+     * Creates a query, which is executed on every instance concurrently: the query of the first instance on the
+     * calling thread, and the others on the query executors of their instances, see
+     * {@link ReindexerConfiguration#queryExecutorPoolSize}.
+     *
+     * @param namespaceName the namespace name, the same on every instance
+     * @param itemClass     the item class
+     * @param queryBuilder  builds the query of an instance, must build the same query for every instance
+     * @param <T>           the item type
+     * @return the {@link MultiQuery} for further customizations
+     */
+    public <T> MultiQuery<T> query(String namespaceName, Class<T> itemClass, UnaryOperator<Query<T>> queryBuilder) {
+        return new MultiQuery<>(targets, namespaceName, itemClass, queryBuilder);
+    }
+
+}
@@ -15,6 +15,12 @@
  */
 package ru.rt.restream.reindexer;
 
+import ru.rt.restream.reindexer.util.Pair;
+import ru.rt.restream.reindexer.vector.params.KnnSearchParam;
+
+import java.util.Collection;
+import java.util.List;
+
 /**
  * Provides methods for manipulating Reindexer namespace data.
  *
@@ -85,6 +91,34 @@ public interface Namespace<T> {
      */
     void delete(String item);
 
+    /**
+     * Inserts the given items data in a batch.
+     *
+     * @param items         the items data
+     */
+    void insertAll(Collection<T> items);
+
+    /**
+     * Inserts or updates the given items data in a batch.
+     *
+     * @param items         the items data
+     */
+    void upsertAll(Collection<T> items);
+
+    /**
+     * Updates the given items data in a batch.
+     *
+     * @param items         the items data
+     */
+    void updateAll(Collection<T> items);
+
+    /**
+     * Deletes the given items data in a batch.
+     *
+     * @param items         the items data
+     */
+    void deleteAll(Collection<T> items);
+
     /**
      * Creates new Query for building request
      *
@@ -92,6 +126,51 @@ public interface Namespace<T> {
      */
     Query<T> query();
 
+    /**
+     * Returns the item with the given primary key value. The item is served from the client-side item cache,
+     * if the cache is configured with {@link NamespaceOptions#setItemCacheSize(int)}.
+     *
+     * @param id the primary key value
+     * @return the item, or null if there is no item with the given primary key value
+     * @throws UnsupportedOperationException if the item class has no single-field primary key
+     */
+    T getById(Object id);
+
+    /**
+     * Returns the items with the given primary key values. The items are served from the client-side item cache,
+     * if the cache is configured with {@link NamespaceOptions#setItemCacheSize(int)}.
+     *
+     * @param ids the primary key values
+     * @return the items in the order of the passed primary key values, with null for every value that has no item
+     * @throws UnsupportedOperationException if the item class has no single-field primary key
+     */
+    List<T> getByIds(Collection<?> ids);
+
+    /**
+     * Searches the nearest items for every given vector. A KNN query is executed per vector, the queries are
+     * executed concurrently, and share the connection pool, see {@link ReindexerConfiguration#queryExecutorPoolSize}.
+     *
+     * @param indexName the vector index name
+     * @param vectors   the query vectors
+     * @param params    parameter set depends on the specific index type
+     * @return the items and ranks, see {@link Query#executeAllWithRank()}, in the order of the vectors
+     */
+    List<Pair<List<T>, float[]>> knnSearch(String indexName, float[][] vectors, KnnSearchParam params);
+
+    /**
+     * Searches the nearest items for every row of the given flat matrix of query vectors, see
+     * {@link #knnSearch(String, float[][], KnnSearchParam)}. The vectors are encoded straight from the matrix,
+     * without a copy.
+     *
+     * @param indexName the vector index name
+     * @param matrix    the query vectors, one after another
+     * @param dimension the vector dimension
+     * @param params    parameter set depends on the specific index type
+     * @return the items and ranks, see {@link Query#executeAllWithRank()}, in the order of the vectors
+     * @throws IllegalArgumentException if the matrix length is not a multiple of the dimension
+     */
+    List<Pair<List<T>, float[]>> knnSearch(String indexName, float[] matrix, int dimension, KnnSearchParam params);
+
     /**
      * Associates the specified value with the specified key in reindexer namespace.
      *
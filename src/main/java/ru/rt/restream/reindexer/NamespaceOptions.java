@@ -15,6 +15,8 @@
  */
 package ru.rt.restream.reindexer;
 
+import java.time.Duration;
+
 /**
  * The namespace options.
  */
@@ -32,6 +34,8 @@ public class NamespaceOptions {
 
     public static final long DEFAULT_OBJ_CACHE_ITEMS_COUNT = 256000L;
 
+    public static final int DEFAULT_ITEM_CACHE_SIZE = 0;
+
     /**
      * Only in memory namespace.
      */
@@ -57,6 +61,14 @@ public class NamespaceOptions {
      * Object cache items count
      */
     private long objCacheItemsCount;
+    /**
+     * Client-side item cache size
+     */
+    private int itemCacheSize = DEFAULT_ITEM_CACHE_SIZE;
+    /**
+     * Client-side item cache time to live
+     */
+    private Duration itemCacheExpireAfterWrite;
 
     public NamespaceOptions(boolean enableStorage, boolean createStorageIfMissing,
                             boolean dropOnIndexesConflict, boolean dropOnFileFormatError,
@@ -199,4 +211,47 @@ public class NamespaceOptions {
         this.objCacheItemsCount = objCacheItemsCount;
         return this;
     }
+
+    /**
+     * Get the maximum number of items held by the client-side item cache.
+     *
+     * @return the maximum number of cached items, 0 if the cache is disabled
+     */
+    public int getItemCacheSize() {
+        return itemCacheSize;
+    }
+
+    /**
+     * Set the maximum number of items held by the client-side item cache, which serves
+     * {@link Namespace#getById(Object)} and {@link Namespace#getByIds(java.util.Collection)} lookups.
+     * Defaults to 0, which disables the cache.
+     *
+     * @param itemCacheSize the maximum number of cached items
+     * @return this {@link NamespaceOptions} for further customization
+     */
+    public NamespaceOptions setItemCacheSize(int itemCacheSize) {
+        this.itemCacheSize = itemCacheSize;
+        return this;
+    }
+
+    /**
+     * Get the time after which a cached item expires.
+     *
+     * @return the cached item time to live, null if items never expire
+     */
+    public Duration getItemCacheExpireAfterWrite() {
+        return itemCacheExpireAfterWrite;
+    }
+
+    /**
+     * Set the time after which a cached item expires. By default cached items do not expire and are discarded only
+     * on modification through this connector.
+     *
+     * @param itemCacheExpireAfterWrite the cached item time to live
+     * @return this {@link NamespaceOptions} for further customization
+     */
+    public NamespaceOptions setItemCacheExpireAfterWrite(Duration itemCacheExpireAfterWrite) {
+        this.itemCacheExpireAfterWrite = itemCacheExpireAfterWrite;
+        return this;
+    }
 }
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2020 Restream
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.rt.restream.reindexer;
+
+import ru.rt.restream.reindexer.annotations.Reindex;
+import ru.rt.restream.reindexer.annotations.Transient;
+import ru.rt.restream.reindexer.util.BeanPropertyUtils;
+
+import java.lang.reflect.Field;
+
+/**
+ * Describes a single-field primary key of an item class, i.e. the field annotated with
+ * {@code @Reindex(isPrimaryKey = true)}.
+ */
+final class PrimaryKey {
+
+    private final String indexName;
+
+    private final String fieldName;
+
+    private PrimaryKey(String indexName, String fieldName) {
+        this.indexName = indexName;
+        this.fieldName = fieldName;
+    }
+
+    /**
+     * Finds the primary key field of the item class.
+     *
+     * @param itemClass the item class
+     * @return the primary key, or null if the item class has no single-field primary key
+     */
+    static PrimaryKey of(Class<?> itemClass) {
+        PrimaryKey primaryKey = null;
+        for (Field field : BeanPropertyUtils.getInheritedFields(itemClass)) {
+            Reindex reindex = field.getAnnotation(Reindex.class);
+            if (reindex == null || !reindex.isPrimaryKey() || "-".equals(reindex.name())
+                    || field.isAnnotationPresent(Transient.class)) {
+                continue;
+            }
+            if (primaryKey != null) {
+                return null;
+            }
+            primaryKey = new PrimaryKey(reindex.name(), field.getName());
+        }
+        return primaryKey;
+    }
+
+    /**
+     * Converts the key to the form used for key comparison, so that e.g. {@code 1} and {@code 1L} are equal keys.
+     *
+     * @param key the primary key value
+     * @return the normalized key
+     */
+    static Object normalize(Object key) {
+        if (key instanceof Integer || key instanceof Short || key instanceof Byte) {
+            return ((Number) key).longValue();
+        }
+        return key;
+    }
+
+    String getIndexName() {
+        return indexName;
+    }
+
+    /**
+     * Reads the normalized primary key value of the item.
+     *
+     * @param item the item
+     * @return the normalized primary key value
+     */
+    Object getValue(Object item) {
+        return normalize(BeanPropertyUtils.getProperty(item, fieldName));
+    }
+
+}
@@ -20,16 +20,24 @@ import org.slf4j.LoggerFactory;
 import ru.rt.restream.reindexer.annotations.Hnsw;
 import ru.rt.restream.reindexer.annotations.Ivf;
 import ru.rt.restream.reindexer.annotations.VecBf;
+import ru.rt.restream.reindexer.binding.Binding;
 import ru.rt.restream.reindexer.binding.Consts;
+import ru.rt.restream.reindexer.binding.ExecutionContext;
 import ru.rt.restream.reindexer.binding.QueryResult;
 import ru.rt.restream.reindexer.binding.RequestContext;
 import ru.rt.restream.reindexer.binding.TransactionContext;
 import ru.rt.restream.reindexer.binding.cproto.ByteBuffer;
 import ru.rt.restream.reindexer.binding.cproto.cjson.PayloadType;
+import ru.rt.restream.reindexer.metrics.SlowQueryEvent;
+import ru.rt.restream.reindexer.metrics.SlowQueryLog;
 import ru.rt.restream.reindexer.util.JsonSerializer;
 import ru.rt.restream.reindexer.util.Pair;
 import ru.rt.restream.reindexer.vector.params.KnnSearchParam;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
+import java.time.Duration;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -40,6 +48,7 @@ import java.util.Optional;
 import java.util.Spliterator;
 import java.util.Spliterators;
 import java.util.UUID;
+import java.util.function.LongConsumer;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
@@ -209,6 +218,14 @@ public class Query<T> {
 
     private Query<?> root;
 
+    private boolean cached;
+
+    private JoinPlan joinPlan;
+
+    private Duration timeout;
+
+    private CancellationToken cancellationToken;
+
     Query(Reindexer reindexer, ReindexerNamespace<T> namespace, TransactionContext transactionContext) {
         logBuilder.namespace(namespace.getName());
         this.reindexer = reindexer;
@@ -303,6 +320,8 @@ public class Query<T> {
         joinQuery.root = this;
         joinQueries.add(joinQuery);
         joinFields.add(field);
+        // the plan compiled by a previous execution has no slot for the new join
+        joinPlan = null;
         return this;
     }
 
@@ -484,11 +503,32 @@ public class Query<T> {
      * @return the {@link Query} for further customizations
      */
     public Query<T> whereKnn(String indexName, float[] vector, KnnSearchParam params) {
-        logBuilder.whereKnn(nextOperation, indexName, vector, params);
+        return whereKnn(indexName, vector, 0, vector.length, params);
+    }
+
+    /**
+     * The KNN condition with a vector, which is a row of a flat matrix, e.g. of the query vectors of
+     * {@link Namespace#knnSearch(String, float[], int, KnnSearchParam)}. The vector is encoded straight from
+     * the matrix, without a copy.
+     *
+     * @param indexName index name
+     * @param matrix    the flat matrix, that holds the condition value
+     * @param offset    the index of the first vector component in the matrix
+     * @param dimension the vector dimension
+     * @param params    parameter set depends on the specific index type
+     * @return the {@link Query} for further customizations
+     * @throws IndexOutOfBoundsException if the vector is out of the matrix bounds
+     */
+    public Query<T> whereKnn(String indexName, float[] matrix, int offset, int dimension, KnnSearchParam params) {
+        if (offset < 0 || dimension < 0 || offset > matrix.length - dimension) {
+            throw new IndexOutOfBoundsException(String.format("Vector [%d, %d) is out of the matrix of length %d",
+                    offset, offset + dimension, matrix.length));
+        }
+        logBuilder.whereKnn(nextOperation, indexName, matrix, offset, dimension, params);
         buffer.putVarUInt32(QUERY_KNN_CONDITION)
                 .putVString(indexName)
                 .putVarUInt32(nextOperation)
-                .putFloatVector(vector);
+                .putFloatVector(matrix, offset, dimension);
 
         params.serializeBy(buffer);
 
@@ -803,6 +843,53 @@ public class Query<T> {
         return this;
     }
 
+    /**
+     * Allows the query result to be served from and stored in the client-side {@link QueryCache}.
+     * The whole result is read into memory on the first execution, and the cached items are shared between
+     * executions, so they must not be modified.
+     * Has no effect if the cache is not configured or the query is executed in a transaction.
+     *
+     * @return the {@link Query} for further customizations
+     * @see ReindexerConfiguration#queryCacheSize(int)
+     */
+    public Query<T> cached() {
+        cached = true;
+        return this;
+    }
+
+    /**
+     * Sets the query execution timeout, which overrides the request timeout of the connector.
+     * The timeout is propagated to the engine, which stops the query execution when the timeout expires.
+     *
+     * @param timeout the query execution timeout
+     * @return the {@link Query} for further customizations
+     * @throws ru.rt.restream.reindexer.exceptions.RequestTimeoutException on execution, if the timeout expires
+     * @see ReindexerConfiguration#requestTimeout(Duration)
+     */
+    public Query<T> timeout(Duration timeout) {
+        this.timeout = timeout;
+        return this;
+    }
+
+    /**
+     * Sets the token to cancel the query execution. In the builtin and builtinserver modes the engine stops the query
+     * execution on cancellation. In the cproto mode the call is completed immediately, and the server stops the query
+     * execution when the {@link #timeout(Duration)} expires.
+     * Only the request, that starts the query, is cancelled. Fetching of the next results is not affected.
+     *
+     * @param cancellationToken the token to cancel the query
+     * @return the {@link Query} for further customizations
+     * @throws ru.rt.restream.reindexer.exceptions.CancelledException on execution, if the token is cancelled
+     */
+    public Query<T> cancellation(CancellationToken cancellationToken) {
+        this.cancellationToken = cancellationToken;
+        return this;
+    }
+
+    private ExecutionContext getExecutionContext() {
+        return new ExecutionContext(timeout, cancellationToken, namespace.getName());
+    }
+
     private void putValue(Object value) {
         if (value == null) {
             buffer.putVarUInt32(VALUE_NULL);
@@ -972,13 +1059,54 @@ public class Query<T> {
     public <S> ResultIterator<S> execute(Class<S> itemClass) {
         long[] ptVersions = prepareQueryAndGetPayloadTypesVersions();
 
+        QueryCache queryCache = cached && transactionContext == null ? reindexer.getQueryCache() : null;
+        if (queryCache == null) {
+            return executeInternal(itemClass, ptVersions);
+        }
+
+        byte[] queryData = buffer.bytes();
+        ResultIterator<S> cachedResult = queryCache.get(itemClass, queryData);
+        if (cachedResult != null) {
+            return cachedResult;
+        }
+        long generation = queryCache.getGeneration();
+        return queryCache.put(itemClass, queryData, namespaces, executeInternal(itemClass, ptVersions), generation);
+    }
+
+    private <S> ResultIterator<S> executeInternal(Class<S> itemClass, long[] ptVersions) {
+        ExecutionContext context = getExecutionContext();
+        long start = System.nanoTime();
         RequestContext requestContext = transactionContext != null
-                ? transactionContext.selectQuery(buffer.bytes(), fetchCount, ptVersions, false)
-                : reindexer.getBinding().selectQuery(buffer.bytes(), fetchCount, ptVersions, false);
+                ? transactionContext.selectQuery(buffer.bytes(), fetchCount, ptVersions, false, context)
+                : reindexer.getBinding().selectQuery(buffer.bytes(), fetchCount, ptVersions, false, context);
+        long executeNanos = System.nanoTime() - start;
 
         updatePayloadTypes(requestContext.getQueryResult());
 
-        return new QueryResultIterator<>(namespace, itemClass, requestContext, this, fetchCount);
+        // the slow query is captured, when the iterator is closed, to include the time spent decoding the items
+        SlowQueryLog slowQueryLog = reindexer.getSlowQueryLog();
+        LongConsumer decodeListener = slowQueryLog != SlowQueryLog.DISABLED
+                ? decodeNanos -> captureIfSlow(Binding.SELECT, context, executeNanos, decodeNanos)
+                : null;
+        return new QueryResultIterator<>(namespace, itemClass, requestContext, this, fetchCount,
+                reindexer.getMetrics(), decodeListener);
+    }
+
+    /**
+     * Passes the query to the slow query hook, if the query is slow and sampled.
+     *
+     * @param command      the binding command of the query
+     * @param context      the execution context of the query, which holds the call timings
+     * @param executeNanos the time of the binding call
+     * @param decodeNanos  the time spent decoding the items
+     */
+    private void captureIfSlow(int command, ExecutionContext context, long executeNanos, long decodeNanos) {
+        SlowQueryLog slowQueryLog = reindexer.getSlowQueryLog();
+        long totalNanos = executeNanos + decodeNanos;
+        if (slowQueryLog.shouldCapture(totalNanos)) {
+            slowQueryLog.capture(new SlowQueryEvent(command, namespace.getName(), totalNanos,
+                    context.getQueueNanos(), context.getRoundTripNanos(), decodeNanos, logBuilder::getSql));
+        }
     }
 
     /**
@@ -990,8 +1118,9 @@ public class Query<T> {
         long[] ptVersions = prepareQueryAndGetPayloadTypesVersions();
 
         RequestContext requestContext = transactionContext != null
-                ? transactionContext.selectQuery(buffer.bytes(), fetchCount, ptVersions, true)
-                : reindexer.getBinding().selectQuery(buffer.bytes(), fetchCount, ptVersions, true);
+                ? transactionContext.selectQuery(buffer.bytes(), fetchCount, ptVersions, true, getExecutionContext())
+                : reindexer.getBinding().selectQuery(buffer.bytes(), fetchCount, ptVersions, true,
+                getExecutionContext());
 
         QueryResult queryResult = requestContext.getQueryResult();
 
@@ -1000,6 +1129,53 @@ public class Query<T> {
         return new QueryResultJsonIterator(requestContext, fetchCount);
     }
 
+    /**
+     * Will execute query, and write items in JSON format to the output stream as a single object
+     * {@code {"rootName":[item, ...]}}. Items are copied to the stream page by page, so memory usage does not depend
+     * on the result size. The stream is neither buffered nor closed by this method.
+     *
+     * @param rootName the name of the root object field, that contains items
+     * @param out      the output stream to write to
+     * @return the number of written items
+     * @throws IOException if an I/O error occurs
+     */
+    public long executeToJson(String rootName, OutputStream out) throws IOException {
+        return executeToJson().writeTo(rootName, out);
+    }
+
+    /**
+     * Will execute query, and write items in JSON format to the channel as a single object
+     * {@code {"rootName":[item, ...]}}. Items are copied to the channel page by page, so memory usage does not
+     * depend on the result size. The channel is not closed by this method.
+     *
+     * @param rootName the name of the root object field, that contains items
+     * @param channel  the channel to write to
+     * @return the number of written items
+     * @throws IOException if an I/O error occurs
+     */
+    public long executeToJson(String rootName, WritableByteChannel channel) throws IOException {
+        return executeToJson().writeTo(rootName, channel);
+    }
+
+    /**
+     * Combines this full-text query with a KNN query of the same namespace into a hybrid search. The queries are
+     * executed concurrently, and their results are merged by the primary key and ordered by the fused ranks, see
+     * {@link HybridQuery}.
+     *
+     * @param vectorQuery the KNN query
+     * @return the {@link HybridQuery} for further customizations
+     * @throws IllegalArgumentException      if the KNN query is of another namespace
+     * @throws UnsupportedOperationException if the item class has no single-field primary key
+     */
+    public HybridQuery<T> hybrid(Query<T> vectorQuery) {
+        if (vectorQuery.namespace != namespace) {
+            throw new IllegalArgumentException(String.format("KNN query namespace '%s' is not '%s'",
+                    vectorQuery.namespace.getName(), namespace.getName()));
+        }
+        return new HybridQuery<>(this, vectorQuery, reindexer.getQueryExecutor(),
+                namespace.getPrimaryKey()::getValue);
+    }
+
     /**
      * Will execute query, and return slice of items and slice of ranks.
      */
@@ -1091,7 +1267,15 @@ public class Query<T> {
         if (transactionContext != null) {
             transactionContext.deleteQuery(buffer.bytes());
         } else {
-            reindexer.getBinding().deleteQuery(buffer.bytes());
+            ExecutionContext context = getExecutionContext();
+            long start = System.nanoTime();
+            try {
+                reindexer.getBinding().deleteQuery(buffer.bytes(), context);
+                captureIfSlow(Binding.DELETE_QUERY, context, System.nanoTime() - start, 0L);
+            } finally {
+                // a cancelled or timed out query may have been applied
+                reindexer.onNamespaceModified(namespace.getName());
+            }
         }
     }
 
@@ -1245,7 +1429,15 @@ public class Query<T> {
         if (transactionContext != null) {
             transactionContext.updateQuery(buffer.bytes());
         } else {
-            reindexer.getBinding().updateQuery(buffer.bytes());
+            ExecutionContext context = getExecutionContext();
+            long start = System.nanoTime();
+            try {
+                reindexer.getBinding().updateQuery(buffer.bytes(), context);
+                captureIfSlow(Binding.UPDATE_QUERY, context, System.nanoTime() - start, 0L);
+            } finally {
+                // a cancelled or timed out query may have been applied
+                reindexer.onNamespaceModified(namespace.getName());
+            }
         }
     }
 
@@ -1277,6 +1469,20 @@ public class Query<T> {
         return joinFields;
     }
 
+    /**
+     * Get the join plan of the query, compiled on the first call for the item class.
+     *
+     * @param itemClass the class of the items, that receive join results
+     */
+    JoinPlan getJoinPlan(Class<?> itemClass) {
+        JoinPlan plan = joinPlan;
+        if (plan == null || plan.getItemClass() != itemClass) {
+            plan = JoinPlan.compile(itemClass, joinFields);
+            joinPlan = plan;
+        }
+        return plan;
+    }
+
     /**
      * Get constructed sql log string.
      *
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2020 Restream
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.rt.restream.reindexer;
+
+import ru.rt.restream.reindexer.binding.cproto.cjson.PayloadType;
+import ru.rt.restream.reindexer.cache.CacheStats;
+import ru.rt.restream.reindexer.cache.LruCache;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A client-side cache of decoded query results.
+ *
+ * <p>Results are keyed by the serialized query and the requested item class. An entry is discarded when the payload
+ * type state token or version of any namespace used by the query changes, and when the namespace is modified through
+ * the owning {@link Reindexer} instance. Modifications made by other clients are not tracked, so the cache is meant
+ * for slowly changing data, optionally combined with an expiration period.
+ *
+ * <p>Only queries marked with {@link Query#cached()} are cached.
+ */
+public final class QueryCache {
+
+    private final LruCache<Key, Entry> cache;
+
+    /**
+     * Incremented on every invalidation, so that results of queries executed concurrently with a modification
+     * are not cached.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Creates an instance.
+     *
+     * @param maxEntries       the maximum number of cached query results
+     * @param expireAfterWrite the time after which a cached result expires, null if results never expire
+     */
+    public QueryCache(int maxEntries, Duration expireAfterWrite) {
+        cache = new LruCache<>(maxEntries, expireAfterWrite);
+    }
+
+    /**
+     * Removes all cached results of queries that use the given namespace.
+     *
+     * @param namespaceName the namespace name
+     */
+    public void invalidate(String namespaceName) {
+        generation.incrementAndGet();
+        cache.invalidateIf((key, entry) -> entry.uses(namespaceName));
+    }
+
+    /**
+     * Removes all cached results.
+     */
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    /**
+     * Returns a snapshot of the cache statistics.
+     *
+     * @return the cache statistics
+     */
+    public CacheStats getStats() {
+        return cache.getStats();
+    }
+
+    long getGeneration() {
+        return generation.get();
+    }
+
+    <S> ResultIterator<S> get(Class<S> itemClass, byte[] queryData) {
+        Entry entry = cache.get(new Key(itemClass, queryData), Entry::isValid);
+        return entry != null ? new CachedResultIterator<>(entry) : null;
+    }
+
+    /**
+     * Reads the whole result of the query into the cache and returns an iterator over the cached result.
+     * The passed iterator is closed.
+     */
+    <S> ResultIterator<S> put(Class<S> itemClass, byte[] queryData, List<ReindexerNamespace<?>> namespaces,
+                              ResultIterator<S> iterator, long generation) {
+        Entry entry;
+        try (ResultIterator<S> it = iterator) {
+            List<Object> items = new ArrayList<>((int) it.size());
+            float[] ranks = new float[(int) it.size()];
+            while (it.hasNext()) {
+                items.add(it.next());
+                ranks[items.size() - 1] = it.getCurrentRank();
+            }
+            entry = new Entry(Collections.unmodifiableList(items), ranks, it.aggResults(), it.getTotalCount(),
+                    namespaces);
+        }
+        if (this.generation.get() == generation) {
+            cache.put(new Key(itemClass, queryData), entry);
+        }
+        return new CachedResultIterator<>(entry);
+    }
+
+    private static final class Key {
+
+        private final Class<?> itemClass;
+
+        private final byte[] queryData;
+
+        private final int hashCode;
+
+        private Key(Class<?> itemClass, byte[] queryData) {
+            this.itemClass = itemClass;
+            this.queryData = queryData;
+            this.hashCode = 31 * itemClass.hashCode() + Arrays.hashCode(queryData);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return itemClass == key.itemClass && Arrays.equals(queryData, key.queryData);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+    }
+
+    /**
+     * A materialized query result.
+     */
+    static final class Entry {
+
+        final List<?> items;
+
+        final float[] ranks;
+
+        final List<AggregationResult> aggResults;
+
+        final long totalCount;
+
+        private final ReindexerNamespace<?>[] namespaces;
+
+        private final PayloadType[] payloadTypes;
+
+        private Entry(List<?> items, float[] ranks, List<AggregationResult> aggResults, long totalCount,
+                      List<ReindexerNamespace<?>> namespaces) {
+            this.items = items;
+            this.ranks = ranks;
+            this.aggResults = aggResults;
+            this.totalCount = totalCount;
+            this.namespaces = namespaces.toArray(new ReindexerNamespace<?>[0]);
+            this.payloadTypes = new PayloadType[this.namespaces.length];
+            for (int i = 0; i < this.namespaces.length; i++) {
+                payloadTypes[i] = this.namespaces[i].getPayloadType();
+            }
+        }
+
+        private boolean uses(String namespaceName) {
+            for (ReindexerNamespace<?> namespace : namespaces) {
+                if (namespace.getName().equals(namespaceName)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean isValid() {
+            for (int i = 0; i < namespaces.length; i++) {
+                PayloadType cached = payloadTypes[i];
+                PayloadType current = namespaces[i].getPayloadType();
+                if (cached != current && (cached == null || current == null
+                        || cached.getStateToken() != current.getStateToken()
+                        || cached.getVersion() != current.getVersion())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+    }
+
+}
@@ -299,13 +299,20 @@ class QueryLogBuilder {
         }
     }
 
-    void whereKnn(int operationCode, String indexName, float[] vector, KnnSearchParam params) {
+    void whereKnn(int operationCode, String indexName, float[] matrix, int offset, int dimension,
+                  KnnSearchParam params) {
         QueryEntry queryEntry = new QueryEntry();
         queryEntry.operation = getOperation(operationCode);
         queryEntry.field = indexName;
         queryEntry.condition = Condition.KNN;
         queryEntry.values.add(indexName);
-        queryEntry.values.add(Arrays.toString(vector));
+        // the vector is rendered when the query text is requested only
+        queryEntry.values.add(new Object() {
+            @Override
+            public String toString() {
+                return Arrays.toString(Arrays.copyOfRange(matrix, offset, offset + dimension));
+            }
+        });
         queryEntry.values.addAll(params.toLog());
         whereEntries.add(queryEntry);
     }
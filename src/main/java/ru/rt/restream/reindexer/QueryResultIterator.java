@@ -15,26 +15,18 @@
  */
 package ru.rt.restream.reindexer;
 
-import org.apache.commons.lang3.reflect.FieldUtils;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-import ru.rt.restream.reindexer.annotations.Transient;
 import ru.rt.restream.reindexer.binding.Consts;
 import ru.rt.restream.reindexer.binding.QueryResult;
 import ru.rt.restream.reindexer.binding.RequestContext;
+import ru.rt.restream.reindexer.binding.builtin.NativeByteBuffer;
 import ru.rt.restream.reindexer.binding.cproto.ByteBuffer;
 import ru.rt.restream.reindexer.binding.cproto.ItemReader;
-import ru.rt.restream.reindexer.binding.cproto.cjson.CjsonItemReader;
-import ru.rt.restream.reindexer.binding.cproto.cjson.CtagMatcher;
-import ru.rt.restream.reindexer.binding.cproto.cjson.PayloadType;
-import ru.rt.restream.reindexer.util.BeanPropertyUtils;
+import ru.rt.restream.reindexer.metrics.ReindexerMetrics;
 import ru.rt.restream.reindexer.util.NativeUtils;
 
-import java.lang.reflect.Field;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.function.LongConsumer;
 
 /**
  * An iterator over a query result.
@@ -42,8 +34,6 @@ import java.util.Map;
  */
 public class QueryResultIterator<T> implements ResultIterator<T> {
 
-    private static final Logger LOGGER = LoggerFactory.getLogger(QueryResultIterator.class);
-
     private final ReindexerNamespace<?> namespace;
 
     private final Class<T> itemClass;
@@ -52,6 +42,23 @@ public class QueryResultIterator<T> implements ResultIterator<T> {
 
     private final int fetchCount;
 
+    private final ReindexerMetrics metrics;
+
+    /**
+     * Receives the time spent decoding the items on close, may be null.
+     */
+    private final LongConsumer decodeListener;
+
+    /**
+     * The time spent decoding the items, recorded on close.
+     */
+    private long decodeNanos;
+
+    /**
+     * The start time of the first item decoding.
+     */
+    private long decodeStartNanos;
+
     private ItemReader<T> itemReader;
 
     private ByteBuffer buffer;
@@ -68,11 +75,30 @@ public class QueryResultIterator<T> implements ResultIterator<T> {
 
     private float currentRank;
 
+    private JoinPlan joinPlan;
+
+    /**
+     * Join results of the current row by join plan slot, reused between rows.
+     */
+    private List<List<Object>> joinResults;
+
     public QueryResultIterator(ReindexerNamespace<?> namespace,
                                Class<T> itemClass,
                                RequestContext requestContext,
                                Query<?> query,
                                int fetchCount) {
+        this(namespace, itemClass, requestContext, query, fetchCount, ReindexerMetrics.NOOP, null);
+    }
+
+    QueryResultIterator(ReindexerNamespace<?> namespace,
+                        Class<T> itemClass,
+                        RequestContext requestContext,
+                        Query<?> query,
+                        int fetchCount,
+                        ReindexerMetrics metrics,
+                        LongConsumer decodeListener) {
+        this.metrics = metrics;
+        this.decodeListener = decodeListener;
         this.namespace = namespace;
         this.itemClass = itemClass;
         this.requestContext = requestContext;
@@ -89,12 +115,7 @@ public class QueryResultIterator<T> implements ResultIterator<T> {
             if (queryResult.isJson()) {
                 throw new UnsupportedOperationException("Query result in json format is not supported");
             } else {
-                CtagMatcher ctagMatcher = new CtagMatcher();
-                PayloadType payloadType = namespace.getPayloadType();
-                if (payloadType != null) {
-                    ctagMatcher.read(payloadType);
-                }
-                itemReader = new CjsonItemReader<>(itemClass, ctagMatcher);
+                itemReader = namespace.getItemReader(itemClass);
             }
         }
     }
@@ -110,6 +131,7 @@ public class QueryResultIterator<T> implements ResultIterator<T> {
      * @return read item
      * @throws IllegalStateException if the iterator is closed or there is no data to read
      */
+    @SuppressWarnings("unchecked")
     public T next() {
         if (closed) {
             throw new IllegalStateException("Iterator is closed");
@@ -123,14 +145,23 @@ public class QueryResultIterator<T> implements ResultIterator<T> {
             fetchResults();
         }
 
+        long start = System.nanoTime();
+        if (position == 0) {
+            decodeStartNanos = start;
+        }
         ItemParams params = readItemParams();
         T item;
         if (params.cptr != 0) {
-            ByteBuffer buffer = NativeUtils.getNativeBuffer(queryResult.getResultsPtr(), params.cptr, params.nsId);
-            item = itemReader.readItem(buffer);
+            NativeByteBuffer buffer = NativeUtils.getNativeBuffer(queryResult.getResultsPtr(), params.cptr,
+                    params.nsId);
+            try {
+                item = itemReader.readItem(buffer);
+            } finally {
+                NativeUtils.freeNativeBuffer(buffer);
+            }
         } else {
             int length = (int) buffer.getUInt32();
-            item = itemReader.readItem(new ByteBuffer(buffer.getBytes(length)).rewind());
+            item = itemReader.readItem(buffer.getSlice(length));
         }
 
         long subNsRes = -1L;
@@ -140,45 +171,53 @@ public class QueryResultIterator<T> implements ResultIterator<T> {
 
         int nsIndexOffset = getJoinedNsIndexOffset(params.nsId);
 
-        Map<String, List<Object>> subItemsMap = new HashMap<>();
-        for (int nsIndex = 0; nsIndex < subNsRes; nsIndex++) {
-            if (query == null) {
+        if (subNsRes > 0 && query != null) {
+            if (joinPlan == null) {
+                joinPlan = query.getJoinPlan(itemClass);
+                joinResults = joinPlan.newJoinResults();
+            }
+            for (int nsIndex = 0; nsIndex < subNsRes; nsIndex++) {
+                readSubItems(nsIndexOffset, nsIndex);
+            }
+            joinPlan.assign(item, joinResults);
+        } else {
+            for (int nsIndex = 0; nsIndex < subNsRes; nsIndex++) {
                 skipSubItems();
-            } else {
-                readSubItems(nsIndexOffset, subItemsMap, nsIndex);
             }
         }
 
-        subItemsMap.forEach((key, value) -> writeJoinResult(item, key, value));
-
         position++;
+        decodeNanos += System.nanoTime() - start;
         return item;
 
     }
 
-    private void readSubItems(int nsIndexOffset, Map<String, List<Object>> subItemsMap, int nsIndex) {
-        List<ReindexerNamespace<?>> namespaces = query.getNamespaces();
+    private void readSubItems(int nsIndexOffset, int nsIndex) {
         int nsId = nsIndex + nsIndexOffset;
-        ReindexerNamespace<?> subItemNamespace = namespaces.get(nsId);
-        PayloadType subItemPayloadType = subItemNamespace.getPayloadType();
-        CtagMatcher ctagMatcher = new CtagMatcher();
-        ctagMatcher.read(subItemPayloadType);
-        Class<?> siClass = subItemNamespace.getItemClass();
-        CjsonItemReader<?> subItemItemReader = new CjsonItemReader<>(siClass, ctagMatcher);
-        String joinField = query.getJoinFields().get(nsIndex);
-        List<Object> subItems = subItemsMap.computeIfAbsent(joinField, s -> new ArrayList<>());
+        ReindexerNamespace<?> subItemNamespace = query.getNamespaces().get(nsId);
+        ItemReader<?> subItemItemReader = subItemNamespace.getItemReader(subItemNamespace.getItemClass());
+        int slot = joinPlan.getSlot(nsIndex);
+        List<Object> subItems = joinResults.get(slot);
+        if (subItems == null) {
+            subItems = new ArrayList<>();
+            joinResults.set(slot, subItems);
+        }
 
         int siRes = (int) buffer.getVarUInt();
         for (int i = 0; i < siRes; i++) {
             ItemParams subItemParams = readItemParams();
             Object subItem;
             if (subItemParams.cptr != 0) {
-                ByteBuffer buffer = NativeUtils.getNativeBuffer(queryResult.getResultsPtr(), subItemParams.cptr,
-                        nsId);
-                subItem = subItemItemReader.readItem(buffer);
+                NativeByteBuffer buffer = NativeUtils.getNativeBuffer(queryResult.getResultsPtr(),
+                        subItemParams.cptr, nsId);
+                try {
+                    subItem = subItemItemReader.readItem(buffer);
+                } finally {
+                    NativeUtils.freeNativeBuffer(buffer);
+                }
             } else {
                 int subItemLength = (int) buffer.getUInt32();
-                subItem = subItemItemReader.readItem(new ByteBuffer(buffer.getBytes(subItemLength)).rewind());
+                subItem = subItemItemReader.readItem(buffer.getSlice(subItemLength));
             }
             subItems.add(subItem);
         }
@@ -195,29 +234,6 @@ public class QueryResultIterator<T> implements ResultIterator<T> {
         }
     }
 
-    private void writeJoinResult(T item, String fieldName, List<Object> subItems) {
-        Field field = FieldUtils.getField(item.getClass(), fieldName, true);
-
-        if (field == null || !field.isAnnotationPresent(Transient.class)) {
-            String msg = String.format("Join results omitted: no transient field '%s' found", fieldName);
-            LOGGER.debug(msg);
-        }
-
-        if (field != null) {
-            if (field.getType() == List.class) {
-                BeanPropertyUtils.setProperty(item, fieldName, subItems);
-            } else {
-                if (subItems.size() > 1) {
-                    throw new RuntimeException("Multiple join result found: " + fieldName);
-                } else if (subItems.size() == 0) {
-                    BeanPropertyUtils.setProperty(item, fieldName, null);
-                } else {
-                    BeanPropertyUtils.setProperty(item, fieldName, subItems.get(0));
-                }
-            }
-        }
-    }
-
     private int getJoinedNsIndexOffset(int nsId) {
         if (query == null) {
             return 1;
@@ -317,8 +333,17 @@ public class QueryResultIterator<T> implements ResultIterator<T> {
         if (closed) {
             return;
         }
+        if (position > 0) {
+            requestContext.recordDecode(position, decodeStartNanos, decodeNanos);
+        }
         requestContext.closeResults();
         closed = true;
+        if (position > 0) {
+            metrics.recordDecode(namespace.getName(), position, decodeNanos);
+        }
+        if (decodeListener != null) {
+            decodeListener.accept(decodeNanos);
+        }
     }
 
     private static class ItemParams {
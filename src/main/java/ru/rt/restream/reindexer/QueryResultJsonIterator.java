@@ -16,15 +16,25 @@
 package ru.rt.restream.reindexer;
 
 import org.apache.commons.lang3.NotImplementedException;
+import ru.rt.restream.reindexer.binding.Consts;
 import ru.rt.restream.reindexer.binding.QueryResult;
 import ru.rt.restream.reindexer.binding.RequestContext;
 import ru.rt.restream.reindexer.binding.cproto.ByteBuffer;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 public class QueryResultJsonIterator implements ResultIterator<String> {
 
+    private static final int CHANNEL_BUFFER_SIZE = 64 * 1024;
+
     private final RequestContext requestContext;
 
     private final int fetchCount;
@@ -95,23 +105,73 @@ public class QueryResultJsonIterator implements ResultIterator<String> {
             throw new IllegalStateException("Iterator already uses next()");
         }
 
-        StringBuilder builder = new StringBuilder()
-                .append("{\"")
-                .append(rootName)
-                .append("\":[");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            writeTo(rootName, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
 
-        if (hasNext()) {
-            builder.append(next());
-            while (hasNext()) {
-                builder.append(',').append(next());
-            }
+    /**
+     * Write Query results in JSON format to the output stream and close the iterator.
+     * The raw item bytes are copied to the stream page by page, so memory usage does not depend on the result size.
+     * The stream is neither buffered nor closed by this method.
+     *
+     * @param rootName - Name of root object of output JSON
+     * @param out      - the output stream to write to
+     * @return - the number of written items
+     * @throws IOException           if an I/O error occurs
+     * @throws IllegalStateException if the iterator is closed or iterator already uses next()
+     */
+    public long writeTo(String rootName, OutputStream out) throws IOException {
+        if (closed) {
+            throw new IllegalStateException("Iterator is closed");
         }
 
-        builder.append("]}");
+        if (position > 0) {
+            throw new IllegalStateException("Iterator already uses next()");
+        }
 
-        this.close();
+        try {
+            out.write(("{\"" + rootName + "\":[").getBytes(StandardCharsets.UTF_8));
+            while (hasNext()) {
+                if (needFetch()) {
+                    fetchResults();
+                }
+                if (position > 0) {
+                    out.write(',');
+                }
+                skipItemParams();
+                int length = (int) buffer.getUInt32();
+                buffer.writeTo(out, length);
+                position++;
+            }
+            out.write(']');
+            out.write('}');
+            return position;
+        } finally {
+            close();
+        }
+    }
 
-        return builder.toString();
+    /**
+     * Write Query results in JSON format to the channel and close the iterator.
+     * The raw item bytes are copied to the channel page by page, so memory usage does not depend on the result size.
+     * The channel is not closed by this method.
+     *
+     * @param rootName - Name of root object of output JSON
+     * @param channel  - the channel to write to
+     * @return - the number of written items
+     * @throws IOException           if an I/O error occurs
+     * @throws IllegalStateException if the iterator is closed or iterator already uses next()
+     */
+    public long writeTo(String rootName, WritableByteChannel channel) throws IOException {
+        OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), CHANNEL_BUFFER_SIZE);
+        long written = writeTo(rootName, out);
+        out.flush();
+        return written;
     }
 
     @Override
@@ -170,7 +230,15 @@ public class QueryResultJsonIterator implements ResultIterator<String> {
 
         // skip rank (used for full-text search)
         if (queryResult.isWithRank()) {
-            buffer.getVarUInt();
+            if (queryResult.getRankFormat() == 0) {
+                buffer.getFloat();
+            } else {
+                buffer.getVarUInt();
+            }
+        }
+
+        if (queryResult.isWithShardId() && queryResult.getShardId() == Consts.SHARDING_PROXY_OFF) {
+            buffer.getVarUInt(); // skip shardId
         }
     }
 
@@ -28,10 +28,19 @@ import ru.rt.restream.reindexer.binding.definition.IndexDefinition;
 import ru.rt.restream.reindexer.binding.definition.NamespaceDefinition;
 import ru.rt.restream.reindexer.exceptions.IndexConflictException;
 import ru.rt.restream.reindexer.exceptions.StateInvalidatedException;
+import ru.rt.restream.reindexer.metrics.ReindexerMetrics;
+import ru.rt.restream.reindexer.metrics.SlowQueryLog;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Reindexer implements AutoCloseable {
 
@@ -51,12 +60,37 @@ public class Reindexer implements AutoCloseable {
 
     protected final Map<String, ReindexerNamespace<?>> namespaceMap = new ConcurrentHashMap<>();
 
+    private final QueryCache queryCache;
+
+    private final int queryExecutorPoolSize;
+
+    private final int transactionBatchSize;
+
+    private final ReindexerMetrics metrics;
+
+    private final SlowQueryLog slowQueryLog;
+
+    private volatile ExecutorService queryExecutor;
+
     protected Reindexer(Binding binding) {
+        this(binding, ReindexerSettings.DEFAULT);
+    }
+
+    protected Reindexer(Binding binding, ReindexerSettings settings) {
         this.binding = binding;
+        this.queryCache = settings.getQueryCache();
+        this.queryExecutorPoolSize = settings.getQueryExecutorPoolSize();
+        this.transactionBatchSize = settings.getTransactionBatchSize();
+        this.metrics = settings.getMetrics();
+        this.slowQueryLog = settings.getSlowQueryLog();
     }
 
     @Override
     public void close() {
+        ExecutorService executor = queryExecutor;
+        if (executor != null) {
+            executor.shutdown();
+        }
         binding.close();
     }
 
@@ -102,6 +136,8 @@ public class Reindexer implements AutoCloseable {
                 .dropOnIndexConflict(options.isDropOnIndexesConflict())
                 .dropStorageOnFileFormatError(options.isDropOnFileFormatError())
                 .objCacheItemsCount(options.getObjCacheItemsCount())
+                .itemCacheSize(options.getItemCacheSize())
+                .itemCacheExpireAfterWrite(options.getItemCacheExpireAfterWrite())
                 .indexes(reindexScanner.parseIndexes(itemClass))
                 .reindexer(this)
                 .build();
@@ -132,8 +168,12 @@ public class Reindexer implements AutoCloseable {
      * @param namespaceName namespace name to drop
      */
     public void dropNamespace(String namespaceName) {
-        namespaceMap.remove(namespaceName);
+        ReindexerNamespace<?> namespace = namespaceMap.remove(namespaceName);
         binding.dropNamespace(namespaceName);
+        if (namespace != null) {
+            namespace.invalidateItemCache();
+        }
+        invalidateQueryCache(namespaceName);
     }
 
     /**
@@ -220,6 +260,50 @@ public class Reindexer implements AutoCloseable {
         modifyItem(namespaceName, json, MODE_DELETE, Consts.FORMAT_JSON);
     }
 
+    /**
+     * Inserts the given items data in a batch.
+     *
+     * @param <T>           the item type
+     * @param namespaceName the namespace name
+     * @param items         the items data
+     */
+    public <T> void insertAll(String namespaceName, Collection<T> items) {
+        modifyItems(namespaceName, items, MODE_INSERT);
+    }
+
+    /**
+     * Updates the given items data in a batch.
+     *
+     * @param <T>           the item type
+     * @param namespaceName the namespace name
+     * @param items         the items data
+     */
+    public <T> void updateAll(String namespaceName, Collection<T> items) {
+        modifyItems(namespaceName, items, MODE_UPDATE);
+    }
+
+    /**
+     * Inserts or updates the given items data in a batch.
+     *
+     * @param <T>           the item type
+     * @param namespaceName the namespace name
+     * @param items         the items data
+     */
+    public <T> void upsertAll(String namespaceName, Collection<T> items) {
+        modifyItems(namespaceName, items, MODE_UPSERT);
+    }
+
+    /**
+     * Deletes the given items data in a batch.
+     *
+     * @param <T>           the item type
+     * @param namespaceName the namespace name
+     * @param items         the items data
+     */
+    public <T> void deleteAll(String namespaceName, Collection<T> items) {
+        modifyItems(namespaceName, items, MODE_DELETE);
+    }
+
     /**
      * Begin a unit of work and return the associated namespace Transaction object.
      *
@@ -230,7 +314,7 @@ public class Reindexer implements AutoCloseable {
      */
     public <T> Transaction<T> beginTransaction(String namespaceName, Class<T> itemClass) {
         ReindexerNamespace<T> namespace = getNamespace(namespaceName, itemClass);
-        Transaction<T> transaction = new Transaction<>(namespace, this);
+        Transaction<T> transaction = new Transaction<>(namespace, this, transactionBatchSize);
         transaction.start();
         return transaction;
     }
@@ -261,12 +345,16 @@ public class Reindexer implements AutoCloseable {
                 namespace.updatePayloadType(payloadType);
             }
         }
-        return new QueryResultIterator<>(namespace, itemClass, ctx, null, Integer.MAX_VALUE);
+        return new QueryResultIterator<>(namespace, itemClass, ctx, null, Integer.MAX_VALUE, metrics, null);
     }
 
     public void updateSql(String query) {
         LOGGER.debug(query);
         binding.select(query, false, 0, new long[] {0L});
+        if (queryCache != null) {
+            queryCache.invalidateAll();
+        }
+        namespaceMap.values().forEach(ReindexerNamespace::invalidateItemCache);
     }
 
     /**
@@ -342,6 +430,8 @@ public class Reindexer implements AutoCloseable {
                 ItemSerializer<T> serializer = ItemSerializer.getInstance(item.getClass(), payloadType);
                 byte[] data = serializer.serialize(item);
                 binding.modifyItem(namespace.getName(), data, format, mode, percepts, stateToken);
+                invalidateQueryCache(namespace.getName());
+                namespace.onItemModified(item, format);
                 break;
             } catch (StateInvalidatedException e) {
                 updatePayloadType(namespace);
@@ -349,6 +439,55 @@ public class Reindexer implements AutoCloseable {
         }
     }
 
+    private <T> void modifyItems(String namespaceName, Collection<T> items, int mode) {
+        if (items.isEmpty()) {
+            return;
+        }
+        ReindexerNamespace<?> namespace = getNamespace(namespaceName);
+        String[] percepts = namespace.getPrecepts();
+        for (int i = 0; i < 2; i++) {
+            try {
+                PayloadType payloadType = namespace.getPayloadType();
+                int stateToken = payloadType == null ? 0 : payloadType.getStateToken();
+                List<byte[]> data = serializeItems(items, payloadType);
+                binding.modifyItems(namespace.getName(), data, Consts.FORMAT_C_JSON, mode, percepts, stateToken);
+                invalidateQueryCache(namespace.getName());
+                for (T item : items) {
+                    namespace.onItemModified(item, Consts.FORMAT_C_JSON);
+                }
+                break;
+            } catch (StateInvalidatedException e) {
+                updatePayloadType(namespace);
+            } catch (RuntimeException e) {
+                // the items before the failed one may have been applied
+                onNamespaceModified(namespace.getName());
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Serializes the given items to CJSON, creating a serializer once per item class.
+     *
+     * @param <T>         the item type
+     * @param items       the items to serialize
+     * @param payloadType the namespace payload type
+     * @return the serialized items data
+     */
+    static <T> List<byte[]> serializeItems(Collection<T> items, PayloadType payloadType) {
+        List<byte[]> data = new ArrayList<>(items.size());
+        ItemSerializer<T> serializer = null;
+        Class<?> serializerClass = null;
+        for (T item : items) {
+            if (item.getClass() != serializerClass) {
+                serializerClass = item.getClass();
+                serializer = ItemSerializer.getInstance(serializerClass, payloadType);
+            }
+            data.add(serializer.serialize(item));
+        }
+        return data;
+    }
+
     private void updatePayloadType(ReindexerNamespace<?> namespace) {
         try {
             query(namespace.getName(), namespace.getItemClass()).limit(0).execute().close();
@@ -357,9 +496,86 @@ public class Reindexer implements AutoCloseable {
         }
     }
 
+    /**
+     * Discards client-side cached data of the namespace after a modification of an unknown set of items.
+     *
+     * @param namespaceName the modified namespace name
+     */
+    void onNamespaceModified(String namespaceName) {
+        ReindexerNamespace<?> namespace = namespaceMap.get(namespaceName);
+        if (namespace != null) {
+            namespace.invalidateItemCache();
+        }
+        invalidateQueryCache(namespaceName);
+    }
+
+    /**
+     * Removes cached results of queries that use the given namespace.
+     *
+     * @param namespaceName the modified namespace name
+     */
+    void invalidateQueryCache(String namespaceName) {
+        if (queryCache != null) {
+            queryCache.invalidate(namespaceName);
+        }
+    }
+
     public Binding getBinding() {
         return binding;
     }
 
+    /**
+     * Returns the client metrics, see {@link ReindexerConfiguration#metrics(ReindexerMetrics)}.
+     *
+     * @return the client metrics
+     */
+    public ReindexerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the log of the slow queries, see {@link ReindexerConfiguration#slowQueryHook}.
+     *
+     * @return the log of the slow queries
+     */
+    SlowQueryLog getSlowQueryLog() {
+        return slowQueryLog;
+    }
+
+    /**
+     * Returns the executor used to run parts of a single request concurrently, e.g. batches of
+     * {@link Namespace#getByIds(java.util.Collection)}. The executor is created on first use.
+     *
+     * @return the query executor
+     */
+    Executor getQueryExecutor() {
+        ExecutorService executor = queryExecutor;
+        if (executor == null) {
+            synchronized (this) {
+                executor = queryExecutor;
+                if (executor == null) {
+                    AtomicInteger threadCounter = new AtomicInteger();
+                    executor = Executors.newFixedThreadPool(queryExecutorPoolSize, runnable -> {
+                        Thread thread = new Thread(runnable, "rx-query-" + threadCounter.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    queryExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * Returns the query result cache, or null if the cache is not configured.
+     *
+     * @return the query result cache
+     * @see ReindexerConfiguration#queryCacheSize(int)
+     */
+    public QueryCache getQueryCache() {
+        return queryCache;
+    }
+
 }
 
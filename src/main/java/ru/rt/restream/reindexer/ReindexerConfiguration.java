@@ -17,6 +17,7 @@ package ru.rt.restream.reindexer;
 
 import ru.rt.restream.reindexer.binding.Binding;
 import ru.rt.restream.reindexer.binding.builtin.Builtin;
+import ru.rt.restream.reindexer.binding.builtin.BuiltinAsyncExecutor;
 import ru.rt.restream.reindexer.binding.builtin.server.BuiltinServer;
 import ru.rt.restream.reindexer.binding.cproto.Cproto;
 import ru.rt.restream.reindexer.binding.cproto.DataSourceConfiguration;
@@ -25,6 +26,11 @@ import ru.rt.restream.reindexer.binding.cproto.DataSourceFactoryStrategy;
 import ru.rt.restream.reindexer.convert.FieldConverterRegistry;
 import ru.rt.restream.reindexer.convert.FieldConverterRegistryFactory;
 import ru.rt.restream.reindexer.exceptions.UnimplementedException;
+import ru.rt.restream.reindexer.metrics.ReindexerMetrics;
+import ru.rt.restream.reindexer.metrics.SlowQueryHook;
+import ru.rt.restream.reindexer.metrics.SlowQueryLog;
+import ru.rt.restream.reindexer.tracing.ReindexerTracer;
+import ru.rt.restream.reindexer.tracing.TracingBinding;
 
 import java.net.URI;
 import java.time.Duration;
@@ -54,6 +60,28 @@ public final class ReindexerConfiguration {
 
     private String serverConfigFile = "default-builtin-server-config.yml";
 
+    private int queryCacheSize = 0;
+
+    private Duration queryCacheExpireAfterWrite;
+
+    private int queryExecutorPoolSize = 0;
+
+    private int builtinAsyncPoolSize = Runtime.getRuntime().availableProcessors();
+
+    private int builtinAsyncQueueSize = BuiltinAsyncExecutor.DEFAULT_QUEUE_SIZE;
+
+    private int transactionBatchSize = Transaction.DEFAULT_BATCH_SIZE;
+
+    private ReindexerMetrics metrics = ReindexerMetrics.NOOP;
+
+    private SlowQueryHook slowQueryHook;
+
+    private Duration slowQueryThreshold;
+
+    private double slowQuerySampleRate = 1.0D;
+
+    private ReindexerTracer tracer;
+
     private ReindexerConfiguration() {
 
     }
@@ -161,6 +189,132 @@ public final class ReindexerConfiguration {
         return this;
     }
 
+    /**
+     * Configure the maximum number of query results held by the client-side query cache.
+     * Only queries marked with {@link Query#cached()} are cached. Defaults to 0, which disables the cache.
+     *
+     * @param queryCacheSize the maximum number of cached query results
+     * @return the {@link ReindexerConfiguration} for further customizations
+     */
+    public ReindexerConfiguration queryCacheSize(int queryCacheSize) {
+        this.queryCacheSize = queryCacheSize;
+        return this;
+    }
+
+    /**
+     * Configure the time after which a cached query result expires. By default cached results do not expire
+     * and are discarded only on namespace modification through this connector or on payload type change.
+     *
+     * @param queryCacheExpireAfterWrite the cached query result time to live
+     * @return the {@link ReindexerConfiguration} for further customizations
+     */
+    public ReindexerConfiguration queryCacheExpireAfterWrite(Duration queryCacheExpireAfterWrite) {
+        this.queryCacheExpireAfterWrite = queryCacheExpireAfterWrite;
+        return this;
+    }
+
+    /**
+     * Configure the number of threads used to run parts of a single request concurrently, e.g. batches of
+     * {@link Namespace#getByIds(java.util.Collection)}. Defaults to the connection pool size.
+     *
+     * @param queryExecutorPoolSize the query executor thread count
+     * @return the {@link ReindexerConfiguration} for further customizations
+     */
+    public ReindexerConfiguration queryExecutorPoolSize(int queryExecutorPoolSize) {
+        this.queryExecutorPoolSize = queryExecutorPoolSize;
+        return this;
+    }
+
+    /**
+     * Configure the number of threads running asynchronous transaction calls in the builtin and builtinserver modes,
+     * e.g. {@link Transaction#upsertAsync(Object)}. Defaults to the number of available processors.
+     *
+     * @param builtinAsyncPoolSize the builtin asynchronous call thread count
+     * @return the {@link ReindexerConfiguration} for further customizations
+     */
+    public ReindexerConfiguration builtinAsyncPoolSize(int builtinAsyncPoolSize) {
+        this.builtinAsyncPoolSize = builtinAsyncPoolSize;
+        return this;
+    }
+
+    /**
+     * Configure the maximum number of pending asynchronous transaction calls in the builtin and builtinserver modes.
+     * A new call blocks while the limit is reached. Defaults to 1024.
+     *
+     * @param builtinAsyncQueueSize the maximum number of pending builtin asynchronous calls
+     * @return the {@link ReindexerConfiguration} for further customizations
+     */
+    public ReindexerConfiguration builtinAsyncQueueSize(int builtinAsyncQueueSize) {
+        this.builtinAsyncQueueSize = builtinAsyncQueueSize;
+        return this;
+    }
+
+    /**
+     * Configure the maximum number of items, which a transaction stages on the client side before sending them in
+     * a batch, see {@link Transaction}. 1 disables the staging, so every item is sent by its call. Defaults to 1000.
+     *
+     * @param transactionBatchSize the maximum number of staged transaction items
+     * @return the {@link ReindexerConfiguration} for further customizations
+     */
+    public ReindexerConfiguration transactionBatchSize(int transactionBatchSize) {
+        this.transactionBatchSize = transactionBatchSize;
+        return this;
+    }
+
+    /**
+     * Configure the {@link ReindexerMetrics} to record the client metrics to: command latencies, transport and
+     * connection pool metrics of the cproto binding and the item decoding time. Defaults to
+     * {@link ReindexerMetrics#NOOP}.
+     *
+     * @param metrics the {@link ReindexerMetrics} to use
+     * @return the {@link ReindexerConfiguration} for further customizations
+     */
+    public ReindexerConfiguration metrics(ReindexerMetrics metrics) {
+        this.metrics = Objects.requireNonNull(metrics, "metrics cannot be null");
+        return this;
+    }
+
+    /**
+     * Configure the {@link SlowQueryHook} to pass the queries and rpc calls, which take at least the threshold, to.
+     * A captured event holds the time the call waited for a connection request slot, the round trip time and
+     * the time spent decoding the items, see {@link ru.rt.restream.reindexer.metrics.SlowQueryEvent}. The query text
+     * is rendered for the captured queries only. Disabled by default.
+     *
+     * @param slowQueryHook the {@link SlowQueryHook} to use, e.g. {@link SlowQueryHook#logging()}
+     * @param threshold     the minimum time of a captured query or rpc call
+     * @return the {@link ReindexerConfiguration} for further customizations
+     */
+    public ReindexerConfiguration slowQueryHook(SlowQueryHook slowQueryHook, Duration threshold) {
+        this.slowQueryHook = Objects.requireNonNull(slowQueryHook, "slowQueryHook cannot be null");
+        this.slowQueryThreshold = Objects.requireNonNull(threshold, "threshold cannot be null");
+        return this;
+    }
+
+    /**
+     * Configure the fraction of the slow queries and rpc calls to pass to the {@link SlowQueryHook}, from 0 to 1.
+     * Defaults to 1.
+     *
+     * @param slowQuerySampleRate the fraction of the slow queries to capture
+     * @return the {@link ReindexerConfiguration} for further customizations
+     */
+    public ReindexerConfiguration slowQuerySampleRate(double slowQuerySampleRate) {
+        this.slowQuerySampleRate = slowQuerySampleRate;
+        return this;
+    }
+
+    /**
+     * Configure the {@link ReindexerTracer} to trace the binding calls. A span is started for every binding and
+     * transaction call; the cproto binding records the connection, encode and network phases of a call, and the
+     * decoding of the query result items is recorded for every binding. The calls are not traced by default.
+     *
+     * @param tracer the {@link ReindexerTracer} to use
+     * @return the {@link ReindexerConfiguration} for further customizations
+     */
+    public ReindexerConfiguration tracer(ReindexerTracer tracer) {
+        this.tracer = Objects.requireNonNull(tracer, "tracer cannot be null");
+        return this;
+    }
+
     /**
      * Build and return reindexer connector instance.
      *
@@ -181,24 +335,47 @@ public final class ReindexerConfiguration {
             }
             uris.add(uri);
         }
-        return new Reindexer(getBinding(protocol, uris));
+        QueryCache queryCache = queryCacheSize > 0
+                ? new QueryCache(queryCacheSize, queryCacheExpireAfterWrite)
+                : null;
+        SlowQueryLog slowQueryLog = slowQueryHook != null
+                ? new SlowQueryLog(slowQueryHook, slowQueryThreshold, slowQuerySampleRate)
+                : SlowQueryLog.DISABLED;
+        ReindexerSettings settings = ReindexerSettings.builder()
+                .queryCache(queryCache)
+                .queryExecutorPoolSize(queryExecutorPoolSize > 0 ? queryExecutorPoolSize : connectionPoolSize)
+                .transactionBatchSize(transactionBatchSize)
+                .metrics(metrics)
+                .slowQueryLog(slowQueryLog)
+                .build();
+        Binding binding = getBinding(protocol, uris, slowQueryLog);
+        if (tracer != null) {
+            binding = new TracingBinding(binding, tracer);
+        }
+        return new Reindexer(binding, settings);
     }
 
-    private Binding getBinding(String protocol, List<URI> uris) {
+    private Binding getBinding(String protocol, List<URI> uris, SlowQueryLog slowQueryLog) {
         switch (protocol) {
             case "cproto":
                 DataSourceConfiguration dataSourceConfig = DataSourceConfiguration.builder()
                         .urls(urls)
                         .allowUnlistedDataSource(allowUnlistedDataSource)
                         .build();
-                return new Cproto(dataSourceFactory, dataSourceConfig, connectionPoolSize, requestTimeout);
+                return new Cproto(dataSourceFactory, dataSourceConfig, connectionPoolSize, requestTimeout, metrics,
+                        slowQueryLog);
             case "builtin":
-                return new Builtin(uris.get(0), requestTimeout);
+                return new Builtin(uris.get(0), requestTimeout, getBuiltinAsyncExecutor());
             case "builtinserver":
-                return new BuiltinServer(uris.get(0), serverConfigFile, serverStartupTimeout, requestTimeout);
+                return new BuiltinServer(uris.get(0), serverConfigFile, serverStartupTimeout, requestTimeout,
+                        getBuiltinAsyncExecutor());
             default:
                 throw new UnimplementedException("Protocol: '" + protocol + "' is not suppored");
         }
     }
 
+    private BuiltinAsyncExecutor getBuiltinAsyncExecutor() {
+        return new BuiltinAsyncExecutor(builtinAsyncPoolSize, builtinAsyncQueueSize);
+    }
+
 }
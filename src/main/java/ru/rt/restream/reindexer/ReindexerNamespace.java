@@ -17,10 +17,27 @@ package ru.rt.restream.reindexer;
 
 import lombok.AccessLevel;
 import lombok.Getter;
+import ru.rt.restream.reindexer.binding.Consts;
+import ru.rt.restream.reindexer.binding.cproto.ItemReader;
+import ru.rt.restream.reindexer.binding.cproto.cjson.CjsonItemReader;
+import ru.rt.restream.reindexer.binding.cproto.cjson.CtagMatcher;
 import ru.rt.restream.reindexer.binding.cproto.cjson.PayloadType;
-
+import ru.rt.restream.reindexer.util.Pair;
+import ru.rt.restream.reindexer.vector.params.KnnSearchParam;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntFunction;
 
 /**
  * Contains the reindexer namespace configuration and methods for manipulating the linked reindexer namespace data.
@@ -28,6 +45,11 @@ import java.util.Objects;
 @Getter
 public class ReindexerNamespace<T> implements Namespace<T> {
 
+    /**
+     * The maximum number of primary key values passed to a single query by {@link #getByIds(Collection)}.
+     */
+    static final int GET_BY_IDS_BATCH_SIZE = 500;
+
     @Getter(value = AccessLevel.NONE)
     private final Reindexer reindexer;
 
@@ -92,6 +114,20 @@ public class ReindexerNamespace<T> implements Namespace<T> {
     @Getter
     private volatile PayloadType payloadType;
 
+    /**
+     * The client-side cache of items keyed by the primary key, null if the cache is not configured.
+     */
+    private final ItemCache<T> itemCache;
+
+    @Getter(value = AccessLevel.NONE)
+    private final PrimaryKey primaryKey;
+
+    /**
+     * Item readers for the current payload type.
+     */
+    @Getter(value = AccessLevel.NONE)
+    private volatile ItemReaders itemReaders;
+
     /**
      * Get the reindexer namespace builder object.
      *
@@ -116,6 +152,10 @@ public class ReindexerNamespace<T> implements Namespace<T> {
                 .filter(Objects::nonNull)
                 .toArray(String[]::new);
         this.reindexer = builder.reindexer;
+        this.itemCache = builder.itemCacheSize > 0
+                ? new ItemCache<>(builder.itemCacheSize, builder.itemCacheExpireAfterWrite)
+                : null;
+        this.primaryKey = PrimaryKey.of(itemClass);
     }
 
     /**
@@ -128,6 +168,9 @@ public class ReindexerNamespace<T> implements Namespace<T> {
         if (this.payloadType == null || this.payloadType.getVersion() < payloadType.getVersion()
                 || this.payloadType.getStateToken() != payloadType.getStateToken()) {
             this.payloadType = payloadType;
+            if (reindexer != null) {
+                reindexer.invalidateQueryCache(name);
+            }
         }
     }
 
@@ -176,11 +219,210 @@ public class ReindexerNamespace<T> implements Namespace<T> {
         reindexer.delete(name, item);
     }
 
+    @Override
+    public void insertAll(Collection<T> items) {
+        reindexer.insertAll(name, items);
+    }
+
+    @Override
+    public void upsertAll(Collection<T> items) {
+        reindexer.upsertAll(name, items);
+    }
+
+    @Override
+    public void updateAll(Collection<T> items) {
+        reindexer.updateAll(name, items);
+    }
+
+    @Override
+    public void deleteAll(Collection<T> items) {
+        reindexer.deleteAll(name, items);
+    }
+
     @Override
     public Query<T> query() {
         return reindexer.query(name, itemClass);
     }
 
+    @Override
+    public T getById(Object id) {
+        PrimaryKey primaryKey = getPrimaryKey();
+        if (itemCache == null) {
+            return query().where(primaryKey.getIndexName(), Query.Condition.EQ, id).findOne().orElse(null);
+        }
+        Object key = PrimaryKey.normalize(id);
+        T item = itemCache.get(key);
+        if (item == null) {
+            long generation = itemCache.getGeneration();
+            item = query().where(primaryKey.getIndexName(), Query.Condition.EQ, id).findOne().orElse(null);
+            if (item != null) {
+                itemCache.putLoaded(key, item, generation);
+            }
+        }
+        return item;
+    }
+
+    @Override
+    public List<T> getByIds(Collection<?> ids) {
+        PrimaryKey primaryKey = getPrimaryKey();
+        Map<Object, T> found = new HashMap<>();
+        Set<Object> missing = new LinkedHashSet<>();
+        for (Object id : ids) {
+            Object key = PrimaryKey.normalize(id);
+            T item = itemCache == null ? null : itemCache.get(key);
+            if (item != null) {
+                found.put(key, item);
+            } else {
+                missing.add(id);
+            }
+        }
+        if (!missing.isEmpty()) {
+            long generation = itemCache == null ? 0L : itemCache.getGeneration();
+            List<T> items = loadByIds(primaryKey, new ArrayList<>(missing));
+            for (T item : items) {
+                Object key = primaryKey.getValue(item);
+                found.put(key, item);
+                if (itemCache != null) {
+                    itemCache.putLoaded(key, item, generation);
+                }
+            }
+        }
+        List<T> result = new ArrayList<>(ids.size());
+        for (Object id : ids) {
+            result.add(found.get(PrimaryKey.normalize(id)));
+        }
+        return result;
+    }
+
+    /**
+     * Splits the primary key values into batches of nearly equal size, not larger than
+     * {@link #GET_BY_IDS_BATCH_SIZE}, and executes a query per batch concurrently.
+     */
+    private List<T> loadByIds(PrimaryKey primaryKey, List<Object> ids) {
+        int batchCount = (ids.size() + GET_BY_IDS_BATCH_SIZE - 1) / GET_BY_IDS_BATCH_SIZE;
+        if (batchCount <= 1) {
+            return query().where(primaryKey.getIndexName(), Query.Condition.SET, ids).toList();
+        }
+        int batchSize = (ids.size() + batchCount - 1) / batchCount;
+        List<CompletableFuture<List<T>>> futures = new ArrayList<>(batchCount - 1);
+        for (int from = batchSize; from < ids.size(); from += batchSize) {
+            List<Object> batch = ids.subList(from, Math.min(from + batchSize, ids.size()));
+            futures.add(CompletableFuture.supplyAsync(
+                    () -> query().where(primaryKey.getIndexName(), Query.Condition.SET, batch).toList(),
+                    reindexer.getQueryExecutor()));
+        }
+        List<T> items = new ArrayList<>(ids.size());
+        items.addAll(query().where(primaryKey.getIndexName(), Query.Condition.SET, ids.subList(0, batchSize))
+                .toList());
+        for (CompletableFuture<List<T>> future : futures) {
+            items.addAll(join(future));
+        }
+        return items;
+    }
+
+    @Override
+    public List<Pair<List<T>, float[]>> knnSearch(String indexName, float[][] vectors, KnnSearchParam params) {
+        return knnSearch(vectors.length, i -> query().whereKnn(indexName, vectors[i], params));
+    }
+
+    @Override
+    public List<Pair<List<T>, float[]>> knnSearch(String indexName, float[] matrix, int dimension,
+                                                  KnnSearchParam params) {
+        if (dimension <= 0 || matrix.length % dimension != 0) {
+            throw new IllegalArgumentException(String.format(
+                    "Matrix length %d is not a multiple of the dimension %d", matrix.length, dimension));
+        }
+        return knnSearch(matrix.length / dimension,
+                i -> query().whereKnn(indexName, matrix, i * dimension, dimension, params));
+    }
+
+    /**
+     * Executes the KNN queries concurrently, the first one on the calling thread and the others on the query executor.
+     */
+    private List<Pair<List<T>, float[]>> knnSearch(int count, IntFunction<Query<T>> queries) {
+        List<Pair<List<T>, float[]>> results = new ArrayList<>(count);
+        if (count == 0) {
+            return results;
+        }
+        List<CompletableFuture<Pair<List<T>, float[]>>> futures = new ArrayList<>(count - 1);
+        for (int i = 1; i < count; i++) {
+            int index = i;
+            futures.add(CompletableFuture.supplyAsync(() -> queries.apply(index).executeAllWithRank(),
+                    reindexer.getQueryExecutor()));
+        }
+        results.add(queries.apply(0).executeAllWithRank());
+        for (CompletableFuture<Pair<List<T>, float[]>> future : futures) {
+            results.add(join(future));
+        }
+        return results;
+    }
+
+    static <R> R join(CompletableFuture<R> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    PrimaryKey getPrimaryKey() {
+        if (primaryKey == null) {
+            String msg = String.format("Namespace '%s' item class %s has no single-field primary key", name,
+                    itemClass.getName());
+            throw new UnsupportedOperationException(msg);
+        }
+        return primaryKey;
+    }
+
+    /**
+     * Returns an item reader for the current payload type. Readers are shared by all queries until the payload
+     * type changes.
+     *
+     * @param readerItemClass the class of items to read
+     * @param <S>             the type of items to read
+     * @return the item reader
+     */
+    <S> ItemReader<S> getItemReader(Class<S> readerItemClass) {
+        PayloadType payloadType = this.payloadType;
+        ItemReaders readers = itemReaders;
+        if (readers == null || readers.payloadType != payloadType) {
+            readers = new ItemReaders(payloadType);
+            itemReaders = readers;
+        }
+        return readers.get(readerItemClass);
+    }
+
+    /**
+     * Keeps the item cache consistent with an item modification made through this client. The modification discards
+     * the cached item: the passed item is not cached, since the caller may change it later, and the stored item may
+     * differ from it.
+     *
+     * @param item   the modified item, or its json representation
+     * @param format the item format
+     */
+    void onItemModified(Object item, int format) {
+        if (itemCache == null || primaryKey == null) {
+            return;
+        }
+        if (format != Consts.FORMAT_C_JSON) {
+            itemCache.invalidateAll();
+        } else {
+            itemCache.invalidate(primaryKey.getValue(item));
+        }
+    }
+
+    /**
+     * Discards all cached items, e.g. after an update or delete query.
+     */
+    void invalidateItemCache() {
+        if (itemCache != null) {
+            itemCache.invalidateAll();
+        }
+    }
+
     @Override
     public void putMeta(String key, String data) {
         reindexer.getBinding().putMeta(name, key, data);
@@ -201,6 +443,31 @@ public class ReindexerNamespace<T> implements Namespace<T> {
         reindexer.updateSql(query);
     }
 
+    /**
+     * Item readers that share a ctag matcher built from a payload type.
+     */
+    private static final class ItemReaders {
+
+        private final PayloadType payloadType;
+
+        private final CtagMatcher ctagMatcher = new CtagMatcher();
+
+        private final Map<Class<?>, ItemReader<?>> readers = new ConcurrentHashMap<>();
+
+        private ItemReaders(PayloadType payloadType) {
+            this.payloadType = payloadType;
+            if (payloadType != null) {
+                ctagMatcher.read(payloadType);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private <S> ItemReader<S> get(Class<S> itemClass) {
+            return (ItemReader<S>) readers.computeIfAbsent(itemClass, c -> new CjsonItemReader<>(c, ctagMatcher));
+        }
+
+    }
+
     /**
      * Reindexer namespace builder.
      */
@@ -214,6 +481,8 @@ public class ReindexerNamespace<T> implements Namespace<T> {
         private boolean disableObjCache;
         private long objCacheItemsCount;
         private List<ReindexerIndex> indexes;
+        private int itemCacheSize;
+        private Duration itemCacheExpireAfterWrite;
         public Reindexer reindexer;
 
         private Builder() {
@@ -318,6 +587,28 @@ public class ReindexerNamespace<T> implements Namespace<T> {
             return this;
         }
 
+        /**
+         * Set the maximum number of items held by the client-side item cache, 0 disables the cache.
+         *
+         * @param itemCacheSize the maximum number of cached items
+         * @return this {@link Builder} for further customization
+         */
+        public Builder<T> itemCacheSize(int itemCacheSize) {
+            this.itemCacheSize = itemCacheSize;
+            return this;
+        }
+
+        /**
+         * Set the time after which a cached item expires.
+         *
+         * @param itemCacheExpireAfterWrite the cached item time to live, null if items never expire
+         * @return this {@link Builder} for further customization
+         */
+        public Builder<T> itemCacheExpireAfterWrite(Duration itemCacheExpireAfterWrite) {
+            this.itemCacheExpireAfterWrite = itemCacheExpireAfterWrite;
+            return this;
+        }
+
         /**
          * Bind namespace to the {@link Reindexer} object.
          *
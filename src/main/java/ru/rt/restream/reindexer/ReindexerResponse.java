@@ -17,16 +17,35 @@ package ru.rt.restream.reindexer;
 
 import ru.rt.restream.reindexer.binding.Consts;
 
+import java.nio.ByteBuffer;
+
 /**
  * Contains reindexer server response.
  */
 public class ReindexerResponse {
 
+    /**
+     * A successful response without arguments.
+     */
+    public static final ReindexerResponse OK = new ReindexerResponse(Consts.ERR_OK, null, new Object[0]);
+
     private final int code;
 
     private final String errorMessage;
 
-    private final Object[] arguments;
+    private final long handle;
+
+    private final ByteBuffer data;
+
+    private volatile Object[] arguments;
+
+    private final long startNanos;
+
+    private final long queueNanos;
+
+    private final long encodeNanos;
+
+    private final long roundTripNanos;
 
     /**
      * Creates new instance.
@@ -36,9 +55,50 @@ public class ReindexerResponse {
      * @param arguments    response arguments
      */
     public ReindexerResponse(int code, String errorMessage, Object[] arguments) {
+        this(code, errorMessage, arguments, 0L, -1L, -1L, -1L);
+    }
+
+    /**
+     * Creates new instance with the timings of the call, measured by the connection.
+     *
+     * @param code           if the value is different from '0' - the answer contains an error.
+     * @param errorMessage   reindexer server error message.
+     * @param arguments      response arguments
+     * @param startNanos     the {@link System#nanoTime()} of the call start
+     * @param queueNanos     the time the call waited for a free request slot of the connection, in nanoseconds
+     * @param encodeNanos    the time spent encoding the request, in nanoseconds
+     * @param roundTripNanos the time from sending the request to receiving the response, in nanoseconds
+     */
+    public ReindexerResponse(int code, String errorMessage, Object[] arguments, long startNanos, long queueNanos,
+                             long encodeNanos, long roundTripNanos) {
         this.code = code;
         this.errorMessage = errorMessage;
         this.arguments = arguments;
+        this.handle = 0L;
+        this.data = null;
+        this.startNanos = startNanos;
+        this.queueNanos = queueNanos;
+        this.encodeNanos = encodeNanos;
+        this.roundTripNanos = roundTripNanos;
+    }
+
+    /**
+     * Creates new instance with primitive arguments. Used by the builtin adapter to avoid boxing of native handles.
+     *
+     * @param code         if the value is different from '0' - the answer contains an error.
+     * @param errorMessage reindexer server error message.
+     * @param handle       a native handle, such as a query results pointer or a transaction id, 0 if none
+     * @param data         a direct buffer over the response data in native memory, may be null
+     */
+    public ReindexerResponse(int code, String errorMessage, long handle, ByteBuffer data) {
+        this.code = code;
+        this.errorMessage = errorMessage;
+        this.handle = handle;
+        this.data = data;
+        this.startNanos = 0L;
+        this.queueNanos = -1L;
+        this.encodeNanos = -1L;
+        this.roundTripNanos = -1L;
     }
 
     /**
@@ -74,6 +134,67 @@ public class ReindexerResponse {
      * @return the current response arguments
      */
     public Object[] getArguments() {
+        Object[] arguments = this.arguments;
+        if (arguments == null) {
+            arguments = new Object[]{handle, data};
+            this.arguments = arguments;
+        }
         return arguments;
     }
+
+    /**
+     * Get the native handle of the response created by the builtin adapter.
+     *
+     * @return the native handle, 0 if the response has no handle
+     */
+    public long getHandle() {
+        return handle;
+    }
+
+    /**
+     * Get the data of the response created by the builtin adapter. The data is a view over native memory, which is
+     * valid until the native results of the response are freed.
+     *
+     * @return the direct buffer over the response data, null if the response has no data
+     */
+    public ByteBuffer getData() {
+        return data;
+    }
+
+    /**
+     * Get the {@link System#nanoTime()} of the call start, which the timings of the call follow.
+     *
+     * @return the call start time, 0 if it is not measured
+     */
+    public long getStartNanos() {
+        return startNanos;
+    }
+
+    /**
+     * Get the time the call waited for a free request slot of the connection.
+     *
+     * @return the queueing time in nanoseconds, -1 if it is not measured
+     */
+    public long getQueueNanos() {
+        return queueNanos;
+    }
+
+    /**
+     * Get the time spent encoding the request.
+     *
+     * @return the encoding time in nanoseconds, -1 if it is not measured
+     */
+    public long getEncodeNanos() {
+        return encodeNanos;
+    }
+
+    /**
+     * Get the time from sending the request to receiving the response, i.e. the network and server time.
+     *
+     * @return the round trip time in nanoseconds, -1 if it is not measured
+     */
+    public long getRoundTripNanos() {
+        return roundTripNanos;
+    }
+
 }
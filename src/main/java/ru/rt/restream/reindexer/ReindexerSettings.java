@@ -0,0 +1,205 @@
+/*
+ * Copyright 2020 Restream
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.rt.restream.reindexer;
+
+import ru.rt.restream.reindexer.metrics.ReindexerMetrics;
+import ru.rt.restream.reindexer.metrics.SlowQueryLog;
+
+import java.util.Objects;
+
+/**
+ * The client side settings of a {@link Reindexer} instance, which are built by {@link ReindexerConfiguration}.
+ */
+public final class ReindexerSettings {
+
+    /**
+     * The settings with the default values.
+     */
+    public static final ReindexerSettings DEFAULT = builder().build();
+
+    /**
+     * The cache of the query results, null if the results are not cached.
+     */
+    private final QueryCache queryCache;
+
+    /**
+     * The number of threads, which run parts of a single request concurrently.
+     */
+    private final int queryExecutorPoolSize;
+
+    /**
+     * The maximum number of items, which are sent by a transaction in one batch.
+     */
+    private final int transactionBatchSize;
+
+    /**
+     * The client metrics.
+     */
+    private final ReindexerMetrics metrics;
+
+    /**
+     * The log of the slow queries.
+     */
+    private final SlowQueryLog slowQueryLog;
+
+    private ReindexerSettings(Builder builder) {
+        queryCache = builder.queryCache;
+        queryExecutorPoolSize = builder.queryExecutorPoolSize;
+        transactionBatchSize = builder.transactionBatchSize;
+        metrics = builder.metrics;
+        slowQueryLog = builder.slowQueryLog;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Returns the cache of the query results.
+     *
+     * @return the {@link QueryCache}, null if the results are not cached
+     */
+    public QueryCache getQueryCache() {
+        return queryCache;
+    }
+
+    /**
+     * Returns the number of threads, which run parts of a single request concurrently.
+     *
+     * @return the query executor pool size
+     */
+    public int getQueryExecutorPoolSize() {
+        return queryExecutorPoolSize;
+    }
+
+    /**
+     * Returns the maximum number of items, which are sent by a transaction in one batch.
+     *
+     * @return the transaction batch size
+     */
+    public int getTransactionBatchSize() {
+        return transactionBatchSize;
+    }
+
+    /**
+     * Returns the client metrics.
+     *
+     * @return the {@link ReindexerMetrics}
+     */
+    public ReindexerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the log of the slow queries.
+     *
+     * @return the {@link SlowQueryLog}
+     */
+    public SlowQueryLog getSlowQueryLog() {
+        return slowQueryLog;
+    }
+
+    /**
+     * Builder for the {@link Reindexer} settings.
+     */
+    public static class Builder {
+
+        private QueryCache queryCache;
+
+        private int queryExecutorPoolSize = Runtime.getRuntime().availableProcessors();
+
+        private int transactionBatchSize = Transaction.DEFAULT_BATCH_SIZE;
+
+        private ReindexerMetrics metrics = ReindexerMetrics.NOOP;
+
+        private SlowQueryLog slowQueryLog = SlowQueryLog.DISABLED;
+
+        /**
+         * Private constructor with default values for use in the method builder() only.
+         */
+        private Builder() {
+        }
+
+        /**
+         * Configure the cache of the query results.
+         *
+         * @param queryCache the {@link QueryCache}, null to not cache the results
+         * @return the {@link Builder} for further customizations
+         */
+        public Builder queryCache(QueryCache queryCache) {
+            this.queryCache = queryCache;
+            return this;
+        }
+
+        /**
+         * Configure the number of threads, which run parts of a single request concurrently.
+         *
+         * @param queryExecutorPoolSize the query executor pool size
+         * @return the {@link Builder} for further customizations
+         */
+        public Builder queryExecutorPoolSize(int queryExecutorPoolSize) {
+            this.queryExecutorPoolSize = queryExecutorPoolSize;
+            return this;
+        }
+
+        /**
+         * Configure the maximum number of items, which are sent by a transaction in one batch.
+         *
+         * @param transactionBatchSize the transaction batch size
+         * @return the {@link Builder} for further customizations
+         */
+        public Builder transactionBatchSize(int transactionBatchSize) {
+            if (transactionBatchSize <= 0) {
+                throw new IllegalArgumentException("transactionBatchSize must be positive");
+            }
+            this.transactionBatchSize = transactionBatchSize;
+            return this;
+        }
+
+        /**
+         * Configure the client metrics.
+         *
+         * @param metrics the {@link ReindexerMetrics} to use
+         * @return the {@link Builder} for further customizations
+         */
+        public Builder metrics(ReindexerMetrics metrics) {
+            this.metrics = Objects.requireNonNull(metrics, "metrics cannot be null");
+            return this;
+        }
+
+        /**
+         * Configure the log of the slow queries.
+         *
+         * @param slowQueryLog the {@link SlowQueryLog} to use
+         * @return the {@link Builder} for further customizations
+         */
+        public Builder slowQueryLog(SlowQueryLog slowQueryLog) {
+            this.slowQueryLog = Objects.requireNonNull(slowQueryLog, "slowQueryLog cannot be null");
+            return this;
+        }
+
+        /**
+         * Build and return the {@link Reindexer} settings.
+         *
+         * @return the {@link ReindexerSettings}
+         */
+        public ReindexerSettings build() {
+            return new ReindexerSettings(this);
+        }
+
+    }
+
+}
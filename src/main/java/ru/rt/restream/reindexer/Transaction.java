@@ -24,18 +24,43 @@ import ru.rt.restream.reindexer.binding.cproto.cjson.PayloadType;
 import ru.rt.restream.reindexer.exceptions.ReindexerExceptionFactory;
 import ru.rt.restream.reindexer.exceptions.StateInvalidatedException;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.function.Function;
 
 /**
  * An object that represents the context of a transaction.
+ * <p>
+ * The items of the synchronous modifications (i.e. {@link #insert(Object)}) are staged on the client side and sent in
+ * batches of up to {@link #getBatchSize()} items or {@link #MAX_BATCH_BYTES} bytes, so an error of a staged item is
+ * thrown by the call, which sends its batch, or by {@link #commit()}. The staged items are sent before a
+ * {@link #query()} is created. The asynchronous modifications (i.e. {@link #insertAsync(Object)}) are sent at once,
+ * with at most {@link #MAX_PENDING_ASYNC} of them pending.
  */
 public class Transaction<T> {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(Transaction.class);
 
+    /**
+     * The default maximum number of staged items.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    /**
+     * The maximum total size of staged items data.
+     */
+    public static final int MAX_BATCH_BYTES = 1024 * 1024;
+
+    /**
+     * The maximum number of pending asynchronous modifications. A new one waits for the oldest while the limit is
+     * reached.
+     */
+    public static final int MAX_PENDING_ASYNC = 1024;
+
     /**
      * Namespace in which the transaction is executed.
      */
@@ -47,9 +72,29 @@ public class Transaction<T> {
     private final Reindexer reindexer;
 
     /**
-     * The futures list.
+     * The pending futures of asynchronous modifications, the oldest first.
+     */
+    private final Deque<CompletableFuture<?>> futures = new ArrayDeque<>();
+
+    /**
+     * The first failed future of asynchronous modifications, which is already removed from the pending ones.
+     */
+    private CompletableFuture<?> failedFuture;
+
+    /**
+     * The maximum number of staged items, 1 disables the staging.
+     */
+    private final int batchSize;
+
+    /**
+     * The staged items of synchronous modifications.
      */
-    private final List<CompletableFuture<?>> futures = new ArrayList<>();
+    private final List<StagedItem> stagedItems = new ArrayList<>();
+
+    /**
+     * The total size of staged items data.
+     */
+    private int stagedBytes;
 
     /**
      * Indicates that the current transaction is started.
@@ -73,8 +118,32 @@ public class Transaction<T> {
      * @param reindexer   a binding to Reindexer instance
      */
     public Transaction(ReindexerNamespace<T> namespace, Reindexer reindexer) {
+        this(namespace, reindexer, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Creates an instance.
+     *
+     * @param namespace the namespace
+     * @param reindexer a binding to Reindexer instance
+     * @param batchSize the maximum number of staged items, 1 disables the staging
+     */
+    public Transaction(ReindexerNamespace<T> namespace, Reindexer reindexer, int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be positive");
+        }
         this.namespace = namespace;
         this.reindexer = reindexer;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Returns the maximum number of staged items of synchronous modifications.
+     *
+     * @return the maximum number of staged items
+     */
+    public int getBatchSize() {
+        return batchSize;
     }
 
     /**
@@ -94,7 +163,7 @@ public class Transaction<T> {
 
     /**
      * Commits the current transaction.
-     * Waits for worker threads to finish processing async requests.
+     * Sends the staged items and waits for worker threads to finish processing async requests.
      *
      * @throws IllegalStateException                    if the current transaction is finalized
      * @throws java.util.concurrent.CompletionException if there is an error while processing async requests
@@ -104,8 +173,10 @@ public class Transaction<T> {
         if (!started) {
             return;
         }
-        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        flush();
+        pendingFutures().join();
         transactionContext.commit();
+        reindexer.onNamespaceModified(namespace.getName());
         finalized = true;
         LOGGER.debug("rx: transaction finalized with commit");
     }
@@ -119,12 +190,52 @@ public class Transaction<T> {
         if (!started || finalized) {
             return;
         }
-        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).exceptionally(e -> null).join();
+        stagedItems.clear();
+        stagedBytes = 0;
+        pendingFutures().exceptionally(e -> null).join();
         transactionContext.rollback();
         finalized = true;
         LOGGER.debug("rx: transaction finalized with rollback");
     }
 
+    private CompletableFuture<Void> pendingFutures() {
+        List<CompletableFuture<?>> pending;
+        synchronized (futures) {
+            pending = new ArrayList<>(futures);
+            if (failedFuture != null) {
+                pending.add(failedFuture);
+            }
+        }
+        return CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0]));
+    }
+
+    /**
+     * Sends the staged items of synchronous modifications.
+     *
+     * @throws IllegalStateException if the current transaction is finalized
+     */
+    public void flush() {
+        checkFinalized();
+        if (stagedItems.isEmpty()) {
+            return;
+        }
+        try {
+            int from = 0;
+            while (from < stagedItems.size()) {
+                StagedItem first = stagedItems.get(from);
+                int to = from + 1;
+                while (to < stagedItems.size() && stagedItems.get(to).isSameBatch(first)) {
+                    to++;
+                }
+                modifyStagedItems(stagedItems.subList(from, to), first.mode, first.format, first.stateToken);
+                from = to;
+            }
+        } finally {
+            stagedItems.clear();
+            stagedBytes = 0;
+        }
+    }
+
     private void checkFinalized() {
         if (finalized) {
             throw new IllegalStateException("Transaction is finalized");
@@ -227,6 +338,54 @@ public class Transaction<T> {
         modifyItem(json, Reindexer.MODE_DELETE, Consts.FORMAT_JSON);
     }
 
+    /**
+     * Inserts the given items data in the current transaction in a batch.
+     * Starts a transaction if not started.
+     *
+     * @param items the items data
+     * @throws IllegalStateException if the current transaction is finalized
+     */
+    public void insertAll(Collection<T> items) {
+        start();
+        modifyItems(items, Reindexer.MODE_INSERT);
+    }
+
+    /**
+     * Updates the given items data in the current transaction in a batch.
+     * Starts a transaction if not started.
+     *
+     * @param items the items data
+     * @throws IllegalStateException if the current transaction is finalized
+     */
+    public void updateAll(Collection<T> items) {
+        start();
+        modifyItems(items, Reindexer.MODE_UPDATE);
+    }
+
+    /**
+     * Inserts or updates the given items data in the current transaction in a batch.
+     * Starts a transaction if not started.
+     *
+     * @param items the items data
+     * @throws IllegalStateException if the current transaction is finalized
+     */
+    public void upsertAll(Collection<T> items) {
+        start();
+        modifyItems(items, Reindexer.MODE_UPSERT);
+    }
+
+    /**
+     * Deletes the given items data in the current transaction in a batch.
+     * Starts a transaction if not started.
+     *
+     * @param items the items data
+     * @throws IllegalStateException if the current transaction is finalized
+     */
+    public void deleteAll(Collection<T> items) {
+        start();
+        modifyItems(items, Reindexer.MODE_DELETE);
+    }
+
     /**
      * Inserts the given item data in the current transaction asynchronously.
      * Starts a transaction if not started.
@@ -332,11 +491,37 @@ public class Transaction<T> {
     }
 
     private <E> CompletableFuture<E> modifyItemAsync(E item, int mode, int format) {
+        flush();
+        awaitPendingLimit();
         CompletableFuture<E> future = modifyItemAsyncInternal(item, mode, format, 1);
-        futures.add(future);
+        synchronized (futures) {
+            futures.addLast(future);
+        }
         return future;
     }
 
+    private void awaitPendingLimit() {
+        while (true) {
+            CompletableFuture<?> oldest;
+            synchronized (futures) {
+                while (!futures.isEmpty() && futures.peekFirst().isDone()) {
+                    removeDone(futures.pollFirst());
+                }
+                if (futures.size() < MAX_PENDING_ASYNC) {
+                    return;
+                }
+                oldest = futures.peekFirst();
+            }
+            oldest.exceptionally(e -> null).join();
+        }
+    }
+
+    private void removeDone(CompletableFuture<?> future) {
+        if (future.isCompletedExceptionally() && failedFuture == null) {
+            failedFuture = future;
+        }
+    }
+
     private <E> CompletableFuture<E> modifyItemAsyncInternal(E item, int mode, int format, int retryCount) {
         LOGGER.debug("rx: transaction modifyItemAsync, params=[{}, {}], retryCount={}", item, mode, retryCount);
         String[] precepts = namespace.getPrecepts();
@@ -369,6 +554,10 @@ public class Transaction<T> {
     }
 
     private <E> void modifyItem(E item, int mode, int format) {
+        if (batchSize > 1) {
+            stageItem(item, mode, format);
+            return;
+        }
         LOGGER.debug("rx: transaction modifyItem, params=[{}, {}]", item, mode);
         String[] precepts = namespace.getPrecepts();
         for (int i = 0; i < 2; i++) {
@@ -386,9 +575,72 @@ public class Transaction<T> {
         }
     }
 
+    private void modifyItems(Collection<T> items, int mode) {
+        LOGGER.debug("rx: transaction modifyItems, params=[{}, {}]", items.size(), mode);
+        if (items.isEmpty()) {
+            return;
+        }
+        flush();
+        String[] precepts = namespace.getPrecepts();
+        for (int i = 0; i < 2; i++) {
+            try {
+                PayloadType payloadType = namespace.getPayloadType();
+                int stateToken = payloadType == null ? 0 : payloadType.getStateToken();
+                List<byte[]> data = Reindexer.serializeItems(items, payloadType);
+                transactionContext.modifyItems(data, Consts.FORMAT_C_JSON, mode, precepts, stateToken);
+                break;
+            } catch (StateInvalidatedException e) {
+                LOGGER.debug("rx: transaction modifyItems state invalidated, update payload type");
+                updatePayloadType();
+            }
+        }
+    }
+
+    private void stageItem(Object item, int mode, int format) {
+        LOGGER.debug("rx: transaction stageItem, params=[{}, {}]", item, mode);
+        PayloadType payloadType = namespace.getPayloadType();
+        int stateToken = payloadType == null ? 0 : payloadType.getStateToken();
+        ItemSerializer<Object> serializer = ItemSerializer.getInstance(item.getClass(), payloadType);
+        byte[] data = serializer.serialize(item);
+        stagedItems.add(new StagedItem(item, data, mode, format, stateToken));
+        stagedBytes += data.length;
+        if (stagedItems.size() >= batchSize || stagedBytes >= MAX_BATCH_BYTES) {
+            flush();
+        }
+    }
+
+    /**
+     * Sends the staged items with the state token of the payload type, which the items are serialized with.
+     */
+    private void modifyStagedItems(List<StagedItem> items, int mode, int format, int stateToken) {
+        LOGGER.debug("rx: transaction modifyStagedItems, params=[{}, {}]", items.size(), mode);
+        String[] precepts = namespace.getPrecepts();
+        List<byte[]> data = new ArrayList<>(items.size());
+        for (StagedItem item : items) {
+            data.add(item.data);
+        }
+        for (int i = 0; i < 2; i++) {
+            try {
+                transactionContext.modifyItems(data, format, mode, precepts, stateToken);
+                break;
+            } catch (StateInvalidatedException e) {
+                LOGGER.debug("rx: transaction modifyStagedItems state invalidated, update payload type");
+                updatePayloadType();
+                List<Object> source = new ArrayList<>(items.size());
+                for (StagedItem item : items) {
+                    source.add(item.item);
+                }
+                PayloadType payloadType = namespace.getPayloadType();
+                stateToken = payloadType == null ? 0 : payloadType.getStateToken();
+                data = Reindexer.serializeItems(source, payloadType);
+            }
+        }
+    }
+
     private void updatePayloadType() {
         try {
-            query().limit(0).execute().close();
+            // not query(), which sends the staged items
+            new Query<>(reindexer, namespace, transactionContext).limit(0).execute().close();
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
@@ -402,7 +654,37 @@ public class Transaction<T> {
      * @return a {@link Query} with the current transaction
      */
     public Query<T> query() {
+        flush();
         return new Query<>(reindexer, namespace, transactionContext);
     }
 
+    private static final class StagedItem {
+
+        private final Object item;
+
+        private final byte[] data;
+
+        private final int mode;
+
+        private final int format;
+
+        /**
+         * The state token of the payload type, which the item is serialized with.
+         */
+        private final int stateToken;
+
+        private StagedItem(Object item, byte[] data, int mode, int format, int stateToken) {
+            this.item = item;
+            this.data = data;
+            this.mode = mode;
+            this.format = format;
+            this.stateToken = stateToken;
+        }
+
+        private boolean isSameBatch(StagedItem other) {
+            return mode == other.mode && format == other.format && stateToken == other.stateToken;
+        }
+
+    }
+
 }
@@ -18,6 +18,8 @@ package ru.rt.restream.reindexer.binding;
 import ru.rt.restream.reindexer.binding.definition.IndexDefinition;
 import ru.rt.restream.reindexer.binding.definition.NamespaceDefinition;
 
+import java.util.List;
+
 /**
  * Binding to Reindexer instance.
  */
@@ -47,8 +49,18 @@ public interface Binding {
 
     int UPDATE_INDEX = 25;
 
+    int ADD_TX_ITEM = 26;
+
+    int COMMIT_TX = 27;
+
+    int ROLLBACK_TX = 28;
+
     int START_TRANSACTION = 29;
 
+    int DELETE_QUERY_TX = 30;
+
+    int UPDATE_QUERY_TX = 31;
+
     int MODIFY_ITEM = 33;
 
     int DELETE_QUERY = 34;
@@ -126,6 +138,20 @@ public interface Binding {
      */
     void modifyItem(String namespaceName, byte[] data, int format, int mode, String[] precepts, int stateToken);
 
+    /**
+     * Modifies namespace items data in a batch. The items are applied in order. If an item fails, the items before it
+     * remain modified.
+     *
+     * @param namespaceName name of a namespace items belong to
+     * @param items         items data
+     * @param format        data format (Consts.FORMAT_C_JSON, Consts.FORMAT_JSON)
+     * @param mode          modify mode (UPDATE, INSERT, UPSERT, DELETE)
+     * @param precepts      precepts (i.e. "id=serial()", "updated_at=now()")
+     * @param stateToken    state token
+     */
+    void modifyItems(String namespaceName, List<byte[]> items, int format, int mode, String[] precepts,
+                     int stateToken);
+
     /**
      * Drop a namespace by name.
      *
@@ -162,6 +188,22 @@ public interface Binding {
      */
     RequestContext selectQuery(byte[] queryData, int fetchCount, long[] ptVersions, boolean asJson);
 
+    /**
+     * Invoke select query with the given timeout and cancellation token.
+     * A binding that does not support them ignores the execution context.
+     *
+     * @param queryData  encoded query data (selected indexes, predicates, etc)
+     * @param fetchCount items count to fetch within a query request
+     * @param ptVersions payload type state tokens
+     * @param asJson     true if response should be serialized in JSON format, defaults to CJSON
+     * @param context    the execution context
+     * @return the request context
+     */
+    default RequestContext selectQuery(byte[] queryData, int fetchCount, long[] ptVersions, boolean asJson,
+                                       ExecutionContext context) {
+        return selectQuery(queryData, fetchCount, ptVersions, asJson);
+    }
+
     /**
      * Invoke delete query.
      *
@@ -169,6 +211,17 @@ public interface Binding {
      */
     void deleteQuery(byte[] queryData);
 
+    /**
+     * Invoke delete query with the given timeout and cancellation token.
+     * A binding that does not support them ignores the execution context.
+     *
+     * @param queryData encoded query data (selected indexes, predicates, etc)
+     * @param context   the execution context
+     */
+    default void deleteQuery(byte[] queryData, ExecutionContext context) {
+        deleteQuery(queryData);
+    }
+
     /**
      * Invoke update query.
      *
@@ -176,6 +229,17 @@ public interface Binding {
      */
     void updateQuery(byte[] queryData);
 
+    /**
+     * Invoke update query with the given timeout and cancellation token.
+     * A binding that does not support them ignores the execution context.
+     *
+     * @param queryData encoded query data (selected indexes, predicates, etc)
+     * @param context   the execution context
+     */
+    default void updateQuery(byte[] queryData, ExecutionContext context) {
+        updateQuery(queryData);
+    }
+
     /**
      * Starts a transaction for the given namespace name.
      *
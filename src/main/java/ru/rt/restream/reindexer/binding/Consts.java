@@ -139,6 +139,8 @@ public final class Consts {
     public static final int ERR_NETWORK = 12;
     public static final int ERR_NOT_FOUND = 13;
     public static final int ERR_STATE_INVALIDATED = 14;
+    public static final int ERR_TIMEOUT = 19;
+    public static final int ERR_CANCELED = 20;
 
     public static final int SHARDING_NOT_SET = -1;
     public static final int SHARDING_PROXY_OFF = -2;
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2020 Restream
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.rt.restream.reindexer.binding;
+
+import ru.rt.restream.reindexer.CancellationToken;
+import ru.rt.restream.reindexer.exceptions.CancelledException;
+
+import java.time.Duration;
+
+/**
+ * Per-call execution options: a timeout, which overrides the binding request timeout, and a token to cancel the call.
+ * The context also names the namespace of the call, so the binding can tag its metrics, when the namespace is known
+ * from the serialized query only. The binding stores the timings of the call in the context, so the caller can
+ * report a slow query with its timings.
+ */
+public final class ExecutionContext {
+
+    /**
+     * The context with the binding request timeout and without cancellation.
+     */
+    public static final ExecutionContext DEFAULT = new ExecutionContext(null, null);
+
+    private final Duration timeout;
+
+    private final CancellationToken cancellationToken;
+
+    private final String namespace;
+
+    private volatile long queueNanos = -1L;
+
+    private volatile long roundTripNanos = -1L;
+
+    /**
+     * Creates an instance.
+     *
+     * @param timeout           the call timeout, null to use the binding request timeout
+     * @param cancellationToken the token to cancel the call, may be null
+     */
+    public ExecutionContext(Duration timeout, CancellationToken cancellationToken) {
+        this(timeout, cancellationToken, null);
+    }
+
+    /**
+     * Creates an instance.
+     *
+     * @param timeout           the call timeout, null to use the binding request timeout
+     * @param cancellationToken the token to cancel the call, may be null
+     * @param namespace         the namespace of the call, may be null
+     */
+    public ExecutionContext(Duration timeout, CancellationToken cancellationToken, String namespace) {
+        this.timeout = timeout;
+        this.cancellationToken = cancellationToken;
+        this.namespace = namespace;
+    }
+
+    /**
+     * Returns the call timeout, or null if the binding request timeout is used.
+     *
+     * @return the call timeout
+     */
+    public Duration getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Returns the call timeout, or the given default if the timeout is not set.
+     *
+     * @param defaultTimeout the binding request timeout
+     * @return the call timeout
+     */
+    public Duration getTimeout(Duration defaultTimeout) {
+        return timeout != null ? timeout : defaultTimeout;
+    }
+
+    /**
+     * Returns true if the call can be cancelled by a {@link CancellationToken}.
+     *
+     * @return true if the call can be cancelled
+     */
+    public boolean isCancellable() {
+        return cancellationToken != null;
+    }
+
+    /**
+     * Returns true if the call is cancelled by its {@link CancellationToken}.
+     *
+     * @return true if the call is cancelled
+     */
+    public boolean isCancelled() {
+        return cancellationToken != null && cancellationToken.isCancelled();
+    }
+
+    /**
+     * Returns the namespace of the call, or null if it is not known.
+     *
+     * @return the namespace of the call
+     */
+    public String getNamespace() {
+        return namespace;
+    }
+
+    /**
+     * Stores the timings of the call. The timings are not stored in the {@link #DEFAULT} context.
+     *
+     * @param queueNanos     the time the call waited for a free request slot of a connection
+     * @param roundTripNanos the time from sending the request to receiving the response
+     */
+    public void recordTimings(long queueNanos, long roundTripNanos) {
+        if (this != DEFAULT) {
+            this.queueNanos = queueNanos;
+            this.roundTripNanos = roundTripNanos;
+        }
+    }
+
+    /**
+     * Returns the time the call waited for a free request slot of a connection.
+     *
+     * @return the queueing time in nanoseconds, -1 if it is not measured
+     */
+    public long getQueueNanos() {
+        return queueNanos;
+    }
+
+    /**
+     * Returns the time from sending the request to receiving the response.
+     *
+     * @return the round trip time in nanoseconds, -1 if it is not measured
+     */
+    public long getRoundTripNanos() {
+        return roundTripNanos;
+    }
+
+    /**
+     * Registers an action to run if the call is cancelled.
+     *
+     * @param action the action to run
+     * @return the {@link CancellationToken.Registration} to remove the action when the call is completed
+     * @throws CancelledException if the call is already cancelled
+     */
+    public CancellationToken.Registration onCancel(Runnable action) {
+        if (cancellationToken == null) {
+            return CancellationToken.Registration.EMPTY;
+        }
+        if (cancellationToken.isCancelled()) {
+            throw new CancelledException("Request cancelled");
+        }
+        return cancellationToken.register(action);
+    }
+
+}
@@ -16,13 +16,11 @@
 
 package ru.rt.restream.reindexer.binding;
 
-import com.google.gson.Gson;
 import ru.rt.restream.reindexer.AggregationResult;
 import ru.rt.restream.reindexer.binding.cproto.ByteBuffer;
 import ru.rt.restream.reindexer.binding.cproto.cjson.PayloadField;
 import ru.rt.restream.reindexer.binding.cproto.cjson.PayloadType;
 
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -50,8 +48,6 @@ import static ru.rt.restream.reindexer.binding.Consts.VALUE_FLOAT_VECTOR;
  */
 public class QueryResultReader {
 
-    private final Gson gson = new Gson();
-
     /**
      * Reads a {@link QueryResult} from the raw byte array.
      *
@@ -59,7 +55,17 @@ public class QueryResultReader {
      * @return the {@link QueryResult} to use
      */
     public QueryResult read(byte[] rawQueryResult) {
-        ByteBuffer buffer = new ByteBuffer(rawQueryResult).rewind();
+        return read(new ByteBuffer(rawQueryResult).rewind());
+    }
+
+    /**
+     * Reads a {@link QueryResult} from the buffer. The items of the result are read from a slice of the buffer, so
+     * a buffer over native memory is not copied.
+     *
+     * @param buffer the buffer, positioned at the beginning of the raw query result
+     * @return the {@link QueryResult} to use
+     */
+    public QueryResult read(ByteBuffer buffer) {
         QueryResult queryResult = getQueryResultWithFlags(buffer.getVarUInt());
         queryResult.setTotalCount(buffer.getVarUInt());
         queryResult.setQCount(buffer.getVarUInt());
@@ -115,7 +121,7 @@ public class QueryResultReader {
             switch (tag) {
                 case QUERY_RESULT_AGGREGATION:
                     byte[] data = buffer.getBytes((int) buffer.getUInt32());
-                    aggregationResults.add(deserializeAggResult(data));
+                    aggregationResults.add(AggregationResult.fromJson(data));
                     break;
                 case QUERY_RESULT_EXPLAIN:
                     buffer.getBytes((int) buffer.getUInt32());
@@ -152,7 +158,7 @@ public class QueryResultReader {
             tag = (int) buffer.getVarUInt();
         }
         queryResult.setAggResults(aggregationResults);
-        queryResult.setBuffer(new ByteBuffer(buffer.getBytes()).rewind());
+        queryResult.setBuffer(buffer.slice());
 
         return queryResult;
     }
@@ -177,9 +183,4 @@ public class QueryResultReader {
         queryResult.setWithShardId(withShardId);
         return queryResult;
     }
-
-    private AggregationResult deserializeAggResult(byte[] bytes) {
-        String json = new String(bytes, StandardCharsets.UTF_8);
-        return gson.fromJson(json, AggregationResult.class);
-    }
 }
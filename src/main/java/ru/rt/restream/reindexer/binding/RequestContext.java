@@ -35,6 +35,16 @@ public interface RequestContext {
      */
     void fetchResults(int offset, int limit);
 
+    /**
+     * Records the decoding of the result items, before the results are closed.
+     *
+     * @param items         the number of decoded items
+     * @param startNanos    the {@link System#nanoTime()} of the first item decoding
+     * @param durationNanos the total decoding time, in nanoseconds
+     */
+    default void recordDecode(int items, long startNanos, long durationNanos) {
+    }
+
     /**
      * Closes query results.
      */
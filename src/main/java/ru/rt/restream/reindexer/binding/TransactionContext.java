@@ -17,6 +17,7 @@ package ru.rt.restream.reindexer.binding;
 
 import ru.rt.restream.reindexer.ReindexerResponse;
 
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
 /**
@@ -47,6 +48,22 @@ public interface TransactionContext {
      */
     CompletableFuture<ReindexerResponse> modifyItemAsync(byte[] data, int format, int mode, String[] precepts, int stateToken);
 
+    /**
+     * Modifies items data in the transaction that is associated with the context in a batch.
+     * The items are applied in order. If an item fails, the items before it remain in the transaction.
+     *
+     * @param items      items data
+     * @param format     data format (Consts.FORMAT_C_JSON, Consts.FORMAT_JSON)
+     * @param mode       modify mode (INSERT, UPDATE, UPSERT, DELETE)
+     * @param precepts   precepts (i.e. "id=serial()", "updated_at=now()")
+     * @param stateToken state token
+     */
+    default void modifyItems(List<byte[]> items, int format, int mode, String[] precepts, int stateToken) {
+        for (byte[] data : items) {
+            modifyItem(data, format, mode, precepts, stateToken);
+        }
+    }
+
     /**
      * Invoke select query in the transaction that is associated with the context.
      *
@@ -58,6 +75,22 @@ public interface TransactionContext {
      */
     RequestContext selectQuery(byte[] queryData, int fetchCount, long[] ptVersions, boolean asJson);
 
+    /**
+     * Invoke select query in the transaction that is associated with the context with the given timeout and
+     * cancellation token. A context that does not support them ignores the execution context.
+     *
+     * @param queryData  encoded query data (selected indexes, predicates, etc)
+     * @param fetchCount items count to fetch within a query request
+     * @param ptVersions payload type state tokens
+     * @param asJson     true if response should be serialized in JSON format, defaults to CJSON
+     * @param context    the execution context
+     * @return the request context
+     */
+    default RequestContext selectQuery(byte[] queryData, int fetchCount, long[] ptVersions, boolean asJson,
+                                       ExecutionContext context) {
+        return selectQuery(queryData, fetchCount, ptVersions, asJson);
+    }
+
     /**
      * Invoke update query in the transaction that is associated with the context.
      *
@@ -21,18 +21,24 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import ru.rt.restream.reindexer.CancellationToken;
 import ru.rt.restream.reindexer.ReindexerResponse;
 import ru.rt.restream.reindexer.binding.Binding;
+import ru.rt.restream.reindexer.binding.ExecutionContext;
 import ru.rt.restream.reindexer.binding.RequestContext;
 import ru.rt.restream.reindexer.binding.TransactionContext;
+import ru.rt.restream.reindexer.binding.cproto.BufferPool;
 import ru.rt.restream.reindexer.binding.cproto.ByteBuffer;
 import ru.rt.restream.reindexer.binding.definition.IndexDefinition;
 import ru.rt.restream.reindexer.binding.definition.NamespaceDefinition;
+import ru.rt.restream.reindexer.exceptions.CancelledException;
 import ru.rt.restream.reindexer.exceptions.ReindexerExceptionFactory;
+import ru.rt.restream.reindexer.util.NativeUtils;
 
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
 
 import static ru.rt.restream.reindexer.binding.Consts.REINDEXER_VERSION;
@@ -44,7 +50,11 @@ public class Builtin implements Binding {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(Builtin.class);
 
-    private final AtomicLong next = new AtomicLong(0L);
+    /**
+     * The engine context ids, unique within the process, since a context is cancelled by id only.
+     * The id 0 is not used, the engine does not register such a context for cancellation.
+     */
+    private static final AtomicLong CONTEXT_ID = new AtomicLong(1L);
 
     private final Gson gson = new GsonBuilder()
             .setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES)
@@ -56,6 +66,8 @@ public class Builtin implements Binding {
 
     private final Duration timeout;
 
+    private final BuiltinAsyncExecutor asyncExecutor;
+
     /**
      * Creates an instance.
      *
@@ -63,8 +75,21 @@ public class Builtin implements Binding {
      * @param requestTimeout the request timeout
      */
     public Builtin(URI uri, Duration requestTimeout) {
+        this(uri, requestTimeout, new BuiltinAsyncExecutor(Runtime.getRuntime().availableProcessors(),
+                BuiltinAsyncExecutor.DEFAULT_QUEUE_SIZE));
+    }
+
+    /**
+     * Creates an instance.
+     *
+     * @param uri            the Reindexer URL
+     * @param requestTimeout the request timeout
+     * @param asyncExecutor  the {@link BuiltinAsyncExecutor} to run asynchronous calls
+     */
+    public Builtin(URI uri, Duration requestTimeout, BuiltinAsyncExecutor asyncExecutor) {
         adapter = new BuiltinAdapter();
         timeout = requestTimeout;
+        this.asyncExecutor = asyncExecutor;
         rx = adapter.init();
         String path = uri.getPath();
         try {
@@ -85,42 +110,92 @@ public class Builtin implements Binding {
      * @param timeout the execution timeout
      */
     public Builtin(BuiltinAdapter adapter, long rx, Duration timeout) {
+        this(adapter, rx, timeout, new BuiltinAsyncExecutor(Runtime.getRuntime().availableProcessors(),
+                BuiltinAsyncExecutor.DEFAULT_QUEUE_SIZE));
+    }
+
+    /**
+     * Creates an instance.
+     *
+     * @param adapter       the {@link BuiltinAdapter} to use
+     * @param rx            the Reindexer pointer
+     * @param timeout       the execution timeout
+     * @param asyncExecutor the {@link BuiltinAsyncExecutor} to run asynchronous calls
+     */
+    public Builtin(BuiltinAdapter adapter, long rx, Duration timeout, BuiltinAsyncExecutor asyncExecutor) {
         this.adapter = adapter;
         this.rx = rx;
         this.timeout = timeout;
+        this.asyncExecutor = asyncExecutor;
+    }
+
+    /**
+     * Returns the executor of asynchronous calls, e.g. to read its metrics.
+     *
+     * @return the {@link BuiltinAsyncExecutor} in use
+     */
+    public BuiltinAsyncExecutor getAsyncExecutor() {
+        return asyncExecutor;
     }
 
     @Override
     public void openNamespace(NamespaceDefinition namespace) {
         NamespaceDefinition.StorageOptions options = namespace.getStorage();
-        ReindexerResponse response = adapter.openNamespace(rx, next.getAndIncrement(), timeout.toMillis(),
+        ReindexerResponse response = adapter.openNamespace(rx, CONTEXT_ID.getAndIncrement(), timeout.toMillis(),
                 namespace.getName(), options.isEnabled(), options.isDropOnFileFormatError(), options.isCreateIfMissing());
         checkResponse(response);
     }
 
     @Override
     public void addIndex(String namespace, IndexDefinition index) {
-        ReindexerResponse response = adapter.addIndex(rx, next.getAndIncrement(), timeout.toMillis(), namespace,
+        ReindexerResponse response = adapter.addIndex(rx, CONTEXT_ID.getAndIncrement(), timeout.toMillis(), namespace,
                 gson.toJson(index));
         checkResponse(response);
     }
 
     @Override
     public void updateIndex(String namespace, IndexDefinition index) {
-        ReindexerResponse response = adapter.updateIndex(rx, next.getAndIncrement(), timeout.toMillis(), namespace,
+        ReindexerResponse response = adapter.updateIndex(rx, CONTEXT_ID.getAndIncrement(), timeout.toMillis(), namespace,
                 gson.toJson(index));
         checkResponse(response);
     }
 
     @Override
     public void dropIndex(String namespace, String indexName) {
-        ReindexerResponse response = adapter.dropIndex(rx, next.getAndIncrement(), timeout.toMillis(), namespace,
+        ReindexerResponse response = adapter.dropIndex(rx, CONTEXT_ID.getAndIncrement(), timeout.toMillis(), namespace,
                 indexName);
         checkResponse(response);
     }
 
     @Override
     public void modifyItem(String namespaceName, byte[] data, int format, int mode, String[] precepts, int stateToken) {
+        ByteBuffer args = modifyArgs(namespaceName, format, mode, precepts, stateToken);
+        ReindexerResponse response = adapter.modifyItem(rx, CONTEXT_ID.getAndIncrement(), timeout.toMillis(), args.bytes(), data);
+        checkResponse(response);
+        freeResults(response);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The items are applied by a single native call, which stops on the first failed item.
+     */
+    @Override
+    public void modifyItems(String namespaceName, List<byte[]> items, int format, int mode, String[] precepts,
+                            int stateToken) {
+        ByteBuffer args = modifyArgs(namespaceName, format, mode, precepts, stateToken);
+        ByteBuffer packed = BuiltinAdapter.packItems(items);
+        ReindexerResponse response;
+        try {
+            response = adapter.modifyItems(rx, CONTEXT_ID.getAndIncrement(), timeout.toMillis(), args.bytes(),
+                    packed.array(), items.size());
+        } finally {
+            BufferPool.shared().release(packed);
+        }
+        checkResponse(response);
+    }
+
+    private ByteBuffer modifyArgs(String namespaceName, int format, int mode, String[] precepts, int stateToken) {
         ByteBuffer args = new ByteBuffer()
                 .putVString(namespaceName)
                 .putVarUInt32(format)
@@ -130,75 +205,155 @@ public class Builtin implements Binding {
         for (String precept : precepts) {
             args.putVString(precept);
         }
-        ReindexerResponse response = adapter.modifyItem(rx, next.getAndIncrement(), timeout.toMillis(), args.bytes(), data);
-        checkResponse(response);
+        return args;
     }
 
     @Override
     public void dropNamespace(String namespaceName) {
-        ReindexerResponse response = adapter.dropNamespace(rx, next.getAndIncrement(), timeout.toMillis(), namespaceName);
+        ReindexerResponse response = adapter.dropNamespace(rx, CONTEXT_ID.getAndIncrement(), timeout.toMillis(), namespaceName);
         checkResponse(response);
     }
 
     @Override
     public void closeNamespace(String namespaceName) {
-        ReindexerResponse response = adapter.closeNamespace(rx, next.getAndIncrement(), timeout.toMillis(), namespaceName);
+        ReindexerResponse response = adapter.closeNamespace(rx, CONTEXT_ID.getAndIncrement(), timeout.toMillis(), namespaceName);
         checkResponse(response);
     }
 
     @Override
     public RequestContext select(String query, boolean asJson, int fetchCount, long[] ptVersions) {
-        ReindexerResponse response = adapter.select(rx, next.getAndIncrement(), timeout.toMillis(), query, asJson,
+        ReindexerResponse response = adapter.select(rx, CONTEXT_ID.getAndIncrement(), timeout.toMillis(), query, asJson,
                 ptVersions);
         checkResponse(response);
-        return new BuiltinRequestContext(response);
+        return new BuiltinRequestContext(response, fetchCount);
     }
 
     @Override
     public RequestContext selectQuery(byte[] queryData, int fetchCount, long[] ptVersions, boolean asJson) {
-        ReindexerResponse response = adapter.selectQuery(rx, next.getAndIncrement(), timeout.toMillis(), queryData,
-                ptVersions, asJson);
+        return selectQuery(queryData, fetchCount, ptVersions, asJson, ExecutionContext.DEFAULT);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * A cancellation cancels the engine context of the call, so the engine stops the query execution. A cancellation
+     * before the engine starts the call is best-effort: the engine may run the query to the end, then its results are
+     * discarded and {@link CancelledException} is thrown.
+     */
+    @Override
+    public RequestContext selectQuery(byte[] queryData, int fetchCount, long[] ptVersions, boolean asJson,
+                                      ExecutionContext context) {
+        long ctxId = CONTEXT_ID.getAndIncrement();
+        ReindexerResponse response;
+        CancellationToken.Registration registration = context.onCancel(() -> cancelContext(adapter, ctxId));
+        try {
+            response = adapter.selectQuery(rx, ctxId, context.getTimeout(timeout).toMillis(), queryData,
+                    ptVersions, asJson);
+        } finally {
+            registration.close();
+        }
         checkResponse(response);
-        return new BuiltinRequestContext(response);
+        RequestContext requestContext = new BuiltinRequestContext(response, fetchCount);
+        if (context.isCancelled()) {
+            requestContext.closeResults();
+            throw new CancelledException("Request cancelled");
+        }
+        return requestContext;
     }
 
     @Override
     public void deleteQuery(byte[] queryData) {
-        ReindexerResponse response = adapter.deleteQuery(rx, next.getAndIncrement(), timeout.toMillis(), queryData);
+        deleteQuery(queryData, ExecutionContext.DEFAULT);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * A cancellation cancels the engine context of the call, so the engine stops the query execution. A cancellation
+     * before the engine starts the call is best-effort: the engine may run the query to the end, then
+     * {@link CancelledException} is thrown, though the items may be already modified.
+     */
+    @Override
+    public void deleteQuery(byte[] queryData, ExecutionContext context) {
+        long ctxId = CONTEXT_ID.getAndIncrement();
+        ReindexerResponse response;
+        CancellationToken.Registration registration = context.onCancel(() -> cancelContext(adapter, ctxId));
+        try {
+            response = adapter.deleteQuery(rx, ctxId, context.getTimeout(timeout).toMillis(), queryData);
+        } finally {
+            registration.close();
+        }
         checkResponse(response);
+        freeResults(response);
+        if (context.isCancelled()) {
+            throw new CancelledException("Request cancelled");
+        }
     }
 
     @Override
     public void updateQuery(byte[] queryData) {
-        ReindexerResponse response = adapter.updateQuery(rx, next.getAndIncrement(), timeout.toMillis(), queryData);
+        updateQuery(queryData, ExecutionContext.DEFAULT);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * A cancellation cancels the engine context of the call, so the engine stops the query execution. A cancellation
+     * before the engine starts the call is best-effort: the engine may run the query to the end, then
+     * {@link CancelledException} is thrown, though the items may be already modified.
+     */
+    @Override
+    public void updateQuery(byte[] queryData, ExecutionContext context) {
+        long ctxId = CONTEXT_ID.getAndIncrement();
+        ReindexerResponse response;
+        CancellationToken.Registration registration = context.onCancel(() -> cancelContext(adapter, ctxId));
+        try {
+            response = adapter.updateQuery(rx, ctxId, context.getTimeout(timeout).toMillis(), queryData);
+        } finally {
+            registration.close();
+        }
         checkResponse(response);
+        freeResults(response);
+        if (context.isCancelled()) {
+            throw new CancelledException("Request cancelled");
+        }
+    }
+
+    /**
+     * Cancels the engine context of a call in progress.
+     *
+     * @param adapter the {@link BuiltinAdapter} to use
+     * @param ctxId   the context id of the call
+     */
+    static void cancelContext(BuiltinAdapter adapter, long ctxId) {
+        ReindexerResponse response = adapter.cancelContext(ctxId);
+        if (response.hasError()) {
+            LOGGER.warn("rx: cancel context error: {}", response.getErrorMessage());
+        }
     }
 
     @Override
     public TransactionContext beginTx(String namespaceName) {
         ReindexerResponse response = adapter.beginTx(rx, namespaceName);
         checkResponse(response);
-        long txId = -1L;
-        Object[] arguments = response.getArguments();
-        if (arguments.length > 0) {
-            Object arg = arguments[0];
-            if (arg instanceof Long) {
-                txId = (long) arg;
-            }
-        }
-        return new BuiltinTransactionContext(adapter, rx, txId, next::getAndIncrement, timeout);
+        long txId = response.getHandle();
+        return new BuiltinTransactionContext(adapter, rx, txId, CONTEXT_ID::getAndIncrement, timeout, asyncExecutor);
     }
 
     @Override
     public void putMeta(String namespace, String key, String data) {
-        adapter.putMeta(rx, next.getAndIncrement(), timeout.toMillis(), namespace, key, data);
+        adapter.putMeta(rx, CONTEXT_ID.getAndIncrement(), timeout.toMillis(), namespace, key, data);
     }
 
     @Override
     public String getMeta(String namespace, String key) {
-        ReindexerResponse response = adapter.getMeta(rx, next.getAndIncrement(), timeout.toMillis(), namespace, key);
+        ReindexerResponse response = adapter.getMeta(rx, CONTEXT_ID.getAndIncrement(), timeout.toMillis(), namespace, key);
         checkResponse(response);
-        return new String((byte[])response.getArguments()[1], StandardCharsets.UTF_8);
+        try {
+            return new String(new NativeByteBuffer(response.getData()).getBytes(), StandardCharsets.UTF_8);
+        } finally {
+            freeResults(response);
+        }
     }
 
     private void checkResponse(ReindexerResponse response) {
@@ -207,8 +362,19 @@ public class Builtin implements Binding {
         }
     }
 
+    private void freeResults(ReindexerResponse response) {
+        if (response.getHandle() != 0L) {
+            NativeUtils.freeNativeBuffer(response.getHandle());
+        }
+    }
+
     @Override
     public void close() {
+        if (!asyncExecutor.close(BuiltinAsyncExecutor.DEFAULT_CLOSE_TIMEOUT)) {
+            // a running call would use the destroyed instance, so it is leaked instead
+            LOGGER.error("rx: async calls are still running, the Reindexer instance is not destroyed");
+            return;
+        }
         adapter.destroy(rx);
     }
 
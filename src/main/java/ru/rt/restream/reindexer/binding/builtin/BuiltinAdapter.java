@@ -20,6 +20,8 @@ import org.apache.commons.lang3.SystemUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import ru.rt.restream.reindexer.ReindexerResponse;
+import ru.rt.restream.reindexer.binding.cproto.BufferPool;
+import ru.rt.restream.reindexer.binding.cproto.ByteBuffer;
 import ru.rt.restream.reindexer.exceptions.UnimplementedException;
 
 import java.io.IOException;
@@ -27,6 +29,7 @@ import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.util.List;
 
 /**
  * A Builtin adapter to Reindexer native functions.
@@ -235,6 +238,52 @@ public class BuiltinAdapter {
      */
     public native ReindexerResponse modifyItemTx(long rx, long txId, byte[] args, byte[] data);
 
+    /**
+     * Modifies items in a batch. Stops on the first failed item.
+     *
+     * @param rx      the Reindexer instance pointer
+     * @param ctxId   the context id
+     * @param timeout the execution timeout
+     * @param args    the execution args (i.e. namespace name, format, mode, state token)
+     * @param items   the items payload, packed by {@link #packItems(List)}, may be followed by unused bytes
+     * @param count   the number of items
+     * @return the {@link ReindexerResponse} to use
+     */
+    public native ReindexerResponse modifyItems(long rx, long ctxId, long timeout, byte[] args, byte[] items,
+                                                int count);
+
+    /**
+     * Modifies items in a batch. Stops on the first failed item.
+     *
+     * @param rx    the Reindexer instance pointer
+     * @param txId  the transaction id
+     * @param args  the execution args (i.e. format, mode, state token)
+     * @param items the items payload, packed by {@link #packItems(List)}, may be followed by unused bytes
+     * @param count the number of items
+     * @return the {@link ReindexerResponse} to use
+     */
+    public native ReindexerResponse modifyItemsTx(long rx, long txId, byte[] args, byte[] items, int count);
+
+    /**
+     * Packs items into a single payload for a batch modification: every item is prefixed by its length as
+     * an unsigned 32-bit little-endian integer. The payload is written into a buffer from the {@link BufferPool},
+     * which backed array is passed to the native call as is, so the buffer should be released after the call.
+     *
+     * @param items the items data
+     * @return the packed items payload
+     */
+    static ByteBuffer packItems(List<byte[]> items) {
+        int size = 0;
+        for (byte[] item : items) {
+            size += Integer.BYTES + item.length;
+        }
+        ByteBuffer packed = BufferPool.shared().acquire(size);
+        for (byte[] item : items) {
+            packed.putUInt32(item.length).writeBytes(item);
+        }
+        return packed;
+    }
+
     /**
      * Starts a transaction.
      *
@@ -277,6 +326,14 @@ public class BuiltinAdapter {
      */
     public native ReindexerResponse selectQuery(long rx, long ctxId, long timeout, byte[] data, long[] versions, boolean asJson);
 
+    /**
+     * Cancels the execution of a call in progress.
+     *
+     * @param ctxId the context id of the call
+     * @return the {@link ReindexerResponse} to use
+     */
+    public native ReindexerResponse cancelContext(long ctxId);
+
     /**
      * Executes sql-query (update or select).
      *
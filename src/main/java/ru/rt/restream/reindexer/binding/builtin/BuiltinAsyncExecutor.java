@@ -0,0 +1,230 @@
+/*
+ * Copyright 2020 Restream
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.rt.restream.reindexer.binding.builtin;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Runs asynchronous builtin calls, i.e. {@link BuiltinTransactionContext#modifyItemAsync}, on a dedicated pool of
+ * threads. The number of pending calls is bounded: a submission blocks the caller while the queue is full.
+ */
+public class BuiltinAsyncExecutor implements AutoCloseable {
+
+    /**
+     * The default maximum number of pending calls.
+     */
+    public static final int DEFAULT_QUEUE_SIZE = 1024;
+
+    /**
+     * The default time to wait for the pending calls on close.
+     */
+    public static final Duration DEFAULT_CLOSE_TIMEOUT = Duration.ofSeconds(30);
+
+    private final ThreadPoolExecutor executor;
+
+    private final Semaphore permits;
+
+    private final int queueSize;
+
+    private final LongAdder completedCount = new LongAdder();
+
+    private final LongAdder totalLatencyNanos = new LongAdder();
+
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    /**
+     * Creates an instance.
+     *
+     * @param poolSize  the number of threads
+     * @param queueSize the maximum number of pending calls, including the running ones
+     */
+    public BuiltinAsyncExecutor(int poolSize, int queueSize) {
+        if (poolSize <= 0) {
+            throw new IllegalArgumentException("poolSize must be positive");
+        }
+        if (queueSize <= 0) {
+            throw new IllegalArgumentException("queueSize must be positive");
+        }
+        AtomicInteger threadCounter = new AtomicInteger();
+        executor = new ThreadPoolExecutor(poolSize, poolSize, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "rx-builtin-async-" + threadCounter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        permits = new Semaphore(queueSize);
+        this.queueSize = queueSize;
+    }
+
+    /**
+     * Submits the call. Blocks while the number of pending calls is at the maximum.
+     *
+     * @param <T>  the call result type
+     * @param call the call to run
+     * @return the {@link CompletableFuture}, which is completed with the call result
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> call) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.completeExceptionally(e);
+            return future;
+        }
+        long submittedAt = System.nanoTime();
+        try {
+            executor.execute(new Call<>(call, future, submittedAt));
+        } catch (RejectedExecutionException e) {
+            permits.release();
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private void complete(long submittedAt) {
+        long latencyNanos = System.nanoTime() - submittedAt;
+        permits.release();
+        completedCount.increment();
+        totalLatencyNanos.add(latencyNanos);
+        maxLatencyNanos.accumulateAndGet(latencyNanos, Math::max);
+    }
+
+    /**
+     * Returns the number of calls waiting for a free thread.
+     *
+     * @return the queue depth
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Returns the number of submitted calls that are not completed yet.
+     *
+     * @return the number of pending calls
+     */
+    public int getPendingCount() {
+        return queueSize - permits.availablePermits();
+    }
+
+    /**
+     * Returns the number of completed calls.
+     *
+     * @return the number of completed calls
+     */
+    public long getCompletedCount() {
+        return completedCount.sum();
+    }
+
+    /**
+     * Returns the average time from a call submission to its completion.
+     *
+     * @return the average call latency, or {@link Duration#ZERO} if there were no calls
+     */
+    public Duration getAverageLatency() {
+        long count = completedCount.sum();
+        return count == 0 ? Duration.ZERO : Duration.ofNanos(totalLatencyNanos.sum() / count);
+    }
+
+    /**
+     * Returns the maximum time from a call submission to its completion.
+     *
+     * @return the maximum call latency
+     */
+    public Duration getMaxLatency() {
+        return Duration.ofNanos(maxLatencyNanos.get());
+    }
+
+    /**
+     * Stops accepting calls, and waits for the pending calls to complete for {@link #DEFAULT_CLOSE_TIMEOUT}, see
+     * {@link #close(Duration)}.
+     */
+    @Override
+    public void close() {
+        close(DEFAULT_CLOSE_TIMEOUT);
+    }
+
+    /**
+     * Stops accepting calls, and waits for the pending calls to complete. If they are not completed within the
+     * timeout, the calls, which are not started yet, are failed with a {@link RejectedExecutionException}, and the
+     * running ones are waited for the timeout once more.
+     *
+     * @param timeout the time to wait for the pending calls
+     * @return true, if no call is running any more, so the Reindexer instance may be destroyed
+     */
+    public boolean close(Duration timeout) {
+        executor.shutdown();
+        try {
+            if (executor.awaitTermination(timeout.toNanos(), TimeUnit.NANOSECONDS)) {
+                return true;
+            }
+            for (Runnable runnable : executor.shutdownNow()) {
+                ((Call<?>) runnable).reject();
+            }
+            return executor.awaitTermination(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return executor.isTerminated();
+        }
+    }
+
+    private final class Call<T> implements Runnable {
+
+        private final Supplier<T> call;
+
+        private final CompletableFuture<T> future;
+
+        private final long submittedAt;
+
+        private Call(Supplier<T> call, CompletableFuture<T> future, long submittedAt) {
+            this.call = call;
+            this.future = future;
+            this.submittedAt = submittedAt;
+        }
+
+        @Override
+        public void run() {
+            T result;
+            try {
+                result = call.get();
+            } catch (Throwable t) {
+                complete(submittedAt);
+                future.completeExceptionally(t);
+                return;
+            }
+            complete(submittedAt);
+            future.complete(result);
+        }
+
+        private void reject() {
+            permits.release();
+            future.completeExceptionally(new RejectedExecutionException("The async executor is closed"));
+        }
+    }
+
+}
@@ -23,37 +23,43 @@ import ru.rt.restream.reindexer.binding.RequestContext;
 import ru.rt.restream.reindexer.util.NativeUtils;
 
 /**
- * A request context which is holds a {@link QueryResult},
- * the {@link #fetchResults(int, int)} method is NOOP since Builtin does not support it.
+ * A request context which is holds a {@link QueryResult}.
+ * The query result is read directly from the native memory, which is freed on {@link #closeResults()}.
+ * <p>
+ * The native query results are always complete, so the results are paged on the client side: the query result
+ * exposes at most {@code fetchCount} items, and {@link #fetchResults(int, int)} moves the window to the next items of
+ * the same native results, like the cproto binding fetches the next page from the server.
  */
 public class BuiltinRequestContext implements RequestContext {
 
     private final QueryResult queryResult;
 
     /**
-     * Creates an instance.
+     * The number of items in the native results.
+     */
+    private final long itemCount;
+
+    /**
+     * Creates an instance, that exposes all the items at once.
      *
      * @param response the {@link ReindexerResponse} to use
      */
     public BuiltinRequestContext(ReindexerResponse response) {
-        long resultsPtr = 0L;
-        byte[] rawQueryResult = new byte[0];
-        Object[] arguments = response.getArguments();
-        if (arguments.length > 0) {
-            Object arg = arguments[0];
-            if (arg instanceof Long) {
-                resultsPtr = (long) arg;
-            }
-        }
-        if (arguments.length > 1) {
-            Object arg = arguments[1];
-            if (arg instanceof byte[]) {
-                rawQueryResult = (byte[]) arg;
-            }
-        }
+        this(response, 0);
+    }
+
+    /**
+     * Creates an instance.
+     *
+     * @param response   the {@link ReindexerResponse} to use
+     * @param fetchCount the number of items to expose at once, all the items if not positive
+     */
+    public BuiltinRequestContext(ReindexerResponse response, int fetchCount) {
         QueryResultReader reader = new QueryResultReader();
-        queryResult = reader.read(rawQueryResult);
-        queryResult.setResultsPtr(resultsPtr);
+        queryResult = reader.read(new NativeByteBuffer(response.getData()));
+        queryResult.setResultsPtr(response.getHandle());
+        itemCount = queryResult.getCount();
+        queryResult.setCount(getWindowSize(0, fetchCount));
     }
 
     @Override
@@ -61,14 +67,27 @@ public class BuiltinRequestContext implements RequestContext {
         return queryResult;
     }
 
+    /**
+     * Exposes the next items of the native results. The items are read sequentially, so the offset must be equal to
+     * the number of items exposed so far.
+     *
+     * @param offset the index of the first item to expose
+     * @param limit  the number of items to expose, all the remaining items if not positive
+     */
     @Override
     public void fetchResults(int offset, int limit) {
-        // NOOP
+        queryResult.setCount(getWindowSize(offset, limit));
+    }
+
+    private long getWindowSize(long offset, int limit) {
+        long remaining = Math.max(itemCount - offset, 0L);
+        return limit <= 0 ? remaining : Math.min(limit, remaining);
     }
 
     @Override
     public void closeResults() {
         if (queryResult.getResultsPtr() != 0L) {
+            ((NativeByteBuffer) queryResult.getBuffer()).release();
             NativeUtils.freeNativeBuffer(queryResult.getResultsPtr());
             queryResult.setResultsPtr(0L);
         }
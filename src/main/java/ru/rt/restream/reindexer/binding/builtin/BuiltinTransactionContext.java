@@ -18,15 +18,23 @@ package ru.rt.restream.reindexer.binding.builtin;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import ru.rt.restream.reindexer.CancellationToken;
 import ru.rt.restream.reindexer.ReindexerResponse;
 import ru.rt.restream.reindexer.binding.Consts;
+import ru.rt.restream.reindexer.binding.ExecutionContext;
 import ru.rt.restream.reindexer.binding.RequestContext;
 import ru.rt.restream.reindexer.binding.TransactionContext;
+import ru.rt.restream.reindexer.binding.cproto.BufferPool;
 import ru.rt.restream.reindexer.binding.cproto.ByteBuffer;
+import ru.rt.restream.reindexer.exceptions.CancelledException;
 import ru.rt.restream.reindexer.exceptions.ReindexerExceptionFactory;
+import ru.rt.restream.reindexer.util.NativeUtils;
 
 import java.time.Duration;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Supplier;
 
 /**
@@ -46,6 +54,10 @@ public class BuiltinTransactionContext implements TransactionContext {
 
     private final Duration timeout;
 
+    private final BuiltinAsyncExecutor asyncExecutor;
+
+    private final Set<CompletableFuture<?>> pending = ConcurrentHashMap.newKeySet();
+
     /**
      * Creates an instance.
      *
@@ -54,14 +66,16 @@ public class BuiltinTransactionContext implements TransactionContext {
      * @param transactionId the transaction id
      * @param next          the context id generator
      * @param timeout       the execution timeout
+     * @param asyncExecutor the {@link BuiltinAsyncExecutor} to run asynchronous calls
      */
     public BuiltinTransactionContext(BuiltinAdapter adapter, long rx, long transactionId,
-                                     Supplier<Long> next, Duration timeout) {
+                                     Supplier<Long> next, Duration timeout, BuiltinAsyncExecutor asyncExecutor) {
         this.adapter = adapter;
         this.rx = rx;
         this.transactionId = transactionId;
         this.next = next;
         this.timeout = timeout;
+        this.asyncExecutor = asyncExecutor;
     }
 
     @Override
@@ -70,12 +84,44 @@ public class BuiltinTransactionContext implements TransactionContext {
         checkResponse(response);
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The items are applied by a single native call, which stops on the first failed item.
+     */
+    @Override
+    public void modifyItems(List<byte[]> items, int format, int mode, String[] precepts, int stateToken) {
+        ByteBuffer args = modifyArgs(format, mode, precepts, stateToken);
+        ByteBuffer packed = BuiltinAdapter.packItems(items);
+        ReindexerResponse response;
+        try {
+            response = adapter.modifyItemsTx(rx, transactionId, args.bytes(), packed.array(), items.size());
+        } finally {
+            BufferPool.shared().release(packed);
+        }
+        checkResponse(response);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The call runs on the {@link BuiltinAsyncExecutor}. The caller is blocked while its queue is full.
+     */
     @Override
     public CompletableFuture<ReindexerResponse> modifyItemAsync(byte[] data, int format, int mode, String[] precepts, int stateToken) {
-        return CompletableFuture.supplyAsync(() -> modifyItemInternal(data, format, mode, precepts, stateToken));
+        CompletableFuture<ReindexerResponse> future = asyncExecutor.submit(
+                () -> modifyItemInternal(data, format, mode, precepts, stateToken));
+        pending.add(future);
+        future.whenComplete((response, e) -> pending.remove(future));
+        return future;
     }
 
     private ReindexerResponse modifyItemInternal(byte[] data, int format, int mode, String[] precepts, int stateToken) {
+        ByteBuffer args = modifyArgs(format, mode, precepts, stateToken);
+        return adapter.modifyItemTx(rx, transactionId, args.bytes(), data);
+    }
+
+    private ByteBuffer modifyArgs(int format, int mode, String[] precepts, int stateToken) {
         ByteBuffer args = new ByteBuffer()
                 .putVarUInt32(format)
                 .putVarUInt32(mode)
@@ -84,14 +130,39 @@ public class BuiltinTransactionContext implements TransactionContext {
         for (String precept : precepts) {
             args.putVString(precept);
         }
-        return adapter.modifyItemTx(rx, transactionId, args.bytes(), data);
+        return args;
     }
 
     @Override
     public RequestContext selectQuery(byte[] queryData, int fetchCount, long[] ptVersions, boolean asJson) {
-        ReindexerResponse response = adapter.selectQuery(rx, next.get(), timeout.toMillis(), queryData, ptVersions, asJson);
+        return selectQuery(queryData, fetchCount, ptVersions, asJson, ExecutionContext.DEFAULT);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * A cancellation before the engine starts the call is best-effort, see
+     * {@link Builtin#selectQuery(byte[], int, long[], boolean, ExecutionContext)}.
+     */
+    @Override
+    public RequestContext selectQuery(byte[] queryData, int fetchCount, long[] ptVersions, boolean asJson,
+                                      ExecutionContext context) {
+        long ctxId = next.get();
+        ReindexerResponse response;
+        CancellationToken.Registration registration = context.onCancel(() -> Builtin.cancelContext(adapter, ctxId));
+        try {
+            response = adapter.selectQuery(rx, ctxId, context.getTimeout(timeout).toMillis(), queryData, ptVersions,
+                    asJson);
+        } finally {
+            registration.close();
+        }
         checkResponse(response);
-        return new BuiltinRequestContext(response);
+        RequestContext requestContext = new BuiltinRequestContext(response, fetchCount);
+        if (context.isCancelled()) {
+            requestContext.closeResults();
+            throw new CancelledException("Request cancelled");
+        }
+        return requestContext;
     }
 
     @Override
@@ -108,9 +179,13 @@ public class BuiltinTransactionContext implements TransactionContext {
 
     @Override
     public void commit() {
+        awaitPending();
         try {
             ReindexerResponse response = adapter.commitTx(rx, transactionId, next.get(), timeout.toMillis());
             checkResponse(response);
+            if (response.getHandle() != 0L) {
+                NativeUtils.freeNativeBuffer(response.getHandle());
+            }
         } catch (Exception e) {
             LOGGER.error("rx: commit error", e);
         }
@@ -118,6 +193,7 @@ public class BuiltinTransactionContext implements TransactionContext {
 
     @Override
     public void rollback() {
+        awaitPending();
         try {
             ReindexerResponse response = adapter.rollbackTx(rx, transactionId);
             checkResponse(response);
@@ -126,6 +202,12 @@ public class BuiltinTransactionContext implements TransactionContext {
         }
     }
 
+    private void awaitPending() {
+        CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0]))
+                .handle((result, e) -> null)
+                .join();
+    }
+
     private void checkResponse(ReindexerResponse response) {
         if (response.hasError()) {
             throw ReindexerExceptionFactory.fromResponse(response);
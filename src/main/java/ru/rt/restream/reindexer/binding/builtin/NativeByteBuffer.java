@@ -0,0 +1,341 @@
+/*
+ * Copyright 2020 Restream
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.rt.restream.reindexer.binding.builtin;
+
+import ru.rt.restream.reindexer.binding.cproto.ByteBuffer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * A read-only {@link ByteBuffer} over native memory owned by the Reindexer engine. Values are read directly from a
+ * direct {@link java.nio.ByteBuffer} view, without copying the memory to the Java heap.
+ * <p>
+ * The memory is valid until it is freed by the engine, i.e. until the query results are closed. The owner of the
+ * memory calls {@link #release()} before freeing it, so that a later read fails with an exception instead of
+ * accessing freed memory.
+ */
+public class NativeByteBuffer extends ByteBuffer {
+
+    private static final java.nio.ByteBuffer RELEASED = java.nio.ByteBuffer.allocateDirect(0);
+
+    private static final int WRITE_CHUNK_SIZE = 8192;
+
+    private java.nio.ByteBuffer memory;
+
+    /**
+     * Wraps a direct buffer, positioned at its beginning.
+     *
+     * @param memory the direct buffer over native memory
+     */
+    public NativeByteBuffer(java.nio.ByteBuffer memory) {
+        super(0);
+        this.memory = memory.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Returns the direct buffer over the native memory.
+     *
+     * @return the direct buffer
+     */
+    public java.nio.ByteBuffer getMemory() {
+        return memory;
+    }
+
+    /**
+     * Detaches the buffer from the native memory. Subsequent reads throw
+     * {@link java.nio.BufferUnderflowException}.
+     */
+    public void release() {
+        memory = RELEASED;
+    }
+
+    @Override
+    public int getUInt16() {
+        return memory.getShort() & 0xFFFF;
+    }
+
+    @Override
+    public long getUInt32() {
+        return memory.getInt() & 0xFFFFFFFFL;
+    }
+
+    @Override
+    public long getUInt64() {
+        return memory.getLong();
+    }
+
+    @Override
+    public long getVarUInt() {
+        long value = 0L;
+        int i = 0;
+        long b;
+        while (((b = memory.get()) & 0x80L) != 0) {
+            value |= (b & 0x7F) << i;
+            i += 7;
+            if (i > 63) {
+                throw new IllegalArgumentException("Variable length quantity is too long");
+            }
+        }
+        return value | (b << i);
+    }
+
+    @Override
+    public String getVString() {
+        int length = (int) getVarUInt();
+        return new String(getBytes(length), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public UUID getUuid() {
+        return new UUID(memory.getLong(), memory.getLong());
+    }
+
+    @Override
+    public double getDouble() {
+        return memory.getDouble();
+    }
+
+    @Override
+    public float getFloat() {
+        return memory.getFloat();
+    }
+
+    @Override
+    public byte[] getBytes(int length) {
+        byte[] bytes = new byte[length];
+        memory.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Reads a buffer of specified size over the native memory without copying it.
+     * Increments buffer position.
+     *
+     * @param length the length of the buffer
+     * @return the {@link NativeByteBuffer} read from the native memory
+     */
+    @Override
+    public NativeByteBuffer getSlice(int length) {
+        java.nio.ByteBuffer slice = memory.slice();
+        slice.limit(length);
+        skip(length);
+        return new NativeByteBuffer(slice);
+    }
+
+    @Override
+    public void writeTo(OutputStream out, int length) throws IOException {
+        if (length > memory.remaining()) {
+            final String msg = String.format("Buffer underflow error: position %d, length %d, need %d",
+                    memory.position(), memory.limit(), length);
+            throw new RuntimeException(msg);
+        }
+        write(memory, out, length);
+    }
+
+    /**
+     * Writes all bytes of the native memory to the output stream through a small heap chunk.
+     * Doesn't increments buffer position.
+     *
+     * @param out the output stream to write to
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        java.nio.ByteBuffer duplicate = memory.duplicate();
+        duplicate.rewind();
+        write(duplicate, out, duplicate.remaining());
+    }
+
+    private static void write(java.nio.ByteBuffer source, OutputStream out, int length) throws IOException {
+        byte[] chunk = new byte[Math.min(length, WRITE_CHUNK_SIZE)];
+        int remaining = length;
+        while (remaining > 0) {
+            int chunkLength = Math.min(remaining, chunk.length);
+            source.get(chunk, 0, chunkLength);
+            out.write(chunk, 0, chunkLength);
+            remaining -= chunkLength;
+        }
+    }
+
+    @Override
+    protected void copyTo(byte[] dest, int offset) {
+        java.nio.ByteBuffer duplicate = memory.duplicate();
+        duplicate.rewind();
+        duplicate.get(dest, offset, duplicate.remaining());
+    }
+
+    @Override
+    public byte[] getBytes() {
+        byte[] bytes = new byte[memory.remaining()];
+        memory.duplicate().get(bytes);
+        return bytes;
+    }
+
+    @Override
+    public byte[] bytes() {
+        byte[] bytes = new byte[memory.limit()];
+        java.nio.ByteBuffer duplicate = memory.duplicate();
+        duplicate.rewind();
+        duplicate.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Returns a buffer over the remaining native memory without copying it.
+     * Doesn't increments buffer position.
+     *
+     * @return the {@link NativeByteBuffer} with the remaining bytes
+     */
+    @Override
+    public NativeByteBuffer slice() {
+        return new NativeByteBuffer(memory.slice());
+    }
+
+    /**
+     * The native memory has no backed array, use {@link #getMemory()} to access it without copying.
+     *
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public byte[] array() {
+        throw new UnsupportedOperationException("Native buffer has no backed array");
+    }
+
+    @Override
+    public int capacity() {
+        return memory.capacity();
+    }
+
+    @Override
+    public NativeByteBuffer rewind() {
+        memory.rewind();
+        return this;
+    }
+
+    @Override
+    public void skip(int length) {
+        memory.position(memory.position() + length);
+    }
+
+    @Override
+    public int getPosition() {
+        return memory.position();
+    }
+
+    @Override
+    public int length() {
+        return memory.limit();
+    }
+
+    @Override
+    public ByteBuffer putUInt8(int value) {
+        throw readOnly();
+    }
+
+    @Override
+    public ByteBuffer putUInt16(int value) {
+        throw readOnly();
+    }
+
+    @Override
+    public ByteBuffer putUInt32(long value) {
+        throw readOnly();
+    }
+
+    @Override
+    public ByteBuffer putUInt32(long value, int position) {
+        throw readOnly();
+    }
+
+    @Override
+    public ByteBuffer putVarUInt32(long value) {
+        throw readOnly();
+    }
+
+    @Override
+    public ByteBuffer putVarInt32(int value) {
+        throw readOnly();
+    }
+
+    @Override
+    public ByteBuffer putVarInt64(long value) {
+        throw readOnly();
+    }
+
+    @Override
+    public ByteBuffer putVString(String value) {
+        throw readOnly();
+    }
+
+    @Override
+    public ByteBuffer putUuid(UUID value) {
+        throw readOnly();
+    }
+
+    @Override
+    public ByteBuffer putVBytes(byte[] value) {
+        throw readOnly();
+    }
+
+    @Override
+    public ByteBuffer writeBytes(byte[] value) {
+        throw readOnly();
+    }
+
+    @Override
+    public ByteBuffer writeBytes(ByteBuffer value) {
+        throw readOnly();
+    }
+
+    @Override
+    public void putDouble(Double value) {
+        throw readOnly();
+    }
+
+    @Override
+    public void putFloat(Float value) {
+        throw readOnly();
+    }
+
+    @Override
+    public void putFloatVector(float[] vector) {
+        throw readOnly();
+    }
+
+    @Override
+    public void truncateStart(int length) {
+        throw readOnly();
+    }
+
+    @Override
+    public void reset() {
+        throw readOnly();
+    }
+
+    @Override
+    public void clear() {
+        throw readOnly();
+    }
+
+    private static UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException("Native buffer is read-only");
+    }
+
+}
@@ -18,26 +18,18 @@ package ru.rt.restream.reindexer.binding.builtin.server;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import ru.rt.restream.reindexer.ReindexerResponse;
 import ru.rt.restream.reindexer.binding.Binding;
+import ru.rt.restream.reindexer.binding.ExecutionContext;
 import ru.rt.restream.reindexer.binding.RequestContext;
 import ru.rt.restream.reindexer.binding.TransactionContext;
 import ru.rt.restream.reindexer.binding.builtin.Builtin;
-import ru.rt.restream.reindexer.binding.builtin.BuiltinAdapter;
+import ru.rt.restream.reindexer.binding.builtin.BuiltinAsyncExecutor;
 import ru.rt.restream.reindexer.binding.definition.IndexDefinition;
 import ru.rt.restream.reindexer.binding.definition.NamespaceDefinition;
-import ru.rt.restream.reindexer.exceptions.ReindexerException;
-import ru.rt.restream.reindexer.exceptions.ReindexerExceptionFactory;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.net.URI;
 import java.time.Duration;
-import java.time.Instant;
-import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
+import java.util.List;
 
 /**
  * A {@link Binding} to Reindexer, which establish a connection to Reindexer instance via native calls.
@@ -48,13 +40,9 @@ public class BuiltinServer implements Binding {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(BuiltinServer.class);
 
-    private final BuiltinAdapter adapter;
+    private final EmbeddedServer server;
 
-    private final Binding builtin;
-
-    private final long svc;
-
-    private final Thread serverThread;
+    private final Builtin builtin;
 
     /**
      * Creates an instance.
@@ -65,29 +53,23 @@ public class BuiltinServer implements Binding {
      * @param requestTimeout       the request timeout
      */
     public BuiltinServer(URI uri, String serverConfigFile, Duration serverStartupTimeout, Duration requestTimeout) {
-        String yamlConfig = readYamlConfig(serverConfigFile);
-        adapter = new BuiltinAdapter();
-        svc = adapter.initServer();
-        serverThread = new Thread(() -> {
-            ReindexerResponse response = adapter.startServer(svc, yamlConfig);
-            if (response.hasError()) {
-                LOGGER.error("rx: startServer error: {}", response.getErrorMessage());
-            }
-            LOGGER.debug("rx: startServer finished");
-        });
-        serverThread.start();
-        Instant startupDeadline = Instant.now().plus(serverStartupTimeout);
-        while (!adapter.isServerReady(svc)) {
-            if (Instant.now().isAfter(startupDeadline)) {
-                throw new ReindexerException("Server startup timeout");
-            }
-            try {
-                TimeUnit.SECONDS.sleep(1L);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                throw new ReindexerException("Interrupted while waiting for server to startup");
-            }
-        }
+        this(uri, serverConfigFile, serverStartupTimeout, requestTimeout,
+                new BuiltinAsyncExecutor(Runtime.getRuntime().availableProcessors(),
+                        BuiltinAsyncExecutor.DEFAULT_QUEUE_SIZE));
+    }
+
+    /**
+     * Creates an instance. The server is shared with other instances, that use the same server config file,
+     * see {@link EmbeddedServerManager}.
+     *
+     * @param uri                  the Reindexer URL
+     * @param serverConfigFile     the server config file
+     * @param serverStartupTimeout the server startup timeout
+     * @param requestTimeout       the request timeout
+     * @param asyncExecutor        the {@link BuiltinAsyncExecutor} to run asynchronous calls
+     */
+    public BuiltinServer(URI uri, String serverConfigFile, Duration serverStartupTimeout, Duration requestTimeout,
+                         BuiltinAsyncExecutor asyncExecutor) {
         String user = "";
         String password = "";
         String userInfo = uri.getUserInfo();
@@ -104,21 +86,33 @@ public class BuiltinServer implements Binding {
         if (database == null) {
             throw new IllegalArgumentException("Invalid database name in the URL");
         }
-        long rx = adapter.getInstance(svc, database, user, password);
-        builtin = new Builtin(adapter, rx, requestTimeout);
+        server = EmbeddedServerManager.acquire(serverConfigFile);
+        try {
+            server.awaitReady(serverStartupTimeout);
+            long rx = server.getInstance(database, user, password);
+            builtin = new Builtin(server.getAdapter(), rx, requestTimeout, asyncExecutor);
+        } catch (RuntimeException e) {
+            EmbeddedServerManager.release(server);
+            throw e;
+        }
     }
 
-    private String readYamlConfig(String serverConfigFile) {
-        try (InputStream is = getClass().getClassLoader().getResourceAsStream(serverConfigFile)) {
-            if (is == null) {
-                throw new IllegalArgumentException("Server config file: '" + serverConfigFile + "' is not found");
-            }
-            try (BufferedReader br = new BufferedReader(new InputStreamReader(is))) {
-                return br.lines().collect(Collectors.joining(System.lineSeparator()));
-            }
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+    /**
+     * Returns the executor of asynchronous calls, e.g. to read its metrics.
+     *
+     * @return the {@link BuiltinAsyncExecutor} in use
+     */
+    public BuiltinAsyncExecutor getAsyncExecutor() {
+        return builtin.getAsyncExecutor();
+    }
+
+    /**
+     * Returns the server, that serves the database of the binding.
+     *
+     * @return the {@link EmbeddedServer} in use
+     */
+    public EmbeddedServer getServer() {
+        return server;
     }
 
     @Override
@@ -146,6 +140,12 @@ public class BuiltinServer implements Binding {
         builtin.modifyItem(namespaceName, data, format, mode, precepts, stateToken);
     }
 
+    @Override
+    public void modifyItems(String namespaceName, List<byte[]> items, int format, int mode, String[] precepts,
+                            int stateToken) {
+        builtin.modifyItems(namespaceName, items, format, mode, precepts, stateToken);
+    }
+
     @Override
     public void dropNamespace(String namespaceName) {
         builtin.dropNamespace(namespaceName);
@@ -166,16 +166,32 @@ public class BuiltinServer implements Binding {
         return builtin.selectQuery(queryData, fetchCount, ptVersions, asJson);
     }
 
+    @Override
+    public RequestContext selectQuery(byte[] queryData, int fetchCount, long[] ptVersions, boolean asJson,
+                                      ExecutionContext context) {
+        return builtin.selectQuery(queryData, fetchCount, ptVersions, asJson, context);
+    }
+
     @Override
     public void deleteQuery(byte[] queryData) {
         builtin.deleteQuery(queryData);
     }
 
+    @Override
+    public void deleteQuery(byte[] queryData, ExecutionContext context) {
+        builtin.deleteQuery(queryData, context);
+    }
+
     @Override
     public void updateQuery(byte[] queryData) {
         builtin.updateQuery(queryData);
     }
 
+    @Override
+    public void updateQuery(byte[] queryData, ExecutionContext context) {
+        builtin.updateQuery(queryData, context);
+    }
+
     @Override
     public TransactionContext beginTx(String namespaceName) {
         return builtin.beginTx(namespaceName);
@@ -193,17 +209,12 @@ public class BuiltinServer implements Binding {
 
     @Override
     public void close() {
-        ReindexerResponse response = adapter.stopServer(svc);
-        if (response.hasError()) {
-            throw ReindexerExceptionFactory.fromResponse(response);
-        }
-        try {
-            serverThread.join();
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            throw new ReindexerException("Interrupted while server shutdown", e);
+        if (!builtin.getAsyncExecutor().close(BuiltinAsyncExecutor.DEFAULT_CLOSE_TIMEOUT)) {
+            // a running call would use the stopped server, so the server is left running instead
+            LOGGER.error("rx: async calls are still running, the embedded server is not released");
+            return;
         }
-        adapter.destroyServer(svc);
+        EmbeddedServerManager.release(server);
     }
 
 }
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2020 Restream
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.rt.restream.reindexer.binding.builtin.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.rt.restream.reindexer.ReindexerResponse;
+import ru.rt.restream.reindexer.binding.builtin.BuiltinAdapter;
+import ru.rt.restream.reindexer.exceptions.ReindexerException;
+import ru.rt.restream.reindexer.exceptions.ReindexerExceptionFactory;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A reindexer server, which runs in the current process. The server can serve several databases, and is shared
+ * by the {@link BuiltinServer} bindings with the same server config, see {@link EmbeddedServerManager}.
+ */
+public final class EmbeddedServer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(EmbeddedServer.class);
+
+    private static final long MIN_READY_CHECK_INTERVAL_MILLIS = 5L;
+
+    private static final long MAX_READY_CHECK_INTERVAL_MILLIS = 100L;
+
+    private final BuiltinAdapter adapter = new BuiltinAdapter();
+
+    private final CompletableFuture<EmbeddedServer> ready = new CompletableFuture<>();
+
+    private final String serverConfigFile;
+
+    private final long svc;
+
+    private final Thread serverThread;
+
+    private final Thread readinessThread;
+
+    /**
+     * The number of bindings, that use the server. Guarded by {@link EmbeddedServerManager}.
+     */
+    int references;
+
+    /**
+     * Creates an instance and starts the server.
+     *
+     * @param serverConfigFile the server config file name
+     * @param yamlConfig       the server config
+     */
+    EmbeddedServer(String serverConfigFile, String yamlConfig) {
+        this.serverConfigFile = serverConfigFile;
+        svc = adapter.initServer();
+        serverThread = new Thread(() -> {
+            ReindexerResponse response = adapter.startServer(svc, yamlConfig);
+            if (response.hasError()) {
+                LOGGER.error("rx: startServer error: {}", response.getErrorMessage());
+                ready.completeExceptionally(new ReindexerException("Server startup error: "
+                        + response.getErrorMessage()));
+            } else {
+                ready.completeExceptionally(new ReindexerException("Server is stopped"));
+            }
+            LOGGER.debug("rx: startServer finished");
+        }, "rx-server");
+        readinessThread = new Thread(this::awaitServerReady, "rx-server-readiness");
+        readinessThread.setDaemon(true);
+        serverThread.start();
+        readinessThread.start();
+    }
+
+    /**
+     * Checks the server readiness until it is ready or stopped. The engine has no readiness notification, so it is
+     * polled, starting with a short interval, that grows up to {@link #MAX_READY_CHECK_INTERVAL_MILLIS}.
+     */
+    private void awaitServerReady() {
+        long interval = MIN_READY_CHECK_INTERVAL_MILLIS;
+        while (!ready.isDone()) {
+            if (adapter.isServerReady(svc)) {
+                LOGGER.debug("rx: server is ready, config: {}", serverConfigFile);
+                ready.complete(this);
+                return;
+            }
+            try {
+                TimeUnit.MILLISECONDS.sleep(interval);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                ready.completeExceptionally(new ReindexerException("Interrupted while waiting for server to startup"));
+                return;
+            }
+            interval = Math.min(interval * 2, MAX_READY_CHECK_INTERVAL_MILLIS);
+        }
+    }
+
+    /**
+     * Returns the {@link CompletableFuture}, which is completed when the server is ready to serve requests, or
+     * completed exceptionally if the server fails to start.
+     *
+     * @return the server readiness
+     */
+    public CompletableFuture<EmbeddedServer> whenReady() {
+        return ready.thenApply(server -> server);
+    }
+
+    /**
+     * Waits until the server is ready to serve requests.
+     *
+     * @param timeout the server startup timeout
+     * @throws ReindexerException if the server fails to start or is not started within the timeout
+     */
+    public void awaitReady(Duration timeout) {
+        try {
+            ready.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ReindexerException("Interrupted while waiting for server to startup");
+        } catch (TimeoutException e) {
+            throw new ReindexerException("Server startup timeout");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof ReindexerException) {
+                throw (ReindexerException) e.getCause();
+            }
+            throw new ReindexerException(e.getCause());
+        }
+    }
+
+    /**
+     * Returns the Reindexer instance pointer of the database, creating the database if it does not exist.
+     *
+     * @param database the database name
+     * @param user     the user name
+     * @param password the user password
+     * @return the Reindexer instance pointer
+     */
+    public long getInstance(String database, String user, String password) {
+        return adapter.getInstance(svc, database, user, password);
+    }
+
+    /**
+     * Returns the {@link BuiltinAdapter}, which serves the server.
+     *
+     * @return the {@link BuiltinAdapter} to use
+     */
+    public BuiltinAdapter getAdapter() {
+        return adapter;
+    }
+
+    /**
+     * Returns the server config file name.
+     *
+     * @return the server config file name
+     */
+    public String getServerConfigFile() {
+        return serverConfigFile;
+    }
+
+    /**
+     * Stops the server and waits for the server thread completion, then releases the server resources. If the server
+     * fails to stop, its resources are not released, since the server thread may still use them.
+     */
+    void stop() {
+        ready.completeExceptionally(new ReindexerException("Server is stopped"));
+        try {
+            readinessThread.join();
+            ReindexerResponse response = adapter.stopServer(svc);
+            if (response.hasError()) {
+                LOGGER.error("rx: stopServer error: {}, the server is not destroyed", response.getErrorMessage());
+                throw ReindexerExceptionFactory.fromResponse(response);
+            }
+            serverThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.error("rx: interrupted while server shutdown, the server is not destroyed");
+            throw new ReindexerException("Interrupted while server shutdown", e);
+        }
+        adapter.destroyServer(svc);
+    }
+
+}
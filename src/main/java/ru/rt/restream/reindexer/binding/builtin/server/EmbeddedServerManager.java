@@ -0,0 +1,111 @@
+/*
+ * Copyright 2020 Restream
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.rt.restream.reindexer.binding.builtin.server;
+
+import ru.rt.restream.reindexer.exceptions.ReindexerException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Manages the {@link EmbeddedServer} instances of the process. A server is started on the first
+ * {@link #acquire(String)} of its config, is shared by the following ones, and is stopped on the last
+ * {@link #release(EmbeddedServer)}. So several {@link BuiltinServer} bindings, e.g. for different databases,
+ * use the same server.
+ */
+public final class EmbeddedServerManager {
+
+    private static final Map<String, EmbeddedServer> SERVERS = new HashMap<>();
+
+    private EmbeddedServerManager() {
+        // utils
+    }
+
+    /**
+     * Returns the server with the given config, starting it if the server is not running.
+     * The server may be not ready yet, see {@link EmbeddedServer#whenReady()}. If the server with the config is
+     * stopping, waits for it to stop before a new one is started, since both would use the same ports and storage.
+     *
+     * @param serverConfigFile the server config file name, a classpath resource
+     * @return the {@link EmbeddedServer} to use, which must be released after use
+     * @throws ReindexerException if interrupted while waiting for the stopping server
+     */
+    public static synchronized EmbeddedServer acquire(String serverConfigFile) {
+        EmbeddedServer server = SERVERS.get(serverConfigFile);
+        // a released server stays in the map with no references, until it is stopped
+        while (server != null && server.references == 0) {
+            try {
+                EmbeddedServerManager.class.wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ReindexerException("Interrupted while waiting for server to stop");
+            }
+            server = SERVERS.get(serverConfigFile);
+        }
+        if (server == null) {
+            server = new EmbeddedServer(serverConfigFile, readYamlConfig(serverConfigFile));
+            SERVERS.put(serverConfigFile, server);
+        }
+        server.references++;
+        return server;
+    }
+
+    /**
+     * Releases the server, which is acquired with {@link #acquire(String)}. The server is stopped, when it is
+     * released by all its users. The server is stopped outside of the manager lock, so a slow shutdown does not
+     * block the other servers, but it is kept in the manager until it is stopped.
+     *
+     * @param server the server to release
+     */
+    public static void release(EmbeddedServer server) {
+        synchronized (EmbeddedServerManager.class) {
+            if (server.references <= 0) {
+                throw new IllegalStateException("Server is already released");
+            }
+            if (--server.references > 0) {
+                return;
+            }
+        }
+        try {
+            server.stop();
+        } finally {
+            synchronized (EmbeddedServerManager.class) {
+                SERVERS.remove(server.getServerConfigFile(), server);
+                EmbeddedServerManager.class.notifyAll();
+            }
+        }
+    }
+
+    private static String readYamlConfig(String serverConfigFile) {
+        ClassLoader classLoader = EmbeddedServerManager.class.getClassLoader();
+        try (InputStream is = classLoader.getResourceAsStream(serverConfigFile)) {
+            if (is == null) {
+                throw new IllegalArgumentException("Server config file: '" + serverConfigFile + "' is not found");
+            }
+            try (BufferedReader br = new BufferedReader(new InputStreamReader(is))) {
+                return br.lines().collect(Collectors.joining(System.lineSeparator()));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2020 Restream
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.rt.restream.reindexer.binding.cproto;
+
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A pool of reusable {@link ByteBuffer}s for request payloads. The buffers are grouped in power-of-two size classes
+ * from {@link #MIN_CLASS_SIZE} to {@link #MAX_CLASS_SIZE}, so a payload is written into a buffer, which is already big
+ * enough, instead of a fresh one, which is expanded several times on the way.
+ * <p>
+ * A buffer, which is expanded beyond {@link #MAX_CLASS_SIZE}, and a buffer over the per-class limit are not returned
+ * to the pool.
+ * <p>
+ * This class is thread safe.
+ */
+public final class BufferPool {
+
+    /**
+     * The capacity of the smallest size class.
+     */
+    public static final int MIN_CLASS_SIZE = 256;
+
+    /**
+     * The capacity of the largest size class.
+     */
+    public static final int MAX_CLASS_SIZE = 1024 * 1024;
+
+    /**
+     * The default maximum number of idle buffers in a size class.
+     */
+    public static final int DEFAULT_MAX_BUFFERS_PER_CLASS = 64;
+
+    private static final int MIN_CLASS_SHIFT = Integer.numberOfTrailingZeros(MIN_CLASS_SIZE);
+
+    private static final int CLASS_COUNT = Integer.numberOfTrailingZeros(MAX_CLASS_SIZE) - MIN_CLASS_SHIFT + 1;
+
+    private static final BufferPool SHARED = new BufferPool(DEFAULT_MAX_BUFFERS_PER_CLASS);
+
+    private final List<Deque<ByteBuffer>> classes = new ArrayList<>(CLASS_COUNT);
+
+    private final List<AtomicInteger> classSizes = new ArrayList<>(CLASS_COUNT);
+
+    private final int maxBuffersPerClass;
+
+    private final LongAdder acquiredCount = new LongAdder();
+
+    private final LongAdder hitCount = new LongAdder();
+
+    private final AtomicInteger inUseCount = new AtomicInteger();
+
+    private final AtomicLong pooledBytes = new AtomicLong();
+
+    /**
+     * Creates an instance.
+     *
+     * @param maxBuffersPerClass the maximum number of idle buffers in a size class
+     */
+    public BufferPool(int maxBuffersPerClass) {
+        if (maxBuffersPerClass < 0) {
+            throw new IllegalArgumentException("maxBuffersPerClass must not be negative");
+        }
+        this.maxBuffersPerClass = maxBuffersPerClass;
+        for (int i = 0; i < CLASS_COUNT; i++) {
+            classes.add(new ConcurrentLinkedDeque<>());
+            classSizes.add(new AtomicInteger());
+        }
+    }
+
+    /**
+     * Returns the pool, which is shared by the bindings.
+     *
+     * @return the shared {@link BufferPool}
+     */
+    public static BufferPool shared() {
+        return SHARED;
+    }
+
+    /**
+     * Takes an empty buffer with a capacity of at least sizeHint bytes. The buffer is expanded as usual, if the
+     * payload is bigger. The buffer should be returned by {@link #release(ByteBuffer)} after use.
+     *
+     * @param sizeHint the expected payload size
+     * @return the empty {@link ByteBuffer} to use
+     */
+    public ByteBuffer acquire(int sizeHint) {
+        acquiredCount.increment();
+        inUseCount.incrementAndGet();
+        if (sizeHint > MAX_CLASS_SIZE) {
+            return new ByteBuffer(sizeHint);
+        }
+        int index = ceilClass(sizeHint);
+        ByteBuffer buffer = classes.get(index).pollFirst();
+        if (buffer == null) {
+            return new ByteBuffer(MIN_CLASS_SIZE << index);
+        }
+        classSizes.get(index).decrementAndGet();
+        pooledBytes.addAndGet(-buffer.capacity());
+        hitCount.increment();
+        return buffer;
+    }
+
+    /**
+     * Returns the buffer to the pool. The buffer must not be used after this call.
+     *
+     * @param buffer the buffer, taken by {@link #acquire(int)}
+     */
+    public void release(ByteBuffer buffer) {
+        inUseCount.decrementAndGet();
+        int capacity = buffer.capacity();
+        if (capacity < MIN_CLASS_SIZE || capacity >= MAX_CLASS_SIZE << 1) {
+            return;
+        }
+        int index = floorClass(capacity);
+        AtomicInteger classSize = classSizes.get(index);
+        if (classSize.incrementAndGet() > maxBuffersPerClass) {
+            classSize.decrementAndGet();
+            return;
+        }
+        buffer.clear();
+        pooledBytes.addAndGet(capacity);
+        classes.get(index).offerFirst(buffer);
+    }
+
+    private static int ceilClass(int size) {
+        if (size <= MIN_CLASS_SIZE) {
+            return 0;
+        }
+        return Integer.SIZE - Integer.numberOfLeadingZeros(size - 1) - MIN_CLASS_SHIFT;
+    }
+
+    private static int floorClass(int capacity) {
+        return Integer.SIZE - 1 - Integer.numberOfLeadingZeros(capacity) - MIN_CLASS_SHIFT;
+    }
+
+    /**
+     * Returns the number of {@link #acquire(int)} calls.
+     *
+     * @return the number of acquired buffers
+     */
+    public long getAcquiredCount() {
+        return acquiredCount.sum();
+    }
+
+    /**
+     * Returns the number of {@link #acquire(int)} calls, which were served by a pooled buffer.
+     *
+     * @return the number of reused buffers
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * Returns the number of {@link #acquire(int)} calls, which allocated a new buffer.
+     *
+     * @return the number of allocated buffers
+     */
+    public long getMissCount() {
+        return getAcquiredCount() - getHitCount();
+    }
+
+    /**
+     * Returns the number of acquired buffers, which are not released yet.
+     *
+     * @return the number of buffers in use
+     */
+    public int getInUseCount() {
+        return inUseCount.get();
+    }
+
+    /**
+     * Returns the number of idle buffers in the pool.
+     *
+     * @return the number of pooled buffers
+     */
+    public int getPooledCount() {
+        int count = 0;
+        for (AtomicInteger classSize : classSizes) {
+            count += classSize.get();
+        }
+        return count;
+    }
+
+    /**
+     * Returns the total capacity of idle buffers in the pool.
+     *
+     * @return the number of pooled bytes
+     */
+    public long getPooledBytes() {
+        return pooledBytes.get();
+    }
+
+}
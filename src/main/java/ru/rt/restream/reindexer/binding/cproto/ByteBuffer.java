@@ -15,6 +15,8 @@
  */
 package ru.rt.restream.reindexer.binding.cproto;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.UUID;
@@ -292,6 +294,33 @@ public class ByteBuffer {
         return this;
     }
 
+    /**
+     * Writes all used bytes of the specified buffer into this buffer.
+     * Increments buffer position.
+     *
+     * @param value buffer to put
+     * @return the {@link ByteBuffer} for further customizations
+     */
+    public ByteBuffer writeBytes(ByteBuffer value) {
+        int length = value.length();
+        grow(length);
+        value.copyTo(this.buffer, position);
+        position = position + length;
+        size = size + length;
+        return this;
+    }
+
+    /**
+     * Copies all used bytes of this buffer into the array.
+     * Doesn't increments buffer position.
+     *
+     * @param dest   the array to copy to
+     * @param offset the offset in the array
+     */
+    protected void copyTo(byte[] dest, int offset) {
+        System.arraycopy(buffer, 0, dest, offset, size);
+    }
+
     /**
      * Read an unsigned 16-bit integer from the current position in the buffer.
      * Increments buffer position.
@@ -452,6 +481,35 @@ public class ByteBuffer {
         return bytes;
     }
 
+    /**
+     * Reads a buffer of specified size from a buffer, positioned at its beginning.
+     * Increments buffer position.
+     *
+     * @param length the length of the buffer
+     * @return the {@link ByteBuffer} read from a backed array
+     */
+    public ByteBuffer getSlice(int length) {
+        return new ByteBuffer(getBytes(length)).rewind();
+    }
+
+    /**
+     * Writes bytes of specified length from a buffer to the output stream without an intermediate copy.
+     * Increments buffer position.
+     *
+     * @param out    the output stream to write to
+     * @param length the number of bytes to write
+     * @throws IOException if an I/O error occurs
+     */
+    public void writeTo(OutputStream out, int length) throws IOException {
+        if (position + length > buffer.length) {
+            final String msg = String.format("Buffer underflow error: position %d, length %d, need %d", position,
+                    buffer.length, length);
+            throw new RuntimeException(msg);
+        }
+        out.write(buffer, position, length);
+        position += length;
+    }
+
     /**
      * Reads all remaining bytes from a buffer.
      * Increments buffer position.
@@ -464,6 +522,16 @@ public class ByteBuffer {
         return bytes;
     }
 
+    /**
+     * Returns a buffer over the remaining bytes, positioned at its beginning.
+     * Doesn't increments buffer position.
+     *
+     * @return the {@link ByteBuffer} with the remaining bytes
+     */
+    public ByteBuffer slice() {
+        return new ByteBuffer(getBytes()).rewind();
+    }
+
     /**
      * Returns all used bytes from the backed array.
      * Doesn't increments buffer position.
@@ -476,6 +544,35 @@ public class ByteBuffer {
         return bytes;
     }
 
+    /**
+     * Writes all used bytes from the backed array to the output stream, without copying them.
+     * Doesn't increments buffer position.
+     *
+     * @param out the output stream to write to
+     * @throws IOException if an I/O error occurs
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(buffer, 0, size);
+    }
+
+    /**
+     * Returns the backed array. Only the first {@link #length()} bytes are meaningful.
+     *
+     * @return the backed array
+     */
+    public byte[] array() {
+        return buffer;
+    }
+
+    /**
+     * Return the length of the backed array.
+     *
+     * @return capacity of the buffer
+     */
+    public int capacity() {
+        return buffer.length;
+    }
+
     /**
      * Sets current buffer position at the beginning of the backed array.
      *
@@ -507,10 +604,33 @@ public class ByteBuffer {
     }
 
     public void putFloatVector(float[] vector) {
-        putVarUInt32(((long) vector.length) << 1);
-        for (float v : vector) {
-            putIntBits(Float.floatToIntBits(v), Integer.BYTES, -1);
+        putFloatVector(vector, 0, vector.length);
+    }
+
+    /**
+     * Writes a float vector, which is a part of the given array, e.g. a row of a flat matrix.
+     * The components are written straight to the buffer, which grows once for the whole vector.
+     * Increments buffer position.
+     *
+     * @param vector    the array, that holds the vector
+     * @param offset    the index of the first vector component
+     * @param dimension the vector dimension
+     */
+    public void putFloatVector(float[] vector, int offset, int dimension) {
+        putVarUInt32(((long) dimension) << 1);
+        grow(dimension * Integer.BYTES);
+        byte[] buffer = this.buffer;
+        int position = this.position;
+        for (int i = offset; i < offset + dimension; i++) {
+            int bits = Float.floatToIntBits(vector[i]);
+            buffer[position] = (byte) bits;
+            buffer[position + 1] = (byte) (bits >> 8);
+            buffer[position + 2] = (byte) (bits >> 16);
+            buffer[position + 3] = (byte) (bits >> 24);
+            position += Integer.BYTES;
         }
+        this.size += position - this.position;
+        this.position = position;
     }
 
     public void truncateStart(int length) {
@@ -531,6 +651,15 @@ public class ByteBuffer {
         size = 0;
     }
 
+    /**
+     * Resets the buffer to be empty without zeroing the backed array, which is cheaper than {@link #reset()}
+     * for a buffer, which is going to be rewritten.
+     */
+    public void clear() {
+        position = 0;
+        size = 0;
+    }
+
     /**
      * Skip bytes and increase position by 'length'.
      *
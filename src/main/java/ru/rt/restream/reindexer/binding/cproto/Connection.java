@@ -17,6 +17,7 @@ package ru.rt.restream.reindexer.binding.cproto;
 
 import ru.rt.restream.reindexer.ReindexerResponse;
 
+import java.time.Duration;
 import java.util.concurrent.CompletableFuture;
 
 /**
@@ -43,6 +44,35 @@ public interface Connection extends AutoCloseable {
      */
     CompletableFuture<ReindexerResponse> rpcCallAsync(int command, Object... args);
 
+    /**
+     * Call a rpc command with specified arguments asynchronously. The execution timeout is passed to the server,
+     * which stops the command execution after the timeout, and replaces the request timeout of the connection.
+     *
+     * @param command     command to invoke
+     * @param execTimeout the command execution timeout, null to use the server default
+     * @param args        command arguments
+     * @return the {@link CompletableFuture}
+     */
+    CompletableFuture<ReindexerResponse> rpcCallAsync(int command, Duration execTimeout, Object... args);
+
+    /**
+     * Returns the request timeout of the connection.
+     *
+     * @return the request timeout, null if it is not limited
+     */
+    default Duration getRequestTimeout() {
+        return null;
+    }
+
+    /**
+     * Returns the number of requests, which are sent and not answered yet.
+     *
+     * @return the number of in-flight requests
+     */
+    default int getInFlightCount() {
+        return 0;
+    }
+
     /**
      * Returns true if the connection has an error.
      *
@@ -21,6 +21,7 @@ import ru.rt.restream.reindexer.binding.Binding;
 import ru.rt.restream.reindexer.binding.cproto.util.ConnectionUtils;
 import ru.rt.restream.reindexer.exceptions.NetworkException;
 import ru.rt.restream.reindexer.exceptions.ReindexerException;
+import ru.rt.restream.reindexer.metrics.ReindexerMetrics;
 
 import java.time.Duration;
 import java.time.Instant;
@@ -80,6 +81,16 @@ public class ConnectionPool {
      */
     private final Duration timeout;
 
+    /**
+     * The metrics to record.
+     */
+    private final ReindexerMetrics metrics;
+
+    /**
+     * The registered gauges, which are removed on close.
+     */
+    private final List<ReindexerMetrics.GaugeRegistration> gauges = new ArrayList<>();
+
     /**
      * Current {@link DataSource}.
      */
@@ -95,14 +106,32 @@ public class ConnectionPool {
      */
     public ConnectionPool(DataSourceFactory dataSourceFactory, DataSourceConfiguration dataSourceConfiguration,
                           int connectionPoolSize, Duration requestTimeout) {
+        this(dataSourceFactory, dataSourceConfiguration, connectionPoolSize, requestTimeout, ReindexerMetrics.NOOP);
+    }
+
+    /**
+     * Construct the connection pool instance to the given database URL, which records the connection metrics.
+     *
+     * @param dataSourceFactory       the {@link DataSourceFactory} to use
+     * @param dataSourceConfiguration the {@link DataSourceConfiguration} to use
+     * @param connectionPoolSize      the connection pool size
+     * @param requestTimeout          the request timeout
+     * @param metrics                 the metrics to record
+     */
+    public ConnectionPool(DataSourceFactory dataSourceFactory, DataSourceConfiguration dataSourceConfiguration,
+                          int connectionPoolSize, Duration requestTimeout, ReindexerMetrics metrics) {
         this.dataSourceFactory = dataSourceFactory;
         this.dataSourceConfiguration = dataSourceConfiguration;
         scheduler = new ScheduledThreadPoolExecutor(connectionPoolSize * 2 + 1);
         scheduler.setRemoveOnCancelPolicy(true);
         connections = new ArrayList<>(connectionPoolSize);
         timeout = requestTimeout;
+        this.metrics = metrics;
         dataSource = getDataSource(connectionPoolSize);
         scheduler.scheduleWithFixedDelay(new PingTask(), 0, 1, TimeUnit.MINUTES);
+        gauges.add(metrics.registerGauge(ReindexerMetrics.POOL_CONNECTIONS, () -> connections.size()));
+        gauges.add(metrics.registerGauge(ReindexerMetrics.POOL_BROKEN_CONNECTIONS, this::countBrokenConnections));
+        gauges.add(metrics.registerGauge(ReindexerMetrics.IN_FLIGHT_REQUESTS, this::countInFlightRequests));
     }
 
     /**
@@ -129,8 +158,9 @@ public class ConnectionPool {
                 connection = connections.get(id);
                 if (connection.hasError()) {
                     try {
-                        connection = dataSource.getConnection(timeout, scheduler);
+                        connection = dataSource.getConnection(timeout, scheduler, metrics);
                         connections.set(id, connection);
+                        metrics.recordReconnect();
                     } catch (NetworkException e) {
                         LOGGER.error("rx: connection-{} to {} failed with error", id, dataSource, e);
                         dataSource = getDataSource(connections.size());
@@ -158,7 +188,7 @@ public class ConnectionPool {
             LOGGER.debug("rx: trying to connect to {}", dataSource);
             try {
                 for (int i = 0; i < connectionPoolSize; i++) {
-                    Connection newConnection = dataSource.getConnection(timeout, scheduler);
+                    Connection newConnection = dataSource.getConnection(timeout, scheduler, metrics);
                     if (i < connections.size()) {
                         Connection oldConnection = connections.get(i);
                         oldConnection.close();
@@ -180,12 +210,41 @@ public class ConnectionPool {
         }
     }
 
+    private double countInFlightRequests() {
+        int count = 0;
+        lock.readLock().lock();
+        try {
+            for (Connection connection : connections) {
+                count += connection.getInFlightCount();
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return count;
+    }
+
+    private double countBrokenConnections() {
+        int count = 0;
+        lock.readLock().lock();
+        try {
+            for (Connection connection : connections) {
+                if (connection.hasError()) {
+                    count++;
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return count;
+    }
+
     /**
-     * Closes all unused pooled connections.
+     * Closes all unused pooled connections and removes the pool gauges.
      * Exceptions while closing are written to the log.
      */
     public void close() {
         if (closed.compareAndSet(false, true)) {
+            gauges.forEach(ReindexerMetrics.GaugeRegistration::close);
             lock.readLock().lock();
             try {
                 connections.forEach(Connection::close);
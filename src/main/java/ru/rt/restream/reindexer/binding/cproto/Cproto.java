@@ -18,30 +18,66 @@ package ru.rt.restream.reindexer.binding.cproto;
 import com.google.gson.FieldNamingPolicy;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import ru.rt.restream.reindexer.ReindexerResponse;
 import ru.rt.restream.reindexer.binding.Binding;
 import ru.rt.restream.reindexer.binding.Consts;
+import ru.rt.restream.reindexer.binding.ExecutionContext;
 import ru.rt.restream.reindexer.binding.RequestContext;
 import ru.rt.restream.reindexer.binding.TransactionContext;
 import ru.rt.restream.reindexer.binding.cproto.util.ConnectionUtils;
 import ru.rt.restream.reindexer.binding.definition.IndexDefinition;
 import ru.rt.restream.reindexer.binding.definition.NamespaceDefinition;
+import ru.rt.restream.reindexer.metrics.ReindexerMetrics;
+import ru.rt.restream.reindexer.metrics.SlowQueryEvent;
+import ru.rt.restream.reindexer.metrics.SlowQueryLog;
+import ru.rt.restream.reindexer.tracing.ReindexerSpan;
+import ru.rt.restream.reindexer.tracing.TracingBinding;
 
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.DoubleSupplier;
 
 import static org.apache.commons.lang3.ArrayUtils.EMPTY_BYTE_ARRAY;
 
 /**
  * A binding to Reindexer database, which establishes a connection to Reindexer instance via RPC.
+ * Records the latency of every command, see {@link ReindexerMetrics#recordCommand(int, String, long, boolean)},
+ * and captures the slow commands, see {@link SlowQueryLog}. The timings of a command with an {@link ExecutionContext}
+ * are stored in the context, so the query, that made the command, is captured instead.
  */
 public class Cproto implements Binding {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(Cproto.class);
+
+    /**
+     * The bytes held by the shared {@link BufferPool}, one instance for all the clients to count it once.
+     */
+    private static final DoubleSupplier BUFFER_POOL_BYTES = () -> BufferPool.shared().getPooledBytes();
+
     /**
      * The connection pool.
      */
     private final ConnectionPool pool;
 
+    /**
+     * The metrics to record.
+     */
+    private final ReindexerMetrics metrics;
+
+    /**
+     * The log of the slow commands.
+     */
+    private final SlowQueryLog slowQueryLog;
+
+    /**
+     * The registered buffer pool gauge, which is removed on close.
+     */
+    private final ReindexerMetrics.GaugeRegistration bufferPoolGauge;
+
     /**
      * Construct binding instance to the given database URL.
      *
@@ -52,7 +88,40 @@ public class Cproto implements Binding {
      */
     public Cproto(DataSourceFactory dataSourceFactory, DataSourceConfiguration dataSourceConfig, int connectionPoolSize,
                   Duration requestTimeout) {
-        pool = new ConnectionPool(dataSourceFactory, dataSourceConfig, connectionPoolSize, requestTimeout);
+        this(dataSourceFactory, dataSourceConfig, connectionPoolSize, requestTimeout, ReindexerMetrics.NOOP);
+    }
+
+    /**
+     * Construct binding instance to the given database URL, which records the client metrics.
+     *
+     * @param dataSourceFactory  the {@link DataSourceFactory} to use
+     * @param dataSourceConfig   the {@link DataSourceConfiguration} to configure an obtaining of {@link DataSource}
+     * @param connectionPoolSize the connection pool size
+     * @param requestTimeout     the request timeout
+     * @param metrics            the metrics to record
+     */
+    public Cproto(DataSourceFactory dataSourceFactory, DataSourceConfiguration dataSourceConfig, int connectionPoolSize,
+                  Duration requestTimeout, ReindexerMetrics metrics) {
+        this(dataSourceFactory, dataSourceConfig, connectionPoolSize, requestTimeout, metrics, SlowQueryLog.DISABLED);
+    }
+
+    /**
+     * Construct binding instance to the given database URL, which records the client metrics and captures the slow
+     * commands.
+     *
+     * @param dataSourceFactory  the {@link DataSourceFactory} to use
+     * @param dataSourceConfig   the {@link DataSourceConfiguration} to configure an obtaining of {@link DataSource}
+     * @param connectionPoolSize the connection pool size
+     * @param requestTimeout     the request timeout
+     * @param metrics            the metrics to record
+     * @param slowQueryLog       the log of the slow commands
+     */
+    public Cproto(DataSourceFactory dataSourceFactory, DataSourceConfiguration dataSourceConfig, int connectionPoolSize,
+                  Duration requestTimeout, ReindexerMetrics metrics, SlowQueryLog slowQueryLog) {
+        this.metrics = metrics;
+        this.slowQueryLog = slowQueryLog;
+        pool = new ConnectionPool(dataSourceFactory, dataSourceConfig, connectionPoolSize, requestTimeout, metrics);
+        bufferPoolGauge = metrics.registerGauge(ReindexerMetrics.BUFFER_POOL_BYTES, BUFFER_POOL_BYTES);
     }
 
     /**
@@ -61,7 +130,7 @@ public class Cproto implements Binding {
     @Override
     public void openNamespace(NamespaceDefinition namespace) {
         String json = toJson(namespace);
-        rpcCallNoResults(OPEN_NAMESPACE, json);
+        rpcCallNoResults(namespace.getName(), OPEN_NAMESPACE, json);
     }
 
     private String toJson(Object object) {
@@ -76,7 +145,7 @@ public class Cproto implements Binding {
      */
     @Override
     public void addIndex(String namespace, IndexDefinition index) {
-        rpcCallNoResults(ADD_INDEX, namespace, toJson(index));
+        rpcCallNoResults(namespace, ADD_INDEX, namespace, toJson(index));
     }
 
     /**
@@ -84,7 +153,7 @@ public class Cproto implements Binding {
      */
     @Override
     public void updateIndex(String namespace, IndexDefinition index) {
-        rpcCallNoResults(UPDATE_INDEX, namespace, toJson(index));
+        rpcCallNoResults(namespace, UPDATE_INDEX, namespace, toJson(index));
     }
 
     /**
@@ -92,7 +161,7 @@ public class Cproto implements Binding {
      */
     @Override
     public void dropIndex(String namespace, String indexName) {
-        rpcCallNoResults(DROP_INDEX, namespace, indexName);
+        rpcCallNoResults(namespace, DROP_INDEX, namespace, indexName);
     }
 
     /**
@@ -102,10 +171,36 @@ public class Cproto implements Binding {
     public void modifyItem(String namespaceName, byte[] data, int format, int mode, String[] precepts,
                            int stateToken) {
         byte[] packedPercepts = packPrecepts(precepts);
-        rpcCallNoResults(MODIFY_ITEM, namespaceName, format, data, mode,
+        rpcCallNoResults(namespaceName, MODIFY_ITEM, namespaceName, format, data, mode,
                 packedPercepts, stateToken, 0);
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The items are pipelined over a single connection, with at most
+     * {@link ConnectionUtils#DEFAULT_PIPELINE_WINDOW} unanswered requests at a time. The latency of the whole
+     * batch is recorded.
+     */
+    @Override
+    public void modifyItems(String namespaceName, List<byte[]> items, int format, int mode, String[] precepts,
+                            int stateToken) {
+        byte[] packedPercepts = packPrecepts(precepts);
+        List<Object[]> calls = new ArrayList<>(items.size());
+        for (byte[] data : items) {
+            calls.add(new Object[]{namespaceName, format, data, mode, packedPercepts, stateToken, 0});
+        }
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            ConnectionUtils.rpcCallPipelined(pool.getConnection(), ConnectionUtils.DEFAULT_PIPELINE_WINDOW,
+                    MODIFY_ITEM, calls);
+            failed = false;
+        } finally {
+            recordCommand(MODIFY_ITEM, namespaceName, start, failed);
+        }
+    }
+
     private byte[] packPrecepts(String[] precepts) {
         if (precepts.length == 0) {
             return EMPTY_BYTE_ARRAY;
@@ -123,7 +218,7 @@ public class Cproto implements Binding {
      */
     @Override
     public void dropNamespace(String namespaceName) {
-        rpcCallNoResults(DROP_NAMESPACE, namespaceName);
+        rpcCallNoResults(namespaceName, DROP_NAMESPACE, namespaceName);
     }
 
     /**
@@ -131,7 +226,7 @@ public class Cproto implements Binding {
      */
     @Override
     public void closeNamespace(String namespaceName) {
-        rpcCallNoResults(CLOSE_NAMESPACE, namespaceName);
+        rpcCallNoResults(namespaceName, CLOSE_NAMESPACE, namespaceName);
     }
 
     @Override
@@ -139,10 +234,16 @@ public class Cproto implements Binding {
         int flags = asJson
                 ? Consts.RESULTS_JSON
                 : Consts.RESULTS_C_JSON | Consts.RESULTS_WITH_PAYLOAD_TYPES;
+        long start = System.nanoTime();
         Connection connection = pool.getConnection();
-        ReindexerResponse rpcResponse = ConnectionUtils.rpcCall(connection, SELECT_SQL, query, flags,
-                fetchCount > 0 ? fetchCount : Integer.MAX_VALUE, ptVersions);
-        return new CprotoRequestContext(rpcResponse, connection, asJson);
+        ReindexerResponse rpcResponse = null;
+        try {
+            rpcResponse = ConnectionUtils.rpcCall(connection, SELECT_SQL, query, flags,
+                    fetchCount > 0 ? fetchCount : Integer.MAX_VALUE, ptVersions);
+            return new CprotoRequestContext(rpcResponse, connection, asJson);
+        } finally {
+            recordCommand(SELECT_SQL, null, start, rpcResponse);
+        }
     }
 
     /**
@@ -153,40 +254,110 @@ public class Cproto implements Binding {
         int flags = asJson
                 ? Consts.RESULTS_JSON
                 : Consts.RESULTS_C_JSON | Consts.RESULTS_WITH_PAYLOAD_TYPES;
+        long start = System.nanoTime();
+        Connection connection = pool.getConnection();
+        ReindexerResponse rpcResponse = null;
+        try {
+            rpcResponse = ConnectionUtils.rpcCall(connection, SELECT, queryData, flags,
+                    fetchCount > 0 ? fetchCount : Integer.MAX_VALUE, ptVersions);
+            return new CprotoRequestContext(rpcResponse, connection, asJson);
+        } finally {
+            recordCommand(SELECT, null, start, rpcResponse);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The context timeout is passed to the server. A cancellation completes the call immediately, but the server
+     * stops the query execution at the context timeout, or the request timeout if the context timeout is not set.
+     */
+    @Override
+    public RequestContext selectQuery(byte[] queryData, int fetchCount, long[] ptVersions, boolean asJson,
+                                      ExecutionContext context) {
+        int flags = asJson
+                ? Consts.RESULTS_JSON
+                : Consts.RESULTS_C_JSON | Consts.RESULTS_WITH_PAYLOAD_TYPES;
+        long start = System.nanoTime();
         Connection connection = pool.getConnection();
-        ReindexerResponse rpcResponse = ConnectionUtils.rpcCall(connection, SELECT, queryData, flags,
-                fetchCount > 0 ? fetchCount : Integer.MAX_VALUE, ptVersions);
-        return new CprotoRequestContext(rpcResponse, connection, asJson);
+        ReindexerResponse rpcResponse = null;
+        try {
+            rpcResponse = ConnectionUtils.rpcCall(connection, context,
+                    response -> closeResults(connection, response), SELECT, queryData, flags,
+                    fetchCount > 0 ? fetchCount : Integer.MAX_VALUE, ptVersions);
+            return new CprotoRequestContext(rpcResponse, connection, asJson);
+        } finally {
+            recordCommand(context, SELECT, start, rpcResponse);
+        }
     }
 
     @Override
     public void deleteQuery(byte[] queryData) {
-        rpcCallNoResults(DELETE_QUERY, queryData);
+        rpcCallNoResults((String) null, DELETE_QUERY, queryData);
+    }
+
+    @Override
+    public void deleteQuery(byte[] queryData, ExecutionContext context) {
+        rpcCallNoResults(context, DELETE_QUERY, queryData);
     }
 
     @Override
     public void updateQuery(byte[] queryData) {
-        rpcCallNoResults(UPDATE_QUERY, queryData);
+        rpcCallNoResults((String) null, UPDATE_QUERY, queryData);
+    }
+
+    @Override
+    public void updateQuery(byte[] queryData, ExecutionContext context) {
+        rpcCallNoResults(context, UPDATE_QUERY, queryData);
+    }
+
+    /**
+     * Closes the results of a select response, which is received after the call is cancelled.
+     *
+     * @param connection the connection, that received the response
+     * @param response   the select response
+     */
+    static void closeResults(Connection connection, ReindexerResponse response) {
+        Object[] responseArguments = response.getArguments();
+        if (!response.hasError() && responseArguments.length > 1) {
+            ReindexerResponse rpcResponse = connection.rpcCall(CLOSE_RESULTS, responseArguments[1]);
+            if (rpcResponse.hasError()) {
+                LOGGER.error("rx: query close error {}", rpcResponse.getErrorMessage());
+            }
+        }
     }
 
     @Override
     public TransactionContext beginTx(String namespaceName) {
+        long start = System.nanoTime();
         Connection connection = pool.getConnection();
-        ReindexerResponse rpcResponse = ConnectionUtils.rpcCall(connection, START_TRANSACTION, namespaceName);
+        ReindexerResponse rpcResponse = null;
+        try {
+            rpcResponse = ConnectionUtils.rpcCall(connection, START_TRANSACTION, namespaceName);
+        } finally {
+            recordCommand(START_TRANSACTION, namespaceName, start, rpcResponse);
+        }
         Object[] responseArguments = rpcResponse.getArguments();
         long transactionId = responseArguments.length > 0 ? (long) responseArguments[0] : -1L;
-        return new CprotoTransactionContext(transactionId, connection);
+        return new CprotoTransactionContext(transactionId, connection, namespaceName, metrics,
+                slowQueryLog);
     }
 
     @Override
     public void putMeta(String namespace, String key, String data) {
-        rpcCallNoResults(PUT_META, namespace, key, data);
+        rpcCallNoResults(namespace, PUT_META, namespace, key, data);
     }
 
     @Override
     public String getMeta(String namespace, String key) {
+        long start = System.nanoTime();
         Connection connection = pool.getConnection();
-        ReindexerResponse response = ConnectionUtils.rpcCall(connection, GET_META, namespace, key);
+        ReindexerResponse response = null;
+        try {
+            response = ConnectionUtils.rpcCall(connection, GET_META, namespace, key);
+        } finally {
+            recordCommand(GET_META, namespace, start, response);
+        }
         return new String((byte[]) response.getArguments()[0], StandardCharsets.UTF_8);
     }
 
@@ -195,12 +366,89 @@ public class Cproto implements Binding {
      */
     @Override
     public void close() {
+        bufferPoolGauge.close();
         pool.close();
     }
 
-    private void rpcCallNoResults(int command, Object... args) {
+    private void rpcCallNoResults(String namespace, int command, Object... args) {
+        long start = System.nanoTime();
         Connection connection = pool.getConnection();
-        ConnectionUtils.rpcCallNoResults(connection, command, args);
+        ReindexerResponse response = null;
+        try {
+            response = ConnectionUtils.rpcCall(connection, command, args);
+        } finally {
+            recordCommand(command, namespace, start, response);
+        }
+    }
+
+    private void rpcCallNoResults(ExecutionContext context, int command, Object... args) {
+        long start = System.nanoTime();
+        Connection connection = pool.getConnection();
+        ReindexerResponse rpcResponse = null;
+        try {
+            rpcResponse = ConnectionUtils.rpcCall(connection, context, response -> {
+            }, command, args);
+        } finally {
+            recordCommand(context, command, start, rpcResponse);
+        }
+    }
+
+    private void recordCommand(int command, String namespace, long start, boolean failed) {
+        metrics.recordCommand(command, namespace, System.nanoTime() - start, failed);
+    }
+
+    /**
+     * Records the connection, encode and network phases of the command to the span of the traced call, see
+     * {@link TracingBinding#currentSpan()}.
+     *
+     * @param start    the start time of the command, before a connection is selected
+     * @param response the command response, null if the command failed
+     */
+    static void recordPhases(long start, ReindexerResponse response) {
+        ReindexerSpan span = TracingBinding.currentSpan();
+        if (span == ReindexerSpan.NOOP || response == null || response.getStartNanos() == 0L) {
+            return;
+        }
+        long encodeStart = response.getStartNanos() + response.getQueueNanos();
+        long networkStart = encodeStart + response.getEncodeNanos();
+        span.recordPhase(ReindexerSpan.CONNECTION, start, encodeStart - start);
+        span.recordPhase(ReindexerSpan.ENCODE, encodeStart, response.getEncodeNanos());
+        span.recordPhase(ReindexerSpan.NETWORK, networkStart, response.getRoundTripNanos());
+    }
+
+    /**
+     * Records the command metrics and captures the command if it is slow.
+     *
+     * @param command   the command
+     * @param namespace the namespace of the command, may be null
+     * @param start     the start time of the command
+     * @param response  the command response, null if the command failed
+     */
+    private void recordCommand(int command, String namespace, long start, ReindexerResponse response) {
+        long durationNanos = System.nanoTime() - start;
+        metrics.recordCommand(command, namespace, durationNanos, response == null);
+        recordPhases(start, response);
+        if (slowQueryLog.shouldCapture(durationNanos)) {
+            slowQueryLog.capture(new SlowQueryEvent(command, namespace, durationNanos,
+                    response != null ? response.getQueueNanos() : -1L,
+                    response != null ? response.getRoundTripNanos() : -1L, 0L, null));
+        }
+    }
+
+    /**
+     * Records the command metrics and stores the command timings in the context.
+     *
+     * @param context  the execution context of the command
+     * @param command  the command
+     * @param start    the start time of the command
+     * @param response the command response, null if the command failed
+     */
+    private void recordCommand(ExecutionContext context, int command, long start, ReindexerResponse response) {
+        metrics.recordCommand(command, context.getNamespace(), System.nanoTime() - start, response == null);
+        recordPhases(start, response);
+        if (response != null) {
+            context.recordTimings(response.getQueueNanos(), response.getRoundTripNanos());
+        }
     }
 
 }
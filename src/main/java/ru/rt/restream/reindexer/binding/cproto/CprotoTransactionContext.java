@@ -19,13 +19,24 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import ru.rt.restream.reindexer.ReindexerResponse;
 import ru.rt.restream.reindexer.binding.Consts;
+import ru.rt.restream.reindexer.binding.ExecutionContext;
 import ru.rt.restream.reindexer.binding.RequestContext;
 import ru.rt.restream.reindexer.binding.TransactionContext;
 import ru.rt.restream.reindexer.binding.cproto.util.ConnectionUtils;
+import ru.rt.restream.reindexer.metrics.ReindexerMetrics;
+import ru.rt.restream.reindexer.metrics.SlowQueryEvent;
+import ru.rt.restream.reindexer.metrics.SlowQueryLog;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
+import static ru.rt.restream.reindexer.binding.Binding.ADD_TX_ITEM;
+import static ru.rt.restream.reindexer.binding.Binding.COMMIT_TX;
+import static ru.rt.restream.reindexer.binding.Binding.DELETE_QUERY_TX;
+import static ru.rt.restream.reindexer.binding.Binding.ROLLBACK_TX;
 import static ru.rt.restream.reindexer.binding.Binding.SELECT;
+import static ru.rt.restream.reindexer.binding.Binding.UPDATE_QUERY_TX;
 import static ru.rt.restream.reindexer.binding.Consts.FORMAT_C_JSON;
 
 /**
@@ -35,19 +46,15 @@ public class CprotoTransactionContext implements TransactionContext {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(CprotoTransactionContext.class);
 
-    private static final int ADD_TX_ITEM = 26;
-
-    private static final int UPDATE_QUERY_TX = 31;
+    private final long transactionId;
 
-    private static final int DELETE_QUERY_TX = 30;
+    private final Connection connection;
 
-    private static final int COMMIT_TX = 27;
+    private final String namespace;
 
-    private static final int ROLLBACK_TX = 28;
+    private final ReindexerMetrics metrics;
 
-    private final long transactionId;
-
-    private final Connection connection;
+    private final SlowQueryLog slowQueryLog;
 
     /**
      * Creates an instance.
@@ -56,21 +63,81 @@ public class CprotoTransactionContext implements TransactionContext {
      * @param connection    the connection in which the transaction is started
      */
     public CprotoTransactionContext(long transactionId, Connection connection) {
+        this(transactionId, connection, null, ReindexerMetrics.NOOP);
+    }
+
+    /**
+     * Creates an instance, which records the latency of the transaction commands.
+     *
+     * @param transactionId the transaction id
+     * @param connection    the connection in which the transaction is started
+     * @param namespace     the transaction namespace
+     * @param metrics       the metrics to record
+     */
+    public CprotoTransactionContext(long transactionId, Connection connection, String namespace,
+                                    ReindexerMetrics metrics) {
+        this(transactionId, connection, namespace, metrics, SlowQueryLog.DISABLED);
+    }
+
+    /**
+     * Creates an instance, which records the latency of the transaction commands and captures the slow ones.
+     *
+     * @param transactionId the transaction id
+     * @param connection    the connection in which the transaction is started
+     * @param namespace     the transaction namespace
+     * @param metrics       the metrics to record
+     * @param slowQueryLog  the log of the slow commands
+     */
+    public CprotoTransactionContext(long transactionId, Connection connection, String namespace,
+                                    ReindexerMetrics metrics, SlowQueryLog slowQueryLog) {
         this.transactionId = transactionId;
         this.connection = connection;
+        this.namespace = namespace;
+        this.metrics = metrics;
+        this.slowQueryLog = slowQueryLog;
     }
 
     @Override
     public void modifyItem(byte[] data, int format, int mode, String[] precepts, int stateToken) {
         byte[] packedPrecepts = packPrecepts(precepts);
-        ConnectionUtils.rpcCallNoResults(connection, ADD_TX_ITEM, format, data, mode, packedPrecepts, stateToken,
-                transactionId);
+        rpcCallNoResults(ADD_TX_ITEM, format, data, mode, packedPrecepts, stateToken, transactionId);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The items are pipelined over the transaction connection, with at most
+     * {@link ConnectionUtils#DEFAULT_PIPELINE_WINDOW} unanswered requests at a time.
+     */
+    @Override
+    public void modifyItems(List<byte[]> items, int format, int mode, String[] precepts, int stateToken) {
+        byte[] packedPrecepts = packPrecepts(precepts);
+        List<Object[]> calls = new ArrayList<>(items.size());
+        for (byte[] data : items) {
+            calls.add(new Object[]{format, data, mode, packedPrecepts, stateToken, transactionId});
+        }
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            ConnectionUtils.rpcCallPipelined(connection, ConnectionUtils.DEFAULT_PIPELINE_WINDOW, ADD_TX_ITEM,
+                    calls);
+            failed = false;
+        } finally {
+            recordCommand(ADD_TX_ITEM, start, failed);
+        }
     }
 
     @Override
     public CompletableFuture<ReindexerResponse> modifyItemAsync(byte[] data, int format, int mode, String[] precepts, int stateToken) {
         byte[] packedPrecepts = packPrecepts(precepts);
-        return connection.rpcCallAsync(ADD_TX_ITEM, format, data, mode, packedPrecepts, stateToken, transactionId);
+        long start = System.nanoTime();
+        CompletableFuture<ReindexerResponse> response = connection.rpcCallAsync(ADD_TX_ITEM, format, data, mode,
+                packedPrecepts, stateToken, transactionId);
+        if (metrics != ReindexerMetrics.NOOP) {
+            // the completion callback is not allocated unless the metrics are recorded
+            response.whenComplete((r, e) -> recordCommand(ADD_TX_ITEM, start, e != null || r.hasError()));
+        }
+        return response;
     }
 
     private byte[] packPrecepts(String[] precepts) {
@@ -88,12 +155,12 @@ public class CprotoTransactionContext implements TransactionContext {
 
     @Override
     public void updateQuery(byte[] queryData) {
-        ConnectionUtils.rpcCallNoResults(connection, UPDATE_QUERY_TX, queryData, transactionId);
+        rpcCallNoResults(UPDATE_QUERY_TX, queryData, transactionId);
     }
 
     @Override
     public void deleteQuery(byte[] queryData) {
-        ConnectionUtils.rpcCallNoResults(connection, DELETE_QUERY_TX, queryData, transactionId);
+        rpcCallNoResults(DELETE_QUERY_TX, queryData, transactionId);
     }
 
     @Override
@@ -101,15 +168,39 @@ public class CprotoTransactionContext implements TransactionContext {
         int flags = asJson
                 ? Consts.RESULTS_JSON
                 : Consts.RESULTS_C_JSON | Consts.RESULTS_WITH_PAYLOAD_TYPES;
-        ReindexerResponse rpcResponse = ConnectionUtils.rpcCall(connection, SELECT, queryData, flags,
-                fetchCount > 0 ? fetchCount : Integer.MAX_VALUE, ptVersions);
-        return new CprotoRequestContext(rpcResponse, connection, asJson);
+        long start = System.nanoTime();
+        ReindexerResponse rpcResponse = null;
+        try {
+            rpcResponse = ConnectionUtils.rpcCall(connection, SELECT, queryData, flags,
+                    fetchCount > 0 ? fetchCount : Integer.MAX_VALUE, ptVersions);
+            return new CprotoRequestContext(rpcResponse, connection, asJson);
+        } finally {
+            recordCommand(SELECT, start, rpcResponse);
+        }
+    }
+
+    @Override
+    public RequestContext selectQuery(byte[] queryData, int fetchCount, long[] ptVersions, boolean asJson,
+                                      ExecutionContext context) {
+        int flags = asJson
+                ? Consts.RESULTS_JSON
+                : Consts.RESULTS_C_JSON | Consts.RESULTS_WITH_PAYLOAD_TYPES;
+        long start = System.nanoTime();
+        ReindexerResponse rpcResponse = null;
+        try {
+            rpcResponse = ConnectionUtils.rpcCall(connection, context,
+                    response -> Cproto.closeResults(connection, response), SELECT, queryData, flags,
+                    fetchCount > 0 ? fetchCount : Integer.MAX_VALUE, ptVersions);
+            return new CprotoRequestContext(rpcResponse, connection, asJson);
+        } finally {
+            recordCommand(context, SELECT, start, rpcResponse);
+        }
     }
 
     @Override
     public void commit() {
         try {
-            ConnectionUtils.rpcCallNoResults(connection, COMMIT_TX, transactionId);
+            rpcCallNoResults(COMMIT_TX, transactionId);
         } catch (Exception e) {
             LOGGER.error("rx: commit error", e);
         }
@@ -118,10 +209,43 @@ public class CprotoTransactionContext implements TransactionContext {
     @Override
     public void rollback() {
         try {
-            ConnectionUtils.rpcCallNoResults(connection, ROLLBACK_TX, transactionId);
+            rpcCallNoResults(ROLLBACK_TX, transactionId);
         } catch (Exception e) {
             LOGGER.error("rx: rollback error", e);
         }
     }
 
+    private void rpcCallNoResults(int command, Object... args) {
+        long start = System.nanoTime();
+        ReindexerResponse response = null;
+        try {
+            response = ConnectionUtils.rpcCall(connection, command, args);
+        } finally {
+            recordCommand(command, start, response);
+        }
+    }
+
+    private void recordCommand(int command, long start, boolean failed) {
+        metrics.recordCommand(command, namespace, System.nanoTime() - start, failed);
+    }
+
+    private void recordCommand(int command, long start, ReindexerResponse response) {
+        long durationNanos = System.nanoTime() - start;
+        metrics.recordCommand(command, namespace, durationNanos, response == null);
+        Cproto.recordPhases(start, response);
+        if (slowQueryLog.shouldCapture(durationNanos)) {
+            slowQueryLog.capture(new SlowQueryEvent(command, namespace, durationNanos,
+                    response != null ? response.getQueueNanos() : -1L,
+                    response != null ? response.getRoundTripNanos() : -1L, 0L, null));
+        }
+    }
+
+    private void recordCommand(ExecutionContext context, int command, long start, ReindexerResponse response) {
+        metrics.recordCommand(command, namespace, System.nanoTime() - start, response == null);
+        Cproto.recordPhases(start, response);
+        if (response != null) {
+            context.recordTimings(response.getQueueNanos(), response.getRoundTripNanos());
+        }
+    }
+
 }
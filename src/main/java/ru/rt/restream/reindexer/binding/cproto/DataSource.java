@@ -16,6 +16,8 @@
 
 package ru.rt.restream.reindexer.binding.cproto;
 
+import ru.rt.restream.reindexer.metrics.ReindexerMetrics;
+
 import java.time.Duration;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 
@@ -33,4 +35,17 @@ public interface DataSource {
      */
     Connection getConnection(Duration timeout, ScheduledThreadPoolExecutor scheduler);
 
+    /**
+     * Creates a {@link Connection}, which records its transport metrics. Ignores the metrics by default.
+     *
+     * @param timeout   the reindexer request timeout
+     * @param scheduler the scheduler for async I/O processing
+     * @param metrics   the metrics to record
+     * @return the {@link Connection} to use
+     */
+    default Connection getConnection(Duration timeout, ScheduledThreadPoolExecutor scheduler,
+                                     ReindexerMetrics metrics) {
+        return getConnection(timeout, scheduler);
+    }
+
 }
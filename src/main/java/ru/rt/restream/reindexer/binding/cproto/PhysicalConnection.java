@@ -24,6 +24,8 @@ import ru.rt.restream.reindexer.binding.cproto.util.ConnectionUtils;
 import ru.rt.restream.reindexer.exceptions.InvalidProtocolException;
 import ru.rt.restream.reindexer.exceptions.NetworkException;
 import ru.rt.restream.reindexer.exceptions.ReindexerException;
+import ru.rt.restream.reindexer.exceptions.RequestTimeoutException;
+import ru.rt.restream.reindexer.metrics.ReindexerMetrics;
 
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
@@ -97,6 +99,8 @@ public class PhysicalConnection implements Connection {
 
     private final ScheduledExecutorService scheduler;
 
+    private final ReindexerMetrics metrics;
+
     private final BlockingQueue<Integer> sequences = new ArrayBlockingQueue<>(QUEUE_SIZE);
 
     private final List<RpcRequest> requests = new ArrayList<>(QUEUE_SIZE);
@@ -107,6 +111,12 @@ public class PhysicalConnection implements Connection {
 
     public PhysicalConnection(String host, int port, String user, String password, String database,
                               Duration requestTimeout, ScheduledExecutorService scheduler) {
+        this(host, port, user, password, database, requestTimeout, scheduler, ReindexerMetrics.NOOP);
+    }
+
+    public PhysicalConnection(String host, int port, String user, String password, String database,
+                              Duration requestTimeout, ScheduledExecutorService scheduler, ReindexerMetrics metrics) {
+        this.metrics = metrics;
         try {
             clientSocket = new Socket(host, port);
             output = new DataOutputStream(clientSocket.getOutputStream());
@@ -152,19 +162,23 @@ public class PhysicalConnection implements Connection {
             throw new ReindexerException(error);
         }
         try {
+            long startNanos = System.nanoTime();
             Sequence seq = awaitSeqNum();
             int reqId = seq.seqNum % QUEUE_SIZE;
             RpcRequest rpcRequest = requests.get(reqId);
             rpcRequest.seqNum = seq.seqNum;
             try {
-                write(command, seq.seqNum, args);
+                long encodeNanos = System.nanoTime();
+                write(command, seq.seqNum, args, null);
+                long sentNanos = System.nanoTime();
                 for (; ; ) {
                     BufferedResponse bufferedResponse = rpcRequest.reply.poll(seq.timeout.toMillis(), TimeUnit.MILLISECONDS);
                     if (bufferedResponse == null) {
-                        throw new ReindexerException("Request timeout");
+                        throw new RequestTimeoutException("Request timeout");
                     }
                     if (bufferedResponse.seqNum == seq.seqNum) {
-                        return readResponse(bufferedResponse.buffer);
+                        return readResponse(bufferedResponse.buffer, startNanos, encodeNanos, sentNanos,
+                                bufferedResponse.receivedNanos);
                     }
                 }
             } finally {
@@ -177,7 +191,8 @@ public class PhysicalConnection implements Connection {
         }
     }
 
-    private ReindexerResponse readResponse(ByteBuffer deserializer) {
+    private ReindexerResponse readResponse(ByteBuffer deserializer, long startNanos, long encodeNanos,
+                                           long sentNanos, long receivedNanos) {
         int code = (int) deserializer.getVarUInt();
         String message = deserializer.getVString();
         int argsCount = (int) deserializer.getVarUInt();
@@ -185,7 +200,8 @@ public class PhysicalConnection implements Connection {
         for (int i = 0; i < argsCount; i++) {
             responseArgs[i] = readArgument(deserializer);
         }
-        return new ReindexerResponse(code, message, responseArgs);
+        return new ReindexerResponse(code, message, responseArgs, startNanos, encodeNanos - startNanos,
+                sentNanos - encodeNanos, receivedNanos - sentNanos);
     }
 
     private Object readArgument(ByteBuffer deserializer) {
@@ -208,6 +224,11 @@ public class PhysicalConnection implements Connection {
 
     @Override
     public CompletableFuture<ReindexerResponse> rpcCallAsync(int command, Object... args) {
+        return rpcCallAsync(command, (Duration) null, args);
+    }
+
+    @Override
+    public CompletableFuture<ReindexerResponse> rpcCallAsync(int command, Duration execTimeout, Object... args) {
         CompletableFuture<ReindexerResponse> completion = new CompletableFuture<>();
         Exception error = getCurrentError();
         if (error != null) {
@@ -215,20 +236,25 @@ public class PhysicalConnection implements Connection {
             return completion;
         }
         try {
+            long startNanos = System.nanoTime();
             Sequence seq = awaitSeqNum();
             int reqId = seq.seqNum % QUEUE_SIZE;
             RpcRequest rpcRequest = requests.get(reqId);
             rpcRequest.completionLock.lock();
             try {
+                rpcRequest.startNanos = startNanos;
+                rpcRequest.encodeNanos = System.nanoTime();
                 rpcRequest.completion = completion;
                 rpcRequest.seqNum = seq.seqNum;
                 rpcRequest.isAsync = true;
+                Duration timeout = execTimeout != null ? execTimeout : seq.timeout;
                 rpcRequest.timeoutTaskFuture = scheduler.schedule(new TimeoutTask(seq.seqNum),
-                        seq.timeout.toMillis(), TimeUnit.MILLISECONDS);
+                        timeout.toMillis(), TimeUnit.MILLISECONDS);
             } finally {
                 rpcRequest.completionLock.unlock();
             }
-            write(command, seq.seqNum, args);
+            write(command, seq.seqNum, args, execTimeout);
+            rpcRequest.sentNanos = System.nanoTime();
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             completion.completeExceptionally(e);
@@ -242,38 +268,67 @@ public class PhysicalConnection implements Connection {
         Instant start = Instant.now();
         Integer seqNum = sequences.poll(timeout.toMillis(), TimeUnit.MILLISECONDS);
         if (seqNum == null) {
+            metrics.recordQueueFull();
             throw new ReindexerException("Request queue is full");
         }
         Duration remainingTimeout = timeout.minus(Duration.between(start, Instant.now()));
         if (remainingTimeout.isNegative() || remainingTimeout.isZero()) {
             sequences.add(seqNum);
-            throw new ReindexerException("Request timeout");
+            throw new RequestTimeoutException("Request timeout");
         }
         return new Sequence(seqNum, remainingTimeout);
     }
 
-    private void write(int command, int seqNum, Object[] args) {
+    private void write(int command, int seqNum, Object[] args, Duration execTimeout) {
+        ByteBuffer frame = encode(command, seqNum, args, execTimeout);
         lock.writeLock().lock();
         try {
-            headBuffer.writeBytes(encode(command, seqNum, args));
+            headBuffer.writeBytes(frame);
             notEmptyBuffer.signalAll();
         } finally {
             lock.writeLock().unlock();
+            BufferPool.shared().release(frame);
         }
     }
 
-    private byte[] encode(int command, int seq, Object... args) {
+    private ByteBuffer encode(int command, int seq, Object[] args, Duration execTimeout) {
+        ByteBuffer frame = BufferPool.shared().acquire(estimateSize(args));
+        try {
+            frame.putUInt32(CPROTO_MAGIC)
+                    .putUInt16(CPROTO_VERSION)
+                    .putUInt16(command)
+                    .putUInt32(0L)
+                    .putUInt32(seq);
+            encodeArgs(frame, args);
+            if (execTimeout != null) {
+                // the context args follow the command args, the server stops the execution after the timeout
+                encodeArgs(frame, new Object[]{execTimeout.toMillis()});
+            }
+            // the body size is known only after the args are encoded
+            frame.putUInt32(frame.length() - CPROTO_HDR_LEN, 8);
+            return frame;
+        } catch (RuntimeException e) {
+            BufferPool.shared().release(frame);
+            throw e;
+        }
+    }
 
-        byte[] body = encodeArgs(args);
-        byte[] header = encodeHeader(seq, command, body.length);
-        byte[] bytes = new byte[header.length + body.length];
-        System.arraycopy(header, 0, bytes, 0, header.length);
-        System.arraycopy(body, 0, bytes, header.length, body.length);
-        return bytes;
+    private int estimateSize(Object[] args) {
+        int size = CPROTO_HDR_LEN + 2 * Long.BYTES;
+        for (Object arg : args) {
+            if (arg instanceof byte[]) {
+                size += ((byte[]) arg).length;
+            } else if (arg instanceof String) {
+                size += ((String) arg).length();
+            } else if (arg instanceof long[]) {
+                size += ((long[]) arg).length * Long.BYTES;
+            }
+            size += Long.BYTES;
+        }
+        return size;
     }
 
-    private byte[] encodeArgs(Object[] args) {
-        ByteBuffer buffer = new ByteBuffer();
+    private void encodeArgs(ByteBuffer buffer, Object[] args) {
         buffer.putVarUInt32(args.length);
         for (Object arg : args) {
             if (arg instanceof Boolean) {
@@ -307,18 +362,6 @@ public class PhysicalConnection implements Connection {
                 throw new IllegalArgumentException("Unsupported data type " + arg.getClass());
             }
         }
-
-        return buffer.bytes();
-    }
-
-    private byte[] encodeHeader(int seq, int command, int size) {
-        return new ByteBuffer()
-                .putUInt32(CPROTO_MAGIC)
-                .putUInt16(CPROTO_VERSION)
-                .putUInt16(command)
-                .putUInt32(size)
-                .putUInt32(seq)
-                .bytes();
     }
 
     private int nextSeqNum(int seqNum) {
@@ -333,6 +376,16 @@ public class PhysicalConnection implements Connection {
         return seqNum < MAX_SEQ_NUM;
     }
 
+    @Override
+    public Duration getRequestTimeout() {
+        return timeout;
+    }
+
+    @Override
+    public int getInFlightCount() {
+        return QUEUE_SIZE - sequences.size();
+    }
+
     @Override
     public boolean hasError() {
         return getCurrentError() != null;
@@ -433,6 +486,15 @@ public class PhysicalConnection implements Connection {
 
         private ScheduledFuture<?> timeoutTaskFuture;
 
+        private long startNanos;
+
+        private long encodeNanos;
+
+        /**
+         * Set after the request is written without the completion lock, so it can be stale when the response is read.
+         */
+        private volatile long sentNanos;
+
     }
 
     private static class BufferedResponse {
@@ -441,9 +503,12 @@ public class PhysicalConnection implements Connection {
 
         private final ByteBuffer buffer;
 
-        private BufferedResponse(int seqNum, ByteBuffer buffer) {
+        private final long receivedNanos;
+
+        private BufferedResponse(int seqNum, ByteBuffer buffer, long receivedNanos) {
             this.seqNum = seqNum;
             this.buffer = buffer;
+            this.receivedNanos = receivedNanos;
         }
 
     }
@@ -464,6 +529,7 @@ public class PhysicalConnection implements Connection {
                 deserializer.getUInt16();
                 int size = (int) deserializer.getUInt32();
                 int rseq = (int) deserializer.getUInt32();
+                metrics.recordBytesReceived(CPROTO_HDR_LEN + size);
                 version &= CPROTO_VERSION_MASK;
                 if (version < CPROTO_VERSION) {
                     throw new InvalidProtocolException(String.format("Unsupported cproto version '%04X'. " +
@@ -480,15 +546,23 @@ public class PhysicalConnection implements Connection {
                 }
                 byte[] body = new byte[size];
                 input.readFully(body);
+                long receivedNanos = System.nanoTime();
                 deserializer = new ByteBuffer(body).rewind();
                 if (rpcRequest.isAsync) {
                     CompletableFuture<ReindexerResponse> completion = null;
                     ScheduledFuture<?> timeoutTaskFuture = null;
                     Integer seqNum = null;
+                    long startNanos = 0L;
+                    long encodeNanos = 0L;
+                    long sentNanos = 0L;
                     rpcRequest.completionLock.lock();
                     try {
                         if (rpcRequest.completion != null && rpcRequest.seqNum == rseq) {
                             completion = rpcRequest.completion;
+                            startNanos = rpcRequest.startNanos;
+                            encodeNanos = rpcRequest.encodeNanos;
+                            // a response can be read before the send time of its request is set
+                            sentNanos = Math.max(rpcRequest.sentNanos, encodeNanos);
                             rpcRequest.completion = null;
                             timeoutTaskFuture = rpcRequest.timeoutTaskFuture;
                             rpcRequest.timeoutTaskFuture = null;
@@ -503,13 +577,14 @@ public class PhysicalConnection implements Connection {
                         sequences.add(nextSeqNum(seqNum));
                     }
                     if (completion != null) {
-                        completion.complete(readResponse(deserializer));
+                        completion.complete(readResponse(deserializer, startNanos, encodeNanos, sentNanos,
+                                receivedNanos));
                     }
                     if (timeoutTaskFuture != null) {
                         timeoutTaskFuture.cancel(true);
                     }
                 } else {
-                    rpcRequest.reply.add(new BufferedResponse(rseq, deserializer));
+                    rpcRequest.reply.add(new BufferedResponse(rseq, deserializer, receivedNanos));
                 }
             } catch (Exception e) {
                 onError(e);
@@ -534,8 +609,9 @@ public class PhysicalConnection implements Connection {
                 } finally {
                     lock.writeLock().unlock();
                 }
-                output.write(tailBuffer.bytes());
-                tailBuffer.reset();
+                tailBuffer.writeTo(output);
+                metrics.recordBytesSent(tailBuffer.length());
+                tailBuffer.clear();
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
                 onError(e);
@@ -578,7 +654,7 @@ public class PhysicalConnection implements Connection {
                     sequences.add(nextSeqNum(seqNum));
                 }
                 if (completion != null) {
-                    completion.completeExceptionally(new ReindexerException("Request timeout"));
+                    completion.completeExceptionally(new RequestTimeoutException("Request timeout"));
                 }
             }
         }
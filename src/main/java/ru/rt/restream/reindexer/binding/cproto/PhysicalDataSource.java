@@ -16,6 +16,8 @@
 
 package ru.rt.restream.reindexer.binding.cproto;
 
+import ru.rt.restream.reindexer.metrics.ReindexerMetrics;
+
 import java.net.URI;
 import java.time.Duration;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
@@ -65,6 +67,12 @@ public class PhysicalDataSource implements DataSource {
         return new PhysicalConnection(host, port, user, password, database, timeout, scheduler);
     }
 
+    @Override
+    public Connection getConnection(Duration timeout, ScheduledThreadPoolExecutor scheduler,
+                                    ReindexerMetrics metrics) {
+        return new PhysicalConnection(host, port, user, password, database, timeout, scheduler, metrics);
+    }
+
     @Override
     public String toString() {
         return host + ":" + port + "/" + database;
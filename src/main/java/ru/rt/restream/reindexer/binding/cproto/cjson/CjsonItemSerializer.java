@@ -15,16 +15,22 @@
  */
 package ru.rt.restream.reindexer.binding.cproto.cjson;
 
+import ru.rt.restream.reindexer.binding.cproto.BufferPool;
 import ru.rt.restream.reindexer.binding.cproto.ByteBuffer;
 import ru.rt.restream.reindexer.binding.cproto.ItemSerializer;
 
 /**
  * Encodes item in cjson format and converts it to array of bytes.
+ * An item is encoded into a buffer from the {@link BufferPool}, sized by the previous item, so that the buffer is not
+ * expanded while the item is encoded. The encoded item is still copied into an array of its size, which the bindings
+ * take.
  */
 public class CjsonItemSerializer<T> implements ItemSerializer<T> {
 
     private final PayloadType payloadType;
 
+    private volatile int sizeHint = BufferPool.MIN_CLASS_SIZE;
+
     public CjsonItemSerializer(PayloadType payloadType) {
         this.payloadType = payloadType;
     }
@@ -35,10 +41,15 @@ public class CjsonItemSerializer<T> implements ItemSerializer<T> {
         if (payloadType != null) {
             ctagMatcher.read(payloadType);
         }
-        ByteBuffer byteBuffer = new ByteBuffer();
-        CJsonItemWriter<T> itemWriter = new CJsonItemWriter<>(ctagMatcher);
-        itemWriter.writeItem(byteBuffer, item);
-        return byteBuffer.bytes();
+        ByteBuffer byteBuffer = BufferPool.shared().acquire(sizeHint);
+        try {
+            CJsonItemWriter<T> itemWriter = new CJsonItemWriter<>(ctagMatcher);
+            itemWriter.writeItem(byteBuffer, item);
+            sizeHint = byteBuffer.length();
+            return byteBuffer.bytes();
+        } finally {
+            BufferPool.shared().release(byteBuffer);
+        }
     }
 
 }
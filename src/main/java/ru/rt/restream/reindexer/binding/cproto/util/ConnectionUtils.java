@@ -15,16 +15,35 @@
  */
 package ru.rt.restream.reindexer.binding.cproto.util;
 
+import ru.rt.restream.reindexer.CancellationToken;
+import ru.rt.restream.reindexer.binding.ExecutionContext;
 import ru.rt.restream.reindexer.binding.cproto.Connection;
 import ru.rt.restream.reindexer.ReindexerResponse;
+import ru.rt.restream.reindexer.exceptions.CancelledException;
 import ru.rt.restream.reindexer.exceptions.ReindexerException;
 import ru.rt.restream.reindexer.exceptions.ReindexerExceptionFactory;
+import ru.rt.restream.reindexer.exceptions.RequestTimeoutException;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
 
 /**
  * Utility class for using a {@link Connection}.
  */
 public final class ConnectionUtils {
 
+    /**
+     * The default maximum number of unanswered calls of a pipeline.
+     */
+    public static final int DEFAULT_PIPELINE_WINDOW = 256;
+
     private ConnectionUtils() {
         // utils
     }
@@ -58,4 +77,116 @@ public final class ConnectionUtils {
         return rpcResponse;
     }
 
+    /**
+     * Performs RPC call with the given execution context. The context timeout is passed to the server, which stops
+     * the command execution after the timeout. The server is not notified on cancellation, so a cancelled call
+     * completes immediately, and the command execution on the server is limited by the execution timeout only.
+     * A cancellable call without the context timeout uses the connection request timeout as the execution timeout,
+     * so the server does not execute the cancelled command for longer than the request timeout.
+     *
+     * @param connection the connection to use
+     * @param context    the execution context
+     * @param abandoned  the action on a response, that is received after the call is cancelled or timed out,
+     *                   e.g. to release the server resources
+     * @param command    the command to use
+     * @param args       the command arguments
+     * @return the {@link ReindexerResponse}
+     * @throws ReindexerException in case of Reindexer error
+     * @throws CancelledException if the call is cancelled
+     * @throws RequestTimeoutException if the call is not completed within the context timeout
+     */
+    public static ReindexerResponse rpcCall(Connection connection, ExecutionContext context,
+                                            Consumer<ReindexerResponse> abandoned, int command, Object... args) {
+        Duration timeout = context.isCancellable()
+                ? context.getTimeout(connection.getRequestTimeout())
+                : context.getTimeout();
+        CompletableFuture<ReindexerResponse> result = new CompletableFuture<>();
+        CompletableFuture<ReindexerResponse> call = null;
+        ReindexerResponse rpcResponse;
+        CancellationToken.Registration registration = context.onCancel(
+                () -> result.completeExceptionally(new CancelledException("Request cancelled")));
+        try {
+            call = connection.rpcCallAsync(command, timeout, args);
+            call.whenComplete((response, e) -> {
+                if (e != null) {
+                    result.completeExceptionally(e);
+                } else {
+                    result.complete(response);
+                }
+            });
+            rpcResponse = timeout != null
+                    ? result.get(timeout.toMillis(), TimeUnit.MILLISECONDS)
+                    : result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            call.thenAcceptAsync(abandoned);
+            throw new ReindexerException("Interrupted while rpcCall", e);
+        } catch (TimeoutException e) {
+            call.thenAcceptAsync(abandoned);
+            throw new RequestTimeoutException("Request timeout");
+        } catch (ExecutionException e) {
+            if (!call.isDone()) {
+                call.thenAcceptAsync(abandoned);
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new ReindexerException(e.getCause());
+        } finally {
+            registration.close();
+        }
+        if (rpcResponse.hasError()) {
+            throw ReindexerExceptionFactory.fromResponse(rpcResponse);
+        }
+        return rpcResponse;
+    }
+
+    /**
+     * Performs RPC calls of the same command, pipelining them over the connection: a call is sent without awaiting
+     * the responses to the previous ones, but at most maxInFlight calls are unanswered at a time. The calls are not
+     * sent after a failed response is received.
+     *
+     * @param connection  the connection to use
+     * @param maxInFlight the maximum number of unanswered calls
+     * @param command     the command to use
+     * @param calls       the command arguments of every call
+     * @throws ReindexerException in case of Reindexer error, the first one if several calls are failed
+     */
+    public static void rpcCallPipelined(Connection connection, int maxInFlight, int command,
+                                        Iterable<Object[]> calls) {
+        Deque<CompletableFuture<ReindexerResponse>> inFlight = new ArrayDeque<>(maxInFlight);
+        RuntimeException error = null;
+        for (Object[] args : calls) {
+            if (inFlight.size() >= maxInFlight) {
+                error = awaitResponse(inFlight.pollFirst());
+                if (error != null) {
+                    break;
+                }
+            }
+            inFlight.addLast(connection.rpcCallAsync(command, args));
+        }
+        for (CompletableFuture<ReindexerResponse> response : inFlight) {
+            RuntimeException e = awaitResponse(response);
+            if (error == null) {
+                error = e;
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private static RuntimeException awaitResponse(CompletableFuture<ReindexerResponse> response) {
+        ReindexerResponse rpcResponse;
+        try {
+            rpcResponse = response.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                return (RuntimeException) e.getCause();
+            }
+            return new ReindexerException(e.getCause());
+        }
+        return rpcResponse.hasError() ? ReindexerExceptionFactory.fromResponse(rpcResponse) : null;
+    }
+
 }
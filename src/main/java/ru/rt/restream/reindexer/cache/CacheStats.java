@@ -0,0 +1,99 @@
+/*
+ * Copyright 2020 Restream
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.rt.restream.reindexer.cache;
+
+/**
+ * An immutable snapshot of cache statistics.
+ */
+public final class CacheStats {
+
+    private final long hitCount;
+
+    private final long missCount;
+
+    private final long evictionCount;
+
+    private final long invalidationCount;
+
+    private final int size;
+
+    /**
+     * Creates an instance.
+     *
+     * @param hitCount          the number of lookups that returned a cached value
+     * @param missCount         the number of lookups that did not return a cached value
+     * @param evictionCount     the number of entries evicted due to the size bound or expiration
+     * @param invalidationCount the number of entries removed explicitly
+     * @param size              the current number of entries
+     */
+    public CacheStats(long hitCount, long missCount, long evictionCount, long invalidationCount, int size) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.invalidationCount = invalidationCount;
+        this.size = size;
+    }
+
+    /**
+     * Returns the number of lookups that returned a cached value.
+     */
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Returns the number of lookups that did not return a cached value.
+     */
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Returns the number of entries evicted due to the size bound or expiration.
+     */
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Returns the number of entries removed explicitly, e.g. on namespace modification.
+     */
+    public long getInvalidationCount() {
+        return invalidationCount;
+    }
+
+    /**
+     * Returns the number of entries in the cache at the moment the snapshot was taken.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the ratio of lookups that returned a cached value, or 0 if there were no lookups.
+     */
+    public double getHitRate() {
+        long requestCount = hitCount + missCount;
+        return requestCount == 0L ? 0.0D : (double) hitCount / requestCount;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{hitCount=" + hitCount + ", missCount=" + missCount + ", evictionCount=" + evictionCount
+                + ", invalidationCount=" + invalidationCount + ", size=" + size + '}';
+    }
+
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2020 Restream
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.rt.restream.reindexer.cache;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiPredicate;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+/**
+ * A size-bounded cache that evicts the least recently used entries first.
+ * Entries can optionally expire after a fixed period since they were written.
+ *
+ * <p>All operations are thread-safe.
+ *
+ * @param <K> the type of keys
+ * @param <V> the type of cached values
+ */
+public class LruCache<K, V> {
+
+    private final int maxSize;
+
+    private final long expireAfterWriteNanos;
+
+    private final LongSupplier ticker;
+
+    private final Map<K, CacheEntry<V>> entries;
+
+    private final LongAdder hitCount = new LongAdder();
+
+    private final LongAdder missCount = new LongAdder();
+
+    private final LongAdder evictionCount = new LongAdder();
+
+    private final LongAdder invalidationCount = new LongAdder();
+
+    /**
+     * Creates an instance.
+     *
+     * @param maxSize          the maximum number of entries the cache may contain
+     * @param expireAfterWrite the time after which an entry expires, null or zero if entries never expire
+     */
+    public LruCache(int maxSize, Duration expireAfterWrite) {
+        this(maxSize, expireAfterWrite, System::nanoTime);
+    }
+
+    LruCache(int maxSize, Duration expireAfterWrite, LongSupplier ticker) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive: " + maxSize);
+        }
+        this.maxSize = maxSize;
+        this.expireAfterWriteNanos = expireAfterWrite == null ? 0L : expireAfterWrite.toNanos();
+        this.ticker = ticker;
+        this.entries = new LinkedHashMap<K, CacheEntry<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, CacheEntry<V>> eldest) {
+                if (size() > LruCache.this.maxSize) {
+                    evictionCount.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the value associated with the key, or null if there is no live entry for the key.
+     *
+     * @param key the key whose associated value is to be returned
+     * @return the cached value, or null
+     */
+    public V get(K key) {
+        return get(key, value -> true);
+    }
+
+    /**
+     * Returns the value associated with the key, or null if there is no live entry for the key. An entry, whose value
+     * does not match the validator, is removed and counted as a miss.
+     *
+     * @param key       the key whose associated value is to be returned
+     * @param validator the predicate to test the cached value with
+     * @return the cached value, or null
+     */
+    public V get(K key, Predicate<? super V> validator) {
+        V value = null;
+        synchronized (entries) {
+            CacheEntry<V> entry = entries.get(key);
+            if (entry != null) {
+                if (isExpired(entry)) {
+                    entries.remove(key);
+                    evictionCount.increment();
+                } else if (!validator.test(entry.value)) {
+                    entries.remove(key);
+                    invalidationCount.increment();
+                } else {
+                    value = entry.value;
+                }
+            }
+        }
+        if (value == null) {
+            missCount.increment();
+        } else {
+            hitCount.increment();
+        }
+        return value;
+    }
+
+    /**
+     * Associates the value with the key, evicting the least recently used entry if the cache is full.
+     *
+     * @param key   the key
+     * @param value the value to cache
+     */
+    public void put(K key, V value) {
+        CacheEntry<V> entry = new CacheEntry<>(value, ticker.getAsLong());
+        synchronized (entries) {
+            entries.put(key, entry);
+        }
+    }
+
+    /**
+     * Removes the entry for the key, if present.
+     *
+     * @param key the key
+     */
+    public void invalidate(K key) {
+        synchronized (entries) {
+            if (entries.remove(key) != null) {
+                invalidationCount.increment();
+            }
+        }
+    }
+
+    /**
+     * Removes all entries that match the given predicate.
+     *
+     * @param predicate the predicate to test keys and values with
+     * @return the number of removed entries
+     */
+    public int invalidateIf(BiPredicate<? super K, ? super V> predicate) {
+        int removed = 0;
+        synchronized (entries) {
+            Iterator<Map.Entry<K, CacheEntry<V>>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<K, CacheEntry<V>> entry = iterator.next();
+                if (predicate.test(entry.getKey(), entry.getValue().value)) {
+                    iterator.remove();
+                    removed++;
+                }
+            }
+        }
+        invalidationCount.add(removed);
+        return removed;
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public void invalidateAll() {
+        synchronized (entries) {
+            invalidationCount.add(entries.size());
+            entries.clear();
+        }
+    }
+
+    /**
+     * Returns the number of entries in the cache, including expired entries that have not been removed yet.
+     *
+     * @return the number of entries
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Returns a snapshot of the cache statistics.
+     *
+     * @return the cache statistics
+     */
+    public CacheStats getStats() {
+        return new CacheStats(hitCount.sum(), missCount.sum(), evictionCount.sum(), invalidationCount.sum(),
+                size());
+    }
+
+    private boolean isExpired(CacheEntry<V> entry) {
+        return expireAfterWriteNanos > 0L && ticker.getAsLong() - entry.writeTime >= expireAfterWriteNanos;
+    }
+
+    private static final class CacheEntry<V> {
+
+        private final V value;
+
+        private final long writeTime;
+
+        private CacheEntry(V value, long writeTime) {
+            this.value = value;
+            this.writeTime = writeTime;
+        }
+
+    }
+
+}
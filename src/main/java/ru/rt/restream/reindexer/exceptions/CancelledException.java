@@ -0,0 +1,34 @@
+/*
+ * Copyright 2020 Restream
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.rt.restream.reindexer.exceptions;
+
+/**
+ * Thrown if a request is cancelled with a {@link ru.rt.restream.reindexer.CancellationToken}.
+ */
+public class CancelledException extends ReindexerException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Constructs new exception.
+     *
+     * @param errorMessage error message
+     */
+    public CancelledException(String errorMessage) {
+        super(errorMessage);
+    }
+
+}
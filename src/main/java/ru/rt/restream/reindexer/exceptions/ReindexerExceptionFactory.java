@@ -32,6 +32,8 @@ public class ReindexerExceptionFactory {
     static {
         FACTORIES.put(Consts.ERR_CONFLICT, r -> new IndexConflictException(r.getErrorMessage()));
         FACTORIES.put(Consts.ERR_STATE_INVALIDATED, r -> new StateInvalidatedException(r.getErrorMessage()));
+        FACTORIES.put(Consts.ERR_TIMEOUT, r -> new RequestTimeoutException(r.getErrorMessage()));
+        FACTORIES.put(Consts.ERR_CANCELED, r -> new CancelledException(r.getErrorMessage()));
     }
 
     /**
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2020 Restream
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.rt.restream.reindexer.metrics;
+
+import ru.rt.restream.reindexer.binding.Binding;
+
+/**
+ * The names of the rpc commands, to tag the command metrics with.
+ */
+public final class CommandNames {
+
+    private static final String[] NAMES = new String[Binding.CODE_MAX];
+
+    static {
+        NAMES[Binding.PING] = "ping";
+        NAMES[Binding.LOGIN] = "login";
+        NAMES[Binding.OPEN_DATABASE] = "open_database";
+        NAMES[Binding.CLOSE_DATABASE] = "close_database";
+        NAMES[Binding.DROP_DATABASE] = "drop_database";
+        NAMES[Binding.OPEN_NAMESPACE] = "open_namespace";
+        NAMES[Binding.CLOSE_NAMESPACE] = "close_namespace";
+        NAMES[Binding.DROP_NAMESPACE] = "drop_namespace";
+        NAMES[Binding.ADD_INDEX] = "add_index";
+        NAMES[Binding.ENUM_NAMESPACES] = "enum_namespaces";
+        NAMES[Binding.DROP_INDEX] = "drop_index";
+        NAMES[Binding.UPDATE_INDEX] = "update_index";
+        NAMES[Binding.ADD_TX_ITEM] = "add_tx_item";
+        NAMES[Binding.COMMIT_TX] = "commit_tx";
+        NAMES[Binding.ROLLBACK_TX] = "rollback_tx";
+        NAMES[Binding.START_TRANSACTION] = "start_transaction";
+        NAMES[Binding.DELETE_QUERY_TX] = "delete_query_tx";
+        NAMES[Binding.UPDATE_QUERY_TX] = "update_query_tx";
+        NAMES[Binding.MODIFY_ITEM] = "modify_item";
+        NAMES[Binding.DELETE_QUERY] = "delete_query";
+        NAMES[Binding.UPDATE_QUERY] = "update_query";
+        NAMES[Binding.SELECT] = "select";
+        NAMES[Binding.SELECT_SQL] = "select_sql";
+        NAMES[Binding.FETCH_RESULTS] = "fetch_results";
+        NAMES[Binding.CLOSE_RESULTS] = "close_results";
+        NAMES[Binding.GET_META] = "get_meta";
+        NAMES[Binding.PUT_META] = "put_meta";
+        NAMES[Binding.ENUM_META] = "enum_meta";
+        for (int i = 0; i < NAMES.length; i++) {
+            if (NAMES[i] == null) {
+                NAMES[i] = "command_" + i;
+            }
+        }
+    }
+
+    private CommandNames() {
+        // utils
+    }
+
+    /**
+     * Returns the name of the command.
+     *
+     * @param command the command, e.g. {@link Binding#SELECT}
+     * @return the command name, e.g. "select"
+     */
+    public static String get(int command) {
+        return command >= 0 && command < NAMES.length ? NAMES[command] : "command_" + command;
+    }
+
+}
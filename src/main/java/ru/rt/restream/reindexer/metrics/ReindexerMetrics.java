@@ -0,0 +1,142 @@
+/*
+ * Copyright 2020 Restream
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.rt.restream.reindexer.metrics;
+
+import ru.rt.restream.reindexer.ReindexerConfiguration;
+
+import java.util.function.DoubleSupplier;
+
+/**
+ * Receives the client metrics, see {@link ReindexerConfiguration#metrics(ReindexerMetrics)}. Every method has
+ * a no-op default, so an implementation overrides the metrics it needs only.
+ * <p>
+ * The record methods are called on the request path, so an implementation must be thread safe, must not block and
+ * should not allocate, e.g. should resolve its meters once per command and namespace. Command and transport metrics
+ * are recorded by the cproto binding.
+ */
+public interface ReindexerMetrics {
+
+    /**
+     * The metrics, which are not recorded.
+     */
+    ReindexerMetrics NOOP = new ReindexerMetrics() {
+    };
+
+    /**
+     * The gauge of the requests, which are sent and not answered yet, over all the pooled connections.
+     */
+    String IN_FLIGHT_REQUESTS = "reindexer.client.requests.in.flight";
+
+    /**
+     * The gauge of the pooled connections.
+     */
+    String POOL_CONNECTIONS = "reindexer.client.pool.connections";
+
+    /**
+     * The gauge of the pooled connections, which are broken and will be reconnected on the next use.
+     */
+    String POOL_BROKEN_CONNECTIONS = "reindexer.client.pool.connections.broken";
+
+    /**
+     * The gauge of the bytes, held by the shared request buffer pool.
+     */
+    String BUFFER_POOL_BYTES = "reindexer.client.buffer.pool.bytes";
+
+    /**
+     * Records a completed command.
+     *
+     * @param command       the command, e.g. {@link ru.rt.restream.reindexer.binding.Binding#SELECT},
+     *                      see {@link CommandNames#get(int)}
+     * @param namespace     the namespace, or null if the command does not refer to a namespace
+     * @param durationNanos the command latency, including the connection selection and the wait for a free
+     *                      request slot, in nanoseconds
+     * @param failed        true if the command is failed
+     */
+    default void recordCommand(int command, String namespace, long durationNanos, boolean failed) {
+    }
+
+    /**
+     * Records a request frame, written to a connection.
+     *
+     * @param bytes the frame size
+     */
+    default void recordBytesSent(int bytes) {
+    }
+
+    /**
+     * Records a response frame, read from a connection.
+     *
+     * @param bytes the frame size
+     */
+    default void recordBytesReceived(int bytes) {
+    }
+
+    /**
+     * Records a request, which is rejected, because all the request slots of a connection are taken.
+     */
+    default void recordQueueFull() {
+    }
+
+    /**
+     * Records a reconnect of a broken pooled connection.
+     */
+    default void recordReconnect() {
+    }
+
+    /**
+     * Records the decoding of query result items, once per closed result iterator.
+     *
+     * @param namespace     the namespace
+     * @param items         the number of decoded items
+     * @param durationNanos the total decoding time, in nanoseconds
+     */
+    default void recordDecode(String namespace, int items, long durationNanos) {
+    }
+
+    /**
+     * Registers a gauge, which is read by the metrics implementation when it needs the value.
+     * Several values may be registered with the same name, e.g. by several clients sharing the metrics,
+     * then the gauge reports their sum, the same value instance is counted once.
+     *
+     * @param name  the gauge name, e.g. {@link #IN_FLIGHT_REQUESTS}
+     * @param value the current gauge value
+     * @return the registration, which removes the value from the gauge on close
+     */
+    default GaugeRegistration registerGauge(String name, DoubleSupplier value) {
+        return GaugeRegistration.EMPTY;
+    }
+
+    /**
+     * A registered gauge value, which is removed on close.
+     */
+    @FunctionalInterface
+    interface GaugeRegistration extends AutoCloseable {
+
+        /**
+         * The registration, which has nothing to remove.
+         */
+        GaugeRegistration EMPTY = () -> {
+        };
+
+        /**
+         * Removes the registered value.
+         */
+        @Override
+        void close();
+
+    }
+
+}
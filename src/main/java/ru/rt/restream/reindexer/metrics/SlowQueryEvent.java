@@ -0,0 +1,131 @@
+/*
+ * Copyright 2020 Restream
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.rt.restream.reindexer.metrics;
+
+import java.util.function.Supplier;
+
+/**
+ * A slow query or rpc call with its timings. A timing is -1 if it is not measured, e.g. the queueing and round trip
+ * times of a failed call or of a builtin binding call.
+ */
+public final class SlowQueryEvent {
+
+    private final int command;
+
+    private final String namespace;
+
+    private final long totalNanos;
+
+    private final long queueNanos;
+
+    private final long roundTripNanos;
+
+    private final long decodeNanos;
+
+    private final Supplier<String> queryTextSupplier;
+
+    private String queryText;
+
+    /**
+     * Creates an instance.
+     *
+     * @param command           the command, e.g. {@link ru.rt.restream.reindexer.binding.Binding#SELECT}
+     * @param namespace         the namespace, may be null
+     * @param totalNanos        the total time
+     * @param queueNanos        the time the call waited for a free request slot of a connection
+     * @param roundTripNanos    the time from sending the request to receiving the response
+     * @param decodeNanos       the time spent decoding the result items
+     * @param queryTextSupplier renders the query text, null if the event is not a query
+     */
+    public SlowQueryEvent(int command, String namespace, long totalNanos, long queueNanos, long roundTripNanos,
+                          long decodeNanos, Supplier<String> queryTextSupplier) {
+        this.command = command;
+        this.namespace = namespace;
+        this.totalNanos = totalNanos;
+        this.queueNanos = queueNanos;
+        this.roundTripNanos = roundTripNanos;
+        this.decodeNanos = decodeNanos;
+        this.queryTextSupplier = queryTextSupplier;
+    }
+
+    /**
+     * Returns the command, see {@link CommandNames#get(int)}.
+     *
+     * @return the command
+     */
+    public int getCommand() {
+        return command;
+    }
+
+    /**
+     * Returns the namespace.
+     *
+     * @return the namespace, null if the call does not refer to a namespace
+     */
+    public String getNamespace() {
+        return namespace;
+    }
+
+    /**
+     * Returns the total time: the call time and, for a select query, the time spent decoding the items.
+     *
+     * @return the total time in nanoseconds
+     */
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * Returns the time the call waited for a free request slot of a connection.
+     *
+     * @return the queueing time in nanoseconds, -1 if it is not measured
+     */
+    public long getQueueNanos() {
+        return queueNanos;
+    }
+
+    /**
+     * Returns the time from sending the request to receiving the response. The protocol does not report the server
+     * execution time, so this is the server time together with the network time.
+     *
+     * @return the round trip time in nanoseconds, -1 if it is not measured
+     */
+    public long getRoundTripNanos() {
+        return roundTripNanos;
+    }
+
+    /**
+     * Returns the time spent decoding the result items.
+     *
+     * @return the decoding time in nanoseconds, 0 if the call has no items
+     */
+    public long getDecodeNanos() {
+        return decodeNanos;
+    }
+
+    /**
+     * Returns the query text, which is rendered on the first call.
+     *
+     * @return the SQL-like query text, null if the event is not a query
+     */
+    public String getQueryText() {
+        if (queryText == null && queryTextSupplier != null) {
+            queryText = queryTextSupplier.get();
+        }
+        return queryText;
+    }
+
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2020 Restream
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.rt.restream.reindexer.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Receives the queries and rpc calls, which take longer than the threshold, see
+ * {@link ru.rt.restream.reindexer.ReindexerConfiguration#slowQueryHook(SlowQueryHook, java.time.Duration)}.
+ * The hook is called on the request path, so it should return quickly.
+ */
+@FunctionalInterface
+public interface SlowQueryHook {
+
+    /**
+     * Called on a slow query or rpc call.
+     *
+     * @param event the slow query or rpc call
+     */
+    void onSlowQuery(SlowQueryEvent event);
+
+    /**
+     * Returns a hook, which logs the slow queries at the warn level.
+     *
+     * @return the {@link SlowQueryHook} to use
+     */
+    static SlowQueryHook logging() {
+        Logger logger = LoggerFactory.getLogger(SlowQueryHook.class);
+        return event -> logger.warn("rx: slow {} on '{}': total {} us, queue {} us, round trip {} us, decode {} us{}",
+                CommandNames.get(event.getCommand()), event.getNamespace(),
+                TimeUnit.NANOSECONDS.toMicros(event.getTotalNanos()),
+                TimeUnit.NANOSECONDS.toMicros(event.getQueueNanos()),
+                TimeUnit.NANOSECONDS.toMicros(event.getRoundTripNanos()),
+                TimeUnit.NANOSECONDS.toMicros(event.getDecodeNanos()),
+                event.getQueryText() != null ? ": " + event.getQueryText() : "");
+    }
+
+}
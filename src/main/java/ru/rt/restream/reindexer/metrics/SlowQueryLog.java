@@ -0,0 +1,88 @@
+/*
+ * Copyright 2020 Restream
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.rt.restream.reindexer.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides, which slow queries and rpc calls are passed to a {@link SlowQueryHook}: the ones, which take at least
+ * the threshold, sampled at the sample rate.
+ */
+public final class SlowQueryLog {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SlowQueryLog.class);
+
+    /**
+     * The log, which captures nothing.
+     */
+    public static final SlowQueryLog DISABLED = new SlowQueryLog(event -> {
+    }, Long.MAX_VALUE, 0.0D);
+
+    private final SlowQueryHook hook;
+
+    private final long thresholdNanos;
+
+    private final double sampleRate;
+
+    /**
+     * Creates an instance.
+     *
+     * @param hook       the hook to pass the captured events to
+     * @param threshold  the minimum time of a captured query or rpc call
+     * @param sampleRate the fraction of the slow queries and rpc calls to capture, from 0 to 1
+     */
+    public SlowQueryLog(SlowQueryHook hook, Duration threshold, double sampleRate) {
+        this(hook, threshold.toNanos(), sampleRate);
+    }
+
+    private SlowQueryLog(SlowQueryHook hook, long thresholdNanos, double sampleRate) {
+        if (sampleRate < 0.0D || sampleRate > 1.0D) {
+            throw new IllegalArgumentException("sampleRate must be from 0 to 1");
+        }
+        this.hook = hook;
+        this.thresholdNanos = thresholdNanos;
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * Returns true if a query or rpc call, which took the given time, is to be captured.
+     *
+     * @param totalNanos the total time of the query or rpc call
+     * @return true if the query or rpc call is to be captured
+     */
+    public boolean shouldCapture(long totalNanos) {
+        return totalNanos >= thresholdNanos
+               && (sampleRate >= 1.0D || ThreadLocalRandom.current().nextDouble() < sampleRate);
+    }
+
+    /**
+     * Passes the event to the hook. An exception thrown by the hook is logged.
+     *
+     * @param event the captured event
+     */
+    public void capture(SlowQueryEvent event) {
+        try {
+            hook.onSlowQuery(event);
+        } catch (RuntimeException e) {
+            LOGGER.error("rx: slow query hook error", e);
+        }
+    }
+
+}
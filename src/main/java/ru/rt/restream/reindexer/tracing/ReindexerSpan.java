@@ -0,0 +1,84 @@
+/*
+ * Copyright 2020 Restream
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.rt.restream.reindexer.tracing;
+
+/**
+ * The span of a binding call. Every method has a no-op default, so an implementation overrides the data it needs
+ * only. The times are {@link System#nanoTime()} values, an implementation converts them to the wall clock time
+ * relative to the span start.
+ */
+public interface ReindexerSpan {
+
+    /**
+     * The span, which records nothing.
+     */
+    ReindexerSpan NOOP = new ReindexerSpan() {
+    };
+
+    /**
+     * The phase of selecting a pooled connection and waiting for a free request slot of the connection.
+     */
+    String CONNECTION = "connection";
+
+    /**
+     * The phase of encoding the request.
+     */
+    String ENCODE = "encode";
+
+    /**
+     * The phase of waiting for the response: the network and server time.
+     */
+    String NETWORK = "network";
+
+    /**
+     * The phase of decoding the result items. It starts with the first item and lasts the total decoding time, which
+     * does not include the time between the items.
+     */
+    String DECODE = "decode";
+
+    /**
+     * Records a phase of the call.
+     *
+     * @param phase         the phase, e.g. {@link #NETWORK}
+     * @param startNanos    the {@link System#nanoTime()} of the phase start
+     * @param durationNanos the phase duration, in nanoseconds
+     */
+    default void recordPhase(String phase, long startNanos, long durationNanos) {
+    }
+
+    /**
+     * Sets the number of items, which are written or returned by the call.
+     *
+     * @param items the number of items
+     */
+    default void setItemCount(long items) {
+    }
+
+    /**
+     * Records the error, which failed the call.
+     *
+     * @param error the error
+     */
+    default void recordError(Throwable error) {
+    }
+
+    /**
+     * Ends the span.
+     */
+    default void end() {
+    }
+
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2020 Restream
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.rt.restream.reindexer.tracing;
+
+/**
+ * Starts the spans of the binding calls, see {@link ru.rt.restream.reindexer.ReindexerConfiguration#tracer}.
+ * The binding is wrapped by a {@link TracingBinding} only if a tracer is configured, so the calls are not traced
+ * otherwise.
+ */
+@FunctionalInterface
+public interface ReindexerTracer {
+
+    /**
+     * Starts the span of a binding call. The span is ended by {@link ReindexerSpan#end()}, for a select call when its
+     * results are closed.
+     *
+     * @param command   the command, e.g. {@link ru.rt.restream.reindexer.binding.Binding#SELECT},
+     *                  see {@link ru.rt.restream.reindexer.metrics.CommandNames#get(int)}
+     * @param namespace the namespace, or null if the call does not refer to a namespace or the namespace is not
+     *                  known from the serialized query
+     * @return the started span
+     */
+    ReindexerSpan startSpan(int command, String namespace);
+
+}
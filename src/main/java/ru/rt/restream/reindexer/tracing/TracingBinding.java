@@ -0,0 +1,372 @@
+/*
+ * Copyright 2020 Restream
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.rt.restream.reindexer.tracing;
+
+import ru.rt.restream.reindexer.ReindexerResponse;
+import ru.rt.restream.reindexer.binding.Binding;
+import ru.rt.restream.reindexer.binding.ExecutionContext;
+import ru.rt.restream.reindexer.binding.QueryResult;
+import ru.rt.restream.reindexer.binding.RequestContext;
+import ru.rt.restream.reindexer.binding.TransactionContext;
+import ru.rt.restream.reindexer.binding.definition.IndexDefinition;
+import ru.rt.restream.reindexer.binding.definition.NamespaceDefinition;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * A binding, which traces the calls of another binding, see {@link ReindexerTracer}. A span is started for every
+ * binding and transaction call. The span of a select call is ended when its results are closed, so it covers
+ * the decoding of the result items.
+ * <p>
+ * The span of the current call is available to the wrapped binding by {@link #currentSpan()}, so the binding can
+ * record the phases of the call, e.g. the cproto binding records the connection, encode and network phases.
+ */
+public class TracingBinding implements Binding {
+
+    private static final ThreadLocal<ReindexerSpan> CURRENT_SPAN = new ThreadLocal<>();
+
+    /**
+     * True after the first tracing binding is created, so the untraced bindings do not look up the current span.
+     */
+    private static volatile boolean enabled;
+
+    private final Binding binding;
+
+    private final ReindexerTracer tracer;
+
+    /**
+     * Creates an instance.
+     *
+     * @param binding the binding to trace
+     * @param tracer  the {@link ReindexerTracer} to start the spans
+     */
+    public TracingBinding(Binding binding, ReindexerTracer tracer) {
+        this.binding = binding;
+        this.tracer = tracer;
+        enabled = true;
+    }
+
+    /**
+     * Returns the span of the binding call, which is made by the current thread.
+     *
+     * @return the current span, {@link ReindexerSpan#NOOP} if the call is not traced
+     */
+    public static ReindexerSpan currentSpan() {
+        if (!enabled) {
+            return ReindexerSpan.NOOP;
+        }
+        ReindexerSpan span = CURRENT_SPAN.get();
+        return span != null ? span : ReindexerSpan.NOOP;
+    }
+
+    @Override
+    public void openNamespace(NamespaceDefinition namespace) {
+        trace(OPEN_NAMESPACE, namespace.getName(), () -> binding.openNamespace(namespace));
+    }
+
+    @Override
+    public void addIndex(String namespace, IndexDefinition index) {
+        trace(ADD_INDEX, namespace, () -> binding.addIndex(namespace, index));
+    }
+
+    @Override
+    public void updateIndex(String namespace, IndexDefinition index) {
+        trace(UPDATE_INDEX, namespace, () -> binding.updateIndex(namespace, index));
+    }
+
+    @Override
+    public void dropIndex(String namespace, String indexName) {
+        trace(DROP_INDEX, namespace, () -> binding.dropIndex(namespace, indexName));
+    }
+
+    @Override
+    public void modifyItem(String namespaceName, byte[] data, int format, int mode, String[] precepts,
+                           int stateToken) {
+        trace(tracer.startSpan(MODIFY_ITEM, namespaceName), 1,
+                () -> binding.modifyItem(namespaceName, data, format, mode, precepts, stateToken));
+    }
+
+    @Override
+    public void modifyItems(String namespaceName, List<byte[]> items, int format, int mode, String[] precepts,
+                            int stateToken) {
+        trace(tracer.startSpan(MODIFY_ITEM, namespaceName), items.size(),
+                () -> binding.modifyItems(namespaceName, items, format, mode, precepts, stateToken));
+    }
+
+    @Override
+    public void dropNamespace(String namespaceName) {
+        trace(DROP_NAMESPACE, namespaceName, () -> binding.dropNamespace(namespaceName));
+    }
+
+    @Override
+    public void closeNamespace(String namespaceName) {
+        trace(CLOSE_NAMESPACE, namespaceName, () -> binding.closeNamespace(namespaceName));
+    }
+
+    @Override
+    public RequestContext select(String query, boolean asJson, int fetchCount, long[] ptVersions) {
+        return traceSelect(tracer.startSpan(SELECT_SQL, null),
+                () -> binding.select(query, asJson, fetchCount, ptVersions));
+    }
+
+    @Override
+    public RequestContext selectQuery(byte[] queryData, int fetchCount, long[] ptVersions, boolean asJson) {
+        return traceSelect(tracer.startSpan(SELECT, null),
+                () -> binding.selectQuery(queryData, fetchCount, ptVersions, asJson));
+    }
+
+    @Override
+    public RequestContext selectQuery(byte[] queryData, int fetchCount, long[] ptVersions, boolean asJson,
+                                      ExecutionContext context) {
+        return traceSelect(tracer.startSpan(SELECT, context.getNamespace()),
+                () -> binding.selectQuery(queryData, fetchCount, ptVersions, asJson, context));
+    }
+
+    @Override
+    public void deleteQuery(byte[] queryData) {
+        trace(DELETE_QUERY, null, () -> binding.deleteQuery(queryData));
+    }
+
+    @Override
+    public void deleteQuery(byte[] queryData, ExecutionContext context) {
+        trace(DELETE_QUERY, context.getNamespace(), () -> binding.deleteQuery(queryData, context));
+    }
+
+    @Override
+    public void updateQuery(byte[] queryData) {
+        trace(UPDATE_QUERY, null, () -> binding.updateQuery(queryData));
+    }
+
+    @Override
+    public void updateQuery(byte[] queryData, ExecutionContext context) {
+        trace(UPDATE_QUERY, context.getNamespace(), () -> binding.updateQuery(queryData, context));
+    }
+
+    @Override
+    public TransactionContext beginTx(String namespaceName) {
+        TransactionContext transactionContext = traceCall(tracer.startSpan(START_TRANSACTION, namespaceName),
+                () -> binding.beginTx(namespaceName));
+        return new TracingTransactionContext(transactionContext, namespaceName);
+    }
+
+    @Override
+    public void putMeta(String namespaceName, String key, String data) {
+        trace(PUT_META, namespaceName, () -> binding.putMeta(namespaceName, key, data));
+    }
+
+    @Override
+    public String getMeta(String namespaceName, String key) {
+        return traceCall(tracer.startSpan(GET_META, namespaceName), () -> binding.getMeta(namespaceName, key));
+    }
+
+    @Override
+    public void close() {
+        binding.close();
+    }
+
+    private void trace(int command, String namespace, Runnable call) {
+        traceCall(tracer.startSpan(command, namespace), () -> {
+            call.run();
+            return null;
+        });
+    }
+
+    private void trace(ReindexerSpan span, long items, Runnable call) {
+        traceCall(span, () -> {
+            call.run();
+            span.setItemCount(items);
+            return null;
+        });
+    }
+
+    private <R> R traceCall(ReindexerSpan span, Supplier<R> call) {
+        ReindexerSpan parent = CURRENT_SPAN.get();
+        CURRENT_SPAN.set(span);
+        try {
+            return call.get();
+        } catch (RuntimeException e) {
+            span.recordError(e);
+            throw e;
+        } finally {
+            restore(parent);
+            span.end();
+        }
+    }
+
+    private RequestContext traceSelect(ReindexerSpan span, Supplier<RequestContext> call) {
+        ReindexerSpan parent = CURRENT_SPAN.get();
+        CURRENT_SPAN.set(span);
+        try {
+            RequestContext requestContext = call.get();
+            QueryResult queryResult = requestContext.getQueryResult();
+            if (queryResult != null) {
+                span.setItemCount(queryResult.getQCount());
+            }
+            return new TracingRequestContext(requestContext, span);
+        } catch (RuntimeException e) {
+            span.recordError(e);
+            span.end();
+            throw e;
+        } finally {
+            restore(parent);
+        }
+    }
+
+    private static void restore(ReindexerSpan parent) {
+        if (parent != null) {
+            CURRENT_SPAN.set(parent);
+        } else {
+            CURRENT_SPAN.remove();
+        }
+    }
+
+    /**
+     * A request context, which ends the span of the select call, when the results are closed.
+     */
+    private static class TracingRequestContext implements RequestContext {
+
+        private final RequestContext requestContext;
+
+        private final ReindexerSpan span;
+
+        private boolean ended;
+
+        private TracingRequestContext(RequestContext requestContext, ReindexerSpan span) {
+            this.requestContext = requestContext;
+            this.span = span;
+        }
+
+        @Override
+        public QueryResult getQueryResult() {
+            return requestContext.getQueryResult();
+        }
+
+        @Override
+        public void fetchResults(int offset, int limit) {
+            long start = System.nanoTime();
+            try {
+                requestContext.fetchResults(offset, limit);
+            } finally {
+                span.recordPhase(ReindexerSpan.NETWORK, start, System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public void recordDecode(int items, long startNanos, long durationNanos) {
+            span.recordPhase(ReindexerSpan.DECODE, startNanos, durationNanos);
+            requestContext.recordDecode(items, startNanos, durationNanos);
+        }
+
+        @Override
+        public void closeResults() {
+            try {
+                requestContext.closeResults();
+            } finally {
+                if (!ended) {
+                    ended = true;
+                    span.end();
+                }
+            }
+        }
+
+    }
+
+    /**
+     * A transaction context, which traces the transaction calls.
+     */
+    private class TracingTransactionContext implements TransactionContext {
+
+        private final TransactionContext transactionContext;
+
+        private final String namespace;
+
+        private TracingTransactionContext(TransactionContext transactionContext, String namespace) {
+            this.transactionContext = transactionContext;
+            this.namespace = namespace;
+        }
+
+        @Override
+        public void modifyItem(byte[] data, int format, int mode, String[] precepts, int stateToken) {
+            trace(tracer.startSpan(ADD_TX_ITEM, namespace), 1,
+                    () -> transactionContext.modifyItem(data, format, mode, precepts, stateToken));
+        }
+
+        @Override
+        public CompletableFuture<ReindexerResponse> modifyItemAsync(byte[] data, int format, int mode,
+                                                                    String[] precepts, int stateToken) {
+            ReindexerSpan span = tracer.startSpan(ADD_TX_ITEM, namespace);
+            span.setItemCount(1);
+            CompletableFuture<ReindexerResponse> response;
+            try {
+                response = transactionContext.modifyItemAsync(data, format, mode, precepts, stateToken);
+            } catch (RuntimeException e) {
+                span.recordError(e);
+                span.end();
+                throw e;
+            }
+            response.whenComplete((r, e) -> {
+                if (e != null) {
+                    span.recordError(e);
+                }
+                span.end();
+            });
+            return response;
+        }
+
+        @Override
+        public void modifyItems(List<byte[]> items, int format, int mode, String[] precepts, int stateToken) {
+            trace(tracer.startSpan(ADD_TX_ITEM, namespace), items.size(),
+                    () -> transactionContext.modifyItems(items, format, mode, precepts, stateToken));
+        }
+
+        @Override
+        public RequestContext selectQuery(byte[] queryData, int fetchCount, long[] ptVersions, boolean asJson) {
+            return traceSelect(tracer.startSpan(SELECT, namespace),
+                    () -> transactionContext.selectQuery(queryData, fetchCount, ptVersions, asJson));
+        }
+
+        @Override
+        public RequestContext selectQuery(byte[] queryData, int fetchCount, long[] ptVersions, boolean asJson,
+                                          ExecutionContext context) {
+            return traceSelect(tracer.startSpan(SELECT, namespace),
+                    () -> transactionContext.selectQuery(queryData, fetchCount, ptVersions, asJson, context));
+        }
+
+        @Override
+        public void updateQuery(byte[] queryData) {
+            trace(UPDATE_QUERY_TX, namespace, () -> transactionContext.updateQuery(queryData));
+        }
+
+        @Override
+        public void deleteQuery(byte[] queryData) {
+            trace(DELETE_QUERY_TX, namespace, () -> transactionContext.deleteQuery(queryData));
+        }
+
+        @Override
+        public void commit() {
+            trace(COMMIT_TX, namespace, transactionContext::commit);
+        }
+
+        @Override
+        public void rollback() {
+            trace(ROLLBACK_TX, namespace, transactionContext::rollback);
+        }
+
+    }
+
+}
@@ -103,6 +103,18 @@ public final class BeanPropertyUtils {
         getCachedSetter(beanObject.getClass(), propertyName).accept(beanObject, value);
     }
 
+    /**
+     * Returns a cached setter of the bean class property.
+     *
+     * @param beanClass    bean class
+     * @param propertyName property name
+     * @return setter, that accepts a bean object and a property value
+     */
+    @SuppressWarnings("unchecked")
+    public static BiConsumer<Object, Object> getSetter(Class<?> beanClass, String propertyName) {
+        return getCachedSetter(beanClass, propertyName);
+    }
+
     private static BiConsumer getCachedSetter(Class<?> beanClass, String fieldName) {
         //https://bugs.openjdk.java.net/browse/JDK-8161372
         BiConsumer setter = SETTER_CACHE.get(beanClass).get(fieldName);
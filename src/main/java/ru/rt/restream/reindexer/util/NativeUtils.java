@@ -16,7 +16,7 @@
 
 package ru.rt.restream.reindexer.util;
 
-import ru.rt.restream.reindexer.binding.cproto.ByteBuffer;
+import ru.rt.restream.reindexer.binding.builtin.NativeByteBuffer;
 
 /**
  * Utility class for native calls.
@@ -24,19 +24,32 @@ import ru.rt.restream.reindexer.binding.cproto.ByteBuffer;
 public class NativeUtils {
 
     /**
-     * Returns the {@link ByteBuffer} from the native memory.
+     * Returns the cjson of an item as a {@link NativeByteBuffer} over the native memory. The buffer must be freed with
+     * {@link #freeNativeBuffer(NativeByteBuffer)} after the item is read.
      *
      * @param resultsPtr the results pointer
      * @param cptr       the item pointer from results
      * @param nsId       the namespace id
-     * @return the {@link ByteBuffer} to use
+     * @return the {@link NativeByteBuffer} to use
      */
-    public static ByteBuffer getNativeBuffer(long resultsPtr, long cptr, int nsId) {
-        byte[] bytes = getBytes(resultsPtr, cptr, nsId);
-        return new ByteBuffer(bytes).rewind();
+    public static NativeByteBuffer getNativeBuffer(long resultsPtr, long cptr, int nsId) {
+        return new NativeByteBuffer(getCjson(resultsPtr, cptr, nsId));
     }
 
-    private static native byte[] getBytes(long resultsPtr, long cptr, int nsId);
+    /**
+     * Frees the item cjson buffer, returned by {@link #getNativeBuffer(long, long, int)}.
+     *
+     * @param buffer the buffer to free
+     */
+    public static void freeNativeBuffer(NativeByteBuffer buffer) {
+        java.nio.ByteBuffer memory = buffer.getMemory();
+        buffer.release();
+        freeCjson(memory);
+    }
+
+    private static native java.nio.ByteBuffer getCjson(long resultsPtr, long cptr, int nsId);
+
+    private static native void freeCjson(java.nio.ByteBuffer cjson);
 
     /**
      * Frees the buffer from the native memory.
@@ -0,0 +1,399 @@
+/*
+ * Copyright 2020 Restream
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.rt.restream.reindexer.util;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A minimal pull reader of JSON, encoded in UTF-8, which reads straight from the bytes. Used for the small fixed
+ * schema responses of the server, e.g. the aggregation results, where a reflective mapping costs more than the data.
+ *
+ * <p>The reader is lenient, as Gson is for the string values: {@link #nextString()} returns the text of a number or
+ * a boolean value. The members of an object or an array are read while {@link #hasNext()} returns true.
+ */
+public class Utf8JsonReader {
+
+    private final byte[] data;
+
+    private int position;
+
+    /**
+     * Creates a reader of the JSON from the beginning of the data.
+     *
+     * @param data the UTF-8 encoded JSON
+     */
+    public Utf8JsonReader(byte[] data) {
+        this(data, 0);
+    }
+
+    /**
+     * Creates a reader of the JSON from the given position, e.g. one returned by {@link #getPosition()}.
+     *
+     * @param data     the UTF-8 encoded JSON
+     * @param position the position to start from
+     */
+    public Utf8JsonReader(byte[] data, int position) {
+        this.data = data;
+        this.position = position;
+    }
+
+    /**
+     * Returns the position of the next value.
+     *
+     * @return the position of the next value
+     */
+    public int getPosition() {
+        skipWhitespace();
+        return position;
+    }
+
+    /**
+     * Consumes the beginning of an object.
+     */
+    public void beginObject() {
+        expect('{');
+    }
+
+    /**
+     * Consumes the end of an object.
+     */
+    public void endObject() {
+        expect('}');
+    }
+
+    /**
+     * Consumes the beginning of an array.
+     */
+    public void beginArray() {
+        expect('[');
+    }
+
+    /**
+     * Consumes the end of an array.
+     */
+    public void endArray() {
+        expect(']');
+    }
+
+    /**
+     * Returns true, if the current object or array has another member, and consumes the separating comma.
+     *
+     * @return true, if the current object or array has another member
+     */
+    public boolean hasNext() {
+        int c = peek();
+        if (c == ',') {
+            position++;
+            c = peek();
+        }
+        return c != '}' && c != ']';
+    }
+
+    /**
+     * Reads the name of an object member and consumes the following colon.
+     *
+     * @return the name
+     */
+    public String nextName() {
+        String name = readString();
+        expect(':');
+        return name;
+    }
+
+    /**
+     * Returns true, if the next value is null, and consumes it.
+     *
+     * @return true, if the next value is null
+     */
+    public boolean nextNull() {
+        if (peek() == 'n') {
+            expectLiteral("null");
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Reads a string value, or the text of a number or a boolean value.
+     *
+     * @return the string, or null for a null value
+     */
+    public String nextString() {
+        int c = peek();
+        if (c == '"') {
+            return readString();
+        }
+        if (nextNull()) {
+            return null;
+        }
+        int start = position;
+        skipScalar();
+        return new String(data, start, position - start, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Reads a scalar value with its JSON type: a {@link String}, a {@link Long} for an integer, a {@link Double} for
+     * another number, or a {@link Boolean}.
+     *
+     * @return the value, or null for a null value
+     */
+    public Object nextValue() {
+        int c = peek();
+        if (c == '"') {
+            return readString();
+        } else if (c == 't') {
+            expectLiteral("true");
+            return Boolean.TRUE;
+        } else if (c == 'f') {
+            expectLiteral("false");
+            return Boolean.FALSE;
+        } else if (nextNull()) {
+            return null;
+        }
+        int start = position;
+        if (skipNumber()) {
+            return parseLong(start, position);
+        }
+        return parseDouble(start, position);
+    }
+
+    /**
+     * Reads a number value.
+     *
+     * @return the number
+     */
+    public double nextDouble() {
+        int start = getPosition();
+        if (skipNumber()) {
+            return parseLong(start, position);
+        }
+        return parseDouble(start, position);
+    }
+
+    /**
+     * Reads an integer number value.
+     *
+     * @return the number
+     */
+    public long nextLong() {
+        int start = getPosition();
+        if (skipNumber()) {
+            return parseLong(start, position);
+        }
+        return (long) parseDouble(start, position);
+    }
+
+    /**
+     * Skips the next value with all its members.
+     */
+    public void skipValue() {
+        int c = peek();
+        if (c == '{' || c == '[') {
+            position++;
+            int depth = 1;
+            while (depth > 0) {
+                c = peek();
+                if (c == '"') {
+                    skipString();
+                } else {
+                    if (c == '{' || c == '[') {
+                        depth++;
+                    } else if (c == '}' || c == ']') {
+                        depth--;
+                    }
+                    position++;
+                }
+            }
+        } else if (c == '"') {
+            skipString();
+        } else {
+            skipScalar();
+        }
+    }
+
+    private String readString() {
+        expect('"');
+        int start = position;
+        while (position < data.length && data[position] != '"' && data[position] != '\\') {
+            position++;
+        }
+        if (position < data.length && data[position] == '"') {
+            // no escapes, decode straight from the bytes
+            return new String(data, start, position++ - start, StandardCharsets.UTF_8);
+        }
+        StringBuilder builder = new StringBuilder(new String(data, start, position - start, StandardCharsets.UTF_8));
+        int chunkStart = position;
+        while (true) {
+            if (position >= data.length) {
+                throw error("Unterminated string");
+            }
+            byte b = data[position];
+            if (b == '"') {
+                builder.append(new String(data, chunkStart, position++ - chunkStart, StandardCharsets.UTF_8));
+                return builder.toString();
+            }
+            if (b != '\\') {
+                position++;
+                continue;
+            }
+            builder.append(new String(data, chunkStart, position - chunkStart, StandardCharsets.UTF_8));
+            position++;
+            builder.append(readEscape());
+            chunkStart = position;
+        }
+    }
+
+    private char readEscape() {
+        if (position >= data.length) {
+            throw error("Unterminated escape");
+        }
+        byte b = data[position++];
+        switch (b) {
+            case '"':
+            case '\\':
+            case '/':
+                return (char) b;
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case 'u':
+                if (position + 4 > data.length) {
+                    throw error("Unterminated escape");
+                }
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(data[position++], 16);
+                    if (digit < 0) {
+                        throw error("Malformed unicode escape");
+                    }
+                    value = value << 4 | digit;
+                }
+                return (char) value;
+            default:
+                throw error("Illegal escape");
+        }
+    }
+
+    private void skipString() {
+        expect('"');
+        while (position < data.length && data[position] != '"') {
+            position += data[position] == '\\' ? 2 : 1;
+        }
+        if (position >= data.length) {
+            throw error("Unterminated string");
+        }
+        position++;
+    }
+
+    private void skipScalar() {
+        int start = position;
+        while (position < data.length && !isDelimiter(data[position])) {
+            position++;
+        }
+        if (position == start) {
+            throw error("Expected a value");
+        }
+    }
+
+    /**
+     * Skips a number, and returns true, if it is an integer.
+     */
+    private boolean skipNumber() {
+        int start = position;
+        boolean integer = true;
+        while (position < data.length && !isDelimiter(data[position])) {
+            byte b = data[position++];
+            if (b == '.' || b == 'e' || b == 'E') {
+                integer = false;
+            }
+        }
+        if (position == start) {
+            throw error("Expected a number");
+        }
+        // longer integers may not fit a long
+        return integer && position - start <= 18;
+    }
+
+    private long parseLong(int start, int end) {
+        boolean negative = data[start] == '-';
+        long value = 0;
+        for (int i = negative ? start + 1 : start; i < end; i++) {
+            int digit = data[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw error("Malformed number");
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    private double parseDouble(int start, int end) {
+        try {
+            return Double.parseDouble(new String(data, start, end - start, StandardCharsets.US_ASCII));
+        } catch (NumberFormatException e) {
+            throw error("Malformed number");
+        }
+    }
+
+    private void expectLiteral(String literal) {
+        for (int i = 0; i < literal.length(); i++) {
+            if (position >= data.length || data[position++] != literal.charAt(i)) {
+                throw error("Expected " + literal);
+            }
+        }
+    }
+
+    private void expect(char c) {
+        if (peek() != c) {
+            throw error("Expected '" + c + "'");
+        }
+        position++;
+    }
+
+    private int peek() {
+        skipWhitespace();
+        if (position >= data.length) {
+            throw error("Unexpected end of JSON");
+        }
+        return data[position];
+    }
+
+    private void skipWhitespace() {
+        while (position < data.length) {
+            byte b = data[position];
+            if (b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+                return;
+            }
+            position++;
+        }
+    }
+
+    private static boolean isDelimiter(byte b) {
+        return b == ',' || b == '}' || b == ']' || b == ':' || b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+
+    private IllegalStateException error(String message) {
+        return new IllegalStateException(String.format("%s at position %d of JSON", message, position));
+    }
+
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright 2020 Restream
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.rt.restream.reindexer.vector;
+
+/**
+ * Encodes float vectors in a reduced {@link VectorPrecision}.
+ *
+ * <p>{@link #encode(float[], VectorPrecision)} packs a vector into little-endian bytes: 4 bytes per value for
+ * {@link VectorPrecision#FLOAT32}, 2 bytes per value for {@link VectorPrecision#FLOAT16} and a 4 byte scale followed
+ * by 1 byte per value for {@link VectorPrecision#INT8}. {@link #quantize(float[], VectorPrecision)} rounds the values
+ * of a vector to the precision, so that the vector is the same, as the one decoded from its encoded form.
+ */
+public final class VectorCodec {
+
+    private static final int INT8_MAX = 127;
+
+    private VectorCodec() {
+        // utils
+    }
+
+    /**
+     * Returns the number of bytes of an encoded vector.
+     *
+     * @param dimension the dimension of the vector
+     * @param precision the precision
+     * @return the size of the encoded vector
+     */
+    public static int encodedSize(int dimension, VectorPrecision precision) {
+        int size = dimension * precision.getBytesPerValue();
+        return precision == VectorPrecision.INT8 ? size + Float.BYTES : size;
+    }
+
+    /**
+     * Encodes a vector in the given precision.
+     *
+     * @param vector    the vector to encode
+     * @param precision the precision
+     * @return the encoded vector
+     * @throws IllegalArgumentException if the precision is {@link VectorPrecision#INT8} and the vector has a NaN or
+     *                                  an infinite value
+     */
+    public static byte[] encode(float[] vector, VectorPrecision precision) {
+        byte[] data = new byte[encodedSize(vector.length, precision)];
+        switch (precision) {
+            case FLOAT32:
+                for (int i = 0; i < vector.length; i++) {
+                    putInt(data, i * Float.BYTES, Float.floatToRawIntBits(vector[i]));
+                }
+                break;
+            case FLOAT16:
+                for (int i = 0; i < vector.length; i++) {
+                    short half = toFloat16(vector[i]);
+                    data[i * 2] = (byte) half;
+                    data[i * 2 + 1] = (byte) (half >>> 8);
+                }
+                break;
+            case INT8:
+                float scale = getInt8Scale(vector);
+                putInt(data, 0, Float.floatToRawIntBits(scale));
+                for (int i = 0; i < vector.length; i++) {
+                    data[Float.BYTES + i] = toInt8(vector[i], scale);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown vector precision: " + precision);
+        }
+        return data;
+    }
+
+    /**
+     * Decodes a vector, encoded by {@link #encode(float[], VectorPrecision)}.
+     *
+     * @param data      the encoded vector
+     * @param precision the precision, in which the vector was encoded
+     * @return the decoded vector
+     * @throws IllegalArgumentException if the length of the data does not match the precision
+     */
+    public static float[] decode(byte[] data, VectorPrecision precision) {
+        int header = precision == VectorPrecision.INT8 ? Float.BYTES : 0;
+        int length = data.length - header;
+        if (length < 0 || length % precision.getBytesPerValue() != 0) {
+            throw new IllegalArgumentException(String.format("%d bytes is not a %s vector", data.length, precision));
+        }
+        float[] vector = new float[length / precision.getBytesPerValue()];
+        switch (precision) {
+            case FLOAT32:
+                for (int i = 0; i < vector.length; i++) {
+                    vector[i] = Float.intBitsToFloat(getInt(data, i * Float.BYTES));
+                }
+                break;
+            case FLOAT16:
+                for (int i = 0; i < vector.length; i++) {
+                    vector[i] = fromFloat16((short) ((data[i * 2] & 0xff) | (data[i * 2 + 1] << 8)));
+                }
+                break;
+            case INT8:
+                float scale = Float.intBitsToFloat(getInt(data, 0));
+                for (int i = 0; i < vector.length; i++) {
+                    vector[i] = data[Float.BYTES + i] * scale;
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown vector precision: " + precision);
+        }
+        return vector;
+    }
+
+    /**
+     * Rounds the values of a vector to the given precision. The result is equal to the vector, encoded and decoded
+     * in the precision.
+     *
+     * @param vector    the vector to round
+     * @param precision the precision
+     * @return the given vector, if the precision is {@link VectorPrecision#FLOAT32}, otherwise a new rounded vector
+     * @throws IllegalArgumentException if the precision is {@link VectorPrecision#INT8} and the vector has a NaN or
+     *                                  an infinite value
+     */
+    public static float[] quantize(float[] vector, VectorPrecision precision) {
+        switch (precision) {
+            case FLOAT32:
+                return vector;
+            case FLOAT16:
+                float[] halves = new float[vector.length];
+                for (int i = 0; i < vector.length; i++) {
+                    halves[i] = fromFloat16(toFloat16(vector[i]));
+                }
+                return halves;
+            case INT8:
+                float scale = getInt8Scale(vector);
+                float[] bytes = new float[vector.length];
+                for (int i = 0; i < vector.length; i++) {
+                    bytes[i] = toInt8(vector[i], scale) * scale;
+                }
+                return bytes;
+            default:
+                throw new IllegalArgumentException("Unknown vector precision: " + precision);
+        }
+    }
+
+    /**
+     * Converts a float to the bits of the nearest IEEE 754 half precision float, rounding half to even. The values,
+     * which are too large for a half precision float, become infinities.
+     *
+     * @param value the value to convert
+     * @return the bits of the half precision float
+     */
+    public static short toFloat16(float value) {
+        int bits = Float.floatToRawIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int exponent = (bits >>> 23) & 0xff;
+        int mantissa = bits & 0x7fffff;
+        if (exponent == 0xff) {
+            // infinity or NaN, a NaN stays a NaN
+            return (short) (sign | 0x7c00 | (mantissa != 0 ? 0x200 : 0));
+        }
+        int halfExponent = exponent - 127 + 15;
+        if (halfExponent >= 0x1f) {
+            return (short) (sign | 0x7c00);
+        }
+        if (halfExponent <= 0) {
+            // subnormal half, the values below half of the smallest one round to zero
+            if (halfExponent < -10) {
+                return (short) sign;
+            }
+            return (short) (sign | roundShift(mantissa | 0x800000, 14 - halfExponent));
+        }
+        // a carry of the rounding goes to the exponent, which is the correct result
+        return (short) (sign | roundShift((halfExponent << 23) | mantissa, 13));
+    }
+
+    /**
+     * Converts the bits of an IEEE 754 half precision float to a float. The conversion is exact.
+     *
+     * @param half the bits of the half precision float
+     * @return the float value
+     */
+    public static float fromFloat16(short half) {
+        int bits = half & 0xffff;
+        int sign = (bits & 0x8000) << 16;
+        int exponent = (bits >>> 10) & 0x1f;
+        int mantissa = bits & 0x3ff;
+        if (exponent == 0x1f) {
+            return Float.intBitsToFloat(sign | 0x7f800000 | (mantissa << 13));
+        }
+        if (exponent == 0) {
+            // zero or subnormal, which is a normal float
+            float value = mantissa * 0x1p-24f;
+            return sign == 0 ? value : -value;
+        }
+        return Float.intBitsToFloat(sign | ((exponent + 127 - 15) << 23) | (mantissa << 13));
+    }
+
+    private static int roundShift(int value, int shift) {
+        int result = value >>> shift;
+        int remainder = value & ((1 << shift) - 1);
+        int halfway = 1 << (shift - 1);
+        if (remainder > halfway || (remainder == halfway && (result & 1) != 0)) {
+            result++;
+        }
+        return result;
+    }
+
+    private static float getInt8Scale(float[] vector) {
+        float max = 0;
+        for (float value : vector) {
+            if (!Float.isFinite(value)) {
+                throw new IllegalArgumentException("INT8 vector precision does not support NaN and infinite values");
+            }
+            max = Math.max(max, Math.abs(value));
+        }
+        return max / INT8_MAX;
+    }
+
+    private static byte toInt8(float value, float scale) {
+        if (scale == 0) {
+            return 0;
+        }
+        int rounded = Math.round(value / scale);
+        return (byte) Math.max(-INT8_MAX, Math.min(INT8_MAX, rounded));
+    }
+
+    private static void putInt(byte[] data, int offset, int value) {
+        data[offset] = (byte) value;
+        data[offset + 1] = (byte) (value >>> 8);
+        data[offset + 2] = (byte) (value >>> 16);
+        data[offset + 3] = (byte) (value >>> 24);
+    }
+
+    private static int getInt(byte[] data, int offset) {
+        return (data[offset] & 0xff)
+                | (data[offset + 1] & 0xff) << 8
+                | (data[offset + 2] & 0xff) << 16
+                | (data[offset + 3] & 0xff) << 24;
+    }
+
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2020 Restream
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.rt.restream.reindexer.vector;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Precisions, in which the values of a float vector field can be kept.
+ *
+ * <p>Reindexer stores and transfers the float vectors as 32-bit floats, so a reduced precision saves nothing on the
+ * transfer or in the server storage. {@link VectorCodec} encodes the vectors in the precision into a compact form
+ * for the storage on the client side, e.g. in a cache.
+ */
+@Getter
+@RequiredArgsConstructor
+public enum VectorPrecision {
+    /**
+     * 32-bit floats, 4 bytes per value. The values are kept as is.
+     */
+    FLOAT32(4),
+
+    /**
+     * IEEE 754 half precision floats, 2 bytes per value. Keeps about 3 significant decimal digits.
+     */
+    FLOAT16(2),
+
+    /**
+     * Signed bytes scaled by the largest absolute value of a vector, 1 byte per value and a 4 byte scale per vector.
+     */
+    INT8(1);
+
+    private final int bytesPerValue;
+}
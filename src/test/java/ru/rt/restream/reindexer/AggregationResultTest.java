@@ -0,0 +1,109 @@
+/*
+ * Copyright 2020 Restream
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.rt.restream.reindexer;
+
+import com.google.gson.Gson;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for {@link AggregationResult}.
+ */
+class AggregationResultTest {
+
+    private static final String FACET_JSON = "{\"value\":0,\"type\":\"facet\",\"fields\":[\"name\",\"price\"],"
+            + "\"facets\":[{\"values\":[\"Name3\",\"3\"],\"count\":125},"
+            + " {\"count\": 7, \"values\": [\"Имя \\\"2\\\"\\n\\u0041\", \"2.5\"], \"extra\": {\"a\": [1, \"]\"]}}]}";
+
+    @Test
+    void fromJsonWhenFacetsThenDecodedAsGsonDoes() {
+        AggregationResult result = AggregationResult.fromJson(bytes(FACET_JSON));
+        AggregationResult expected = new Gson().fromJson(FACET_JSON, AggregationResult.class);
+
+        assertThat(result.getType(), is("facet"));
+        assertThat(result.getFields(), contains("name", "price"));
+        assertThat(result.getFacets().size(), is(2));
+        for (int i = 0; i < 2; i++) {
+            assertThat(result.getFacets().get(i).getValues(), is(expected.getFacets().get(i).getValues()));
+            assertThat(result.getFacets().get(i).getCount(), is(expected.getFacets().get(i).getCount()));
+        }
+        assertThat(result.getFacets().get(1).getValues().get(0), is("Имя \"2\"\nA"));
+        assertThat(result.getFacets().get(0).getLongValue(1), is(3L));
+        assertThat(result.getFacets().get(1).getDoubleValue(1), is(2.5));
+        assertThat(result.getDistincts(), is(nullValue()));
+        assertThat(result.getDistinctValues(), is(nullValue()));
+    }
+
+    @Test
+    void forEachFacetWhenNotDecodedThenStreamsFacets() {
+        AggregationResult result = AggregationResult.fromJson(bytes(FACET_JSON));
+
+        List<Integer> counts = new ArrayList<>();
+        result.forEachFacet(facet -> counts.add(facet.getCount()));
+
+        assertThat(counts, contains(125, 7));
+    }
+
+    @Test
+    void fromJsonWhenDistinctsThenTypedValues() {
+        AggregationResult result = AggregationResult.fromJson(bytes("{\"type\":\"distinct\",\"fields\":[\"f\"],"
+                + "\"distincts\":[\"a\",12,-3.5,true,12345678901234567890]}"));
+
+        assertThat(result.getDistincts(), contains("a", "12", "-3.5", "true", "12345678901234567890"));
+        assertThat(result.getDistinctValues(), contains("a", 12L, -3.5, true, 12345678901234567890.0));
+        assertThat(result.getFacets(), is(nullValue()));
+    }
+
+    @Test
+    void fromJsonWhenValueThenValue() {
+        AggregationResult result = AggregationResult.fromJson(
+                bytes("{\"value\":499.5,\"type\":\"avg\",\"fields\":[\"price\"]}"));
+
+        assertThat(result.getValue(), is(499.5));
+        assertThat(result.getType(), is("avg"));
+    }
+
+    @Test
+    void setDistinctsThenOverridesDecoded() {
+        AggregationResult result = AggregationResult.fromJson(bytes("{\"distincts\":[1]}"));
+        result.setDistincts(Arrays.asList("x", "y"));
+
+        assertThat(result.getDistincts(), contains("x", "y"));
+        assertThat(result.getDistinctValues(), contains("x", "y"));
+    }
+
+    @Test
+    void fromJsonWhenMalformedThenException() {
+        assertThrows(IllegalStateException.class, () -> AggregationResult.fromJson(bytes("{\"value\":")));
+        assertThrows(IllegalStateException.class,
+                () -> AggregationResult.fromJson(bytes("{\"facets\":[{\"values\":[\"a]}]}")).getFacets());
+    }
+
+    private static byte[] bytes(String json) {
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+
+}
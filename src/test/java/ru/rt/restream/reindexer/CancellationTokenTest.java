@@ -0,0 +1,79 @@
+/*
+ * Copyright 2020 Restream
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.rt.restream.reindexer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Tests for {@link CancellationToken}.
+ */
+class CancellationTokenTest {
+
+    @Test
+    void cancelThenListenersRunOnce() {
+        CancellationToken token = new CancellationToken();
+        AtomicInteger calls = new AtomicInteger();
+        token.register(calls::incrementAndGet);
+
+        token.cancel();
+        token.cancel();
+
+        assertThat(token.isCancelled(), is(true));
+        assertThat(calls.get(), is(1));
+    }
+
+    @Test
+    void registerWhenCancelledThenListenerRunsImmediately() {
+        CancellationToken token = new CancellationToken();
+        token.cancel();
+        AtomicInteger calls = new AtomicInteger();
+
+        token.register(calls::incrementAndGet);
+
+        assertThat(calls.get(), is(1));
+    }
+
+    @Test
+    void cancelWhenRegistrationClosedThenListenerDoesNotRun() {
+        CancellationToken token = new CancellationToken();
+        AtomicInteger calls = new AtomicInteger();
+        token.register(calls::incrementAndGet).close();
+
+        token.cancel();
+
+        assertThat(calls.get(), is(0));
+    }
+
+    @Test
+    void cancelWhenListenerFailsThenOtherListenersRun() {
+        CancellationToken token = new CancellationToken();
+        AtomicInteger calls = new AtomicInteger();
+        token.register(() -> {
+            throw new IllegalStateException("failed");
+        });
+        token.register(calls::incrementAndGet);
+
+        token.cancel();
+
+        assertThat(calls.get(), is(1));
+    }
+
+}
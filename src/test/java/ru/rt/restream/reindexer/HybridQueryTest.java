@@ -0,0 +1,85 @@
+/*
+ * Copyright 2020 Restream
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.rt.restream.reindexer;
+
+import org.junit.jupiter.api.Test;
+import ru.rt.restream.reindexer.util.Pair;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for {@link HybridQuery}.
+ */
+class HybridQueryTest {
+
+    private final HybridQuery<String> query = new HybridQuery<>(null, null, Runnable::run,
+            item -> item.substring(0, 1));
+
+    @Test
+    void mergeWhenReciprocalRankFusionThenItemInBothResultsFirst() {
+        Pair<List<String>, float[]> text = result(Arrays.asList("a-text", "b-text", "c-text"), 90f, 50f, 10f);
+        Pair<List<String>, float[]> vector = result(Arrays.asList("d-vector", "c-vector"), 0.1f, 0.2f);
+
+        Pair<List<String>, float[]> merged = query.merge(text, vector);
+
+        assertThat(merged.getFirst(), contains("c-text", "a-text", "d-vector", "b-text"));
+        assertThat(merged.getSecond()[0], is((float) (1.0 / 63 + 1.0 / 62)));
+        assertThat(merged.getSecond()[1], is((float) (1.0 / 61)));
+    }
+
+    @Test
+    void mergeWhenWeightedThenRanksNormalizedWithinResult() {
+        query.weighted(1.0, 2.0);
+        Pair<List<String>, float[]> text = result(Arrays.asList("a-text", "b-text", "c-text"), 90f, 50f, 10f);
+        // L2 distances, the lower the better
+        Pair<List<String>, float[]> vector = result(Arrays.asList("c-vector", "d-vector"), 0.1f, 0.3f);
+
+        Pair<List<String>, float[]> merged = query.merge(text, vector);
+
+        assertThat(merged.getFirst(), contains("c-text", "a-text", "b-text", "d-vector"));
+        assertThat(merged.getSecond(), is(new float[]{2.0f, 1.0f, 0.5f, 0.0f}));
+    }
+
+    @Test
+    void mergeWhenLimitThenTopItems() {
+        query.limit(1);
+        Pair<List<String>, float[]> text = result(Arrays.asList("a-text", "b-text"), 90f, 50f);
+        Pair<List<String>, float[]> vector = result(Collections.emptyList());
+
+        Pair<List<String>, float[]> merged = query.merge(text, vector);
+
+        assertThat(merged.getFirst(), contains("a-text"));
+        assertThat(merged.getSecond().length, is(1));
+    }
+
+    @Test
+    void weightedWhenNegativeWeightThenException() {
+        assertThrows(IllegalArgumentException.class, () -> query.weighted(-1.0, 1.0));
+        assertThrows(IllegalArgumentException.class, () -> query.reciprocalRankFusion(-1));
+    }
+
+    private static Pair<List<String>, float[]> result(List<String> items, float... ranks) {
+        return new Pair<>(items, ranks);
+    }
+
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2020 Restream
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.rt.restream.reindexer;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.junit.jupiter.api.Test;
+import ru.rt.restream.reindexer.annotations.Transient;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for {@link JoinPlan}.
+ */
+class JoinPlanTest {
+
+    @Test
+    void compileWhenSameJoinFieldThenSameSlot() {
+        JoinPlan plan = JoinPlan.compile(Item.class, Arrays.asList("children", "parent", "children", "unknown"));
+        assertThat(plan.getSlotCount(), is(3));
+        assertThat(plan.getSlot(0), is(0));
+        assertThat(plan.getSlot(1), is(1));
+        assertThat(plan.getSlot(2), is(0));
+        assertThat(plan.getSlot(3), is(2));
+    }
+
+    @Test
+    void assignThenFieldsSetAndSlotsCleared() {
+        JoinPlan plan = JoinPlan.compile(Item.class, Arrays.asList("children", "parent", "unknown"));
+        Item item = new Item();
+        List<List<Object>> joinResults = plan.newJoinResults();
+        joinResults.set(0, new ArrayList<>(Arrays.asList("a", "b")));
+        joinResults.set(1, new ArrayList<>(Collections.singletonList("p")));
+        joinResults.set(2, new ArrayList<>(Collections.singletonList("u")));
+
+        plan.assign(item, joinResults);
+
+        assertThat(item.getChildren(), contains("a", "b"));
+        assertThat(item.getParent(), is("p"));
+        assertThat(joinResults, contains(nullValue(), nullValue(), nullValue()));
+    }
+
+    @Test
+    void assignWhenNoJoinResultsForSingleFieldThenNull() {
+        JoinPlan plan = JoinPlan.compile(Item.class, Collections.singletonList("parent"));
+        Item item = new Item();
+        item.setParent("p");
+        List<List<Object>> joinResults = plan.newJoinResults();
+        joinResults.set(0, new ArrayList<>());
+
+        plan.assign(item, joinResults);
+
+        assertThat(item.getParent(), nullValue());
+    }
+
+    @Test
+    void assignWhenMultipleJoinResultsForSingleFieldThenException() {
+        JoinPlan plan = JoinPlan.compile(Item.class, Collections.singletonList("parent"));
+        List<List<Object>> joinResults = plan.newJoinResults();
+        joinResults.set(0, new ArrayList<>(Arrays.asList("p1", "p2")));
+
+        RuntimeException exception = assertThrows(RuntimeException.class, () -> plan.assign(new Item(), joinResults));
+        assertThat(exception.getMessage(), is("Multiple join result found: parent"));
+    }
+
+    @Getter
+    @Setter
+    public static class Item {
+        @Transient
+        private List<String> children;
+        @Transient
+        private String parent;
+    }
+
+}
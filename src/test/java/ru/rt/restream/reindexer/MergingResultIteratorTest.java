@@ -0,0 +1,224 @@
+/*
+ * Copyright 2020 Restream
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.rt.restream.reindexer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for {@link MergingResultIterator}.
+ */
+class MergingResultIteratorTest {
+
+    @Test
+    void nextWhenComparatorThenItemsMergedInOrder() {
+        List<ListResultIterator> results = Arrays.asList(
+                new ListResultIterator(Arrays.asList(1, 4, 7)),
+                new ListResultIterator(Arrays.asList(2, 3, 9)),
+                new ListResultIterator(Collections.emptyList()));
+
+        MergingResultIterator<Integer> iterator = merge(results, Comparator.naturalOrder(), 0, -1);
+
+        assertThat(toList(iterator), contains(1, 2, 3, 4, 7, 9));
+        assertThat(iterator.getCurrentRank(), is(9f));
+    }
+
+    @Test
+    void nextWhenNoComparatorThenResultsConcatenated() {
+        List<ListResultIterator> results = Arrays.asList(
+                new ListResultIterator(Collections.emptyList()),
+                new ListResultIterator(Arrays.asList(5, 1)),
+                new ListResultIterator(Arrays.asList(3)));
+
+        assertThat(toList(merge(results, null, 0, -1)), contains(5, 1, 3));
+    }
+
+    @Test
+    void nextWhenOffsetAndLimitThenAppliedToMergedItems() {
+        List<ListResultIterator> results = Arrays.asList(
+                new ListResultIterator(Arrays.asList(1, 3, 5)),
+                new ListResultIterator(Arrays.asList(2, 4, 6)));
+
+        MergingResultIterator<Integer> iterator = merge(results, Comparator.naturalOrder(), 2, 3);
+
+        assertThat(iterator.size(), is(3L));
+        assertThat(toList(iterator), contains(3, 4, 5));
+        assertThrows(IllegalStateException.class, iterator::next);
+    }
+
+    @Test
+    void closeThenAllResultsClosed() {
+        List<ListResultIterator> results = Arrays.asList(
+                new ListResultIterator(Arrays.asList(1)),
+                new ListResultIterator(Arrays.asList(2)));
+
+        merge(results, null, 0, -1).close();
+
+        assertThat(results.get(0).closed, is(true));
+        assertThat(results.get(1).closed, is(true));
+    }
+
+    @Test
+    void mergeAggResultsThenSumAvgMinMaxMerged() {
+        List<List<AggregationResult>> targetResults = Arrays.asList(
+                Arrays.asList(value("sum", 10), value("avg", 2), value("min", 1), value("max", 5)),
+                Arrays.asList(value("sum", 30), value("avg", 6), value("min", 3), value("max", 9)),
+                Arrays.asList(value("sum", 0), value("avg", 0), value("min", 0), value("max", 0)));
+
+        List<AggregationResult> merged = MergingResultIterator.mergeAggResults(targetResults,
+                new long[]{5, 15, 0}, -1);
+
+        assertThat(merged.get(0).getValue(), is(40.0));
+        assertThat(merged.get(1).getValue(), is(5.0));
+        assertThat(merged.get(2).getValue(), is(1.0));
+        assertThat(merged.get(3).getValue(), is(9.0));
+    }
+
+    @Test
+    void mergeAggResultsThenFacetsMergedByValues() {
+        List<List<AggregationResult>> targetResults = Arrays.asList(
+                Collections.singletonList(facets(facet("a", 1), facet("b", 5))),
+                Collections.singletonList(facets(facet("c", 4), facet("a", 7))));
+
+        List<AggregationResult.Facet> all = MergingResultIterator.mergeAggResults(targetResults, new long[2], -1)
+                .get(0).getFacets();
+        List<AggregationResult.Facet> top = MergingResultIterator.mergeAggResults(targetResults, new long[2], 2)
+                .get(0).getFacets();
+
+        assertThat(all.size(), is(3));
+        assertThat(all.get(0).getValues(), contains("a"));
+        assertThat(all.get(0).getCount(), is(8));
+        assertThat(top.size(), is(2));
+        assertThat(top.get(0).getValues(), contains("a"));
+        assertThat(top.get(1).getValues(), contains("b"));
+    }
+
+    @Test
+    void mergeAggResultsThenDistinctsUnited() {
+        AggregationResult first = value("distinct", 0);
+        first.setDistincts(Arrays.asList("x", "y"));
+        AggregationResult second = value("distinct", 0);
+        second.setDistincts(Arrays.asList("y", "z"));
+
+        List<AggregationResult> merged = MergingResultIterator.mergeAggResults(
+                Arrays.asList(Collections.singletonList(first), Collections.singletonList(second)), new long[2], -1);
+
+        assertThat(merged.get(0).getDistincts(), contains("x", "y", "z"));
+    }
+
+    @Test
+    void mergeAggResultsWhenDifferentAggregationsThenException() {
+        assertThrows(IllegalStateException.class, () -> MergingResultIterator.mergeAggResults(
+                Arrays.asList(Collections.singletonList(value("sum", 1)), Collections.singletonList(value("max", 1))),
+                new long[2], -1));
+    }
+
+    private static MergingResultIterator<Integer> merge(List<ListResultIterator> results,
+                                                        Comparator<Integer> comparator, int offset, int limit) {
+        return new MergingResultIterator<>(new ArrayList<>(results), comparator, offset, limit, -1);
+    }
+
+    private static List<Integer> toList(ResultIterator<Integer> iterator) {
+        List<Integer> items = new ArrayList<>();
+        while (iterator.hasNext()) {
+            items.add(iterator.next());
+        }
+        return items;
+    }
+
+    private static AggregationResult value(String type, double value) {
+        AggregationResult result = new AggregationResult();
+        result.setType(type);
+        result.setFields(Collections.singletonList("price"));
+        result.setValue(value);
+        return result;
+    }
+
+    private static AggregationResult facets(AggregationResult.Facet... facets) {
+        AggregationResult result = value("facet", 0);
+        result.setFacets(Arrays.asList(facets));
+        return result;
+    }
+
+    private static AggregationResult.Facet facet(String value, int count) {
+        AggregationResult.Facet facet = new AggregationResult.Facet();
+        facet.setValues(Collections.singletonList(value));
+        facet.setCount(count);
+        return facet;
+    }
+
+    /**
+     * A result over a list, with the item as its rank.
+     */
+    private static class ListResultIterator implements ResultIterator<Integer> {
+
+        private final List<Integer> items;
+
+        private int position;
+
+        private boolean closed;
+
+        private ListResultIterator(List<Integer> items) {
+            this.items = items;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return position < items.size();
+        }
+
+        @Override
+        public Integer next() {
+            return items.get(position++);
+        }
+
+        @Override
+        public long getTotalCount() {
+            return items.size();
+        }
+
+        @Override
+        public long size() {
+            return items.size();
+        }
+
+        @Override
+        public List<AggregationResult> aggResults() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public float getCurrentRank() {
+            return items.get(position - 1);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2020 Restream
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.rt.restream.reindexer;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.junit.jupiter.api.Test;
+import ru.rt.restream.reindexer.annotations.Reindex;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+/**
+ * Tests for {@link PrimaryKey}.
+ */
+class PrimaryKeyTest {
+
+    @Test
+    void ofWhenSingleFieldPrimaryKeyThenFound() {
+        PrimaryKey primaryKey = PrimaryKey.of(Item.class);
+        assertThat(primaryKey, notNullValue());
+        assertThat(primaryKey.getIndexName(), is("id"));
+        assertThat(primaryKey.getValue(new Item(5, "name")), is(5L));
+    }
+
+    @Test
+    void ofWhenNoPrimaryKeyThenNull() {
+        assertThat(PrimaryKey.of(NoPkItem.class), nullValue());
+    }
+
+    @Test
+    void normalizeWhenIntegralThenLong() {
+        assertThat(PrimaryKey.normalize(1), is(PrimaryKey.normalize(1L)));
+        assertThat(PrimaryKey.normalize((short) 1), is(1L));
+        assertThat(PrimaryKey.normalize("1"), is("1"));
+    }
+
+    @Getter
+    @Setter
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Item {
+        @Reindex(name = "id", isPrimaryKey = true)
+        private int id;
+
+        @Reindex(name = "name")
+        private String name;
+    }
+
+    @Getter
+    @Setter
+    public static class NoPkItem {
+        @Reindex(name = "name")
+        private String name;
+    }
+
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2020 Restream
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.rt.restream.reindexer.binding.builtin;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for {@link BuiltinAsyncExecutor}.
+ */
+class BuiltinAsyncExecutorTest {
+
+    @Test
+    void submitThenCompletedWithResult() {
+        try (BuiltinAsyncExecutor executor = new BuiltinAsyncExecutor(2, 8)) {
+            assertThat(executor.submit(() -> 42).join(), is(42));
+            assertThat(executor.getCompletedCount(), is(1L));
+            assertThat(executor.getPendingCount(), is(0));
+        }
+    }
+
+    @Test
+    void submitWhenCallFailsThenCompletedExceptionally() {
+        try (BuiltinAsyncExecutor executor = new BuiltinAsyncExecutor(1, 8)) {
+            CompletableFuture<Object> future = executor.submit(() -> {
+                throw new IllegalStateException("failed");
+            });
+            CompletionException e = assertThrows(CompletionException.class, future::join);
+            assertThat(e.getCause(), instanceOf(IllegalStateException.class));
+            assertThat(executor.getPendingCount(), is(0));
+        }
+    }
+
+    @Test
+    void submitWhenQueueIsFullThenBlocked() throws Exception {
+        try (BuiltinAsyncExecutor executor = new BuiltinAsyncExecutor(1, 2)) {
+            CountDownLatch release = new CountDownLatch(1);
+            executor.submit(() -> await(release));
+            executor.submit(() -> await(release));
+            assertThat(executor.getPendingCount(), is(2));
+
+            CompletableFuture<Boolean> submitted = CompletableFuture.supplyAsync(() -> executor.submit(() -> true).join());
+            TimeUnit.MILLISECONDS.sleep(100L);
+            assertThat(submitted.isDone(), is(false));
+
+            release.countDown();
+            assertThat(submitted.get(5L, TimeUnit.SECONDS), is(true));
+            assertThat(executor.getCompletedCount(), is(3L));
+        }
+    }
+
+    @Test
+    void closeThenPendingCallsCompleted() {
+        BuiltinAsyncExecutor executor = new BuiltinAsyncExecutor(1, 8);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Boolean> running = executor.submit(() -> await(release));
+        CompletableFuture<Integer> queued = executor.submit(() -> 42);
+        CompletableFuture.runAsync(() -> {
+            sleep(100L);
+            release.countDown();
+        });
+
+        assertThat(executor.close(Duration.ofSeconds(5)), is(true));
+        assertThat(running.isDone(), is(true));
+        assertThat(queued.join(), is(42));
+    }
+
+    @Test
+    void closeWhenTimeoutThenQueuedCallsFailed() {
+        BuiltinAsyncExecutor executor = new BuiltinAsyncExecutor(1, 8);
+        CountDownLatch release = new CountDownLatch(1);
+        executor.submit(() -> await(release));
+        CompletableFuture<Integer> queued = executor.submit(() -> 42);
+
+        assertThat(executor.close(Duration.ofMillis(50)), is(true));
+        CompletionException e = assertThrows(CompletionException.class, queued::join);
+        assertThat(e.getCause(), instanceOf(RejectedExecutionException.class));
+        assertThat(executor.getPendingCount(), is(0));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static boolean await(CountDownLatch latch) {
+        try {
+            return latch.await(5L, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+}
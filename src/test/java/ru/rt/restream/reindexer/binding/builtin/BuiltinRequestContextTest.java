@@ -0,0 +1,63 @@
+/*
+ * Copyright 2020 Restream
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.rt.restream.reindexer.binding.builtin;
+
+import org.junit.jupiter.api.Test;
+import ru.rt.restream.reindexer.ReindexerResponse;
+import ru.rt.restream.reindexer.binding.Consts;
+import ru.rt.restream.reindexer.binding.cproto.ByteBuffer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Tests for {@link BuiltinRequestContext}.
+ */
+class BuiltinRequestContextTest {
+
+    @Test
+    void fetchResultsThenNextWindow() {
+        BuiltinRequestContext context = new BuiltinRequestContext(response(5), 2);
+        assertThat(context.getQueryResult().getQCount(), is(5L));
+        assertThat(context.getQueryResult().getCount(), is(2L));
+
+        context.fetchResults(2, 2);
+        assertThat(context.getQueryResult().getCount(), is(2L));
+
+        context.fetchResults(4, 2);
+        assertThat(context.getQueryResult().getCount(), is(1L));
+    }
+
+    @Test
+    void createWhenNoFetchCountThenAllItems() {
+        BuiltinRequestContext context = new BuiltinRequestContext(response(5), 0);
+        assertThat(context.getQueryResult().getCount(), is(5L));
+    }
+
+    private static ReindexerResponse response(int itemCount) {
+        byte[] bytes = new ByteBuffer()
+                .putVarUInt32(Consts.RESULTS_C_JSON)
+                .putVarUInt32(itemCount)
+                .putVarUInt32(itemCount)
+                .putVarUInt32(itemCount)
+                .putVarUInt32(Consts.QUERY_RESULT_END)
+                .bytes();
+        java.nio.ByteBuffer data = java.nio.ByteBuffer.allocateDirect(bytes.length);
+        data.put(bytes).flip();
+        return new ReindexerResponse(Consts.ERR_OK, null, 0L, data);
+    }
+
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2020 Restream
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.rt.restream.reindexer.binding.builtin;
+
+import org.junit.jupiter.api.Test;
+import ru.rt.restream.reindexer.binding.cproto.ByteBuffer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.util.UUID;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for {@link NativeByteBuffer}.
+ */
+class NativeByteBufferTest {
+
+    @Test
+    void readThenSameValuesAsHeapBuffer() {
+        UUID uuid = UUID.randomUUID();
+        byte[] bytes = new ByteBuffer()
+                .putUInt16(65535)
+                .putUInt32(4294967295L)
+                .putVarUInt32(300)
+                .putVarInt64(-12345L)
+                .putVString("строка")
+                .putUuid(uuid)
+                .bytes();
+
+        NativeByteBuffer buffer = wrap(bytes);
+
+        assertThat(buffer.getUInt16(), is(65535));
+        assertThat(buffer.getUInt32(), is(4294967295L));
+        assertThat(buffer.getVarUInt(), is(300L));
+        assertThat(buffer.getVarInt(), is(-12345L));
+        assertThat(buffer.getVString(), is("строка"));
+        assertThat(buffer.getUuid(), is(uuid));
+        assertThat(buffer.getPosition(), is(bytes.length));
+    }
+
+    @Test
+    void getSliceThenViewOfNextBytes() {
+        NativeByteBuffer buffer = wrap(new byte[]{1, 2, 3, 4, 5});
+        buffer.skip(1);
+
+        ByteBuffer slice = buffer.getSlice(3);
+
+        assertThat(buffer.getPosition(), is(4));
+        assertThat(slice.getPosition(), is(0));
+        assertThat(slice.getBytes(), is(new byte[]{2, 3, 4}));
+    }
+
+    @Test
+    void writeToThenBytesWritten() throws IOException {
+        NativeByteBuffer buffer = wrap(new byte[]{1, 2, 3, 4, 5});
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        buffer.writeTo(out, 4);
+
+        assertThat(out.toByteArray(), is(new byte[]{1, 2, 3, 4}));
+        assertThat(buffer.getPosition(), is(4));
+    }
+
+    @Test
+    void writeToWhenWholeBufferThenAllBytesWrittenAndPositionKept() throws IOException {
+        NativeByteBuffer buffer = wrap(new byte[]{1, 2, 3, 4, 5});
+        buffer.skip(2);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        buffer.writeTo(out);
+
+        assertThat(out.toByteArray(), is(new byte[]{1, 2, 3, 4, 5}));
+        assertThat(buffer.getPosition(), is(2));
+        assertThat(buffer.capacity(), is(5));
+    }
+
+    @Test
+    void writeBytesIntoHeapBufferThenNativeBytesCopied() {
+        NativeByteBuffer buffer = wrap(new byte[]{1, 2, 3});
+
+        ByteBuffer heap = new ByteBuffer().putUInt8(9).writeBytes(buffer);
+
+        assertThat(heap.bytes(), is(new byte[]{9, 1, 2, 3}));
+    }
+
+    @Test
+    void readWhenReleasedThenException() {
+        NativeByteBuffer buffer = wrap(new byte[]{1, 2, 3});
+        buffer.release();
+
+        assertThrows(BufferUnderflowException.class, buffer::getVarUInt);
+    }
+
+    @Test
+    void putThenUnsupported() {
+        NativeByteBuffer buffer = wrap(new byte[0]);
+
+        assertThrows(UnsupportedOperationException.class, () -> buffer.putVarUInt32(1));
+        assertThrows(UnsupportedOperationException.class, () -> buffer.writeBytes(new ByteBuffer()));
+        assertThrows(UnsupportedOperationException.class, buffer::clear);
+        assertThrows(UnsupportedOperationException.class, buffer::array);
+    }
+
+    private static NativeByteBuffer wrap(byte[] bytes) {
+        java.nio.ByteBuffer memory = java.nio.ByteBuffer.allocateDirect(bytes.length);
+        memory.put(bytes).flip();
+        return new NativeByteBuffer(memory);
+    }
+
+}
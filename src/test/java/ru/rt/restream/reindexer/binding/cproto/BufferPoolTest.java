@@ -0,0 +1,98 @@
+/*
+ * Copyright 2020 Restream
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.rt.restream.reindexer.binding.cproto;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+
+/**
+ * Tests for {@link BufferPool}.
+ */
+class BufferPoolTest {
+
+    @Test
+    public void testAcquireReturnsBufferOfSizeClass() {
+        BufferPool pool = new BufferPool(BufferPool.DEFAULT_MAX_BUFFERS_PER_CLASS);
+
+        assertThat(pool.acquire(1).capacity(), is(BufferPool.MIN_CLASS_SIZE));
+        assertThat(pool.acquire(1000).capacity(), is(1024));
+        assertThat(pool.acquire(1024).capacity(), is(1024));
+        assertThat(pool.acquire(BufferPool.MAX_CLASS_SIZE + 1).capacity(), is(BufferPool.MAX_CLASS_SIZE + 1));
+        assertThat(pool.getInUseCount(), is(4));
+        assertThat(pool.getMissCount(), is(4L));
+    }
+
+    @Test
+    public void testReleasedBufferIsReusedEmpty() {
+        BufferPool pool = new BufferPool(BufferPool.DEFAULT_MAX_BUFFERS_PER_CLASS);
+        ByteBuffer buffer = pool.acquire(100);
+        buffer.putUInt32(42L);
+
+        pool.release(buffer);
+
+        assertThat(pool.getPooledCount(), is(1));
+        assertThat(pool.getPooledBytes(), is((long) BufferPool.MIN_CLASS_SIZE));
+        ByteBuffer reused = pool.acquire(200);
+        assertThat(reused, sameInstance(buffer));
+        assertThat(reused.length(), is(0));
+        assertThat(reused.getPosition(), is(0));
+        assertThat(pool.getHitCount(), is(1L));
+        assertThat(pool.getInUseCount(), is(1));
+        assertThat(pool.getPooledCount(), is(0));
+        assertThat(pool.getPooledBytes(), is(0L));
+    }
+
+    @Test
+    public void testExpandedBufferIsPooledBySmallerClass() {
+        BufferPool pool = new BufferPool(BufferPool.DEFAULT_MAX_BUFFERS_PER_CLASS);
+        ByteBuffer buffer = pool.acquire(1);
+        buffer.writeBytes(new byte[300]);
+        assertThat(buffer.capacity(), greaterThanOrEqualTo(300));
+
+        pool.release(buffer);
+
+        assertThat(pool.acquire(512), sameInstance(buffer));
+    }
+
+    @Test
+    public void testReleaseOverClassLimitDiscardsBuffer() {
+        BufferPool pool = new BufferPool(1);
+        ByteBuffer first = pool.acquire(1);
+        ByteBuffer second = pool.acquire(1);
+
+        pool.release(first);
+        pool.release(second);
+
+        assertThat(pool.getPooledCount(), is(1));
+        assertThat(pool.getInUseCount(), is(0));
+        assertThat(pool.acquire(1), sameInstance(first));
+    }
+
+    @Test
+    public void testReleaseHugeBufferDiscardsBuffer() {
+        BufferPool pool = new BufferPool(BufferPool.DEFAULT_MAX_BUFFERS_PER_CLASS);
+
+        pool.release(pool.acquire(BufferPool.MAX_CLASS_SIZE * 2));
+
+        assertThat(pool.getPooledCount(), is(0));
+        assertThat(pool.getPooledBytes(), is(0L));
+    }
+
+}
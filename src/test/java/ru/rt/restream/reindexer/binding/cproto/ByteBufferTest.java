@@ -0,0 +1,45 @@
+/*
+ * Copyright 2020 Restream
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.rt.restream.reindexer.binding.cproto;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Tests for {@link ByteBuffer}.
+ */
+class ByteBufferTest {
+
+    @Test
+    public void testPutFloatVectorOfMatrixRowEqualsVector() {
+        float[] matrix = {0.1f, 0.2f, 0.3f, -1.5f, Float.MAX_VALUE, Float.NaN, 7.0f};
+        ByteBuffer row = new ByteBuffer(4);
+        row.putFloatVector(matrix, 3, 3);
+        ByteBuffer vector = new ByteBuffer();
+        vector.putFloatVector(new float[]{-1.5f, Float.MAX_VALUE, Float.NaN});
+
+        assertThat(row.bytes(), is(vector.bytes()));
+        row.rewind();
+        assertThat(row.getVarUInt(), is(3L << 1));
+        assertThat(row.getFloat(), is(-1.5f));
+        assertThat(row.getFloat(), is(Float.MAX_VALUE));
+        assertThat(Float.isNaN(row.getFloat()), is(true));
+        assertThat(row.getPosition(), is(row.length()));
+    }
+
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2020 Restream
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.rt.restream.reindexer.binding.cproto;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.rt.restream.reindexer.binding.Binding;
+import ru.rt.restream.reindexer.binding.Consts;
+import ru.rt.restream.reindexer.exceptions.ReindexerException;
+import ru.rt.restream.reindexer.metrics.CommandNames;
+import ru.rt.restream.reindexer.metrics.ReindexerMetrics;
+import ru.rt.restream.reindexer.testsupport.FakeCprotoServer;
+import ru.rt.restream.reindexer.testsupport.FakeCprotoServer.Response;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleSupplier;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for the metrics, which are recorded by {@link Cproto}.
+ */
+class CprotoMetricsTest {
+
+    private FakeCprotoServer server;
+
+    private RecordingMetrics metrics;
+
+    private Cproto cproto;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        server = new FakeCprotoServer();
+        metrics = new RecordingMetrics();
+        DataSourceConfiguration config = DataSourceConfiguration.builder()
+                .url(server.getUrl("db"))
+                .build();
+        cproto = new Cproto(DataSourceFactoryStrategy.NEXT, config, 1, Duration.ofSeconds(5), metrics);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        cproto.close();
+        server.close();
+    }
+
+    @Test
+    public void testRecordsCommandsWithNamespace() {
+        server.on(Binding.DROP_NAMESPACE, request -> Response.error(Consts.ERR_PARAMS, "no namespace"));
+
+        cproto.putMeta("items", "key", "value");
+        assertThrows(ReindexerException.class, () -> cproto.dropNamespace("items"));
+
+        assertThat(metrics.commands, hasItem("put_meta:items:ok"));
+        assertThat(metrics.commands, hasItem("drop_namespace:items:failed"));
+    }
+
+    @Test
+    public void testRecordsTransportMetricsAndGauges() throws Exception {
+        cproto.putMeta("items", "key", "value");
+
+        assertThat(metrics.bytesSent.get(), greaterThan(0L));
+        assertThat(metrics.bytesReceived.get(), greaterThan(0L));
+        assertThat(metrics.gauges.get(ReindexerMetrics.POOL_CONNECTIONS).getAsDouble(), is(1.0D));
+        assertThat(metrics.gauges.get(ReindexerMetrics.POOL_BROKEN_CONNECTIONS).getAsDouble(), is(0.0D));
+        // the initial ping of the pool may be still in flight
+        DoubleSupplier inFlightRequests = metrics.gauges.get(ReindexerMetrics.IN_FLIGHT_REQUESTS);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (inFlightRequests.getAsDouble() != 0.0D && System.nanoTime() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        assertThat(inFlightRequests.getAsDouble(), is(0.0D));
+    }
+
+    @Test
+    public void testRecordsReconnect() throws Exception {
+        server.disconnectAll();
+        DoubleSupplier brokenConnections = metrics.gauges.get(ReindexerMetrics.POOL_BROKEN_CONNECTIONS);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (brokenConnections.getAsDouble() == 0.0D && System.nanoTime() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+
+        cproto.putMeta("items", "key", "value");
+
+        assertThat(metrics.reconnects.get(), is(1));
+        assertThat(server.getConnectionCount(), is(2));
+    }
+
+    @Test
+    public void testRemovesGaugesOnClose() {
+        assertThat(metrics.gauges.isEmpty(), is(false));
+
+        cproto.close();
+
+        assertThat(metrics.gauges.isEmpty(), is(true));
+    }
+
+    private static class RecordingMetrics implements ReindexerMetrics {
+
+        private final List<String> commands = new CopyOnWriteArrayList<>();
+
+        private final AtomicLong bytesSent = new AtomicLong();
+
+        private final AtomicLong bytesReceived = new AtomicLong();
+
+        private final AtomicInteger reconnects = new AtomicInteger();
+
+        private final Map<String, DoubleSupplier> gauges = new ConcurrentHashMap<>();
+
+        @Override
+        public void recordCommand(int command, String namespace, long durationNanos, boolean failed) {
+            commands.add(CommandNames.get(command) + ":" + namespace + ":" + (failed ? "failed" : "ok"));
+        }
+
+        @Override
+        public void recordBytesSent(int bytes) {
+            bytesSent.addAndGet(bytes);
+        }
+
+        @Override
+        public void recordBytesReceived(int bytes) {
+            bytesReceived.addAndGet(bytes);
+        }
+
+        @Override
+        public void recordReconnect() {
+            reconnects.incrementAndGet();
+        }
+
+        @Override
+        public GaugeRegistration registerGauge(String name, DoubleSupplier value) {
+            gauges.put(name, value);
+            return () -> gauges.remove(name, value);
+        }
+
+    }
+
+}
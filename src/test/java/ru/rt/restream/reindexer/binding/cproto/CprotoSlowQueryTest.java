@@ -0,0 +1,142 @@
+/*
+ * Copyright 2020 Restream
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.rt.restream.reindexer.binding.cproto;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.rt.restream.reindexer.binding.Binding;
+import ru.rt.restream.reindexer.binding.ExecutionContext;
+import ru.rt.restream.reindexer.metrics.ReindexerMetrics;
+import ru.rt.restream.reindexer.metrics.SlowQueryEvent;
+import ru.rt.restream.reindexer.metrics.SlowQueryLog;
+import ru.rt.restream.reindexer.testsupport.FakeCprotoServer;
+import ru.rt.restream.reindexer.testsupport.FakeCprotoServer.Response;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.nullValue;
+
+/**
+ * Tests for the slow commands, which are captured by {@link Cproto}.
+ */
+class CprotoSlowQueryTest {
+
+    private static final Duration DELAY = Duration.ofMillis(50);
+
+    private FakeCprotoServer server;
+
+    private Cproto cproto;
+
+    private List<SlowQueryEvent> events;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        server = new FakeCprotoServer();
+        events = new CopyOnWriteArrayList<>();
+        server.on(Binding.PUT_META, request -> Response.ok().delayed(DELAY));
+        server.on(Binding.DELETE_QUERY, request -> Response.ok().delayed(DELAY));
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        if (cproto != null) {
+            cproto.close();
+        }
+        server.close();
+    }
+
+    @Test
+    public void testCapturesSlowCommandWithTimings() {
+        cproto = newCproto(new SlowQueryLog(events::add, Duration.ofMillis(10), 1.0D));
+
+        cproto.putMeta("items", "key", "value");
+
+        assertThat(events.size(), is(1));
+        SlowQueryEvent event = events.get(0);
+        assertThat(event.getCommand(), is(Binding.PUT_META));
+        assertThat(event.getNamespace(), is("items"));
+        assertThat(event.getQueryText(), nullValue());
+        assertThat(event.getQueueNanos(), greaterThanOrEqualTo(0L));
+        assertThat(event.getRoundTripNanos(), greaterThanOrEqualTo(DELAY.toNanos() / 2));
+        assertThat(event.getRoundTripNanos() + event.getQueueNanos(), lessThanOrEqualTo(event.getTotalNanos()));
+    }
+
+    @Test
+    public void testSkipsFastAndUnsampledCommands() {
+        cproto = newCproto(new SlowQueryLog(events::add, Duration.ofSeconds(10), 1.0D));
+        cproto.putMeta("items", "key", "value");
+        cproto.close();
+
+        cproto = newCproto(new SlowQueryLog(events::add, Duration.ofMillis(10), 0.0D));
+        cproto.putMeta("items", "key", "value");
+
+        assertThat(events.size(), is(0));
+    }
+
+    @Test
+    public void testStoresTimingsInExecutionContext() {
+        cproto = newCproto(new SlowQueryLog(events::add, Duration.ofMillis(10), 1.0D));
+        ExecutionContext context = new ExecutionContext(null, null, "items");
+
+        cproto.deleteQuery(new byte[0], context);
+
+        // the query, that owns the context, is captured instead of the command
+        assertThat(events.size(), is(0));
+        assertThat(context.getRoundTripNanos(), greaterThanOrEqualTo(DELAY.toNanos() / 2));
+        assertThat(context.getQueueNanos(), greaterThanOrEqualTo(0L));
+    }
+
+    @Test
+    public void testRendersQueryTextOnce() {
+        AtomicInteger renders = new AtomicInteger();
+        SlowQueryEvent event = new SlowQueryEvent(Binding.SELECT, "items", TimeUnit.SECONDS.toNanos(1), 0L, 0L, 0L,
+                () -> "SELECT * FROM items WHERE id = " + renders.incrementAndGet());
+
+        assertThat(renders.get(), is(0));
+        assertThat(event.getQueryText(), is("SELECT * FROM items WHERE id = 1"));
+        assertThat(event.getQueryText(), is("SELECT * FROM items WHERE id = 1"));
+        assertThat(renders.get(), is(1));
+    }
+
+    @Test
+    public void testHookErrorDoesNotFailCommand() {
+        cproto = newCproto(new SlowQueryLog(event -> {
+            throw new IllegalStateException("hook error");
+        }, Duration.ZERO, 1.0D));
+
+        cproto.putMeta("items", "key", "value");
+
+        assertThat(server.getRequestCount(Binding.PUT_META), is(1));
+    }
+
+    private Cproto newCproto(SlowQueryLog slowQueryLog) {
+        DataSourceConfiguration config = DataSourceConfiguration.builder()
+                .url(server.getUrl("db"))
+                .build();
+        return new Cproto(DataSourceFactoryStrategy.NEXT, config, 1, Duration.ofSeconds(5), ReindexerMetrics.NOOP,
+                slowQueryLog);
+    }
+
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2020 Restream
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.rt.restream.reindexer.binding.cproto;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.rt.restream.reindexer.ReindexerResponse;
+import ru.rt.restream.reindexer.binding.Binding;
+import ru.rt.restream.reindexer.binding.Consts;
+import ru.rt.restream.reindexer.exceptions.RequestTimeoutException;
+import ru.rt.restream.reindexer.testsupport.FakeCprotoServer;
+import ru.rt.restream.reindexer.testsupport.FakeCprotoServer.Response;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for {@link PhysicalConnection}.
+ */
+class PhysicalConnectionTest {
+
+    private FakeCprotoServer server;
+
+    private ScheduledThreadPoolExecutor scheduler;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        server = new FakeCprotoServer();
+        scheduler = new ScheduledThreadPoolExecutor(4);
+        scheduler.setRemoveOnCancelPolicy(true);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        scheduler.shutdownNow();
+        server.close();
+    }
+
+    private PhysicalConnection connect(Duration requestTimeout) {
+        return new PhysicalConnection("localhost", server.getPort(), "user", "password", "db",
+                requestTimeout, scheduler);
+    }
+
+    @Test
+    public void testRpcCallReturnsScriptedResponse() {
+        server.on(Binding.SELECT_SQL, request -> Response.ok(new String((byte[]) request.getArgs()[0]), 42, 7L, true));
+        PhysicalConnection connection = connect(Duration.ofSeconds(5));
+
+        ReindexerResponse response = connection.rpcCall(Binding.SELECT_SQL, "SELECT * FROM items");
+
+        assertThat(response.hasError(), is(false));
+        Object[] args = response.getArguments();
+        assertThat(new String((byte[]) args[0]), is("SELECT * FROM items"));
+        assertThat(args[1], is(42));
+        assertThat(args[2], is(7L));
+        assertThat(args[3], is(true));
+        assertThat(server.getRequestCount(Binding.LOGIN), is(1));
+        assertThat(server.getRequestCount(Binding.SELECT_SQL), is(1));
+        connection.close();
+    }
+
+    @Test
+    public void testRpcCallReturnsErrorResponse() {
+        server.on(Binding.SELECT_SQL, request -> Response.error(Consts.ERR_PARAMS, "bad query"));
+        PhysicalConnection connection = connect(Duration.ofSeconds(5));
+
+        ReindexerResponse response = connection.rpcCall(Binding.SELECT_SQL, "SELECT");
+
+        assertThat(response.getCode(), is(Consts.ERR_PARAMS));
+        assertThat(response.getErrorMessage(), is("bad query"));
+        connection.close();
+    }
+
+    @Test
+    public void testAsyncCallPassesExecTimeout() throws Exception {
+        AtomicReference<Duration> execTimeout = new AtomicReference<>();
+        server.on(Binding.SELECT_SQL, request -> {
+            execTimeout.set(request.getExecTimeout());
+            return Response.ok();
+        });
+        PhysicalConnection connection = connect(Duration.ofSeconds(5));
+
+        connection.rpcCallAsync(Binding.SELECT_SQL, Duration.ofMillis(1500), "SELECT").get(5, TimeUnit.SECONDS);
+
+        assertThat(execTimeout.get(), is(Duration.ofMillis(1500)));
+        connection.close();
+    }
+
+    @Test
+    public void testRpcCallTimesOutOnSlowResponse() {
+        server.on(Binding.SELECT_SQL, request -> Response.ok().delayed(Duration.ofSeconds(2)));
+        PhysicalConnection connection = connect(Duration.ofMillis(300));
+
+        assertThrows(RequestTimeoutException.class, () -> connection.rpcCall(Binding.SELECT_SQL, "SELECT"));
+        connection.close();
+    }
+
+    @Test
+    public void testAsyncCallTimesOutWhenUnanswered() {
+        server.on(Binding.SELECT_SQL, request -> Response.none());
+        PhysicalConnection connection = connect(Duration.ofMillis(300));
+
+        CompletableFuture<ReindexerResponse> future = connection.rpcCallAsync(Binding.SELECT_SQL, "SELECT");
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        assertThat(e.getCause(), instanceOf(RequestTimeoutException.class));
+        assertThat(connection.hasError(), is(false));
+        connection.close();
+    }
+
+    @Test
+    public void testDisconnectFailsPendingAsyncCalls() {
+        server.on(Binding.SELECT_SQL, request -> Response.none());
+        PhysicalConnection connection = connect(Duration.ofSeconds(30));
+        CompletableFuture<ReindexerResponse> future = connection.rpcCallAsync(Binding.SELECT_SQL, "SELECT");
+
+        server.disconnectAll();
+
+        assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        assertThat(connection.hasError(), is(true));
+    }
+
+    @Test
+    public void testDisconnectAfterRequests() {
+        server.disconnectAfter(2);
+        PhysicalConnection connection = connect(Duration.ofSeconds(30));
+
+        CompletableFuture<ReindexerResponse> future = connection.rpcCallAsync(Binding.PING);
+
+        assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        assertThat(connection.hasError(), is(true));
+        assertThat(server.getRequestCount(), is(2));
+    }
+
+    @Test
+    public void testPipelinedAsyncCallsOverlapLatency() throws Exception {
+        server.latency(Duration.ofMillis(200));
+        PhysicalConnection connection = connect(Duration.ofSeconds(5));
+        List<CompletableFuture<ReindexerResponse>> futures = new ArrayList<>();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 50; i++) {
+            futures.add(connection.rpcCallAsync(Binding.PING));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(5, TimeUnit.SECONDS);
+
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertThat(elapsedMillis < 2000, is(true));
+        assertThat(server.getRequestCount(Binding.PING), is(50));
+        connection.close();
+    }
+
+    @Test
+    public void testThrottleSpacesResponses() throws Exception {
+        server.throttle(100);
+        PhysicalConnection connection = connect(Duration.ofSeconds(5));
+        List<CompletableFuture<ReindexerResponse>> futures = new ArrayList<>();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 20; i++) {
+            futures.add(connection.rpcCallAsync(Binding.PING));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(5, TimeUnit.SECONDS);
+
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertThat(elapsedMillis, greaterThanOrEqualTo(150L));
+        connection.close();
+    }
+
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2020 Restream
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.rt.restream.reindexer.binding.cproto.util;
+
+import org.junit.jupiter.api.Test;
+import ru.rt.restream.reindexer.CancellationToken;
+import ru.rt.restream.reindexer.ReindexerResponse;
+import ru.rt.restream.reindexer.binding.Consts;
+import ru.rt.restream.reindexer.binding.ExecutionContext;
+import ru.rt.restream.reindexer.binding.cproto.Connection;
+import ru.rt.restream.reindexer.exceptions.CancelledException;
+import ru.rt.restream.reindexer.exceptions.ReindexerException;
+import ru.rt.restream.reindexer.exceptions.RequestTimeoutException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for {@link ConnectionUtils}.
+ */
+class ConnectionUtilsTest {
+
+    private static final ReindexerResponse RESPONSE = new ReindexerResponse(0, null, new Object[]{1});
+
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30L);
+
+    @Test
+    void rpcCallWhenCompletedThenResponse() {
+        StubConnection connection = new StubConnection();
+        connection.response.complete(RESPONSE);
+
+        ExecutionContext context = new ExecutionContext(Duration.ofSeconds(5L), null);
+        ReindexerResponse response = ConnectionUtils.rpcCall(connection, context, r -> {
+        }, 1);
+
+        assertThat(response, is(RESPONSE));
+        assertThat(connection.execTimeout, is(Duration.ofSeconds(5L)));
+    }
+
+    @Test
+    void rpcCallWhenCancelledThenCancelledAndResponseAbandoned() throws Exception {
+        StubConnection connection = new StubConnection();
+        CancellationToken token = new CancellationToken();
+        CompletableFuture<ReindexerResponse> abandoned = new CompletableFuture<>();
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            scheduler.schedule(token::cancel, 50L, TimeUnit.MILLISECONDS);
+
+            ExecutionContext context = new ExecutionContext(null, token);
+            assertThrows(CancelledException.class,
+                    () -> ConnectionUtils.rpcCall(connection, context, abandoned::complete, 1));
+            assertThat(connection.execTimeout, is(REQUEST_TIMEOUT));
+
+            connection.response.complete(RESPONSE);
+            assertThat(abandoned.get(5L, TimeUnit.SECONDS), is(RESPONSE));
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    void rpcCallWhenNoTimeoutAndNotCancellableThenNoExecTimeout() {
+        StubConnection connection = new StubConnection();
+        connection.response.complete(RESPONSE);
+
+        ReindexerResponse response = ConnectionUtils.rpcCall(connection, ExecutionContext.DEFAULT, r -> {
+        }, 1);
+
+        assertThat(response, is(RESPONSE));
+        assertThat(connection.execTimeout, is(nullValue()));
+    }
+
+    @Test
+    void rpcCallWhenCancelledBeforeCallThenNotSent() {
+        StubConnection connection = new StubConnection();
+        CancellationToken token = new CancellationToken();
+        token.cancel();
+
+        ExecutionContext context = new ExecutionContext(null, token);
+        assertThrows(CancelledException.class, () -> ConnectionUtils.rpcCall(connection, context, r -> {
+        }, 1));
+        assertThat(connection.calls, is(0));
+    }
+
+    @Test
+    void rpcCallWhenTimeoutExpiredThenRequestTimeout() {
+        StubConnection connection = new StubConnection();
+
+        ExecutionContext context = new ExecutionContext(Duration.ofMillis(50L), null);
+        assertThrows(RequestTimeoutException.class, () -> ConnectionUtils.rpcCall(connection, context, r -> {
+        }, 1));
+    }
+
+    @Test
+    void rpcCallPipelinedWhenAllSucceededThenAllSent() {
+        PipelineConnection connection = new PipelineConnection(-1);
+
+        ConnectionUtils.rpcCallPipelined(connection, 2, 1, Arrays.asList(
+                new Object[]{0}, new Object[]{1}, new Object[]{2}, new Object[]{3}));
+
+        assertThat(connection.sent, is(Arrays.asList(0, 1, 2, 3)));
+    }
+
+    @Test
+    void rpcCallPipelinedWhenFailedThenStopsSendingAndThrowsFirstError() {
+        PipelineConnection connection = new PipelineConnection(2);
+
+        ReindexerException e = assertThrows(ReindexerException.class, () -> ConnectionUtils.rpcCallPipelined(
+                connection, 1, 1, Arrays.asList(new Object[]{0}, new Object[]{1}, new Object[]{2},
+                        new Object[]{3}, new Object[]{4})));
+
+        assertThat(e.getMessage(), is("failed 2"));
+        assertThat(connection.sent, is(Arrays.asList(0, 1, 2)));
+    }
+
+    private static class PipelineConnection implements Connection {
+
+        private final List<Integer> sent = new ArrayList<>();
+
+        private final int failedCall;
+
+        private PipelineConnection(int failedCall) {
+            this.failedCall = failedCall;
+        }
+
+        @Override
+        public ReindexerResponse rpcCall(int command, Object... args) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CompletableFuture<ReindexerResponse> rpcCallAsync(int command, Object... args) {
+            int call = (Integer) args[0];
+            sent.add(call);
+            return CompletableFuture.completedFuture(call == failedCall
+                    ? new ReindexerResponse(Consts.ERR_PARAMS, "failed " + call, null)
+                    : RESPONSE);
+        }
+
+        @Override
+        public CompletableFuture<ReindexerResponse> rpcCallAsync(int command, Duration execTimeout, Object... args) {
+            return rpcCallAsync(command, args);
+        }
+
+        @Override
+        public boolean hasError() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+        }
+
+    }
+
+    private static class StubConnection implements Connection {
+
+        private final CompletableFuture<ReindexerResponse> response = new CompletableFuture<>();
+
+        private Duration execTimeout;
+
+        private int calls;
+
+        @Override
+        public ReindexerResponse rpcCall(int command, Object... args) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CompletableFuture<ReindexerResponse> rpcCallAsync(int command, Object... args) {
+            return rpcCallAsync(command, (Duration) null, args);
+        }
+
+        @Override
+        public CompletableFuture<ReindexerResponse> rpcCallAsync(int command, Duration execTimeout, Object... args) {
+            this.execTimeout = execTimeout;
+            calls++;
+            return response;
+        }
+
+        @Override
+        public Duration getRequestTimeout() {
+            return REQUEST_TIMEOUT;
+        }
+
+        @Override
+        public boolean hasError() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+        }
+
+    }
+
+}
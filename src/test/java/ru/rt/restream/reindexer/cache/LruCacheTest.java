@@ -0,0 +1,122 @@
+/*
+ * Copyright 2020 Restream
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.rt.restream.reindexer.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for {@link LruCache}.
+ */
+class LruCacheTest {
+
+    @Test
+    void getWhenPutThenValue() {
+        LruCache<String, String> cache = new LruCache<>(2, null);
+        cache.put("a", "1");
+        assertThat(cache.get("a"), is("1"));
+        assertThat(cache.get("b"), nullValue());
+
+        CacheStats stats = cache.getStats();
+        assertThat(stats.getHitCount(), is(1L));
+        assertThat(stats.getMissCount(), is(1L));
+        assertThat(stats.getHitRate(), is(0.5D));
+        assertThat(stats.getSize(), is(1));
+    }
+
+    @Test
+    void putWhenFullThenLeastRecentlyUsedEvicted() {
+        LruCache<String, String> cache = new LruCache<>(2, null);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.get("a");
+        cache.put("c", "3");
+
+        assertThat(cache.get("b"), nullValue());
+        assertThat(cache.get("a"), is("1"));
+        assertThat(cache.get("c"), is("3"));
+        assertThat(cache.getStats().getEvictionCount(), is(1L));
+        assertThat(cache.size(), is(2));
+    }
+
+    @Test
+    void getWhenExpiredThenNull() {
+        AtomicLong time = new AtomicLong();
+        LruCache<String, String> cache = new LruCache<>(2, Duration.ofNanos(10L), time::get);
+        cache.put("a", "1");
+        time.set(9L);
+        assertThat(cache.get("a"), is("1"));
+        time.set(10L);
+        assertThat(cache.get("a"), nullValue());
+        assertThat(cache.getStats().getEvictionCount(), is(1L));
+        assertThat(cache.size(), is(0));
+    }
+
+    @Test
+    void getWhenNotValidThenMissAndRemoved() {
+        LruCache<String, String> cache = new LruCache<>(2, null);
+        cache.put("a", "1");
+        assertThat(cache.get("a", "2"::equals), nullValue());
+        assertThat(cache.get("a"), nullValue());
+
+        CacheStats stats = cache.getStats();
+        assertThat(stats.getHitCount(), is(0L));
+        assertThat(stats.getMissCount(), is(2L));
+        assertThat(stats.getInvalidationCount(), is(1L));
+        assertThat(cache.size(), is(0));
+    }
+
+    @Test
+    void invalidateIfThenMatchingEntriesRemoved() {
+        LruCache<String, Integer> cache = new LruCache<>(10, null);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.put("c", 3);
+
+        int removed = cache.invalidateIf((key, value) -> value % 2 == 1);
+
+        assertThat(removed, is(2));
+        assertThat(cache.get("a"), nullValue());
+        assertThat(cache.get("b"), is(2));
+        assertThat(cache.get("c"), nullValue());
+        assertThat(cache.getStats().getInvalidationCount(), is(2L));
+    }
+
+    @Test
+    void invalidateAllThenEmpty() {
+        LruCache<String, Integer> cache = new LruCache<>(10, null);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.invalidate("a");
+        cache.invalidateAll();
+
+        assertThat(cache.size(), is(0));
+        assertThat(cache.getStats().getInvalidationCount(), is(2L));
+    }
+
+    @Test
+    void createWhenSizeNotPositiveThenException() {
+        assertThrows(IllegalArgumentException.class, () -> new LruCache<>(0, null));
+    }
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2020 Restream
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.rt.restream.reindexer.connector;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.Test;
+import ru.rt.restream.category.BuiltinTest;
+import ru.rt.restream.reindexer.Namespace;
+import ru.rt.restream.reindexer.NamespaceOptions;
+import ru.rt.restream.reindexer.Reindexer;
+import ru.rt.restream.reindexer.ReindexerConfiguration;
+import ru.rt.restream.reindexer.annotations.Reindex;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Tests for several databases served by a shared builtin server.
+ */
+@BuiltinTest
+public class BuiltinServerTest {
+
+    private static final String FIRST_DB = "shared_server_first";
+
+    private static final String SECOND_DB = "shared_server_second";
+
+    @Test
+    public void testDatabasesShareServer() throws IOException {
+        try (Reindexer first = ReindexerConfiguration.builder().url("builtinserver://" + FIRST_DB).getReindexer()) {
+            try (Reindexer second = ReindexerConfiguration.builder().url("builtinserver://" + SECOND_DB).getReindexer()) {
+                Namespace<TestItem> firstItems = first.openNamespace("items", NamespaceOptions.defaultOptions(),
+                        TestItem.class);
+                Namespace<TestItem> secondItems = second.openNamespace("items", NamespaceOptions.defaultOptions(),
+                        TestItem.class);
+                TestItem item = new TestItem();
+                item.setId(1);
+                firstItems.insert(item);
+
+                assertThat(firstItems.query().count(), is(1L));
+                assertThat(secondItems.query().count(), is(0L));
+            }
+            Namespace<TestItem> firstItems = first.openNamespace("items", NamespaceOptions.defaultOptions(),
+                    TestItem.class);
+            assertThat(firstItems.query().count(), is(1L));
+        } finally {
+            FileUtils.deleteDirectory(new File("/tmp/reindex/" + FIRST_DB));
+            FileUtils.deleteDirectory(new File("/tmp/reindex/" + SECOND_DB));
+        }
+    }
+
+    @Test
+    public void testReleaseThenSameServerReacquired() throws IOException {
+        try {
+            Reindexer first = ReindexerConfiguration.builder().url("builtinserver://" + FIRST_DB).getReindexer();
+            TestItem item = new TestItem();
+            item.setId(1);
+            first.openNamespace("items", NamespaceOptions.defaultOptions(), TestItem.class).insert(item);
+            // the server is stopped by the close, while the next reindexer acquires it
+            CompletableFuture<Void> closed = CompletableFuture.runAsync(first::close);
+            try (Reindexer second = ReindexerConfiguration.builder().url("builtinserver://" + FIRST_DB)
+                    .getReindexer()) {
+                closed.join();
+                Namespace<TestItem> items = second.openNamespace("items", NamespaceOptions.defaultOptions(),
+                        TestItem.class);
+                assertThat(items.query().count(), is(1L));
+            }
+        } finally {
+            FileUtils.deleteDirectory(new File("/tmp/reindex/" + FIRST_DB));
+        }
+    }
+
+    @Getter
+    @Setter
+    public static class TestItem {
+        @Reindex(name = "id", isPrimaryKey = true)
+        private Integer id;
+    }
+
+}
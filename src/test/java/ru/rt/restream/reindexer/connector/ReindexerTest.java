@@ -22,6 +22,7 @@ import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 import org.junit.jupiter.api.Test;
+import ru.rt.restream.reindexer.CancellationToken;
 import ru.rt.restream.reindexer.EnumType;
 import ru.rt.restream.reindexer.Namespace;
 import ru.rt.restream.reindexer.NamespaceOptions;
@@ -35,8 +36,14 @@ import ru.rt.restream.reindexer.annotations.Serial;
 import ru.rt.restream.reindexer.convert.FieldConverter;
 import ru.rt.restream.reindexer.convert.FieldConverterRegistryFactory;
 import ru.rt.restream.reindexer.db.DbBaseTest;
+import ru.rt.restream.reindexer.exceptions.CancelledException;
 import ru.rt.restream.reindexer.util.JsonSerializer;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
@@ -227,6 +234,95 @@ public abstract class ReindexerTest extends DbBaseTest {
         assertThat(responseItem.id, is(testItem.id));
     }
 
+    @Test
+    public void testUpsertAllItems() {
+        String namespaceName = "items";
+        Namespace<TestItem> namespace = db.openNamespace(namespaceName, NamespaceOptions.defaultOptions(),
+                TestItem.class);
+
+        List<TestItem> testItems = IntStream.range(0, 100).mapToObj(i -> {
+            TestItem testItem = new TestItem();
+            testItem.setId(i);
+            testItem.setName("TestName" + i);
+            return testItem;
+        }).collect(Collectors.toList());
+
+        namespace.upsertAll(testItems);
+
+        assertThat(namespace.query().count(), is(100L));
+        TestItem responseItem = namespace.query().where("id", EQ, 42).getOne();
+        assertThat(responseItem.name, is("TestName42"));
+
+        namespace.deleteAll(testItems.subList(0, 50));
+
+        assertThat(namespace.query().count(), is(50L));
+    }
+
+    @Test
+    public void testSelectWhenCancelledThenCancelledException() {
+        String namespaceName = "items";
+        Namespace<TestItem> namespace = db.openNamespace(namespaceName, NamespaceOptions.defaultOptions(),
+                TestItem.class);
+        CancellationToken token = new CancellationToken();
+        token.cancel();
+
+        assertThrows(CancelledException.class, () -> namespace.query().cancellation(token).toList());
+    }
+
+    @Test
+    public void testSelectWithTimeout() {
+        String namespaceName = "items";
+        Namespace<TestItem> namespace = db.openNamespace(namespaceName, NamespaceOptions.defaultOptions(),
+                TestItem.class);
+        TestItem testItem = new TestItem();
+        testItem.setId(1);
+        namespace.insert(testItem);
+
+        List<TestItem> items = namespace.query().timeout(Duration.ofSeconds(10L)).toList();
+
+        assertThat(items.size(), is(1));
+    }
+
+    @Test
+    public void testTransactionUpsertAllItems() {
+        String namespaceName = "items";
+        Namespace<TestItem> namespace = db.openNamespace(namespaceName, NamespaceOptions.defaultOptions(),
+                TestItem.class);
+
+        List<TestItem> testItems = IntStream.range(0, 100).mapToObj(i -> {
+            TestItem testItem = new TestItem();
+            testItem.setId(i);
+            testItem.setName("TestName" + i);
+            return testItem;
+        }).collect(Collectors.toList());
+
+        Transaction<TestItem> tx = namespace.beginTransaction();
+        tx.upsertAll(testItems);
+        tx.commit();
+
+        assertThat(namespace.query().count(), is(100L));
+    }
+
+    @Test
+    public void testTransactionUpsertStagedItemsInSeveralBatches() {
+        String namespaceName = "items";
+        Namespace<TestItem> namespace = db.openNamespace(namespaceName, NamespaceOptions.defaultOptions(),
+                TestItem.class);
+
+        Transaction<TestItem> tx = namespace.beginTransaction();
+        int count = tx.getBatchSize() * 2 + 10;
+        for (int i = 0; i < count; i++) {
+            TestItem testItem = new TestItem();
+            testItem.setId(i);
+            testItem.setName("TestName" + i);
+            tx.upsert(testItem);
+        }
+        tx.delete("{\"id\":0}");
+        tx.commit();
+
+        assertThat(namespace.query().count(), is((long) count - 1));
+    }
+
     @Test
     public void testUpsertJsonItem() {
         String namespaceName = "items";
@@ -2615,6 +2711,42 @@ public abstract class ReindexerTest extends DbBaseTest {
         assertThat(fetchAllResponse, containsString(String.format(templateItem, 250)));
     }
 
+    @Test
+    public void testQueryExecuteJsonToOutputStream() throws IOException {
+        String namespaceName = "items";
+        db.openNamespace(namespaceName, NamespaceOptions.defaultOptions(), TestItem.class);
+
+        String templateItem = "{\"id\":%1$s,\"name\":\"TestName%1$s\",\"nonIndex\":\"testNonIndex\"}";
+
+        for (int i = 1; i < 277; i++) {
+            db.insert(namespaceName, String.format(templateItem, i));
+        }
+
+        String expected = db.query(namespaceName, TestItem.class)
+                .where("id", LE, 250)
+                .sort("id", false)
+                .executeToJson()
+                .fetchAll("items");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long written = db.query(namespaceName, TestItem.class)
+                .where("id", LE, 250)
+                .sort("id", false)
+                .fetchCount(10)
+                .executeToJson("items", out);
+
+        assertThat(written, is(250L));
+        assertThat(new String(out.toByteArray(), StandardCharsets.UTF_8), is(expected));
+
+        ByteArrayOutputStream channelOut = new ByteArrayOutputStream();
+        db.query(namespaceName, TestItem.class)
+                .where("id", LE, 250)
+                .sort("id", false)
+                .executeToJson("items", Channels.newChannel(channelOut));
+
+        assertThat(new String(channelOut.toByteArray(), StandardCharsets.UTF_8), is(expected));
+    }
+
     @Test
     public void testQueryIsNull() {
         String namespaceName = "items";
@@ -2925,6 +3057,85 @@ public abstract class ReindexerTest extends DbBaseTest {
         assertThat(foundByDefaultWriting.defaultWriting, is("default"));
     }
 
+    @Test
+    public void testGetById() {
+        String namespaceName = "items";
+        Namespace<TestItem> namespace = db.openNamespace(namespaceName, NamespaceOptions.defaultOptions(),
+                TestItem.class);
+        for (int i = 0; i < 10; i++) {
+            TestItem testItem = new TestItem();
+            testItem.setId(i);
+            testItem.setName("TestName" + i);
+            namespace.insert(testItem);
+        }
+
+        assertThat(namespace.getById(5).getName(), is("TestName5"));
+        assertThat(namespace.getById(50), nullValue());
+
+        List<TestItem> items = namespace.getByIds(Arrays.asList(7, 50, 1, 7));
+        assertThat(items, hasSize(4));
+        assertThat(items.get(0).getId(), is(7));
+        assertThat(items.get(1), nullValue());
+        assertThat(items.get(2).getId(), is(1));
+        assertThat(items.get(3).getId(), is(7));
+    }
+
+    @Test
+    public void testGetByIdsInSeveralBatches() {
+        String namespaceName = "items";
+        Namespace<TestItem> namespace = db.openNamespace(namespaceName, NamespaceOptions.defaultOptions(),
+                TestItem.class);
+        Transaction<TestItem> tx = namespace.beginTransaction();
+        for (int i = 0; i < 1200; i++) {
+            TestItem testItem = new TestItem();
+            testItem.setId(i);
+            testItem.setName("TestName" + i);
+            tx.insert(testItem);
+        }
+        tx.commit();
+
+        List<Integer> ids = IntStream.range(0, 1300).map(i -> 1299 - i).boxed().collect(Collectors.toList());
+        List<TestItem> items = namespace.getByIds(ids);
+
+        assertThat(items, hasSize(1300));
+        for (int i = 0; i < items.size(); i++) {
+            int id = ids.get(i);
+            if (id < 1200) {
+                assertThat(items.get(i).getId(), is(id));
+            } else {
+                assertThat(items.get(i), nullValue());
+            }
+        }
+    }
+
+    @Test
+    public void testGetByIdWithItemCache() {
+        String namespaceName = "items";
+        Namespace<TestItem> namespace = db.openNamespace(namespaceName, NamespaceOptions.defaultOptions()
+                .setItemCacheSize(100), TestItem.class);
+        TestItem testItem = new TestItem();
+        testItem.setId(1);
+        testItem.setName("TestName");
+        namespace.insert(testItem);
+
+        TestItem cachedItem = namespace.getById(1);
+        assertThat(cachedItem.getName(), is("TestName"));
+        assertSame(cachedItem, namespace.getById(1L));
+
+        TestItem updatedItem = new TestItem();
+        updatedItem.setId(1);
+        updatedItem.setName("UpdatedName");
+        namespace.upsert(updatedItem);
+        updatedItem.setName("ChangedAfterUpsert");
+        assertThat(namespace.getById(1).getName(), is("UpdatedName"));
+
+        namespace.query().where("id", EQ, 1).set("name", "QueryUpdatedName").update();
+        assertThat(namespace.getById(1).getName(), is("QueryUpdatedName"));
+
+        namespace.delete(updatedItem);
+        assertThat(namespace.getById(1), nullValue());
+    }
+
     @Getter
     @Setter
     public static class SerialIdTestItem {
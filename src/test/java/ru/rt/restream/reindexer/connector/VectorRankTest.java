@@ -39,6 +39,7 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.not;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static ru.rt.restream.reindexer.IndexType.TEXT;
 import static ru.rt.restream.reindexer.Query.Condition.EQ;
 import static ru.rt.restream.reindexer.binding.Consts.EMPTY_RANK;
 
@@ -127,6 +128,57 @@ public abstract class VectorRankTest extends DbBaseTest {
         }
     }
 
+    @Test
+    public void testKnnSearch_returnsItemsPerVector() {
+        float[][] vectors = {
+                {0.0f, 0.0f, 0.0f, 0.0f, 0.0f, 0.0f, 0.0f, 0.0f},
+                {0.9f, 0.9f, 0.9f, 0.9f, 0.9f, 0.9f, 0.9f, 0.9f},
+                {0.1f, 0.2f, 0.3f, 0.4f, 0.5f, 0.6f, 0.7f, 0.8f}
+        };
+        float[] matrix = new float[vectors.length * 8];
+        for (int i = 0; i < vectors.length; i++) {
+            System.arraycopy(vectors[i], 0, matrix, i * 8, 8);
+        }
+
+        List<Pair<List<VectorItem>, float[]>> results = vectorNs.knnSearch("vector", vectors, KnnParams.base(3));
+        List<Pair<List<VectorItem>, float[]>> matrixResults = vectorNs.knnSearch("vector", matrix, 8,
+                KnnParams.base(3));
+
+        assertThat(results.size(), is(3));
+        assertThat(matrixResults.size(), is(3));
+        int[] nearestIds = {0, 9, 10};
+        for (int i = 0; i < results.size(); i++) {
+            List<VectorItem> items = results.get(i).getFirst();
+            assertThat(items.size(), is(3));
+            assertThat(results.get(i).getSecond().length, is(3));
+            assertThat(items.get(0).getId(), is(nearestIds[i]));
+            assertThat(matrixResults.get(i).getFirst().get(0).getId(), is(nearestIds[i]));
+        }
+    }
+
+    @Test
+    public void testHybridSearch_mergesTextAndKnnResultsByPrimaryKey() {
+        Namespace<HybridItem> hybridNs = db.openNamespace("hybrid_items", NamespaceOptions.defaultOptions(),
+                HybridItem.class);
+        hybridNs.insert(new HybridItem(0, "red apple", new float[]{0.0f, 0.0f, 0.0f, 0.0f}));
+        hybridNs.insert(new HybridItem(1, "green apple", new float[]{0.8f, 0.8f, 0.8f, 0.8f}));
+        hybridNs.insert(new HybridItem(2, "banana", new float[]{0.9f, 0.9f, 0.9f, 0.9f}));
+        hybridNs.insert(new HybridItem(3, "red cherry", new float[]{0.5f, 0.5f, 0.5f, 0.5f}));
+
+        Pair<List<HybridItem>, float[]> result = hybridNs.query()
+                .where("description", EQ, "apple")
+                .hybrid(hybridNs.query()
+                        .whereKnn("vector", new float[]{0.9f, 0.9f, 0.9f, 0.9f}, KnnParams.base(2)))
+                .limit(2)
+                .executeAllWithRank();
+
+        List<HybridItem> items = result.getFirst();
+        assertThat(items.size(), is(2));
+        assertThat(result.getSecond().length, is(2));
+        assertThat(items.get(0).getId(), is(1));
+        assertThat(result.getSecond()[0] > result.getSecond()[1], is(true));
+    }
+
     private static List<VectorItem> getTestVectorItems() {
         return Arrays.asList(
                 new VectorItem(0, new float[]{0.0f, 0.0f, 0.0f, 0.0f, 0.0f, 0.0f, 0.0f, 0.0f}),
@@ -165,4 +217,20 @@ public abstract class VectorRankTest extends DbBaseTest {
         @Hnsw(metric = Metric.L2, dimension = 8)
         private float[] vector;
     }
+
+    @Getter
+    @Setter
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class HybridItem {
+        @Reindex(name = "id", isPrimaryKey = true)
+        private Integer id;
+
+        @Reindex(name = "description", type = TEXT)
+        private String description;
+
+        @Reindex(name = "vector")
+        @Hnsw(metric = Metric.L2, dimension = 4)
+        private float[] vector;
+    }
 }
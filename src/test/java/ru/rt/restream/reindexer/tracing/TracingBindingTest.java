@@ -0,0 +1,164 @@
+/*
+ * Copyright 2020 Restream
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.rt.restream.reindexer.tracing;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.rt.restream.reindexer.binding.Binding;
+import ru.rt.restream.reindexer.binding.Consts;
+import ru.rt.restream.reindexer.binding.TransactionContext;
+import ru.rt.restream.reindexer.binding.cproto.Cproto;
+import ru.rt.restream.reindexer.binding.cproto.DataSourceConfiguration;
+import ru.rt.restream.reindexer.binding.cproto.DataSourceFactoryStrategy;
+import ru.rt.restream.reindexer.exceptions.ReindexerException;
+import ru.rt.restream.reindexer.metrics.CommandNames;
+import ru.rt.restream.reindexer.testsupport.FakeCprotoServer;
+import ru.rt.restream.reindexer.testsupport.FakeCprotoServer.Response;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for {@link TracingBinding}.
+ */
+class TracingBindingTest {
+
+    private static final Duration DELAY = Duration.ofMillis(20);
+
+    private FakeCprotoServer server;
+
+    private List<RecordingSpan> spans;
+
+    private Binding binding;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        server = new FakeCprotoServer();
+        server.on(Binding.PUT_META, request -> Response.ok().delayed(DELAY));
+        server.on(Binding.START_TRANSACTION, request -> Response.ok(7L));
+        spans = new CopyOnWriteArrayList<>();
+        DataSourceConfiguration config = DataSourceConfiguration.builder()
+                .url(server.getUrl("db"))
+                .build();
+        Cproto cproto = new Cproto(DataSourceFactoryStrategy.NEXT, config, 1, Duration.ofSeconds(5));
+        binding = new TracingBinding(cproto, (command, namespace) -> {
+            RecordingSpan span = new RecordingSpan(command, namespace);
+            spans.add(span);
+            return span;
+        });
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        binding.close();
+        server.close();
+    }
+
+    @Test
+    public void testRecordsCallPhases() {
+        binding.putMeta("items", "key", "value");
+
+        assertThat(spans.size(), is(1));
+        RecordingSpan span = spans.get(0);
+        assertThat(span.name, is("put_meta:items"));
+        assertThat(span.ended, is(true));
+        assertThat(span.phases, contains(ReindexerSpan.CONNECTION, ReindexerSpan.ENCODE, ReindexerSpan.NETWORK));
+        assertThat(span.networkNanos, greaterThanOrEqualTo(DELAY.toNanos() / 2));
+        assertThat(TracingBinding.currentSpan(), is(ReindexerSpan.NOOP));
+    }
+
+    @Test
+    public void testRecordsError() {
+        server.on(Binding.DROP_NAMESPACE, request -> Response.error(Consts.ERR_PARAMS, "no namespace"));
+
+        assertThrows(ReindexerException.class, () -> binding.dropNamespace("items"));
+
+        RecordingSpan span = spans.get(0);
+        assertThat(span.name, is("drop_namespace:items"));
+        assertThat(span.error, notNullValue());
+        assertThat(span.ended, is(true));
+    }
+
+    @Test
+    public void testTracesTransactionCalls() {
+        TransactionContext transaction = binding.beginTx("items");
+        transaction.modifyItems(Collections.nCopies(3, new byte[0]), Consts.FORMAT_C_JSON, 2,
+                new String[0], 0);
+        transaction.commit();
+
+        List<String> names = new ArrayList<>();
+        for (RecordingSpan span : spans) {
+            names.add(span.name);
+        }
+        assertThat(names, contains("start_transaction:items", "add_tx_item:items", "commit_tx:items"));
+        assertThat(spans.get(1).items, is(3L));
+    }
+
+    private static class RecordingSpan implements ReindexerSpan {
+
+        private final String name;
+
+        private final List<String> phases = new CopyOnWriteArrayList<>();
+
+        private volatile long networkNanos;
+
+        private volatile long items = -1L;
+
+        private volatile Throwable error;
+
+        private volatile boolean ended;
+
+        private RecordingSpan(int command, String namespace) {
+            name = CommandNames.get(command) + ":" + namespace;
+        }
+
+        @Override
+        public void recordPhase(String phase, long startNanos, long durationNanos) {
+            phases.add(phase);
+            if (NETWORK.equals(phase)) {
+                networkNanos = durationNanos;
+            }
+        }
+
+        @Override
+        public void setItemCount(long items) {
+            this.items = items;
+        }
+
+        @Override
+        public void recordError(Throwable error) {
+            this.error = error;
+        }
+
+        @Override
+        public void end() {
+            ended = true;
+        }
+
+    }
+
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2020 Restream
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.rt.restream.reindexer.vector;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for {@link VectorCodec}.
+ */
+class VectorCodecTest {
+
+    @Test
+    public void testToFloat16() {
+        assertThat(VectorCodec.toFloat16(1.0f), is((short) 0x3c00));
+        assertThat(VectorCodec.toFloat16(-2.0f), is((short) 0xc000));
+        assertThat(VectorCodec.toFloat16(65504f), is((short) 0x7bff));
+        assertThat(VectorCodec.toFloat16(65520f), is((short) 0x7c00));
+        assertThat(VectorCodec.toFloat16(0x1p-24f), is((short) 0x0001));
+        assertThat(VectorCodec.toFloat16(0x1p-25f), is((short) 0x0000));
+        // 1 + 2^-11 is halfway between 1 and the next half, rounds to even
+        assertThat(VectorCodec.toFloat16(1.0f + 0x1p-11f), is((short) 0x3c00));
+        assertThat(VectorCodec.toFloat16(1.0f + 0x1p-11f + 0x1p-12f), is((short) 0x3c01));
+        assertThat(Float.isNaN(VectorCodec.fromFloat16(VectorCodec.toFloat16(Float.NaN))), is(true));
+    }
+
+    @Test
+    public void testFloat16RoundTripIsExact() {
+        for (int bits = 0; bits <= 0xffff; bits++) {
+            float value = VectorCodec.fromFloat16((short) bits);
+            if (!Float.isNaN(value)) {
+                assertThat(VectorCodec.toFloat16(value), is((short) bits));
+            }
+        }
+    }
+
+    @Test
+    public void testDecodeOfEncodedEqualsQuantized() {
+        float[] vector = randomVector(768);
+        for (VectorPrecision precision : VectorPrecision.values()) {
+            byte[] data = VectorCodec.encode(vector, precision);
+
+            assertThat(data.length, is(VectorCodec.encodedSize(vector.length, precision)));
+            assertThat(VectorCodec.decode(data, precision), is(VectorCodec.quantize(vector, precision)));
+        }
+    }
+
+    @Test
+    public void testQuantizeError() {
+        float[] vector = randomVector(768);
+        float[] halves = VectorCodec.quantize(vector, VectorPrecision.FLOAT16);
+        float[] bytes = VectorCodec.quantize(vector, VectorPrecision.INT8);
+        for (int i = 0; i < vector.length; i++) {
+            assertThat(Math.abs(halves[i] - vector[i]), lessThanOrEqualTo(Math.abs(vector[i]) * 0x1p-11f));
+            assertThat(Math.abs(bytes[i] - vector[i]), lessThanOrEqualTo(1.0f / 127 / 2 + 1e-6f));
+        }
+        assertThat(VectorCodec.quantize(vector, VectorPrecision.FLOAT32), sameInstance(vector));
+        assertThat(VectorCodec.quantize(new float[]{0, 0}, VectorPrecision.INT8), is(new float[]{0, 0}));
+    }
+
+    @Test
+    public void testInt8RejectsNonFiniteValues() {
+        assertThrows(IllegalArgumentException.class,
+                () -> VectorCodec.encode(new float[]{1.0f, Float.POSITIVE_INFINITY}, VectorPrecision.INT8));
+    }
+
+    @Test
+    public void testDecodeRejectsWrongLength() {
+        assertThrows(IllegalArgumentException.class, () -> VectorCodec.decode(new byte[3], VectorPrecision.FLOAT16));
+        assertThrows(IllegalArgumentException.class, () -> VectorCodec.decode(new byte[2], VectorPrecision.INT8));
+    }
+
+    private static float[] randomVector(int dimension) {
+        Random random = new Random(dimension);
+        float[] vector = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            vector[i] = random.nextFloat() * 2 - 1;
+        }
+        return vector;
+    }
+
+}
@@ -0,0 +1,534 @@
+/*
+ * Copyright 2020 Restream
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.rt.restream.reindexer.testsupport;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * An in-process stand-in for a Reindexer server, which speaks the cproto framing, so the client transport
+ * (the physical connections and the connection pool) can be tested and load-tested without a real server.
+ * <p>
+ * Every command is answered by its handler, set by {@link #on(int, Function)}, or by an empty successful response.
+ * A response can be delayed or never sent. On top of that, the server can inject a latency into every response,
+ * throttle the responses and drop a connection after a number of requests.
+ * <p>
+ * The server encodes the frames on its own, so it does not depend on the connector and does not share a codec bug
+ * with the client under test.
+ */
+public class FakeCprotoServer implements AutoCloseable {
+
+    private static final int CPROTO_MAGIC = 0xEEDD1132;
+
+    private static final int CPROTO_VERSION = 0x104;
+
+    private static final int CPROTO_HDR_LEN = 16;
+
+    private static final int ERR_OK = 0;
+
+    private static final int VALUE_INT_64 = 0;
+
+    private static final int VALUE_DOUBLE = 1;
+
+    private static final int VALUE_STRING = 2;
+
+    private static final int VALUE_BOOL = 3;
+
+    private static final int VALUE_INT = 8;
+
+    private final ServerSocket serverSocket;
+
+    private final ScheduledExecutorService responder = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "rx-fake-server-responder");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Map<Integer, Function<Request, Response>> handlers = new ConcurrentHashMap<>();
+
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+
+    private final Map<Integer, AtomicInteger> requestCounts = new ConcurrentHashMap<>();
+
+    private final AtomicInteger connectionCount = new AtomicInteger();
+
+    private final AtomicLong nextResponseNanos = new AtomicLong();
+
+    private volatile Duration latency = Duration.ZERO;
+
+    private volatile long throttleIntervalNanos;
+
+    private volatile int disconnectAfter = Integer.MAX_VALUE;
+
+    /**
+     * Starts the server on a free local port.
+     *
+     * @throws IOException if the server socket cannot be bound
+     */
+    public FakeCprotoServer() throws IOException {
+        serverSocket = new ServerSocket(0);
+        Thread acceptor = new Thread(this::accept, "rx-fake-server-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Returns the port, which the server listens on.
+     *
+     * @return the server port
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Returns the url of the database on the server.
+     *
+     * @param database the database name
+     * @return the cproto url
+     */
+    public String getUrl(String database) {
+        return "cproto://localhost:" + getPort() + "/" + database;
+    }
+
+    /**
+     * Sets the handler of the command.
+     *
+     * @param command the command, e.g. {@code Binding.SELECT}
+     * @param handler the function, which returns a response to a request
+     * @return the {@link FakeCprotoServer} for further customizations
+     */
+    public FakeCprotoServer on(int command, Function<Request, Response> handler) {
+        handlers.put(command, handler);
+        return this;
+    }
+
+    /**
+     * Delays every response by the latency, in addition to the delay of the response itself.
+     *
+     * @param latency the latency to inject
+     * @return the {@link FakeCprotoServer} for further customizations
+     */
+    public FakeCprotoServer latency(Duration latency) {
+        this.latency = latency;
+        return this;
+    }
+
+    /**
+     * Sends at most the given number of responses per second over all connections, the rest are queued.
+     *
+     * @param responsesPerSecond the maximum response rate, 0 disables throttling
+     * @return the {@link FakeCprotoServer} for further customizations
+     */
+    public FakeCprotoServer throttle(int responsesPerSecond) {
+        throttleIntervalNanos = responsesPerSecond > 0 ? TimeUnit.SECONDS.toNanos(1L) / responsesPerSecond : 0L;
+        return this;
+    }
+
+    /**
+     * Drops every connection, when it receives the given number of requests. The last request is not answered.
+     *
+     * @param requests the number of requests per connection, including the login
+     * @return the {@link FakeCprotoServer} for further customizations
+     */
+    public FakeCprotoServer disconnectAfter(int requests) {
+        disconnectAfter = requests;
+        return this;
+    }
+
+    /**
+     * Drops all the current connections.
+     */
+    public void disconnectAll() {
+        for (Socket connection : connections) {
+            closeQuietly(connection);
+        }
+    }
+
+    /**
+     * Returns the number of received requests.
+     *
+     * @return the number of requests
+     */
+    public int getRequestCount() {
+        int count = 0;
+        for (AtomicInteger commandCount : requestCounts.values()) {
+            count += commandCount.get();
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of received requests of the command.
+     *
+     * @param command the command
+     * @return the number of requests
+     */
+    public int getRequestCount(int command) {
+        AtomicInteger count = requestCounts.get(command);
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * Returns the number of accepted connections.
+     *
+     * @return the number of connections
+     */
+    public int getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                connections.add(socket);
+                connectionCount.incrementAndGet();
+                Thread handler = new Thread(() -> serve(socket), "rx-fake-server-connection");
+                handler.setDaemon(true);
+                handler.start();
+            } catch (IOException e) {
+                // the server is closed
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try {
+            DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            OutputStream output = socket.getOutputStream();
+            byte[] header = new byte[CPROTO_HDR_LEN];
+            for (int received = 1; ; received++) {
+                input.readFully(header);
+                ByteBuffer headerBuffer = ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN);
+                headerBuffer.getInt(); // magic
+                headerBuffer.getShort(); // version
+                int command = headerBuffer.getShort() & 0xFFFF;
+                byte[] body = new byte[headerBuffer.getInt()];
+                int seq = headerBuffer.getInt();
+                input.readFully(body);
+                requestCounts.computeIfAbsent(command, c -> new AtomicInteger()).incrementAndGet();
+                if (received >= disconnectAfter) {
+                    break;
+                }
+                Request request = Request.decode(command, seq, body);
+                Response response = handlers.getOrDefault(command, r -> Response.ok()).apply(request);
+                if (response.sent) {
+                    schedule(output, request, response);
+                }
+            }
+        } catch (IOException e) {
+            // the connection is closed
+        } finally {
+            connections.remove(socket);
+            closeQuietly(socket);
+        }
+    }
+
+    private void schedule(OutputStream output, Request request, Response response) {
+        long delayNanos = latency.plus(response.delay).toNanos();
+        long interval = throttleIntervalNanos;
+        if (interval > 0) {
+            long now = System.nanoTime();
+            long slot = nextResponseNanos.accumulateAndGet(now + delayNanos,
+                    (previous, earliest) -> Math.max(previous + interval, earliest));
+            delayNanos = slot - now;
+        }
+        byte[] frame = response.encode(request);
+        responder.schedule(() -> {
+            try {
+                synchronized (output) {
+                    output.write(frame);
+                    output.flush();
+                }
+            } catch (IOException e) {
+                // the connection is closed
+            }
+        }, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        disconnectAll();
+        responder.shutdownNow();
+    }
+
+    private static long getVarUInt(ByteBuffer buffer) {
+        long value = 0L;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+
+    private static long getVarInt(ByteBuffer buffer) {
+        long value = getVarUInt(buffer);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static byte[] getVBytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[(int) getVarUInt(buffer)];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static void putVarUInt(ByteArrayOutputStream output, long value) {
+        while ((value & ~0x7FL) != 0) {
+            output.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.write((int) value);
+    }
+
+    private static void putVarInt(ByteArrayOutputStream output, long value) {
+        putVarUInt(output, (value << 1) ^ (value >> 63));
+    }
+
+    private static void putVBytes(ByteArrayOutputStream output, byte[] value) {
+        putVarUInt(output, value.length);
+        output.write(value, 0, value.length);
+    }
+
+    /**
+     * A request, received by the server.
+     */
+    public static final class Request {
+
+        private final int command;
+
+        private final int seq;
+
+        private final Object[] args;
+
+        private final Duration execTimeout;
+
+        private Request(int command, int seq, Object[] args, Duration execTimeout) {
+            this.command = command;
+            this.seq = seq;
+            this.args = args;
+            this.execTimeout = execTimeout;
+        }
+
+        private static Request decode(int command, int seq, byte[] body) {
+            ByteBuffer buffer = ByteBuffer.wrap(body);
+            Object[] args = decodeArgs(buffer);
+            Duration execTimeout = null;
+            if (buffer.hasRemaining()) {
+                Object[] ctxArgs = decodeArgs(buffer);
+                execTimeout = Duration.ofMillis(((Number) ctxArgs[0]).longValue());
+            }
+            return new Request(command, seq, args, execTimeout);
+        }
+
+        private static Object[] decodeArgs(ByteBuffer buffer) {
+            Object[] args = new Object[(int) getVarUInt(buffer)];
+            for (int i = 0; i < args.length; i++) {
+                int type = (int) getVarUInt(buffer);
+                switch (type) {
+                    case VALUE_BOOL:
+                        args[i] = getVarUInt(buffer) != 0;
+                        break;
+                    case VALUE_INT:
+                        args[i] = (int) getVarInt(buffer);
+                        break;
+                    case VALUE_INT_64:
+                        args[i] = getVarInt(buffer);
+                        break;
+                    case VALUE_STRING:
+                        args[i] = getVBytes(buffer);
+                        break;
+                    default:
+                        throw new IllegalStateException("Unexpected arg type " + type);
+                }
+            }
+            return args;
+        }
+
+        /**
+         * Returns the command, e.g. {@code Binding.SELECT}.
+         *
+         * @return the command
+         */
+        public int getCommand() {
+            return command;
+        }
+
+        /**
+         * Returns the sequence number of the request, which the response is matched by.
+         *
+         * @return the sequence number
+         */
+        public int getSeq() {
+            return seq;
+        }
+
+        /**
+         * Returns the command arguments: strings and byte arrays are returned as byte arrays.
+         *
+         * @return the command arguments
+         */
+        public Object[] getArgs() {
+            return args;
+        }
+
+        /**
+         * Returns the execution timeout, passed along with the command, if any.
+         *
+         * @return the execution timeout or null
+         */
+        public Duration getExecTimeout() {
+            return execTimeout;
+        }
+
+    }
+
+    /**
+     * A response of the server.
+     */
+    public static final class Response {
+
+        private final int code;
+
+        private final String message;
+
+        private final Object[] args;
+
+        private final Duration delay;
+
+        private final boolean sent;
+
+        private Response(int code, String message, Object[] args, Duration delay, boolean sent) {
+            this.code = code;
+            this.message = message;
+            this.args = args;
+            this.delay = delay;
+            this.sent = sent;
+        }
+
+        /**
+         * Creates a successful response.
+         *
+         * @param args the response arguments: Boolean, Integer, Long, Double, String or byte[]
+         * @return the {@link Response} to use
+         */
+        public static Response ok(Object... args) {
+            return new Response(ERR_OK, "", args, Duration.ZERO, true);
+        }
+
+        /**
+         * Creates an error response.
+         *
+         * @param code    the error code
+         * @param message the error message
+         * @return the {@link Response} to use
+         */
+        public static Response error(int code, String message) {
+            return new Response(code, message, new Object[0], Duration.ZERO, true);
+        }
+
+        /**
+         * Creates a response, which is never sent, so the request is left unanswered.
+         *
+         * @return the {@link Response} to use
+         */
+        public static Response none() {
+            return new Response(ERR_OK, "", new Object[0], Duration.ZERO, false);
+        }
+
+        /**
+         * Returns the same response, sent after the delay.
+         *
+         * @param delay the response delay
+         * @return the {@link Response} to use
+         */
+        public Response delayed(Duration delay) {
+            return new Response(code, message, args, delay, sent);
+        }
+
+        private byte[] encode(Request request) {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            putVarUInt(body, code);
+            putVBytes(body, message.getBytes(StandardCharsets.UTF_8));
+            putVarUInt(body, args.length);
+            for (Object arg : args) {
+                if (arg instanceof Boolean) {
+                    putVarUInt(body, VALUE_BOOL);
+                    putVarUInt(body, (Boolean) arg ? 1L : 0L);
+                } else if (arg instanceof Integer) {
+                    putVarUInt(body, VALUE_INT);
+                    putVarInt(body, (Integer) arg);
+                } else if (arg instanceof Long) {
+                    putVarUInt(body, VALUE_INT_64);
+                    putVarInt(body, (Long) arg);
+                } else if (arg instanceof Double) {
+                    putVarUInt(body, VALUE_DOUBLE);
+                    byte[] value = ByteBuffer.allocate(Double.BYTES).order(ByteOrder.LITTLE_ENDIAN)
+                            .putDouble((Double) arg)
+                            .array();
+                    body.write(value, 0, value.length);
+                } else if (arg instanceof String) {
+                    putVarUInt(body, VALUE_STRING);
+                    putVBytes(body, ((String) arg).getBytes(StandardCharsets.UTF_8));
+                } else if (arg instanceof byte[]) {
+                    putVarUInt(body, VALUE_STRING);
+                    putVBytes(body, (byte[]) arg);
+                } else {
+                    throw new IllegalArgumentException("Unsupported data type " + arg.getClass());
+                }
+            }
+            return ByteBuffer.allocate(CPROTO_HDR_LEN + body.size()).order(ByteOrder.LITTLE_ENDIAN)
+                    .putInt(CPROTO_MAGIC)
+                    .putShort((short) CPROTO_VERSION)
+                    .putShort((short) request.command)
+                    .putInt(body.size())
+                    .putInt(request.seq)
+                    .put(body.toByteArray())
+                    .array();
+        }
+
+    }
+
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2020 Restream
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.rt.restream.reindexer.tracing.opentelemetry;
+
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanBuilder;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Context;
+import ru.rt.restream.reindexer.metrics.CommandNames;
+import ru.rt.restream.reindexer.tracing.ReindexerSpan;
+import ru.rt.restream.reindexer.tracing.ReindexerTracer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link ReindexerTracer}, which records the binding calls as OpenTelemetry client spans.
+ * <p>
+ * A span is a child of the current span, named by the command and the namespace, e.g. {@code select items}, with
+ * the database semantic convention attributes. The phases of a call are recorded as child spans with the phase
+ * names, e.g. {@code network}. The phase times are measured by {@link System#nanoTime()}, so they are converted
+ * to the wall clock time relative to the span start.
+ */
+public class OpenTelemetryTracer implements ReindexerTracer {
+
+    /**
+     * The instrumentation scope name.
+     */
+    public static final String INSTRUMENTATION_NAME = "rx-connector";
+
+    private static final AttributeKey<String> DB_SYSTEM = AttributeKey.stringKey("db.system");
+
+    private static final AttributeKey<String> DB_OPERATION = AttributeKey.stringKey("db.operation.name");
+
+    private static final AttributeKey<String> DB_COLLECTION = AttributeKey.stringKey("db.collection.name");
+
+    private static final AttributeKey<Long> ITEMS = AttributeKey.longKey("reindexer.items");
+
+    private static final String DB_SYSTEM_VALUE = "reindexer";
+
+    private final Tracer tracer;
+
+    /**
+     * Creates an instance, which gets its tracer from the given {@link OpenTelemetry}.
+     *
+     * @param openTelemetry the {@link OpenTelemetry} to use
+     */
+    public OpenTelemetryTracer(OpenTelemetry openTelemetry) {
+        this(openTelemetry.getTracer(INSTRUMENTATION_NAME));
+    }
+
+    /**
+     * Creates an instance.
+     *
+     * @param tracer the {@link Tracer} to start the spans
+     */
+    public OpenTelemetryTracer(Tracer tracer) {
+        this.tracer = tracer;
+    }
+
+    @Override
+    public ReindexerSpan startSpan(int command, String namespace) {
+        String operation = CommandNames.get(command);
+        long startNanos = System.nanoTime();
+        long startEpochNanos = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+        SpanBuilder builder = tracer.spanBuilder(namespace != null ? operation + " " + namespace : operation)
+                .setSpanKind(SpanKind.CLIENT)
+                .setStartTimestamp(startEpochNanos, TimeUnit.NANOSECONDS)
+                .setAttribute(DB_SYSTEM, DB_SYSTEM_VALUE)
+                .setAttribute(DB_OPERATION, operation);
+        if (namespace != null) {
+            builder.setAttribute(DB_COLLECTION, namespace);
+        }
+        return new OpenTelemetrySpan(builder.startSpan(), startNanos, startEpochNanos);
+    }
+
+    private class OpenTelemetrySpan implements ReindexerSpan {
+
+        private final Span span;
+
+        private final long startNanos;
+
+        private final long startEpochNanos;
+
+        private OpenTelemetrySpan(Span span, long startNanos, long startEpochNanos) {
+            this.span = span;
+            this.startNanos = startNanos;
+            this.startEpochNanos = startEpochNanos;
+        }
+
+        @Override
+        public void recordPhase(String phase, long startNanos, long durationNanos) {
+            long phaseStart = toEpochNanos(startNanos);
+            tracer.spanBuilder(phase)
+                    .setParent(Context.current().with(span))
+                    .setSpanKind(SpanKind.INTERNAL)
+                    .setStartTimestamp(phaseStart, TimeUnit.NANOSECONDS)
+                    .startSpan()
+                    .end(phaseStart + durationNanos, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public void setItemCount(long items) {
+            span.setAttribute(ITEMS, items);
+        }
+
+        @Override
+        public void recordError(Throwable error) {
+            span.recordException(error);
+            span.setStatus(StatusCode.ERROR, String.valueOf(error.getMessage()));
+        }
+
+        @Override
+        public void end() {
+            span.end(toEpochNanos(System.nanoTime()), TimeUnit.NANOSECONDS);
+        }
+
+        private long toEpochNanos(long nanos) {
+            return startEpochNanos + (nanos - startNanos);
+        }
+
+    }
+
+}